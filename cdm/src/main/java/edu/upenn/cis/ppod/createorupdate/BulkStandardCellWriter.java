@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dao.StagedStandardRow;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+
+/**
+ * The {@link CellWriteMode#BULK} way of writing the cells of a matrix: stage
+ * the incoming cells and replace the stored cells a block of rows at a time
+ * with batched statements instead of merging them cell by cell through the
+ * session. Only one block of incoming rows is held at a time, so the incoming
+ * rows can be read as they're written.
+ * <p>
+ * Also the {@link CellWriteMode#PACKED} way, which is the same except that
+ * each row's cells are written as its {@link StandardRow#getPackedCells()}.
+ *
+ * @author Sam Donnelly
+ */
+final class BulkStandardCellWriter {
+
+	static final int DEFAULT_ROWS_PER_BLOCK = 100;
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(BulkStandardCellWriter.class);
+
+	private final IStandardRowDAO rowDao;
+
+	private final int rowsPerBlock;
+
+	private final boolean packed;
+
+	BulkStandardCellWriter(final IStandardRowDAO rowDao) {
+		this(rowDao, DEFAULT_ROWS_PER_BLOCK, false);
+	}
+
+	BulkStandardCellWriter(
+			final IStandardRowDAO rowDao,
+			final int rowsPerBlock) {
+		this(rowDao, rowsPerBlock, false);
+	}
+
+	/**
+	 * @param rowDao the row DAO
+	 * @param rowsPerBlock how many rows to write at a time
+	 * @param packed whether to write the rows' cells packed
+	 */
+	BulkStandardCellWriter(
+			final IStandardRowDAO rowDao,
+			final int rowsPerBlock,
+			final boolean packed) {
+		checkArgument(rowsPerBlock > 0, "rowsPerBlock must be positive");
+		this.rowDao = checkNotNull(rowDao);
+		this.rowsPerBlock = rowsPerBlock;
+		this.packed = packed;
+	}
+
+	/**
+	 * Write {@code sourceRows} into {@code dbMatrix}, whose characters must
+	 * already match the incoming ones. Stored rows whose cells are unchanged
+	 * are left alone.
+	 *
+	 * @param dbMatrix the persistent matrix
+	 * @param sourceRows the incoming rows
+	 * @param sourceToDbCharPositions for each incoming column, the position
+	 *            its character had in {@code dbMatrix} before the update, or
+	 *            {@code -1} if it's new
+	 * @param charactersRemoved whether any of the characters that
+	 *            {@code dbMatrix} had before the update have been removed
+	 */
+	void writeCells(
+			final StandardMatrix dbMatrix,
+			final Iterable<PPodStandardRow> sourceRows,
+			final int[] sourceToDbCharPositions,
+			final boolean charactersRemoved) {
+		checkNotNull(dbMatrix);
+		checkNotNull(sourceRows);
+		checkNotNull(sourceToDbCharPositions);
+
+		final String METHOD = "writeCells(...)";
+
+		final boolean skipUnchangedRows =
+				!charactersRemoved
+						&& CellsFingerprint
+								.columnsInPlace(sourceToDbCharPositions);
+
+		if (charactersRemoved) {
+			// Any stored cell can point to the states of the removed
+			// characters, so they all have to go before the flush that
+			// deletes those states.
+			final List<Long> storedRowIds = newArrayList();
+			for (final StandardRow dbRow : dbMatrix.getRows().values()) {
+				if (dbRow != null && dbRow.getId() != null) {
+					rowDao.evict(dbRow);
+					storedRowIds.add(dbRow.getId());
+				}
+			}
+			rowDao.deleteCellsByRowIds(storedRowIds);
+			rowDao.flush();
+		}
+
+		final List<StandardCharacter> dbCharacters = dbMatrix.getCharacters();
+		final List<StandardRow> blockRows =
+				newArrayListWithCapacity(rowsPerBlock);
+		final List<StagedStandardRow> block =
+				newArrayListWithCapacity(rowsPerBlock);
+		final List<Long> blockStoredRowIds =
+				newArrayListWithCapacity(rowsPerBlock);
+
+		int sourceRowPos = -1;
+		for (final PPodStandardRow sourceRow : sourceRows) {
+			sourceRowPos++;
+			checkArgument(
+					sourceRow.getCells().size() == dbCharacters.size(),
+					"row " + sourceRowPos + " has "
+							+ sourceRow.getCells().size()
+							+ " cells but the matrix has "
+							+ dbCharacters.size() + " characters");
+
+			final Otu dbOtu =
+					dbMatrix.getParent()
+							.getOtus()
+							.get(sourceRowPos);
+
+			final String sourceCellsFingerprint =
+					CellsFingerprint.of(sourceRow);
+
+			// Let's create rows for OTU->null row mappings in the matrix.
+			StandardRow dbRow = null;
+			if (null == (dbRow = dbMatrix.getRows().get(dbOtu))) {
+				dbRow = new StandardRow();
+				dbMatrix.putRow(dbOtu, dbRow);
+				rowDao.makePersistent(dbRow);
+			} else if (skipUnchangedRows
+					&& sourceCellsFingerprint.equals(
+							dbRow.getCellsFingerprint())) {
+				logger.debug("{}: row number {} is unchanged",
+						METHOD,
+						sourceRowPos);
+				rowDao.evict(dbRow);
+				continue;
+			} else if (!charactersRemoved && dbRow.getId() != null) {
+				// Its cells are going to be deleted behind the session's back
+				rowDao.evict(dbRow);
+				if (dbRow.getPackedCells() == null) {
+					blockStoredRowIds.add(dbRow.getId());
+				}
+			}
+			dbRow.setCellsFingerprint(sourceCellsFingerprint);
+			if (packed) {
+				checkStates(dbCharacters, 0, sourceRow);
+				dbRow.setPackedCells(StandardCellsCodec.encode(sourceRow));
+			} else {
+				dbRow.setPackedCells(null);
+				block.add(stageRow(dbRow, sourceRow, 0, dbCharacters));
+			}
+			blockRows.add(dbRow);
+			if (blockRows.size() == rowsPerBlock) {
+				logger.debug("{}: writing {} rows", METHOD, blockRows.size());
+				writeBlock(blockRows, block, blockStoredRowIds);
+			}
+		}
+		writeBlock(blockRows, block, blockStoredRowIds);
+	}
+
+	private void writeBlock(
+			final List<StandardRow> blockRows,
+			final List<StagedStandardRow> block,
+			final List<Long> blockStoredRowIds) {
+		if (blockRows.isEmpty()) {
+			return;
+		}
+		rowDao.deleteCellsByRowIds(blockStoredRowIds);
+
+		// So that the new rows and the states of new characters have ids
+		rowDao.flush();
+
+		if (packed) {
+			rowDao.updatePackedCells(blockRows);
+		} else {
+			rowDao.insertCells(block);
+		}
+		for (final StandardRow row : blockRows) {
+			rowDao.evict(row);
+		}
+		blockRows.clear();
+		block.clear();
+		blockStoredRowIds.clear();
+	}
+
+	/**
+	 * Stage the cells of {@code sourceRow}, the first of which goes in column
+	 * {@code firstPosition}.
+	 */
+	static StagedStandardRow stageRow(
+			final StandardRow dbRow,
+			final PPodStandardRow sourceRow,
+			final int firstPosition,
+			final List<StandardCharacter> dbCharacters) {
+		final StagedStandardRow stagedRow =
+				new StagedStandardRow(
+						dbRow,
+						firstPosition,
+						sourceRow.getCellCount());
+		for (int cellPos = 0; cellPos < sourceRow.getCellCount(); cellPos++) {
+			stagedRow.addCell(
+					sourceRow.getType(cellPos),
+					getStatesByStateBitmask(
+							dbCharacters.get(firstPosition + cellPos),
+							sourceRow.getStateBitmask(cellPos)));
+		}
+		return stagedRow;
+	}
+
+	/**
+	 * Check that every state of {@code sourceCells} is a state of its column's
+	 * character, where the first of the cells goes in column
+	 * {@code firstPosition}.
+	 */
+	static void checkStates(
+			final List<StandardCharacter> dbCharacters,
+			final int firstPosition,
+			final List<PPodStandardCell> sourceCells) {
+		int cellPos = -1;
+		for (final PPodStandardCell sourceCell : sourceCells) {
+			cellPos++;
+			for (final Integer stateNumber : sourceCell.getStates()) {
+				getState(
+						dbCharacters.get(firstPosition + cellPos),
+						stateNumber);
+			}
+		}
+	}
+
+	/**
+	 * Check that every state of the cells of {@code sourceRow} is a state of
+	 * its column's character, where the first of the cells goes in column
+	 * {@code firstPosition}.
+	 */
+	static void checkStates(
+			final List<StandardCharacter> dbCharacters,
+			final int firstPosition,
+			final PPodStandardRow sourceRow) {
+		for (int cellPos = 0; cellPos < sourceRow.getCellCount(); cellPos++) {
+			getStatesByStateBitmask(
+					dbCharacters.get(firstPosition + cellPos),
+					sourceRow.getStateBitmask(cellPos));
+		}
+	}
+
+	private static Set<StandardState> getStatesByStateBitmask(
+			final StandardCharacter character,
+			final long stateBitmask) {
+		if (stateBitmask == 0) {
+			return ImmutableSet.of();
+		}
+		final ImmutableSet.Builder<StandardState> states =
+				ImmutableSet.builder();
+		long remaining = stateBitmask;
+		while (remaining != 0) {
+			states.add(getState(
+					character,
+					Long.numberOfTrailingZeros(remaining)));
+			remaining &= remaining - 1;
+		}
+		return states.build();
+	}
+
+	private static StandardState getState(
+			final StandardCharacter character,
+			final Integer stateNumber) {
+		final StandardState state = character.getStates().get(stateNumber);
+		checkArgument(
+				state != null,
+				"This matrix doesn't have a state number "
+						+ stateNumber + " for character ["
+						+ character.getLabel()
+						+ "]");
+		return state;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+/**
+ * Fingerprints of incoming standard rows, to be compared with
+ * {@link StandardRow#getCellsFingerprint()} so that we can skip rows whose
+ * cells haven't changed.
+ *
+ * @author Sam Donnelly
+ */
+final class CellsFingerprint {
+
+	private CellsFingerprint() {}
+
+	/**
+	 * Get the fingerprint of the types and state numbers of a row's cells.
+	 *
+	 * @param sourceRow the incoming row
+	 *
+	 * @return the fingerprint of the row's cells
+	 */
+	static String of(final PPodStandardRow sourceRow) {
+		checkNotNull(sourceRow);
+		final ContentDigest digest = new ContentDigest();
+		digest.putInt(sourceRow.getCellCount());
+		for (int cellPos = 0; cellPos < sourceRow.getCellCount(); cellPos++) {
+			digest.putInt(sourceRow.getType(cellPos).ordinal());
+			final long stateBitmask = sourceRow.getStateBitmask(cellPos);
+			digest.putInt(Long.bitCount(stateBitmask));
+			// Lowest first, so in order
+			long remaining = stateBitmask;
+			while (remaining != 0) {
+				digest.putInt(Long.numberOfTrailingZeros(remaining));
+				remaining &= remaining - 1;
+			}
+		}
+		return digest.toHexString();
+	}
+
+	/**
+	 * Is every incoming column at the same position as its stored column?
+	 * Only then can a matching fingerprint tell us that a stored row is up to
+	 * date.
+	 *
+	 * @param sourceToDbCharPositions for each incoming column, the position of
+	 *            its stored column, or {@code -1} if it's new
+	 *
+	 * @return {@code true} if every column is stored at its incoming position
+	 */
+	static boolean columnsInPlace(final int[] sourceToDbCharPositions) {
+		for (int i = 0; i < sourceToDbCharPositions.length; i++) {
+			if (sourceToDbCharPositions[i] != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
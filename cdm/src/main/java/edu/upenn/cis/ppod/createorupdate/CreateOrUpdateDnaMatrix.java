@@ -15,51 +15,86 @@
  */
 package edu.upenn.cis.ppod.createorupdate;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Iterables.transform;
 
+import com.google.common.base.Function;
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
 import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
 import edu.upenn.cis.ppod.dto.PPodDnaRow;
 import edu.upenn.cis.ppod.model.DnaMatrix;
 import edu.upenn.cis.ppod.model.DnaRow;
-import edu.upenn.cis.ppod.model.Otu;
-
-public class CreateOrUpdateDnaMatrix {
-	private final static Logger logger = LoggerFactory
-			.getLogger(CreateOrUpdateDnaMatrix.class);
+import edu.upenn.cis.ppod.model.SequenceBlob;
 
-	public void createOrUpdateMatrix(
-			final DnaMatrix dbMatrix,
-			final PPodDnaMatrix sourceMatrix) {
+public class CreateOrUpdateDnaMatrix
+		extends CreateOrUpdateMolecularMatrix<DnaMatrix, DnaRow> {
 
-		final String METHOD = "createOrUpdateMatrix(...)";
+	private static final Function<PPodDnaRow, String> getSequence =
+			new Function<PPodDnaRow, String>() {
+				public String apply(final PPodDnaRow row) {
+					return row.getSequence();
+				}
+			};
 
-		dbMatrix.setLabel(sourceMatrix.getLabel());
-
-		int sourceOtuPos = -1;
-
-		for (final PPodDnaRow sourceRow : sourceMatrix.getRows()) {
-
-			sourceOtuPos++;
+	@Inject
+	CreateOrUpdateDnaMatrix(
+			final IDnaRowDAO rowDao,
+			final ISequenceBlobDAO sequenceBlobDao) {
+		this(rowDao, sequenceBlobDao, DEFAULT_ROWS_PER_FLUSH);
+	}
 
-			final Otu dbOtu = dbMatrix.getParent()
-							.getOtus()
-							.get(sourceOtuPos);
+	CreateOrUpdateDnaMatrix(
+			final IDnaRowDAO rowDao,
+			final ISequenceBlobDAO sequenceBlobDao,
+			final int rowsPerFlush) {
+		super(
+				rowDao,
+				sequenceBlobDao,
+				SequenceBlob.Alphabet.DNA,
+				rowsPerFlush);
+	}
 
-			// Let's create rows for OTU->null row mappings in the matrix.
-			DnaRow dbRow = null;
+	public void createOrUpdateMatrix(
+			final DnaMatrix dbMatrix,
+			final PPodDnaMatrix sourceMatrix) {
+		checkNotNull(sourceMatrix);
+		createOrUpdateMatrix(dbMatrix, sourceMatrix, sourceMatrix.getRows());
+	}
 
-			if (null == (dbRow = dbMatrix.getRows().get(dbOtu))) {
-				dbRow = new DnaRow();
-				dbMatrix.putRow(dbOtu, dbRow);
-			}
+	/**
+	 * Create or update {@code dbMatrix} from the label of
+	 * {@code sourceMatrix} and from {@code sourceRows}, which are used instead
+	 * of the rows of {@code sourceMatrix} and are iterated over once.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 * @param sourceMatrix the incoming matrix
+	 * @param sourceRows the incoming rows
+	 */
+	public void createOrUpdateMatrix(
+			final DnaMatrix dbMatrix,
+			final PPodDnaMatrix sourceMatrix,
+			final Iterable<PPodDnaRow> sourceRows) {
+		checkNotNull(dbMatrix);
+		checkNotNull(sourceMatrix);
+		checkNotNull(sourceRows);
+		createOrUpdateRows(
+				dbMatrix,
+				sourceMatrix.getLabel(),
+				transform(sourceRows, getSequence));
+	}
 
-			dbRow.setSequence(sourceRow.getSequence());
+	@Override
+	DnaRow newRow() {
+		return new DnaRow();
+	}
 
-			logger.debug(
-					"{}: finishing row number {}",
-					METHOD,
-					sourceOtuPos);
-		}
+	@Override
+	void setSequenceBlob(
+			final DnaRow row,
+			final SequenceBlob sequenceBlob) {
+		row.setSequenceBlob(sequenceBlob);
 	}
 }
@@ -25,7 +25,6 @@ import org.slf4j.LoggerFactory;
 
 import edu.upenn.cis.ppod.dao.IStandardRowDAO;
 import edu.upenn.cis.ppod.dto.PPodStandardCell;
-import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
 import edu.upenn.cis.ppod.dto.PPodStandardRow;
 import edu.upenn.cis.ppod.model.Otu;
 import edu.upenn.cis.ppod.model.StandardCell;
@@ -48,19 +47,20 @@ abstract class CreateOrUpdateMatrix {
 
 	public void createOrUpdateMatrixHelper(
 			final StandardMatrix dbMatrix,
-			final PPodStandardMatrix sourceMatrix,
+			final Iterable<PPodStandardRow> sourceRows,
 			final int[] sourceToDbCharPositions) {
 
 		checkNotNull(dbMatrix);
-		checkNotNull(sourceMatrix);
+		checkNotNull(sourceRows);
 
 		final String METHOD = "createOrUpdateMatrixHelper(...)";
 
-		dbMatrix.setLabel(sourceMatrix.getLabel());
+		final boolean columnsInPlace =
+				CellsFingerprint.columnsInPlace(sourceToDbCharPositions);
 
 		int sourceRowPos = -1;
 
-		for (final PPodStandardRow sourceRow : sourceMatrix.getRows()) {
+		for (final PPodStandardRow sourceRow : sourceRows) {
 
 			sourceRowPos++;
 
@@ -69,6 +69,9 @@ abstract class CreateOrUpdateMatrix {
 							.getOtus()
 							.get(sourceRowPos);
 
+			final String sourceCellsFingerprint =
+					CellsFingerprint.of(sourceRow);
+
 			// Let's create rows for OTU->null row mappings in the matrix.
 			StandardRow dbRow = null;
 
@@ -76,13 +79,27 @@ abstract class CreateOrUpdateMatrix {
 				dbRow = new StandardRow();
 				dbMatrix.putRow(dbOTU, dbRow);
 				rowDao.makePersistent(dbRow);
+			} else if (columnsInPlace
+					&& sourceCellsFingerprint.equals(
+							dbRow.getCellsFingerprint())) {
+				// Nothing's changed, so don't even load the cells.
+				logger.debug(
+						"{}: row number {} is unchanged",
+						METHOD,
+						sourceRowPos);
+				rowDao.evict(dbRow);
+				continue;
 			}
 
 			final List<StandardCell> dbCells =
 					newArrayListWithCapacity(sourceRow.getCells().size());
 
+			// A packed row has no cells to keep, so it gets all new ones
+			final boolean packed = dbRow.getPackedCells() != null;
+			dbRow.setPackedCells(null);
+
 			for (final int sourceToDbCharPosition : sourceToDbCharPositions) {
-				if (sourceToDbCharPosition == -1) {
+				if (packed || sourceToDbCharPosition == -1) {
 					final StandardCell newDbCell = new StandardCell();
 					dbCells.add(newDbCell);
 				} else {
@@ -122,6 +139,8 @@ abstract class CreateOrUpdateMatrix {
 				}
 			}
 
+			dbRow.setCellsFingerprint(sourceCellsFingerprint);
+
 			logger.debug(
 					"{}: flushing row number {}",
 					METHOD,
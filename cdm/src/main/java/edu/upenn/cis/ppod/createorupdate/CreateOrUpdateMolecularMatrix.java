@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.upenn.cis.ppod.dao.IMolecularRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.model.Matrix;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+/**
+ * Merges the sequences of an incoming DNA or protein matrix into a persistent
+ * one while holding on to only a window of rows at a time: the stored rows are
+ * compared by sequence hash without being loaded, only the rows whose
+ * sequences have changed are loaded and updated, and every
+ * {@code rowsPerFlush} written rows are flushed and evicted.
+ * <p>
+ * Rows with the same sequence, in this matrix or any other, share one
+ * {@link SequenceBlob}.
+ * 
+ * @author Sam Donnelly
+ * 
+ * @param <M> the matrix type
+ * @param <R> the row type
+ */
+abstract class CreateOrUpdateMolecularMatrix<M extends Matrix<R>, R> {
+
+	static final int DEFAULT_ROWS_PER_FLUSH = 100;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final IMolecularRowDAO<R, M> rowDao;
+
+	private final ISequenceBlobDAO sequenceBlobDao;
+
+	private final SequenceBlob.Alphabet alphabet;
+
+	private final int rowsPerFlush;
+
+	CreateOrUpdateMolecularMatrix(
+			final IMolecularRowDAO<R, M> rowDao,
+			final ISequenceBlobDAO sequenceBlobDao,
+			final SequenceBlob.Alphabet alphabet,
+			final int rowsPerFlush) {
+		checkArgument(rowsPerFlush > 0, "rowsPerFlush must be positive");
+		this.rowDao = checkNotNull(rowDao);
+		this.sequenceBlobDao = checkNotNull(sequenceBlobDao);
+		this.alphabet = checkNotNull(alphabet);
+		this.rowsPerFlush = rowsPerFlush;
+	}
+
+	/**
+	 * Set the label of {@code dbMatrix} and make its rows hold
+	 * {@code sourceSequences}, which are in the order of the matrix's OTUs.
+	 * {@code sourceSequences} is iterated over once, so it can read the
+	 * sequences as they're needed.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 * @param label the incoming label
+	 * @param sourceSequences the incoming sequences
+	 */
+	void createOrUpdateRows(
+			final M dbMatrix,
+			final String label,
+			final Iterable<String> sourceSequences) {
+		checkNotNull(dbMatrix);
+		checkNotNull(sourceSequences);
+
+		final String METHOD = "createOrUpdateRows(...)";
+
+		dbMatrix.setLabel(label);
+
+		final Map<Long, Object[]> storedRowsByOtuId =
+				getStoredRowsByOtuId(dbMatrix);
+
+		final List<R> unflushedRows = newArrayListWithCapacity(rowsPerFlush);
+		final List<SequenceBlob> unflushedBlobs =
+				newArrayListWithCapacity(rowsPerFlush);
+
+		int sourceOtuPos = -1;
+
+		for (final String sourceSequence : sourceSequences) {
+
+			sourceOtuPos++;
+
+			final Otu dbOtu = dbMatrix.getParent()
+							.getOtus()
+							.get(sourceOtuPos);
+
+			final Object[] storedRow = storedRowsByOtuId.get(dbOtu.getId());
+
+			R dbRow = null;
+
+			if (storedRow == null) {
+				// Let's create rows for OTU->null row mappings in the matrix.
+				dbRow = newRow();
+				dbMatrix.putRow(dbOtu, dbRow);
+			} else if (ContentDigest.hexDigestOf(sourceSequence).equals(
+					storedRow[2])) {
+				// Nothing's changed, so don't even load the row.
+				logger.debug(
+						"{}: row number {} is unchanged",
+						METHOD,
+						sourceOtuPos);
+				continue;
+			} else {
+				dbRow = rowDao.findById((Long) storedRow[1], false);
+			}
+
+			final SequenceBlob sequenceBlob =
+					sequenceBlobDao.getOrMakePersistent(
+							alphabet,
+							sourceSequence);
+			setSequenceBlob(dbRow, sequenceBlob);
+			rowDao.makePersistent(dbRow);
+			unflushedRows.add(dbRow);
+			unflushedBlobs.add(sequenceBlob);
+
+			logger.debug(
+					"{}: finished row number {}",
+					METHOD,
+					sourceOtuPos);
+
+			if (unflushedRows.size() == rowsPerFlush) {
+				flushAndEvict(unflushedRows, unflushedBlobs);
+			}
+		}
+		flushAndEvict(unflushedRows, unflushedBlobs);
+	}
+
+	private Map<Long, Object[]> getStoredRowsByOtuId(final M dbMatrix) {
+		final Map<Long, Object[]> storedRowsByOtuId = newHashMap();
+		if (dbMatrix.getId() != null) {
+			for (final Object[] storedRow : rowDao
+					.getOtuIdsIdsSequenceHashesByMatrix(dbMatrix)) {
+				storedRowsByOtuId.put((Long) storedRow[0], storedRow);
+			}
+		}
+		return storedRowsByOtuId;
+	}
+
+	private void flushAndEvict(
+			final List<R> unflushedRows,
+			final List<SequenceBlob> unflushedBlobs) {
+		if (unflushedRows.isEmpty()) {
+			return;
+		}
+		rowDao.flush();
+		for (final R row : unflushedRows) {
+			rowDao.evict(row);
+		}
+		for (final SequenceBlob sequenceBlob : unflushedBlobs) {
+			sequenceBlobDao.evict(sequenceBlob);
+		}
+		unflushedRows.clear();
+		unflushedBlobs.clear();
+	}
+
+	abstract R newRow();
+
+	abstract void setSequenceBlob(R row, SequenceBlob sequenceBlob);
+}
@@ -15,55 +15,86 @@
  */
 package edu.upenn.cis.ppod.createorupdate;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Iterables.transform;
 
+import com.google.common.base.Function;
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
 import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
 import edu.upenn.cis.ppod.dto.PPodProteinRow;
-import edu.upenn.cis.ppod.model.Otu;
 import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.model.ProteinRow;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+
+public class CreateOrUpdateProteinMatrix
+		extends CreateOrUpdateMolecularMatrix<ProteinMatrix, ProteinRow> {
+
+	private static final Function<PPodProteinRow, String> getSequence =
+			new Function<PPodProteinRow, String>() {
+				public String apply(final PPodProteinRow row) {
+					return row.getSequence();
+				}
+			};
+
+	@Inject
+	CreateOrUpdateProteinMatrix(
+			final IProteinRowDAO rowDao,
+			final ISequenceBlobDAO sequenceBlobDao) {
+		this(rowDao, sequenceBlobDao, DEFAULT_ROWS_PER_FLUSH);
+	}
 
-public class CreateOrUpdateProteinMatrix {
-
-	private final static Logger logger = LoggerFactory
-			.getLogger(CreateOrUpdateProteinMatrix.class);
+	CreateOrUpdateProteinMatrix(
+			final IProteinRowDAO rowDao,
+			final ISequenceBlobDAO sequenceBlobDao,
+			final int rowsPerFlush) {
+		super(
+				rowDao,
+				sequenceBlobDao,
+				SequenceBlob.Alphabet.PROTEIN,
+				rowsPerFlush);
+	}
 
 	public void createOrUpdateMatrix(
 			final ProteinMatrix dbMatrix,
 			final PPodProteinMatrix sourceMatrix) {
+		checkNotNull(sourceMatrix);
+		createOrUpdateMatrix(dbMatrix, sourceMatrix, sourceMatrix.getRows());
+	}
 
-		final String METHOD = "createOrUpdateMatrix(...)";
-
-		dbMatrix.setLabel(sourceMatrix.getLabel());
-
-		int sourceOtuPos = -1;
-
-		for (final PPodProteinRow sourceRow : sourceMatrix.getRows()) {
-
-			sourceOtuPos++;
-
-			final Otu dbOtu = dbMatrix.getParent()
-							.getOtus()
-							.get(sourceOtuPos);
-
-			// Let's create rows for OTU->null row mappings in the matrix.
-			ProteinRow dbRow = null;
-
-			if (null == (dbRow = dbMatrix.getRows().get(dbOtu))) {
-				dbRow = new ProteinRow();
-				dbMatrix.putRow(dbOtu, dbRow);
-			}
-
-			dbRow.setSequence(sourceRow.getSequence());
+	/**
+	 * Create or update {@code dbMatrix} from the label of
+	 * {@code sourceMatrix} and from {@code sourceRows}, which are used instead
+	 * of the rows of {@code sourceMatrix} and are iterated over once.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 * @param sourceMatrix the incoming matrix
+	 * @param sourceRows the incoming rows
+	 */
+	public void createOrUpdateMatrix(
+			final ProteinMatrix dbMatrix,
+			final PPodProteinMatrix sourceMatrix,
+			final Iterable<PPodProteinRow> sourceRows) {
+		checkNotNull(dbMatrix);
+		checkNotNull(sourceMatrix);
+		checkNotNull(sourceRows);
+		createOrUpdateRows(
+				dbMatrix,
+				sourceMatrix.getLabel(),
+				transform(sourceRows, getSequence));
+	}
 
-			logger.debug(
-					"{}: finished row number {}",
-					METHOD,
-					sourceOtuPos);
+	@Override
+	ProteinRow newRow() {
+		return new ProteinRow();
+	}
 
-			// proteinRowDao.flush();
-			// proteinRowDao.evict(dbRow);
-		}
+	@Override
+	void setSequenceBlob(
+			final ProteinRow row,
+			final SequenceBlob sequenceBlob) {
+		row.setSequenceBlob(sequenceBlob);
 	}
 }
@@ -17,13 +17,12 @@ package edu.upenn.cis.ppod.createorupdate;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Iterables.getOnlyElement;
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -32,11 +31,12 @@ import org.slf4j.LoggerFactory;
 import com.google.inject.Inject;
 
 import edu.upenn.cis.ppod.dao.IStandardRowDAO;
-import edu.upenn.cis.ppod.dto.IHasPPodId;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
 import edu.upenn.cis.ppod.dto.PPodCellType;
 import edu.upenn.cis.ppod.dto.PPodStandardCell;
 import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
 import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
 import edu.upenn.cis.ppod.dto.PPodStandardState;
 import edu.upenn.cis.ppod.model.StandardCell;
 import edu.upenn.cis.ppod.model.StandardCharacter;
@@ -52,24 +52,71 @@ final class CreateOrUpdateStandardMatrix extends CreateOrUpdateMatrix implements
 	private static Logger logger =
 			LoggerFactory.getLogger(CreateOrUpdateMatrix.class);
 
+	private final BulkStandardCellWriter bulkCellWriter;
+
+	private final BulkStandardCellWriter packedCellWriter;
+
 	@Inject
 	CreateOrUpdateStandardMatrix(
 			final IStandardRowDAO rowDao) {
 		super(rowDao);
+		bulkCellWriter = new BulkStandardCellWriter(rowDao);
+		packedCellWriter =
+				new BulkStandardCellWriter(
+						rowDao,
+						BulkStandardCellWriter.DEFAULT_ROWS_PER_BLOCK,
+						true);
 	}
 
 	public void createOrUpdateMatrix(
 			final StandardMatrix dbMatrix,
 			final PPodStandardMatrix sourceMatrix) {
+		createOrUpdateMatrix(dbMatrix, sourceMatrix, CellWriteMode.PER_CELL);
+	}
+
+	public void createOrUpdateMatrix(
+			final StandardMatrix dbMatrix,
+			final PPodStandardMatrix sourceMatrix,
+			final CellWriteMode cellWriteMode) {
+		createOrUpdateMatrix(
+				dbMatrix,
+				sourceMatrix,
+				sourceMatrix.getRows(),
+				cellWriteMode);
+	}
+
+	public void createOrUpdateMatrix(
+			final StandardMatrix dbMatrix,
+			final PPodStandardMatrix sourceMatrix,
+			final Iterable<PPodStandardRow> sourceRows,
+			final CellWriteMode cellWriteMode) {
 		final String METHOD = "createOrUpdate(...)";
 		logger.debug("{}: entering", METHOD);
 		checkNotNull(dbMatrix);
 		checkNotNull(sourceMatrix);
+		checkNotNull(sourceRows);
+		checkNotNull(cellWriteMode);
+
+		dbMatrix.setLabel(sourceMatrix.getLabel());
 
 		final int[] sourceToDbCharPositions =
 				new int[sourceMatrix.getCharacters().size()];
 
-		final List<StandardCharacter> newDbMatrixCharacters = newArrayList();
+		final PPodIdReconciliation<StandardCharacter> reconciliation =
+				PPodIdReconciliation.reconcile(
+						dbMatrix.getCharacters(),
+						sourceMatrix.getCharacters());
+
+		final Map<StandardCharacter, Integer> dbCharacterPositions =
+				newHashMapWithExpectedSize(dbMatrix.getCharacters().size());
+		int dbCharacterPosition = -1;
+		for (final StandardCharacter dbCharacter : dbMatrix.getCharacters()) {
+			dbCharacterPosition++;
+			dbCharacterPositions.put(dbCharacter, dbCharacterPosition);
+		}
+
+		final List<StandardCharacter> newDbMatrixCharacters =
+				newArrayListWithCapacity(sourceMatrix.getCharacters().size());
 		int sourceCharacterPosition = -1;
 		for (final PPodStandardCharacter sourceCharacter : sourceMatrix
 				.getCharacters()) {
@@ -77,21 +124,14 @@ final class CreateOrUpdateStandardMatrix extends CreateOrUpdateMatrix implements
 			StandardCharacter newDbCharacter;
 
 			if (null == (newDbCharacter =
-									find(dbMatrix
-											.getCharacters(),
-											compose(
-													equalTo(
-													sourceCharacter.getPPodId()),
-													IHasPPodId.getPPodId),
-													null))) {
+					reconciliation.getMatch(sourceCharacterPosition))) {
 				newDbCharacter = new StandardCharacter();
 				sourceToDbCharPositions[sourceCharacterPosition] = -1;
+			} else {
+				sourceToDbCharPositions[sourceCharacterPosition] =
+						dbCharacterPositions.get(newDbCharacter);
 			}
 
-			// Will be setting it to -1 if it's not present
-			sourceToDbCharPositions[sourceCharacterPosition] =
-					dbMatrix.getCharacters().indexOf(newDbCharacter);
-
 			newDbMatrixCharacters.add(newDbCharacter);
 
 			newDbCharacter.setLabel(sourceCharacter.getLabel());
@@ -112,8 +152,24 @@ final class CreateOrUpdateStandardMatrix extends CreateOrUpdateMatrix implements
 
 		dbMatrix.clearAndAddCharacters(newDbMatrixCharacters);
 
-		super.createOrUpdateMatrixHelper(dbMatrix, sourceMatrix,
-				sourceToDbCharPositions);
+		switch (cellWriteMode) {
+			case PER_CELL:
+				super.createOrUpdateMatrixHelper(dbMatrix, sourceRows,
+						sourceToDbCharPositions);
+				break;
+			case BULK:
+				bulkCellWriter.writeCells(dbMatrix, sourceRows,
+						sourceToDbCharPositions,
+						!reconciliation.getRemoveds().isEmpty());
+				break;
+			case PACKED:
+				packedCellWriter.writeCells(dbMatrix, sourceRows,
+						sourceToDbCharPositions,
+						!reconciliation.getRemoveds().isEmpty());
+				break;
+			default:
+				throw new AssertionError("unknown cell write mode");
+		}
 
 	}
 
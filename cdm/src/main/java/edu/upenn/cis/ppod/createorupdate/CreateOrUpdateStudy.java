@@ -15,26 +15,37 @@
  */
 package edu.upenn.cis.ppod.createorupdate;
 
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.collect.Iterables.find;
-import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterables.transform;
+import static com.google.common.collect.Lists.newArrayList;
 
-import java.util.Set;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.dao.IDnaMatrixDAO;
 import edu.upenn.cis.ppod.dao.IOtuSetDAO;
 import edu.upenn.cis.ppod.dao.IProteinMatrixDAO;
 import edu.upenn.cis.ppod.dao.IStandardMatrixDAO;
 import edu.upenn.cis.ppod.dao.IStudyDAO;
 import edu.upenn.cis.ppod.dao.ITreeSetDAO;
-import edu.upenn.cis.ppod.dto.IHasPPodId;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
 import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
 import edu.upenn.cis.ppod.dto.PPodOtuSet;
 import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
 import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
 import edu.upenn.cis.ppod.dto.PPodStudy;
 import edu.upenn.cis.ppod.dto.PPodTreeSet;
 import edu.upenn.cis.ppod.model.DnaMatrix;
@@ -43,14 +54,22 @@ import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.model.Study;
 import edu.upenn.cis.ppod.model.TreeSet;
+import edu.upenn.cis.ppod.util.IPPodStudyHandler;
+import edu.upenn.cis.ppod.util.PPodStudyReader;
 
 /**
  * Create a new study or update an existing one.
+ * <p>
+ * OTU sets, matrices and tree sets whose {@link SubtreeDigest}s match those of
+ * their persistent counterparts are left alone.
  * 
  * @author Sam Donnelly
  */
 public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 
+	private static final Logger logger =
+			LoggerFactory.getLogger(CreateOrUpdateStudy.class);
+
 	private final IStudyDAO studyDAO;
 	private final MergeOtuSets mergeOtuSets;
 	// private final MergeDnaSequenceSets mergeDNASequenceSets;
@@ -62,6 +81,10 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 	private final IStandardMatrixDAO standardMatrixDAO;
 	private final ITreeSetDAO treeSetDAO;
 	private final IProteinMatrixDAO proteinMatrixDAO;
+	private final CreateOrUpdateDnaMatrix createOrUpdateDnaMatrix;
+	private final CreateOrUpdateProteinMatrix createOrUpdateProteinMatrix;
+	private final PPodStudyReader studyReader;
+	private final MergePlanner mergePlanner;
 
 	@Inject
 	CreateOrUpdateStudy(
@@ -71,7 +94,10 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 			final IDnaMatrixDAO dnaMatrixDAO,
 			final IStandardMatrixDAO standardMatrixDAO,
 			final ITreeSetDAO treeSetDAO,
-			final IProteinMatrixDAO proteinMatrixDAO) {
+			final IProteinMatrixDAO proteinMatrixDAO,
+			final CreateOrUpdateDnaMatrix createOrUpdateDnaMatrix,
+			final CreateOrUpdateProteinMatrix createOrUpdateProteinMatrix,
+			final MergePlanner mergePlanner) {
 		this.studyDAO = studyDAO;
 		this.mergeOtuSets = new MergeOtuSets();
 		this.createOrUpdateStandardMatrix = createOrUpdateStandardMatrix;
@@ -81,21 +107,152 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 		this.standardMatrixDAO = standardMatrixDAO;
 		this.treeSetDAO = treeSetDAO;
 		this.proteinMatrixDAO = proteinMatrixDAO;
+		this.createOrUpdateDnaMatrix = createOrUpdateDnaMatrix;
+		this.createOrUpdateProteinMatrix = createOrUpdateProteinMatrix;
+		this.studyReader = new PPodStudyReader();
+		this.mergePlanner = mergePlanner;
 	}
 
-	public Study createOrUpdateStudy(final PPodStudy incomingStudy) {
-		Study dbStudy = null;
+	public Study createOrUpdateStudy(
+			final PPodStudy incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		final String METHOD = "createOrUpdateStudy(...)";
+		final Study dbStudy = getDbStudy(incomingStudy);
+
+		final PPodIdReconciliation<OtuSet> otuSetReconciliation =
+				PPodIdReconciliation.reconcile(
+						dbStudy.getOtuSets(),
+						incomingStudy.getOtuSets());
+
+		// Delete otu sets in persisted study that are not in the incoming
+		// study.
+		for (final OtuSet toBeRemoved : otuSetReconciliation.getRemoveds()) {
+			dbStudy.removeOtuSet(toBeRemoved);
+		}
+
+		// Save or update incoming otu sets
+		int incomingOtuSetPos = -1;
+		for (final PPodOtuSet incomingOtuSet : incomingStudy.getOtuSets()) {
+			incomingOtuSetPos++;
+			OtuSet dbOtuSet;
+			if (null == (dbOtuSet =
+					otuSetReconciliation.getMatch(incomingOtuSetPos))) {
+				dbOtuSet = new OtuSet();
+				dbOtuSet.setLabel(incomingOtuSet.getLabel()); // non-null, do it
+				// now
+				dbStudy.addOtuSet(incomingOtuSetPos, dbOtuSet);
+				otuSetDAO.makePersistent(dbOtuSet);
+			}
+
+			final SubtreeDigest.OtuSetDigests incomingDigests =
+					SubtreeDigest.of(incomingOtuSet);
+
+			if (SubtreeDigest.matches(
+					incomingDigests.getOtuSetDigest(),
+					dbOtuSet.getContentDigest())) {
+				logger.debug("{}: OTU set [{}] is unchanged",
+						METHOD,
+						dbOtuSet.getLabel());
+				continue;
+			}
+
+			mergeOtuSets.mergeOtuSets(dbOtuSet, incomingOtuSet);
+
+			handleProteinMatrices(
+					dbOtuSet,
+					incomingOtuSet,
+					incomingDigests.getProteinMatrixDigests());
+			handleDnaMatrices(
+					dbOtuSet,
+					incomingOtuSet,
+					incomingDigests.getDnaMatrixDigests());
+			handleStandardMatrices(
+					dbOtuSet,
+					incomingOtuSet,
+					incomingDigests.getStandardMatrixDigests(),
+					cellWriteMode);
+			// handleDnaSequenceSets(dbOtuSet, incomingOtuSet);
+			handleTreeSets(
+					dbOtuSet,
+					incomingOtuSet,
+					incomingDigests.getTreeSetDigests());
+
+			dbOtuSet.setContentDigest(incomingDigests.getOtuSetDigest());
+		}
+
+		return dbStudy;
+	}
+
+	public Study createOrUpdateStudy(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		return createOrUpdateStudy(
+				incomingStudy,
+				cellWriteMode,
+				new AtomicLong());
+	}
+
+	public Study createOrUpdateStudy(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode,
+			final AtomicLong rowsMerged) {
+		checkNotNull(incomingStudy);
+		checkNotNull(cellWriteMode);
+		checkNotNull(rowsMerged);
+		final StreamedStudyHandler handler =
+				new StreamedStudyHandler(cellWriteMode, rowsMerged);
+		studyReader.read(incomingStudy, handler);
+		return handler.getDbStudy();
+	}
+
+	public MergePlan planCreateOrUpdateStudy(
+			final PPodStudy incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		checkNotNull(incomingStudy);
+		checkNotNull(cellWriteMode);
+		return mergePlanner.plan(
+				incomingStudy,
+				findDbStudy(incomingStudy),
+				cellWriteMode);
+	}
+
+	/**
+	 * Get the persistent study that {@code incomingStudy} is an update of, or
+	 * a new persistent one if it's new, and give it the incoming label.
+	 */
+	private Study getDbStudy(final PPodStudy incomingStudy) {
+		Study dbStudy = findDbStudy(incomingStudy);
 		boolean makeStudyPersistent = false;
+		if (dbStudy == null) {
+			dbStudy = new Study();
+			makeStudyPersistent = true;
+		}
+
+		dbStudy.setLabel(incomingStudy.getLabel());
+
+		if (makeStudyPersistent) {
+			studyDAO.makePersistent(dbStudy);
+		}
+		return dbStudy;
+	}
+
+	/**
+	 * Get the persistent study that {@code incomingStudy} is an update of, or
+	 * {@code null} if it's new.
+	 * 
+	 * @throws IllegalArgumentException if {@code incomingStudy} has an
+	 *             unknown pPOD ID or the label of another study
+	 */
+	@CheckForNull
+	private Study findDbStudy(final PPodStudy incomingStudy) {
+		Study dbStudy = null;
 
 		final Study dbStudyByLabel = studyDAO.getStudyByLabel(incomingStudy
 				.getLabel());
 		boolean dupLabel = false;
 
 		if (incomingStudy.getPPodId() == null) {
-			if (dbStudyByLabel == null) {
-				dbStudy = new Study();
-				makeStudyPersistent = true;
-			} else {
+			if (dbStudyByLabel != null) {
 				dupLabel = true;
 			}
 		} else {
@@ -117,80 +274,21 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 					"already have a study labeled ["
 							+ incomingStudy.getLabel() + "]");
 		}
-
-		dbStudy.setLabel(incomingStudy.getLabel());
-
-		if (makeStudyPersistent) {
-			studyDAO.makePersistent(dbStudy);
-		}
-
-		// Delete otu sets in persisted study that are not in the incoming
-		// study.
-		final Set<OtuSet> toBeRemoveds = newHashSet();
-		for (final OtuSet dbOtuSet : dbStudy.getOtuSets()) {
-			if (null == find(
-					incomingStudy.getOtuSets(),
-					compose(
-							equalTo(
-							dbOtuSet.getPPodId()),
-							IHasPPodId.getPPodId),
-					null)) {
-				toBeRemoveds.add(dbOtuSet);
-			}
-		}
-		for (final OtuSet toBeRemoved : toBeRemoveds) {
-			dbStudy.removeOtuSet(toBeRemoved);
-		}
-
-		// Save or update incoming otu sets
-		int incomingOtuSetPos = -1;
-		for (final PPodOtuSet incomingOtuSet : incomingStudy.getOtuSets()) {
-			incomingOtuSetPos++;
-			OtuSet dbOtuSet;
-			if (null == (dbOtuSet =
-					find(dbStudy.getOtuSets(),
-							compose(
-									equalTo(
-									incomingOtuSet.getPPodId()),
-									IHasPPodId.getPPodId),
-							null))) {
-				dbOtuSet = new OtuSet();
-				dbOtuSet.setLabel(incomingOtuSet.getLabel()); // non-null, do it
-				// now
-				dbStudy.addOtuSet(incomingOtuSetPos, dbOtuSet);
-				otuSetDAO.makePersistent(dbOtuSet);
-			}
-
-			mergeOtuSets.mergeOtuSets(dbOtuSet, incomingOtuSet);
-
-			handleProteinMatrices(dbOtuSet, incomingOtuSet);
-			handleDnaMatrices(dbOtuSet, incomingOtuSet);
-			handleStandardMatrices(dbOtuSet, incomingOtuSet);
-			// handleDnaSequenceSets(dbOtuSet, incomingOtuSet);
-			handleTreeSets(dbOtuSet, incomingOtuSet);
-		}
-
 		return dbStudy;
 	}
 
 	private void handleDnaMatrices(
 			final OtuSet dbOtuSet,
-			final PPodOtuSet incomingOtuSet) {
+			final PPodOtuSet incomingOtuSet,
+			final List<String> incomingMatrixDigests) {
+
+		final PPodIdReconciliation<DnaMatrix> reconciliation =
+				PPodIdReconciliation.reconcile(
+						dbOtuSet.getDnaMatrices(),
+						incomingOtuSet.getDnaMatrices());
 
 		// Let's delete matrices missing from the incoming OTU set
-		final Set<DnaMatrix> toBeRemoveds = newHashSet();
-		for (final DnaMatrix dbMatrix : dbOtuSet.getDnaMatrices()) {
-			if (null == find(
-							incomingOtuSet.getDnaMatrices(),
-							compose(
-									equalTo(
-										dbMatrix.getPPodId()),
-										IHasPPodId.getPPodId),
-										null)) {
-				toBeRemoveds.add(dbMatrix);
-			}
-		}
-		for (final DnaMatrix toBeRemoved : toBeRemoveds) {
+		for (final DnaMatrix toBeRemoved : reconciliation.getRemoveds()) {
 			dbOtuSet.removeDnaMatrix(toBeRemoved);
 		}
 		int incomingMatrixPos = -1;
@@ -199,14 +297,7 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 			incomingMatrixPos++;
 			DnaMatrix dbMatrix;
 			if (null == (dbMatrix =
-					find(
-							dbOtuSet.getDnaMatrices(),
-							compose(
-									equalTo(
-											incomingMatrix.getPPodId()),
-									IHasPPodId.getPPodId),
-									null
-									))) {
+					reconciliation.getMatch(incomingMatrixPos))) {
 				dbMatrix = new DnaMatrix();
 
 				// Do this here because it's non-nullable
@@ -214,9 +305,16 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 				dbOtuSet.addDnaMatrix(incomingMatrixPos, dbMatrix);
 				dnaMatrixDAO.makePersistent(dbMatrix);
 			}
-			new CreateOrUpdateDnaMatrix()
-							.createOrUpdateMatrix(
-									dbMatrix, incomingMatrix);
+			final String incomingMatrixDigest =
+					incomingMatrixDigests.get(incomingMatrixPos);
+			if (SubtreeDigest.matches(
+					incomingMatrixDigest,
+					dbMatrix.getContentDigest())) {
+				continue;
+			}
+			createOrUpdateDnaMatrix.createOrUpdateMatrix(
+					dbMatrix, incomingMatrix);
+			dbMatrix.setContentDigest(incomingMatrixDigest);
 		}
 	}
 
@@ -267,22 +365,16 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 
 	private void handleProteinMatrices(
 			final OtuSet dbOTUSet,
-			final PPodOtuSet incomingOTUSet) {
+			final PPodOtuSet incomingOTUSet,
+			final List<String> incomingMatrixDigests) {
+
+		final PPodIdReconciliation<ProteinMatrix> reconciliation =
+				PPodIdReconciliation.reconcile(
+						dbOTUSet.getProteinMatrices(),
+						incomingOTUSet.getProteinMatrices());
 
 		// Let's delete matrices missing from the incoming OTU set
-		final Set<ProteinMatrix> toBeRemoveds = newHashSet();
-		for (final ProteinMatrix dbMatrix : dbOTUSet.getProteinMatrices()) {
-			if (null == find(
-							incomingOTUSet.getProteinMatrices(),
-							compose(
-									equalTo(
-										dbMatrix.getPPodId()),
-										IHasPPodId.getPPodId),
-										null)) {
-				toBeRemoveds.add(dbMatrix);
-			}
-		}
-		for (final ProteinMatrix toBeRemoved : toBeRemoveds) {
+		for (final ProteinMatrix toBeRemoved : reconciliation.getRemoveds()) {
 			dbOTUSet.removeProteinMatrix(toBeRemoved);
 		}
 		int incomingMatrixPos = -1;
@@ -291,14 +383,7 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 			incomingMatrixPos++;
 			ProteinMatrix dbMatrix;
 			if (null == (dbMatrix =
-					find(
-							dbOTUSet.getProteinMatrices(),
-							compose(
-									equalTo(
-											incomingMatrix.getPPodId()),
-									IHasPPodId.getPPodId),
-									null
-									))) {
+					reconciliation.getMatch(incomingMatrixPos))) {
 				dbMatrix = new ProteinMatrix();
 
 				// Do this here because it's non-nullable
@@ -306,31 +391,32 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 				dbOTUSet.addProteinMatrix(incomingMatrixPos, dbMatrix);
 				proteinMatrixDAO.makePersistent(dbMatrix);
 			}
-			new CreateOrUpdateProteinMatrix()
-							.createOrUpdateMatrix(
-									dbMatrix, incomingMatrix);
+			final String incomingMatrixDigest =
+					incomingMatrixDigests.get(incomingMatrixPos);
+			if (SubtreeDigest.matches(
+					incomingMatrixDigest,
+					dbMatrix.getContentDigest())) {
+				continue;
+			}
+			createOrUpdateProteinMatrix.createOrUpdateMatrix(
+					dbMatrix, incomingMatrix);
+			dbMatrix.setContentDigest(incomingMatrixDigest);
 		}
 	}
 
 	private void handleStandardMatrices(
 			final OtuSet dbOtuSet,
-			final PPodOtuSet incomingOTUSet) {
+			final PPodOtuSet incomingOTUSet,
+			final List<String> incomingMatrixDigests,
+			final CellWriteMode cellWriteMode) {
 
-		// Let's delete matrices missing from the incoming OTU set
-		final Set<StandardMatrix> toBeRemoveds = newHashSet();
-		for (final StandardMatrix dbMatrix : dbOtuSet.getStandardMatrices()) {
-			if (null == find(
-							incomingOTUSet.getStandardMatrices(),
-							compose(
-									equalTo(
-										dbMatrix.getPPodId()),
-										IHasPPodId.getPPodId),
-										null)) {
-				toBeRemoveds.add(dbMatrix);
-			}
-		}
+		final PPodIdReconciliation<StandardMatrix> reconciliation =
+				PPodIdReconciliation.reconcile(
+						dbOtuSet.getStandardMatrices(),
+						incomingOTUSet.getStandardMatrices());
 
-		for (final StandardMatrix toBeRemoved : toBeRemoveds) {
+		// Let's delete matrices missing from the incoming OTU set
+		for (final StandardMatrix toBeRemoved : reconciliation.getRemoveds()) {
 			dbOtuSet.removeStandardMatrix(toBeRemoved);
 		}
 		int incomingMatrixPos = -1;
@@ -339,13 +425,7 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 			incomingMatrixPos++;
 			StandardMatrix dbMatrix;
 			if (null == (dbMatrix =
-					find(
-							dbOtuSet.getStandardMatrices(),
-							compose(
-									equalTo(
-											incomingMatrix.getPPodId()),
-									IHasPPodId.getPPodId),
-									null))) {
+					reconciliation.getMatch(incomingMatrixPos))) {
 				dbMatrix = new StandardMatrix();
 				dbMatrix.setLabel(incomingMatrix.getLabel());
 				dbOtuSet.addStandardMatrix(
@@ -353,29 +433,34 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 						dbMatrix);
 				standardMatrixDAO.makePersistent(dbMatrix);
 			}
+			final String incomingMatrixDigest =
+					incomingMatrixDigests.get(incomingMatrixPos);
+			if (SubtreeDigest.matches(
+					incomingMatrixDigest,
+					dbMatrix.getContentDigest())) {
+				continue;
+			}
 			createOrUpdateStandardMatrix
-					.createOrUpdateMatrix(dbMatrix, incomingMatrix);
+					.createOrUpdateMatrix(
+							dbMatrix,
+							incomingMatrix,
+							cellWriteMode);
+			dbMatrix.setContentDigest(incomingMatrixDigest);
 		}
 	}
 
 	private void handleTreeSets(
 			final OtuSet dbOtuSet,
-			final PPodOtuSet incomingOtuSet) {
+			final PPodOtuSet incomingOtuSet,
+			final List<String> incomingTreeSetDigests) {
 
-		// Let's delete tree sets missing from incoming OTU set
-		final Set<TreeSet> toBeDeleteds = newHashSet();
-		for (final TreeSet dbTreeSet : dbOtuSet.getTreeSets()) {
-			if (null == find(incomingOtuSet.getTreeSets(),
-						compose(
-								equalTo(
-										dbTreeSet.getPPodId()),
-										IHasPPodId.getPPodId),
-										null)) {
-				toBeDeleteds.add(dbTreeSet);
-			}
-		}
+		final PPodIdReconciliation<TreeSet> reconciliation =
+				PPodIdReconciliation.reconcile(
+						dbOtuSet.getTreeSets(),
+						incomingOtuSet.getTreeSets());
 
-		for (final TreeSet toBeDeleted : toBeDeleteds) {
+		// Let's delete tree sets missing from incoming OTU set
+		for (final TreeSet toBeDeleted : reconciliation.getRemoveds()) {
 			dbOtuSet.removeTreeSet(toBeDeleted);
 		}
 
@@ -386,17 +471,250 @@ public final class CreateOrUpdateStudy implements ICreateOrUpdateStudy {
 			incomingTreeSetPos++;
 			TreeSet dbTreeSet;
 			if (null == (dbTreeSet =
-					find(dbOtuSet.getTreeSets(),
-							compose(equalTo(incomingTreeSet.getPPodId()),
-									IHasPPodId.getPPodId),
-									null))) {
+					reconciliation.getMatch(incomingTreeSetPos))) {
 				dbTreeSet = new TreeSet();
 				dbTreeSet.setLabel(incomingTreeSet.getLabel());
 				dbOtuSet.addTreeSet(incomingTreeSetPos, dbTreeSet);
 				treeSetDAO.makePersistent(dbTreeSet);
 			}
+			final String incomingTreeSetDigest =
+					incomingTreeSetDigests.get(incomingTreeSetPos);
+			if (SubtreeDigest.matches(
+					incomingTreeSetDigest,
+					dbTreeSet.getContentDigest())) {
+				continue;
+			}
+			mergeTreeSets.mergeTreeSets(dbTreeSet, incomingTreeSet,
+					incomingOtuSet);
+			dbTreeSet.setContentDigest(incomingTreeSetDigest);
+		}
+	}
+
+	/**
+	 * Does what {@link CreateOrUpdateStudy#createOrUpdateStudy(PPodStudy,
+	 * CellWriteMode)} does, but as the study is read. Since we don't know
+	 * which persistent OTU sets, matrices and tree sets are missing from the
+	 * incoming study until we've read all of it, they're removed at the end of
+	 * their study or OTU set instead of up front.
+	 * <p>
+	 * For the same reason, we can't tell that a matrix is unchanged until all
+	 * of its rows have been merged, so nothing is skipped here. The digests
+	 * are still recorded as the subtrees are read, so that later uploads of
+	 * the same content can be skipped.
+	 */
+	private final class StreamedStudyHandler implements IPPodStudyHandler {
+
+		private final CellWriteMode cellWriteMode;
+		private final AtomicLong rowsMerged;
+
+		private Study dbStudy;
+		private StreamedPPodIdReconciliation<OtuSet> otuSets;
+
+		private OtuSet dbOtuSet;
+		private PPodOtuSet incomingOtuSet;
+		private StreamedPPodIdReconciliation<StandardMatrix> standardMatrices;
+		private StreamedPPodIdReconciliation<DnaMatrix> dnaMatrices;
+		private StreamedPPodIdReconciliation<ProteinMatrix> proteinMatrices;
+		private StreamedPPodIdReconciliation<TreeSet> treeSets;
+
+		private List<String> standardMatrixDigests;
+		private List<String> dnaMatrixDigests;
+		private List<String> proteinMatrixDigests;
+		private List<String> treeSetDigests;
+
+		StreamedStudyHandler(
+				final CellWriteMode cellWriteMode,
+				final AtomicLong rowsMerged) {
+			this.cellWriteMode = cellWriteMode;
+			this.rowsMerged = rowsMerged;
+		}
+
+		/**
+		 * Count the rows of {@code incomingRows} as the merge takes them.
+		 */
+		private <R> Iterable<R> counted(final Iterable<R> incomingRows) {
+			return transform(incomingRows, new Function<R, R>() {
+				public R apply(final R incomingRow) {
+					rowsMerged.incrementAndGet();
+					return incomingRow;
+				}
+			});
+		}
+
+		Study getDbStudy() {
+			checkState(dbStudy != null, "no study has been read");
+			return dbStudy;
+		}
+
+		public void startStudy(final PPodStudy incomingStudy) {
+			dbStudy = CreateOrUpdateStudy.this.getDbStudy(incomingStudy);
+			otuSets =
+					new StreamedPPodIdReconciliation<OtuSet>(
+							dbStudy.getOtuSets());
+		}
+
+		public void startOtuSet(final PPodOtuSet incomingOtuSet) {
+			OtuSet dbOtuSet;
+			if (null == (dbOtuSet = otuSets.match(incomingOtuSet))) {
+				dbOtuSet = new OtuSet();
+				dbOtuSet.setLabel(incomingOtuSet.getLabel());
+				dbStudy.addOtuSet(otuSets.getNewPos(), dbOtuSet);
+				otuSetDAO.makePersistent(dbOtuSet);
+				otuSets.added(dbOtuSet);
+			}
+
+			mergeOtuSets.mergeOtuSets(dbOtuSet, incomingOtuSet);
+
+			this.dbOtuSet = dbOtuSet;
+			this.incomingOtuSet = incomingOtuSet;
+			standardMatrices =
+					new StreamedPPodIdReconciliation<StandardMatrix>(
+							dbOtuSet.getStandardMatrices());
+			dnaMatrices =
+					new StreamedPPodIdReconciliation<DnaMatrix>(
+							dbOtuSet.getDnaMatrices());
+			proteinMatrices =
+					new StreamedPPodIdReconciliation<ProteinMatrix>(
+							dbOtuSet.getProteinMatrices());
+			treeSets =
+					new StreamedPPodIdReconciliation<TreeSet>(
+							dbOtuSet.getTreeSets());
+			standardMatrixDigests = newArrayList();
+			dnaMatrixDigests = newArrayList();
+			proteinMatrixDigests = newArrayList();
+			treeSetDigests = newArrayList();
+		}
+
+		public void standardMatrix(
+				final PPodStandardMatrix incomingMatrix,
+				final Iterable<PPodStandardRow> incomingRows) {
+			StandardMatrix dbMatrix;
+			if (null == (dbMatrix = standardMatrices.match(incomingMatrix))) {
+				dbMatrix = new StandardMatrix();
+				dbMatrix.setLabel(incomingMatrix.getLabel());
+				dbOtuSet.addStandardMatrix(
+						standardMatrices.getNewPos(),
+						dbMatrix);
+				standardMatrixDAO.makePersistent(dbMatrix);
+				standardMatrices.added(dbMatrix);
+			}
+			final SubtreeDigest incomingMatrixDigest =
+					SubtreeDigest.startStandardMatrix(
+							incomingOtuSet,
+							incomingMatrix);
+			createOrUpdateStandardMatrix
+					.createOrUpdateMatrix(
+							dbMatrix,
+							incomingMatrix,
+							counted(incomingMatrixDigest.digestRows(
+									incomingRows,
+									SubtreeDigest.STANDARD_ROW_CONTENT)),
+							cellWriteMode);
+			dbMatrix.setContentDigest(incomingMatrixDigest.toHexString());
+			standardMatrixDigests.add(dbMatrix.getContentDigest());
+		}
+
+		public void dnaMatrix(
+				final PPodDnaMatrix incomingMatrix,
+				final Iterable<PPodDnaRow> incomingRows) {
+			DnaMatrix dbMatrix;
+			if (null == (dbMatrix = dnaMatrices.match(incomingMatrix))) {
+				dbMatrix = new DnaMatrix();
+
+				// Do this here because it's non-nullable
+				dbMatrix.setLabel(incomingMatrix.getLabel());
+				dbOtuSet.addDnaMatrix(dnaMatrices.getNewPos(), dbMatrix);
+				dnaMatrixDAO.makePersistent(dbMatrix);
+				dnaMatrices.added(dbMatrix);
+			}
+			final SubtreeDigest incomingMatrixDigest =
+					SubtreeDigest.startDnaMatrix(incomingOtuSet, incomingMatrix);
+			createOrUpdateDnaMatrix.createOrUpdateMatrix(
+					dbMatrix,
+					incomingMatrix,
+					counted(incomingMatrixDigest.digestRows(
+							incomingRows,
+							SubtreeDigest.DNA_ROW_CONTENT)));
+			dbMatrix.setContentDigest(incomingMatrixDigest.toHexString());
+			dnaMatrixDigests.add(dbMatrix.getContentDigest());
+		}
+
+		public void proteinMatrix(
+				final PPodProteinMatrix incomingMatrix,
+				final Iterable<PPodProteinRow> incomingRows) {
+			ProteinMatrix dbMatrix;
+			if (null == (dbMatrix = proteinMatrices.match(incomingMatrix))) {
+				dbMatrix = new ProteinMatrix();
+
+				// Do this here because it's non-nullable
+				dbMatrix.setLabel(incomingMatrix.getLabel());
+				dbOtuSet.addProteinMatrix(
+						proteinMatrices.getNewPos(),
+						dbMatrix);
+				proteinMatrixDAO.makePersistent(dbMatrix);
+				proteinMatrices.added(dbMatrix);
+			}
+			final SubtreeDigest incomingMatrixDigest =
+					SubtreeDigest.startProteinMatrix(
+							incomingOtuSet,
+							incomingMatrix);
+			createOrUpdateProteinMatrix.createOrUpdateMatrix(
+					dbMatrix,
+					incomingMatrix,
+					counted(incomingMatrixDigest.digestRows(
+							incomingRows,
+							SubtreeDigest.PROTEIN_ROW_CONTENT)));
+			dbMatrix.setContentDigest(incomingMatrixDigest.toHexString());
+			proteinMatrixDigests.add(dbMatrix.getContentDigest());
+		}
+
+		public void treeSet(final PPodTreeSet incomingTreeSet) {
+			TreeSet dbTreeSet;
+			if (null == (dbTreeSet = treeSets.match(incomingTreeSet))) {
+				dbTreeSet = new TreeSet();
+				dbTreeSet.setLabel(incomingTreeSet.getLabel());
+				dbOtuSet.addTreeSet(treeSets.getNewPos(), dbTreeSet);
+				treeSetDAO.makePersistent(dbTreeSet);
+				treeSets.added(dbTreeSet);
+			}
 			mergeTreeSets.mergeTreeSets(dbTreeSet, incomingTreeSet,
 					incomingOtuSet);
+			dbTreeSet.setContentDigest(
+					SubtreeDigest.of(incomingOtuSet, incomingTreeSet));
+			treeSetDigests.add(dbTreeSet.getContentDigest());
+		}
+
+		public void endOtuSet() {
+			// Let's delete what's missing from the incoming OTU set
+			for (final StandardMatrix toBeRemoved : standardMatrices
+					.getUnmatcheds()) {
+				dbOtuSet.removeStandardMatrix(toBeRemoved);
+			}
+			for (final DnaMatrix toBeRemoved : dnaMatrices.getUnmatcheds()) {
+				dbOtuSet.removeDnaMatrix(toBeRemoved);
+			}
+			for (final ProteinMatrix toBeRemoved : proteinMatrices
+					.getUnmatcheds()) {
+				dbOtuSet.removeProteinMatrix(toBeRemoved);
+			}
+			for (final TreeSet toBeRemoved : treeSets.getUnmatcheds()) {
+				dbOtuSet.removeTreeSet(toBeRemoved);
+			}
+			dbOtuSet.setContentDigest(
+					SubtreeDigest.of(
+							incomingOtuSet,
+							standardMatrixDigests,
+							dnaMatrixDigests,
+							proteinMatrixDigests,
+							treeSetDigests));
+		}
+
+		public void endStudy() {
+			// Delete otu sets in persisted study that are not in the incoming
+			// study.
+			for (final OtuSet toBeRemoved : otuSets.getUnmatcheds()) {
+				dbStudy.removeOtuSet(toBeRemoved);
+			}
 		}
 	}
 }
@@ -17,7 +17,9 @@ package edu.upenn.cis.ppod.createorupdate;
 
 import com.google.inject.ImplementedBy;
 
+import edu.upenn.cis.ppod.dto.CellWriteMode;
 import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
 import edu.upenn.cis.ppod.model.StandardMatrix;
 
 @ImplementedBy(CreateOrUpdateStandardMatrix.class)
@@ -27,4 +29,34 @@ public interface ICreateOrUpdateStandardMatrix {
 				StandardMatrix dbMatrix,
 				PPodStandardMatrix sourceMatrix);
 
+	/**
+	 * Create or update {@code dbMatrix} from {@code sourceMatrix}, writing the
+	 * cells as directed by {@code cellWriteMode}.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 * @param sourceMatrix the incoming matrix
+	 * @param cellWriteMode how to write the cells
+	 */
+	void createOrUpdateMatrix(
+				StandardMatrix dbMatrix,
+				PPodStandardMatrix sourceMatrix,
+				CellWriteMode cellWriteMode);
+
+	/**
+	 * Create or update {@code dbMatrix} from the label and characters of
+	 * {@code sourceMatrix} and from {@code sourceRows}, which are used instead
+	 * of the rows of {@code sourceMatrix}. {@code sourceRows} is iterated over
+	 * once, so it can read the rows as they're needed.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 * @param sourceMatrix the incoming matrix
+	 * @param sourceRows the incoming rows
+	 * @param cellWriteMode how to write the cells
+	 */
+	void createOrUpdateMatrix(
+				StandardMatrix dbMatrix,
+				PPodStandardMatrix sourceMatrix,
+				Iterable<PPodStandardRow> sourceRows,
+				CellWriteMode cellWriteMode);
+
 }
\ No newline at end of file
@@ -15,14 +15,78 @@
  */
 package edu.upenn.cis.ppod.createorupdate;
 
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.inject.ImplementedBy;
 
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
 import edu.upenn.cis.ppod.dto.PPodStudy;
 import edu.upenn.cis.ppod.model.Study;
 
 @ImplementedBy(CreateOrUpdateStudy.class)
 public interface ICreateOrUpdateStudy {
 
-	Study createOrUpdateStudy(final PPodStudy incomingStudy);
+	/**
+	 * Create a new study or update an existing one from the incoming study.
+	 * 
+	 * @param incomingStudy the study that was uploaded
+	 * @param cellWriteMode how to write the cells of the standard matrices
+	 * 
+	 * @return the created or updated study
+	 */
+	Study createOrUpdateStudy(
+			PPodStudy incomingStudy,
+			CellWriteMode cellWriteMode);
+
+	/**
+	 * Create a new study or update an existing one from an XML-serialized
+	 * incoming study, merging each OTU set, matrix and row as it's read
+	 * instead of reading the whole study into memory first.
+	 * 
+	 * @param incomingStudy the study that was uploaded, which is not closed
+	 * @param cellWriteMode how to write the cells of the standard matrices
+	 * 
+	 * @return the created or updated study
+	 */
+	Study createOrUpdateStudy(
+			InputStream incomingStudy,
+			CellWriteMode cellWriteMode);
+
+	/**
+	 * Like {@link #createOrUpdateStudy(InputStream, CellWriteMode)}, but
+	 * counting in {@code rowsMerged} the matrix rows as they're merged, so
+	 * that another thread can follow the progress of the upload.
+	 * 
+	 * @param incomingStudy the study that was uploaded, which is not closed
+	 * @param cellWriteMode how to write the cells of the standard matrices
+	 * @param rowsMerged incremented for every row that is merged
+	 * 
+	 * @return the created or updated study
+	 */
+	Study createOrUpdateStudy(
+			InputStream incomingStudy,
+			CellWriteMode cellWriteMode,
+			AtomicLong rowsMerged);
+
+	/**
+	 * Work out what {@link #createOrUpdateStudy(PPodStudy, CellWriteMode)}
+	 * would do with the incoming study without doing it. Nothing is written,
+	 * and rows, cells and sequences are compared by their stored digests
+	 * without being loaded.
+	 * 
+	 * @param incomingStudy the study that was uploaded
+	 * @param cellWriteMode how the cells of the standard matrices would be
+	 *            written
+	 * 
+	 * @return what the upload would do
+	 * 
+	 * @throws IllegalArgumentException if the upload would be rejected
+	 *             because of its study's label or pPOD ID
+	 */
+	MergePlan planCreateOrUpdateStudy(
+			PPodStudy incomingStudy,
+			CellWriteMode cellWriteMode);
 
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import com.google.inject.ImplementedBy;
+
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.PPodStandardCellBlock;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdits;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+
+/**
+ * Overwrite some of the cells of a persistent standard matrix, loading only
+ * the rows that have cells being overwritten.
+ * 
+ * @author Sam Donnelly
+ */
+@ImplementedBy(UpdateStandardCells.class)
+public interface IUpdateStandardCells {
+
+	/**
+	 * Overwrite the cells in {@code block}.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * @param block the new cells
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix, if any of
+	 *             the cells are outside of the matrix, or if any of the states
+	 *             aren't states of their column's character
+	 */
+	StandardMatrix updateCells(
+			String matrixPPodId,
+			PPodStandardCellBlock block);
+
+	/**
+	 * Overwrite the cells in {@code cellEdits}. If a cell is edited more than
+	 * once, the last edit wins.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * @param cellEdits the new cells
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix, if any of
+	 *             the cells are outside of the matrix, or if any of the states
+	 *             aren't states of their column's character
+	 */
+	StandardMatrix updateCells(
+			String matrixPPodId,
+			PPodStandardCellEdits cellEdits);
+
+	/**
+	 * Migrate the rows of a matrix that store their cells one
+	 * {@code StandardCell} per cell to packed cells, as if they had been
+	 * written with {@link CellWriteMode#PACKED}. The cells themselves don't
+	 * change.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix
+	 */
+	StandardMatrix packCells(String matrixPPodId);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import com.google.inject.ImplementedBy;
+
+import edu.upenn.cis.ppod.dto.PPodStandardColumns;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+
+/**
+ * Insert, remove, and move the columns of a persistent standard matrix by
+ * shifting the positions of its stored cells instead of rewriting them, so
+ * that an edit to one column costs on the order of the number of rows.
+ * <p>
+ * The rows of the matrix lose their cells fingerprints, so the next full
+ * upload of the matrix will rewrite them.
+ * 
+ * @author Sam Donnelly
+ */
+@ImplementedBy(UpdateStandardColumns.class)
+public interface IUpdateStandardColumns {
+
+	/**
+	 * Insert {@code columns} in front of column {@code position}.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * @param position where the new columns go: the number of columns to
+	 *            append them
+	 * @param columns the new columns
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix, if
+	 *             {@code position} is out of range, if {@code columns} doesn't
+	 *             have a cell for every new column of every row, or if any of
+	 *             the matrix's rows have never had cells
+	 */
+	StandardMatrix insertColumns(
+			String matrixPPodId,
+			int position,
+			PPodStandardColumns columns);
+
+	/**
+	 * Remove columns {@code position} through {@code position + count - 1}.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * @param position the first column to remove
+	 * @param count the number of columns to remove
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix or if the
+	 *             columns are out of range
+	 */
+	StandardMatrix removeColumns(
+			String matrixPPodId,
+			int position,
+			int count);
+
+	/**
+	 * Move column {@code from} so that it ends up at {@code to}.
+	 * 
+	 * @param matrixPPodId the pPOD ID of the matrix
+	 * @param from the column to move
+	 * @param to where it goes
+	 * 
+	 * @return the matrix
+	 * 
+	 * @throws IllegalArgumentException if there is no such matrix or if
+	 *             {@code from} or {@code to} is out of range
+	 */
+	StandardMatrix moveColumn(
+			String matrixPPodId,
+			int from,
+			int to);
+}
@@ -16,18 +16,18 @@
 package edu.upenn.cis.ppod.createorupdate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
 
 import java.util.List;
 
-import edu.upenn.cis.ppod.dto.IHasPPodId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import edu.upenn.cis.ppod.dto.PPodOtu;
 import edu.upenn.cis.ppod.dto.PPodOtuSet;
 import edu.upenn.cis.ppod.model.Otu;
 import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.OtuSetDelta;
 
 /**
  * Merge {@code sourceOtuSet} onto {@code targetOtuSet}.
@@ -36,6 +36,9 @@ import edu.upenn.cis.ppod.model.OtuSet;
  */
 public final class MergeOtuSets {
 
+	private static final Logger logger =
+			LoggerFactory.getLogger(MergeOtuSets.class);
+
 	public void mergeOtuSets(
 			final OtuSet targetOtuSet,
 			final PPodOtuSet sourceOtuSet) {
@@ -44,24 +47,30 @@ public final class MergeOtuSets {
 		targetOtuSet.setLabel(sourceOtuSet.getLabel());
 		// targetOtuSet.setDescription(sourceOtuSet.getDescription());
 
+		final PPodIdReconciliation<Otu> reconciliation =
+				PPodIdReconciliation.reconcile(
+						targetOtuSet.getOtus(),
+						sourceOtuSet.getOtus());
+
 		final List<Otu> newTargetOTUs =
 				newArrayListWithCapacity(sourceOtuSet.getOtus().size());
 
+		int sourceOTUPos = -1;
 		for (final PPodOtu sourceOTU : sourceOtuSet.getOtus()) {
+			sourceOTUPos++;
 			Otu targetOTU;
-			if (null == (targetOTU =
-					find(
-							targetOtuSet.getOtus(),
-							compose(
-									equalTo(
-										sourceOTU.getPPodId()),
-										IHasPPodId.getPPodId),
-										null))) {
+			if (null == (targetOTU = reconciliation.getMatch(sourceOTUPos))) {
 				targetOTU = new Otu();
 			}
 			newTargetOTUs.add(targetOTU);
 			targetOTU.setLabel(sourceOTU.getLabel());
 		}
-		targetOtuSet.clearAndAddOtus(newTargetOTUs);
+		final OtuSetDelta delta = targetOtuSet.clearAndAddOtus(newTargetOTUs);
+		logger.debug(
+				"mergeOtuSets(...): {} otus added, {} removed, {} moved",
+				new Object[] {
+						delta.getAddedOtus().size(),
+						delta.getRemovedOtus().size(),
+						delta.getMovedOtus().size() });
 	}
 }
@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.inject.Inject;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IMolecularRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTree;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.ProteinMatrix;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.model.Tree;
+import edu.upenn.cis.ppod.model.TreeSet;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+/**
+ * Works out the {@link MergePlan} of an upload by going through the same
+ * matching as {@link CreateOrUpdateStudy}, but without changing anything.
+ * <p>
+ * Only OTU sets, OTUs, matrices, characters, tree sets and trees are loaded.
+ * Rows are compared by their stored fingerprints and sequence hashes, so no
+ * row, cell or sequence is loaded.
+ * 
+ * @author Sam Donnelly
+ */
+final class MergePlanner {
+
+	private final IStandardRowDAO standardRowDAO;
+	private final IDnaRowDAO dnaRowDAO;
+	private final IProteinRowDAO proteinRowDAO;
+
+	@Inject
+	MergePlanner(
+			final IStandardRowDAO standardRowDAO,
+			final IDnaRowDAO dnaRowDAO,
+			final IProteinRowDAO proteinRowDAO) {
+		this.standardRowDAO = checkNotNull(standardRowDAO);
+		this.dnaRowDAO = checkNotNull(dnaRowDAO);
+		this.proteinRowDAO = checkNotNull(proteinRowDAO);
+	}
+
+	/**
+	 * Work out what merging {@code incomingStudy} into {@code dbStudy} would
+	 * do.
+	 * 
+	 * @param incomingStudy the study that was uploaded
+	 * @param dbStudy the persistent study it's an update of, or {@code null}
+	 *            if it's a new study
+	 * @param cellWriteMode how the cells of the standard matrices would be
+	 *            written
+	 * 
+	 * @return the plan
+	 */
+	MergePlan plan(
+			final PPodStudy incomingStudy,
+			@CheckForNull final Study dbStudy,
+			final CellWriteMode cellWriteMode) {
+		checkNotNull(incomingStudy);
+		checkNotNull(cellWriteMode);
+		final Plan plan = new Plan(cellWriteMode);
+		if (dbStudy == null) {
+			plan.create(1);
+			for (final PPodOtuSet incomingOtuSet : incomingStudy.getOtuSets()) {
+				plan.newOtuSet(incomingOtuSet);
+			}
+		} else {
+			if (!incomingStudy.getLabel().equals(dbStudy.getLabel())) {
+				plan.update(1);
+			}
+			final PPodIdReconciliation<OtuSet> reconciliation =
+					PPodIdReconciliation.reconcile(
+							dbStudy.getOtuSets(),
+							incomingStudy.getOtuSets());
+			for (final OtuSet removed : reconciliation.getRemoveds()) {
+				plan.removedOtuSet(removed);
+			}
+			int incomingOtuSetPos = -1;
+			for (final PPodOtuSet incomingOtuSet : incomingStudy.getOtuSets()) {
+				incomingOtuSetPos++;
+				final OtuSet dbOtuSet =
+						reconciliation.getMatch(incomingOtuSetPos);
+				if (dbOtuSet == null) {
+					plan.newOtuSet(incomingOtuSet);
+				} else {
+					plan.otuSet(dbOtuSet, incomingOtuSet);
+				}
+			}
+		}
+		return plan.toMergePlan();
+	}
+
+	/** The plan so far, and how to add to it. */
+	private final class Plan {
+
+		private final CellWriteMode cellWriteMode;
+
+		private final MergePlan mergePlan = new MergePlan();
+
+		Plan(final CellWriteMode cellWriteMode) {
+			this.cellWriteMode = cellWriteMode;
+		}
+
+		MergePlan toMergePlan() {
+			return mergePlan;
+		}
+
+		void create(final long count) {
+			mergePlan.setEntitiesToCreate(mergePlan.getEntitiesToCreate()
+					+ count);
+			statements(count);
+		}
+
+		void update(final long count) {
+			mergePlan.setEntitiesToUpdate(mergePlan.getEntitiesToUpdate()
+					+ count);
+			statements(count);
+		}
+
+		void delete(final long count) {
+			mergePlan.setEntitiesToDelete(mergePlan.getEntitiesToDelete()
+					+ count);
+			statements(count);
+		}
+
+		void statements(final long count) {
+			mergePlan.setEstimatedStatements(mergePlan
+					.getEstimatedStatements() + count);
+		}
+
+		void unchanged(final long rowCount) {
+			mergePlan.setSubtreesUnchanged(mergePlan.getSubtreesUnchanged()
+					+ 1);
+			mergePlan.setRowsUntouched(mergePlan.getRowsUntouched()
+					+ rowCount);
+		}
+
+		void rowUntouched() {
+			mergePlan.setRowsUntouched(mergePlan.getRowsUntouched() + 1);
+		}
+
+		/**
+		 * A row is written: the row itself and, unless it's packed, each of
+		 * its cells.
+		 */
+		void rowChanged(final int cellCount) {
+			mergePlan.setRowsChanged(mergePlan.getRowsChanged() + 1);
+			mergePlan.setCellsChanged(mergePlan.getCellsChanged() + cellCount);
+			statements(cellWriteMode == CellWriteMode.PACKED
+					? 1
+					: 1 + cellCount);
+		}
+
+		void newOtuSet(final PPodOtuSet incomingOtuSet) {
+			create(1 + incomingOtuSet.getOtus().size());
+			for (final PPodStandardMatrix incomingMatrix : incomingOtuSet
+					.getStandardMatrices()) {
+				newStandardMatrix(incomingMatrix);
+			}
+			for (final PPodDnaMatrix incomingMatrix : incomingOtuSet
+					.getDnaMatrices()) {
+				newMolecularMatrix(incomingMatrix.getRows().size());
+			}
+			for (final PPodProteinMatrix incomingMatrix : incomingOtuSet
+					.getProteinMatrices()) {
+				newMolecularMatrix(incomingMatrix.getRows().size());
+			}
+			for (final PPodTreeSet incomingTreeSet : incomingOtuSet
+					.getTreeSets()) {
+				create(1 + incomingTreeSet.getTrees().size());
+			}
+		}
+
+		void newStandardMatrix(final PPodStandardMatrix incomingMatrix) {
+			create(1);
+			for (final PPodStandardCharacter incomingCharacter : incomingMatrix
+					.getCharacters()) {
+				newCharacter(incomingCharacter);
+			}
+			for (final PPodStandardRow incomingRow : incomingMatrix.getRows()) {
+				rowChanged(incomingRow.getCells().size());
+			}
+		}
+
+		void newCharacter(final PPodStandardCharacter incomingCharacter) {
+			create(1);
+			statements(incomingCharacter.getStates().size());
+		}
+
+		void newMolecularMatrix(final int rowCount) {
+			create(1);
+			for (int i = 0; i < rowCount; i++) {
+				rowChanged(0);
+			}
+		}
+
+		void removedOtuSet(final OtuSet dbOtuSet) {
+			delete(1);
+			final int otuCount = dbOtuSet.getOtus().size();
+			delete(otuCount);
+			for (final StandardMatrix dbMatrix : dbOtuSet
+					.getStandardMatrices()) {
+				removedStandardMatrix(dbMatrix, otuCount);
+			}
+			delete((long) (dbOtuSet.getDnaMatrices().size()
+					+ dbOtuSet.getProteinMatrices().size())
+					* (1 + otuCount));
+			for (final TreeSet dbTreeSet : dbOtuSet.getTreeSets()) {
+				delete(1 + dbTreeSet.getTrees().size());
+			}
+		}
+
+		void removedStandardMatrix(
+				final StandardMatrix dbMatrix,
+				final int otuCount) {
+			final int characterCount = dbMatrix.getCharacters().size();
+			delete(1 + characterCount + otuCount);
+
+			// The cells of its rows
+			statements((long) characterCount * otuCount);
+		}
+
+		void otuSet(final OtuSet dbOtuSet, final PPodOtuSet incomingOtuSet) {
+			final SubtreeDigest.OtuSetDigests incomingDigests =
+					SubtreeDigest.of(incomingOtuSet);
+			if (SubtreeDigest.matches(
+					incomingDigests.getOtuSetDigest(),
+					dbOtuSet.getContentDigest())) {
+				long rowCount = 0;
+				for (final PPodStandardMatrix incomingMatrix : incomingOtuSet
+						.getStandardMatrices()) {
+					rowCount += incomingMatrix.getRows().size();
+				}
+				for (final PPodDnaMatrix incomingMatrix : incomingOtuSet
+						.getDnaMatrices()) {
+					rowCount += incomingMatrix.getRows().size();
+				}
+				for (final PPodProteinMatrix incomingMatrix : incomingOtuSet
+						.getProteinMatrices()) {
+					rowCount += incomingMatrix.getRows().size();
+				}
+				unchanged(rowCount);
+				return;
+			}
+			update(1);
+
+			final PPodIdReconciliation<Otu> otuReconciliation =
+					PPodIdReconciliation.reconcile(
+							dbOtuSet.getOtus(),
+							incomingOtuSet.getOtus());
+			final int dbMatrixCount =
+					dbOtuSet.getStandardMatrices().size()
+							+ dbOtuSet.getDnaMatrices().size()
+							+ dbOtuSet.getProteinMatrices().size();
+			// Each removed OTU takes its row in every matrix with it
+			delete((long) otuReconciliation.getRemoveds().size()
+					* (1 + dbMatrixCount));
+			int incomingOtuPos = -1;
+			for (final PPodOtu incomingOtu : incomingOtuSet.getOtus()) {
+				incomingOtuPos++;
+				final Otu dbOtu = otuReconciliation.getMatch(incomingOtuPos);
+				if (dbOtu == null) {
+					create(1);
+				} else if (!incomingOtu.getLabel().equals(dbOtu.getLabel())) {
+					update(1);
+				}
+			}
+
+			final int otuCount = dbOtuSet.getOtus().size();
+
+			final PPodIdReconciliation<StandardMatrix> standardMatrices =
+					PPodIdReconciliation.reconcile(
+							dbOtuSet.getStandardMatrices(),
+							incomingOtuSet.getStandardMatrices());
+			for (final StandardMatrix removed : standardMatrices
+					.getRemoveds()) {
+				removedStandardMatrix(removed, otuCount);
+			}
+			int incomingMatrixPos = -1;
+			for (final PPodStandardMatrix incomingMatrix : incomingOtuSet
+					.getStandardMatrices()) {
+				incomingMatrixPos++;
+				final StandardMatrix dbMatrix =
+						standardMatrices.getMatch(incomingMatrixPos);
+				if (dbMatrix == null) {
+					newStandardMatrix(incomingMatrix);
+				} else if (SubtreeDigest.matches(
+						incomingDigests.getStandardMatrixDigests().get(
+								incomingMatrixPos),
+						dbMatrix.getContentDigest())) {
+					unchanged(incomingMatrix.getRows().size());
+				} else {
+					standardMatrix(dbMatrix, incomingMatrix, otuReconciliation);
+				}
+			}
+
+			final PPodIdReconciliation<DnaMatrix> dnaMatrices =
+					PPodIdReconciliation.reconcile(
+							dbOtuSet.getDnaMatrices(),
+							incomingOtuSet.getDnaMatrices());
+			delete((long) dnaMatrices.getRemoveds().size() * (1 + otuCount));
+			incomingMatrixPos = -1;
+			for (final PPodDnaMatrix incomingMatrix : incomingOtuSet
+					.getDnaMatrices()) {
+				incomingMatrixPos++;
+				final DnaMatrix dbMatrix =
+						dnaMatrices.getMatch(incomingMatrixPos);
+				if (dbMatrix == null) {
+					newMolecularMatrix(incomingMatrix.getRows().size());
+				} else if (SubtreeDigest.matches(
+						incomingDigests.getDnaMatrixDigests().get(
+								incomingMatrixPos),
+						dbMatrix.getContentDigest())) {
+					unchanged(incomingMatrix.getRows().size());
+				} else {
+					update(1);
+					final List<String> incomingSequences =
+							newArrayListWithCapacity(incomingMatrix.getRows()
+									.size());
+					for (final PPodDnaRow incomingRow : incomingMatrix
+							.getRows()) {
+						incomingSequences.add(incomingRow.getSequence());
+					}
+					molecularRows(
+							dnaRowDAO,
+							dbMatrix,
+							incomingSequences,
+							otuReconciliation);
+				}
+			}
+
+			final PPodIdReconciliation<ProteinMatrix> proteinMatrices =
+					PPodIdReconciliation.reconcile(
+							dbOtuSet.getProteinMatrices(),
+							incomingOtuSet.getProteinMatrices());
+			delete((long) proteinMatrices.getRemoveds().size()
+					* (1 + otuCount));
+			incomingMatrixPos = -1;
+			for (final PPodProteinMatrix incomingMatrix : incomingOtuSet
+					.getProteinMatrices()) {
+				incomingMatrixPos++;
+				final ProteinMatrix dbMatrix =
+						proteinMatrices.getMatch(incomingMatrixPos);
+				if (dbMatrix == null) {
+					newMolecularMatrix(incomingMatrix.getRows().size());
+				} else if (SubtreeDigest.matches(
+						incomingDigests.getProteinMatrixDigests().get(
+								incomingMatrixPos),
+						dbMatrix.getContentDigest())) {
+					unchanged(incomingMatrix.getRows().size());
+				} else {
+					update(1);
+					final List<String> incomingSequences =
+							newArrayListWithCapacity(incomingMatrix.getRows()
+									.size());
+					for (final PPodProteinRow incomingRow : incomingMatrix
+							.getRows()) {
+						incomingSequences.add(incomingRow.getSequence());
+					}
+					molecularRows(
+							proteinRowDAO,
+							dbMatrix,
+							incomingSequences,
+							otuReconciliation);
+				}
+			}
+
+			final PPodIdReconciliation<TreeSet> treeSets =
+					PPodIdReconciliation.reconcile(
+							dbOtuSet.getTreeSets(),
+							incomingOtuSet.getTreeSets());
+			for (final TreeSet removed : treeSets.getRemoveds()) {
+				delete(1 + removed.getTrees().size());
+			}
+			int incomingTreeSetPos = -1;
+			for (final PPodTreeSet incomingTreeSet : incomingOtuSet
+					.getTreeSets()) {
+				incomingTreeSetPos++;
+				final TreeSet dbTreeSet =
+						treeSets.getMatch(incomingTreeSetPos);
+				if (dbTreeSet == null) {
+					create(1 + incomingTreeSet.getTrees().size());
+				} else if (SubtreeDigest.matches(
+						incomingDigests.getTreeSetDigests().get(
+								incomingTreeSetPos),
+						dbTreeSet.getContentDigest())) {
+					unchanged(0);
+				} else {
+					treeSet(dbTreeSet, incomingTreeSet, incomingOtuSet);
+				}
+			}
+		}
+
+		void standardMatrix(
+				final StandardMatrix dbMatrix,
+				final PPodStandardMatrix incomingMatrix,
+				final PPodIdReconciliation<Otu> otuReconciliation) {
+			update(1);
+
+			final List<StandardCharacter> dbCharacters =
+					dbMatrix.getCharacters();
+			final PPodIdReconciliation<StandardCharacter> characters =
+					PPodIdReconciliation.reconcile(
+							dbCharacters,
+							incomingMatrix.getCharacters());
+			delete(characters.getRemoveds().size());
+
+			boolean columnsInPlace = true;
+			int incomingCharacterPos = -1;
+			for (final PPodStandardCharacter incomingCharacter : incomingMatrix
+					.getCharacters()) {
+				incomingCharacterPos++;
+				final StandardCharacter dbCharacter =
+						characters.getMatch(incomingCharacterPos);
+				if (dbCharacter == null) {
+					newCharacter(incomingCharacter);
+					columnsInPlace = false;
+				} else {
+					if (!incomingCharacter.getLabel().equals(
+							dbCharacter.getLabel())) {
+						update(1);
+					}
+					if (incomingCharacterPos >= dbCharacters.size()
+							|| dbCharacters.get(incomingCharacterPos) != dbCharacter) {
+						columnsInPlace = false;
+					}
+				}
+			}
+
+			// See CreateOrUpdateMatrix and BulkStandardCellWriter
+			final boolean skipUnchangedRows =
+					columnsInPlace
+							&& (cellWriteMode == CellWriteMode.PER_CELL
+							|| characters.getRemoveds().isEmpty());
+
+			final Map<Long, String> storedFingerprintsByOtuId;
+			if (skipUnchangedRows) {
+				final List<Object[]> storedRows =
+						standardRowDAO
+								.getOtuIdsCellsFingerprintsByMatrix(dbMatrix);
+				storedFingerprintsByOtuId =
+						newHashMapWithExpectedSize(storedRows.size());
+				for (final Object[] storedRow : storedRows) {
+					storedFingerprintsByOtuId.put(
+							(Long) storedRow[0],
+							(String) storedRow[1]);
+				}
+			} else {
+				storedFingerprintsByOtuId = null;
+			}
+
+			int incomingRowPos = -1;
+			for (final PPodStandardRow incomingRow : incomingMatrix.getRows()) {
+				incomingRowPos++;
+				final Otu dbOtu = otuReconciliation.getMatch(incomingRowPos);
+				if (storedFingerprintsByOtuId != null
+						&& dbOtu != null
+						&& CellsFingerprint.of(incomingRow).equals(
+								storedFingerprintsByOtuId.get(dbOtu.getId()))) {
+					rowUntouched();
+				} else {
+					rowChanged(incomingRow.getCells().size());
+				}
+			}
+		}
+
+		<M> void molecularRows(
+				final IMolecularRowDAO<?, M> rowDAO,
+				final M dbMatrix,
+				final List<String> incomingSequences,
+				final PPodIdReconciliation<Otu> otuReconciliation) {
+			final List<Object[]> storedRows =
+					rowDAO.getOtuIdsIdsSequenceHashesByMatrix(dbMatrix);
+			final Map<Long, String> storedHashesByOtuId =
+					newHashMapWithExpectedSize(storedRows.size());
+			for (final Object[] storedRow : storedRows) {
+				storedHashesByOtuId.put(
+						(Long) storedRow[0],
+						(String) storedRow[2]);
+			}
+			int incomingRowPos = -1;
+			for (final String incomingSequence : incomingSequences) {
+				incomingRowPos++;
+				final Otu dbOtu = otuReconciliation.getMatch(incomingRowPos);
+				if (dbOtu != null
+						&& ContentDigest.hexDigestOf(incomingSequence).equals(
+								storedHashesByOtuId.get(dbOtu.getId()))) {
+					rowUntouched();
+				} else {
+					rowChanged(0);
+				}
+			}
+		}
+
+		void treeSet(
+				final TreeSet dbTreeSet,
+				final PPodTreeSet incomingTreeSet,
+				final PPodOtuSet incomingOtuSet) {
+			update(1);
+			final Map<String, String> docIdsToPPodIds =
+					newHashMapWithExpectedSize(incomingOtuSet.getOtus()
+							.size());
+			for (final PPodOtu incomingOtu : incomingOtuSet.getOtus()) {
+				docIdsToPPodIds.put(
+						incomingOtu.getDocId(),
+						incomingOtu.getPPodId());
+			}
+			final PPodIdReconciliation<Tree> trees =
+					PPodIdReconciliation.reconcile(
+							dbTreeSet.getTrees(),
+							incomingTreeSet.getTrees());
+			delete(trees.getRemoveds().size());
+			int incomingTreePos = -1;
+			for (final PPodTree incomingTree : incomingTreeSet.getTrees()) {
+				incomingTreePos++;
+				final Tree dbTree = trees.getMatch(incomingTreePos);
+				if (dbTree == null) {
+					create(1);
+				} else if (!incomingTree.getLabel().equals(dbTree.getLabel())
+						|| !NewickOtuRewriter.rewrite(
+								incomingTree.getNewick(),
+								docIdsToPPodIds).equals(dbTree.getNewick())) {
+					update(1);
+				}
+			}
+		}
+	}
+}
@@ -16,20 +16,22 @@
 package edu.upenn.cis.ppod.createorupdate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Predicates.compose;
-import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import edu.upenn.cis.ppod.dto.IHasPPodId;
-import edu.upenn.cis.ppod.dto.PPodOtu;
 import edu.upenn.cis.ppod.dto.PPodOtuSet;
 import edu.upenn.cis.ppod.dto.PPodTree;
 import edu.upenn.cis.ppod.dto.PPodTreeSet;
 import edu.upenn.cis.ppod.model.Otu;
 import edu.upenn.cis.ppod.model.Tree;
+import edu.upenn.cis.ppod.model.TreeNode;
 import edu.upenn.cis.ppod.model.TreeSet;
 
 /**
@@ -39,6 +41,9 @@ import edu.upenn.cis.ppod.model.TreeSet;
  */
 public final class MergeTreeSets {
 
+	private static final Logger logger =
+			LoggerFactory.getLogger(MergeTreeSets.class);
+
 	public void mergeTreeSets(
 			final TreeSet targetTreeSet,
 			final PPodTreeSet sourceTreeSet,
@@ -48,40 +53,84 @@ public final class MergeTreeSets {
 
 		targetTreeSet.setLabel(sourceTreeSet.getLabel());
 
+		final Map<String, String> docIdsToPPodIds =
+				getDocIdsToPPodIds(targetTreeSet, sourceOtuSet);
+
+		final Map<String, Otu> otusByPPodId = getOtusByPPodId(targetTreeSet);
+
 		final List<Tree> newTargetTrees = newArrayList();
 
+		final PPodIdReconciliation<Tree> reconciliation =
+				PPodIdReconciliation.reconcile(
+						targetTreeSet.getTrees(),
+						sourceTreeSet.getTrees());
+
+		int sourceTreePos = -1;
 		for (final PPodTree sourceTree : sourceTreeSet.getTrees()) {
-			Tree targetTree;
-			if (null == (targetTree =
-					find(targetTreeSet.getTrees(), compose(
-									equalTo(sourceTree.getPPodId()),
-									IHasPPodId.getPPodId),
-									null))) {
+			sourceTreePos++;
+			Tree targetTree = reconciliation.getMatch(sourceTreePos);
+			if (targetTree == null) {
 				targetTree = new Tree();
 			}
 			newTargetTrees.add(targetTree);
 
-			String targetNewick = sourceTree.getNewick();
-
-			if (sourceOtuSet.getOtus().size() != targetTreeSet
-					.getParent()
-					.getOtus()
-					.size()) {
-				throw new IllegalArgumentException(
-						"sourceTreeSet.getOTUSet().getOTUsSize() should be the same as targetTreeSet.getOTUSet().getOTUsSize()");
-			}
-
-			for (int i = 0, sourceOtuSetSize = sourceOtuSet.getOtus().size(); i < sourceOtuSetSize; i++) {
-				final PPodOtu sourceOTU = sourceOtuSet.getOtus().get(i);
-				final Otu targetOTU = targetTreeSet.getParent().getOtus()
-						.get(i);
-				targetNewick = targetNewick.replace(
-						sourceOTU.getDocId(),
-						targetOTU.getPPodId());
+			final String targetNewick =
+					NewickOtuRewriter.rewrite(
+							sourceTree.getNewick(),
+							docIdsToPPodIds);
+			// Without going through the nodes, which we'd have to load
+			if (!targetNewick.equals(targetTree.getNewick())
+					|| targetTree.getNodeCount() == null) {
+				targetTree.setNewick(targetNewick);
+				targetTree.clearAndAddNodes(
+						parseNodes(targetNewick, otusByPPodId));
 			}
-			targetTree.setNewick(targetNewick);
 			targetTree.setLabel(sourceTree.getLabel());
 		}
 		targetTreeSet.clearAndAddTrees(newTargetTrees);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * We don't reject a tree that we can't parse, since we never have: it's
+	 * stored without nodes.
+	 */
+	private static List<TreeNode> parseNodes(
+			final String newick,
+			final Map<String, Otu> otusByPPodId) {
+		try {
+			return NewickParser.parse(newick, otusByPPodId);
+		} catch (final IllegalArgumentException e) {
+			logger.warn("can't parse Newick string, storing no nodes", e);
+			return Collections.emptyList();
+		}
+	}
+
+	private static Map<String, Otu> getOtusByPPodId(
+			final TreeSet targetTreeSet) {
+		final List<Otu> targetOtus = targetTreeSet.getParent().getOtus();
+		final Map<String, Otu> otusByPPodId =
+				newHashMapWithExpectedSize(targetOtus.size());
+		for (final Otu targetOtu : targetOtus) {
+			otusByPPodId.put(targetOtu.getPPodId(), targetOtu);
+		}
+		return otusByPPodId;
+	}
+
+	private static Map<String, String> getDocIdsToPPodIds(
+			final TreeSet targetTreeSet,
+			final PPodOtuSet sourceOtuSet) {
+		final List<Otu> targetOtus = targetTreeSet.getParent().getOtus();
+		if (sourceOtuSet.getOtus().size() != targetOtus.size()) {
+			throw new IllegalArgumentException(
+					"sourceTreeSet.getOTUSet().getOTUsSize() should be the same as targetTreeSet.getOTUSet().getOTUsSize()");
+		}
+		final Map<String, String> docIdsToPPodIds =
+				newHashMapWithExpectedSize(targetOtus.size());
+		for (int i = 0; i < targetOtus.size(); i++) {
+			docIdsToPPodIds.put(
+					sourceOtuSet.getOtus().get(i).getDocId(),
+					targetOtus.get(i).getPPodId());
+		}
+		return docIdsToPPodIds;
+	}
+}
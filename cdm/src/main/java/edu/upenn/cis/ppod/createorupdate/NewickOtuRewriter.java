@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+
+/**
+ * Rewrites the taxon labels of a Newick string in a single pass. Only whole
+ * labels are replaced - not branch lengths, comments, or parts of longer
+ * labels - so one label being a prefix of another is not a problem.
+ * <p>
+ * Quoted labels are matched on their unquoted value and their replacements
+ * are written back quoted.
+ * 
+ * @author Sam Donnelly
+ */
+final class NewickOtuRewriter {
+
+	private NewickOtuRewriter() {}
+
+	/**
+	 * Replace every label of {@code newick} that's a key of
+	 * {@code labelsToReplacements} with its value.
+	 * 
+	 * @param newick the Newick string
+	 * @param labelsToReplacements the labels we're replacing, mapped to their
+	 *            replacements
+	 * 
+	 * @return the rewritten Newick string
+	 */
+	static String rewrite(
+			final String newick,
+			final Map<String, String> labelsToReplacements) {
+		checkNotNull(newick);
+		checkNotNull(labelsToReplacements);
+
+		final StringBuilder rewritten = new StringBuilder(newick.length());
+
+		// After a ':' comes a branch length, not a label
+		boolean inBranchLength = false;
+
+		int pos = 0;
+		while (pos < newick.length()) {
+			final char c = newick.charAt(pos);
+			if (c == '[') {
+				final int end = skipComment(newick, pos);
+				rewritten.append(newick, pos, end);
+				pos = end;
+			} else if (c == '\'') {
+				final int end = skipQuotedLabel(newick, pos);
+				final String replacement =
+						inBranchLength
+								? null
+								: labelsToReplacements.get(
+										unquote(newick, pos, end));
+				if (replacement == null) {
+					rewritten.append(newick, pos, end);
+				} else {
+					rewritten.append('\'')
+							.append(replacement.replace("'", "''"))
+							.append('\'');
+				}
+				pos = end;
+			} else if (isPunctuation(c) || Character.isWhitespace(c)) {
+				if (c == ':') {
+					inBranchLength = true;
+				} else if (!Character.isWhitespace(c)) {
+					inBranchLength = false;
+				}
+				rewritten.append(c);
+				pos++;
+			} else {
+				int end = pos + 1;
+				while (end < newick.length()
+						&& !isPunctuation(newick.charAt(end))
+						&& !Character.isWhitespace(newick.charAt(end))) {
+					end++;
+				}
+				final String replacement =
+						inBranchLength
+								? null
+								: labelsToReplacements.get(
+										newick.substring(pos, end));
+				if (replacement == null) {
+					rewritten.append(newick, pos, end);
+				} else {
+					rewritten.append(replacement);
+				}
+				pos = end;
+			}
+		}
+		return rewritten.toString();
+	}
+
+	static boolean isPunctuation(final char c) {
+		switch (c) {
+			case '(':
+			case ')':
+			case ',':
+			case ':':
+			case ';':
+			case '[':
+			case ']':
+			case '\'':
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Get the position just past the comment that starts at {@code start}, or
+	 * the end of the string if it's not closed. Comments may nest.
+	 */
+	static int skipComment(final String newick, final int start) {
+		int depth = 0;
+		for (int pos = start; pos < newick.length(); pos++) {
+			final char c = newick.charAt(pos);
+			if (c == '[') {
+				depth++;
+			} else if (c == ']' && --depth == 0) {
+				return pos + 1;
+			}
+		}
+		return newick.length();
+	}
+
+	/**
+	 * Get the position just past the quoted label that starts at
+	 * {@code start}, or the end of the string if it's not closed. A quote is
+	 * escaped by doubling it.
+	 */
+	static int skipQuotedLabel(final String newick, final int start) {
+		int pos = start + 1;
+		while (pos < newick.length()) {
+			if (newick.charAt(pos) == '\'') {
+				if (pos + 1 < newick.length()
+						&& newick.charAt(pos + 1) == '\'') {
+					pos += 2;
+				} else {
+					return pos + 1;
+				}
+			} else {
+				pos++;
+			}
+		}
+		return newick.length();
+	}
+
+	static String unquote(
+			final String newick,
+			final int start,
+			final int end) {
+		final int contentEnd =
+				end - 1 > start && newick.charAt(end - 1) == '\''
+						? end - 1
+						: end;
+		return newick.substring(start + 1, contentEnd).replace("''", "'");
+	}
+}
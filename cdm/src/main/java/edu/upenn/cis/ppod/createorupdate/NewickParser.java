@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.Tree;
+import edu.upenn.cis.ppod.model.TreeNode;
+
+/**
+ * Parses a Newick string into the pre-order {@link Tree#getNodes() nodes} of
+ * a tree. Labels, comments and quoting are read as in
+ * {@link NewickOtuRewriter}. The parse doesn't recurse, so deep trees are not
+ * a problem.
+ * 
+ * @author Sam Donnelly
+ */
+final class NewickParser {
+
+	/** A node whose label and branch length may come after its children. */
+	private static final class NodeBuilder {
+		private final int parentIndex;
+		private int subtreeEnd;
+		@CheckForNull
+		private String label;
+		@CheckForNull
+		private Double branchLength;
+
+		private NodeBuilder(final int parentIndex) {
+			this.parentIndex = parentIndex;
+		}
+	}
+
+	private NewickParser() {}
+
+	/**
+	 * Parse {@code newick}.
+	 * 
+	 * @param newick the Newick string
+	 * @param otusByLabel the OTUs that labels may be
+	 * 
+	 * @return the nodes of the tree, in pre-order
+	 * 
+	 * @throws IllegalArgumentException if {@code newick} isn't a single
+	 *             Newick tree
+	 */
+	static List<TreeNode> parse(
+			final String newick,
+			final Map<String, Otu> otusByLabel) {
+		checkNotNull(newick);
+		checkNotNull(otusByLabel);
+
+		final List<NodeBuilder> nodes = newArrayList();
+
+		// The positions of the internal nodes whose children we're reading
+		final LinkedList<Integer> openNodes = new LinkedList<Integer>();
+
+		// The node that a label or branch length would go with, or -1 if
+		// we're expecting a new node
+		int current = -1;
+
+		int pos = 0;
+		while (pos < newick.length()) {
+			final char c = newick.charAt(pos);
+			if (Character.isWhitespace(c)) {
+				pos++;
+			} else if (c == '[') {
+				pos = NewickOtuRewriter.skipComment(newick, pos);
+			} else if (c == '(') {
+				checkArgument(current == -1, "unexpected '(' at " + pos);
+				openNodes.addFirst(addNode(nodes, openNodes));
+				pos++;
+			} else if (c == ',' || c == ')') {
+				checkArgument(!openNodes.isEmpty(), "unexpected '" + c
+						+ "' at " + pos);
+				if (current == -1) {
+					// A leaf without a label
+					addLeaf(nodes, openNodes);
+				}
+				if (c == ',') {
+					current = -1;
+				} else {
+					current = openNodes.removeFirst();
+					nodes.get(current).subtreeEnd = nodes.size();
+				}
+				pos++;
+			} else if (c == ':') {
+				checkArgument(current != -1, "unexpected ':' at " + pos);
+				int start = pos + 1;
+				while (start < newick.length()
+						&& Character.isWhitespace(newick.charAt(start))) {
+					start++;
+				}
+				int end = start;
+				while (end < newick.length()
+						&& !NewickOtuRewriter.isPunctuation(newick
+								.charAt(end))
+						&& !Character.isWhitespace(newick.charAt(end))) {
+					end++;
+				}
+				try {
+					nodes.get(current).branchLength =
+							Double.valueOf(newick.substring(start, end));
+				} catch (final NumberFormatException e) {
+					throw new IllegalArgumentException("bad branch length at "
+							+ start, e);
+				}
+				pos = end;
+			} else if (c == ';') {
+				break;
+			} else {
+				final int end;
+				final String label;
+				if (c == '\'') {
+					end = NewickOtuRewriter.skipQuotedLabel(newick, pos);
+					label = NewickOtuRewriter.unquote(newick, pos, end);
+				} else {
+					int labelEnd = pos + 1;
+					while (labelEnd < newick.length()
+							&& !NewickOtuRewriter.isPunctuation(newick
+									.charAt(labelEnd))
+							&& !Character.isWhitespace(newick
+									.charAt(labelEnd))) {
+						labelEnd++;
+					}
+					end = labelEnd;
+					label = newick.substring(pos, end);
+				}
+				if (current == -1) {
+					current = addLeaf(nodes, openNodes);
+				}
+				checkArgument(nodes.get(current).label == null,
+						"unexpected label at " + pos);
+				nodes.get(current).label = label;
+				pos = end;
+			}
+		}
+		checkArgument(!nodes.isEmpty(), "no tree");
+		checkArgument(openNodes.isEmpty(), "unclosed '('");
+
+		final List<TreeNode> treeNodes = newArrayListWithCapacity(nodes.size());
+		for (final NodeBuilder node : nodes) {
+			final Otu otu =
+					node.label == null ? null : otusByLabel.get(node.label);
+			treeNodes.add(new TreeNode(
+					node.parentIndex,
+					node.subtreeEnd,
+					otu,
+					otu == null ? node.label : null,
+					node.branchLength));
+		}
+		return treeNodes;
+	}
+
+	private static int addNode(
+			final List<NodeBuilder> nodes,
+			final LinkedList<Integer> openNodes) {
+		checkArgument(!openNodes.isEmpty() || nodes.isEmpty(),
+				"more than one tree");
+		nodes.add(new NodeBuilder(
+				openNodes.isEmpty() ? -1 : openNodes.getFirst()));
+		return nodes.size() - 1;
+	}
+
+	private static int addLeaf(
+			final List<NodeBuilder> nodes,
+			final LinkedList<Integer> openNodes) {
+		final int leaf = addNode(nodes, openNodes);
+		nodes.get(leaf).subtreeEnd = leaf + 1;
+		return leaf;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+import static com.google.common.collect.Sets.newHashSetWithExpectedSize;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.IHasPPodId;
+
+/**
+ * The result of matching up a collection of persistent entities with their
+ * incoming counterparts by pPOD ID: which persistent entities are kept, which
+ * have to be removed, and at which incoming positions new ones have to be
+ * added.
+ * <p>
+ * The persistent entities are indexed by pPOD ID once, so building a
+ * reconciliation is linear in the sizes of the two collections.
+ * 
+ * @author Sam Donnelly
+ * 
+ * @param <T> the type of the persistent entities
+ */
+final class PPodIdReconciliation<T extends IHasPPodId> {
+
+	/**
+	 * Match {@code dbEntities} with {@code sourceEntities} by pPOD ID.
+	 * <p>
+	 * Source entities with a {@code null} or unknown pPOD ID are considered
+	 * new.
+	 * 
+	 * @param dbEntities the persistent entities
+	 * @param sourceEntities the incoming entities
+	 * 
+	 * @return the reconciliation of {@code dbEntities} and
+	 *         {@code sourceEntities}
+	 */
+	static <T extends IHasPPodId> PPodIdReconciliation<T> reconcile(
+			final Collection<? extends T> dbEntities,
+			final List<? extends IHasPPodId> sourceEntities) {
+		checkNotNull(dbEntities);
+		checkNotNull(sourceEntities);
+
+		final Map<String, T> dbEntitiesByPPodId =
+				newHashMapWithExpectedSize(dbEntities.size());
+		for (final T dbEntity : dbEntities) {
+			dbEntitiesByPPodId.put(dbEntity.getPPodId(), dbEntity);
+		}
+
+		final List<T> matches =
+				newArrayListWithCapacity(sourceEntities.size());
+		final Set<String> sourcePPodIds =
+				newHashSetWithExpectedSize(sourceEntities.size());
+		for (final IHasPPodId sourceEntity : sourceEntities) {
+			final String sourcePPodId = sourceEntity.getPPodId();
+			if (sourcePPodId == null) {
+				matches.add(null);
+			} else {
+				sourcePPodIds.add(sourcePPodId);
+				matches.add(dbEntitiesByPPodId.get(sourcePPodId));
+			}
+		}
+
+		final List<T> removeds = newArrayList();
+		for (final T dbEntity : dbEntities) {
+			if (!sourcePPodIds.contains(dbEntity.getPPodId())) {
+				removeds.add(dbEntity);
+			}
+		}
+		return new PPodIdReconciliation<T>(matches, removeds);
+	}
+
+	private final List<T> matches;
+
+	private final List<T> removeds;
+
+	private PPodIdReconciliation(
+			final List<T> matches,
+			final List<T> removeds) {
+		this.matches = matches;
+		this.removeds = removeds;
+	}
+
+	/**
+	 * Get the persistent entity that has the same pPOD ID as the source entity
+	 * at {@code sourcePos}, or {@code null} if that source entity is new and
+	 * needs to be added.
+	 * 
+	 * @param sourcePos the position of the source entity
+	 * 
+	 * @return the matching persistent entity, or {@code null} if there isn't
+	 *         one
+	 */
+	@CheckForNull
+	T getMatch(final int sourcePos) {
+		return matches.get(sourcePos);
+	}
+
+	/**
+	 * Get the persistent entities that don't have a counterpart in the source
+	 * entities, in their original order.
+	 * 
+	 * @return the persistent entities that need to be removed
+	 */
+	List<T> getRemoveds() {
+		return Collections.unmodifiableList(removeds);
+	}
+}
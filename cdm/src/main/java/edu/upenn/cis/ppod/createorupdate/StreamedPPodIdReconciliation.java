@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.IHasPPodId;
+
+/**
+ * Like {@link PPodIdReconciliation}, but for incoming entities that arrive one
+ * at a time, as they do from a streamed upload: each one is matched as it
+ * arrives, new ones are placed right after the last entity that was matched
+ * or added, and the persistent entities that are left over at the end are the
+ * ones to remove.
+ * 
+ * @author Sam Donnelly
+ * 
+ * @param <T> the type of the persistent entities
+ */
+final class StreamedPPodIdReconciliation<T extends IHasPPodId> {
+
+	private final List<T> dbEntities;
+
+	private final List<T> originalDbEntities;
+
+	private final Map<String, T> unmatchedsByPPodId;
+
+	@CheckForNull
+	private T previous;
+
+	/**
+	 * @param dbEntities the persistent entities, which new entities will be
+	 *            added to as we go
+	 */
+	StreamedPPodIdReconciliation(final List<T> dbEntities) {
+		this.dbEntities = checkNotNull(dbEntities);
+		this.originalDbEntities = newArrayList(dbEntities);
+		unmatchedsByPPodId = newHashMapWithExpectedSize(dbEntities.size());
+		for (final T dbEntity : dbEntities) {
+			unmatchedsByPPodId.put(dbEntity.getPPodId(), dbEntity);
+		}
+	}
+
+	/**
+	 * Get the persistent entity that has the same pPOD ID as
+	 * {@code sourceEntity}, or {@code null} if {@code sourceEntity} is new
+	 * and needs to be added at {@link #getNewPos()}.
+	 * 
+	 * @param sourceEntity the next incoming entity
+	 * 
+	 * @return the matching persistent entity, or {@code null} if there isn't
+	 *         one
+	 */
+	@CheckForNull
+	T match(final IHasPPodId sourceEntity) {
+		checkNotNull(sourceEntity);
+		if (sourceEntity.getPPodId() == null) {
+			return null;
+		}
+		final T match = unmatchedsByPPodId.remove(sourceEntity.getPPodId());
+		if (match != null) {
+			previous = match;
+		}
+		return match;
+	}
+
+	/**
+	 * Get the position at which to add the entity for an incoming entity that
+	 * didn't have a match.
+	 * 
+	 * @return the position at which to add a new entity
+	 */
+	int getNewPos() {
+		return previous == null ? 0 : dbEntities.indexOf(previous) + 1;
+	}
+
+	/**
+	 * Record that {@code newEntity} has been added at {@link #getNewPos()}.
+	 * 
+	 * @param newEntity the entity that was added
+	 */
+	void added(final T newEntity) {
+		previous = checkNotNull(newEntity);
+	}
+
+	/**
+	 * Get the persistent entities that haven't been matched, in their original
+	 * order. Once all of the incoming entities have been seen, these are the
+	 * ones that need to be removed.
+	 * 
+	 * @return the persistent entities that haven't been matched
+	 */
+	List<T> getUnmatcheds() {
+		final List<T> unmatcheds = newArrayList();
+		for (final T dbEntity : originalDbEntities) {
+			if (unmatchedsByPPodId.get(dbEntity.getPPodId()) == dbEntity) {
+				unmatcheds.add(dbEntity);
+			}
+		}
+		return unmatcheds;
+	}
+}
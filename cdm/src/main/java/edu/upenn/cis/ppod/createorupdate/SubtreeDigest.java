@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Iterables.transform;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardState;
+import edu.upenn.cis.ppod.dto.PPodTree;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+import edu.upenn.cis.ppod.model.Matrix;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+/**
+ * Canonical digests of incoming OTU sets, matrices and tree sets, to be
+ * compared with the {@code getContentDigest()} of their persistent
+ * counterparts so that we can skip merging whole subtrees that haven't
+ * changed.
+ * <p>
+ * A matrix or tree set digest covers the OTUs of its OTU set, since those
+ * determine which stored row or OTU each incoming row or tree refers to. An
+ * OTU set digest covers its OTUs and the digests of all of its matrices and
+ * tree sets.
+ * <p>
+ * Merging an incoming entity that has no pPOD ID creates a new persistent
+ * entity, so merging the same incoming subtree twice only gives the same
+ * result if everything in it that has a pPOD ID already has one. Otherwise
+ * the digest is {@code null}, which never matches.
+ * <p>
+ * Matrix digests can be built a row at a time with
+ * {@link #digestRows(Iterable, Function)} so that streamed rows can be
+ * digested as they're merged.
+ * 
+ * @author Sam Donnelly
+ */
+final class SubtreeDigest {
+
+	/**
+	 * The digests of an incoming OTU set and of each of its matrices and tree
+	 * sets.
+	 */
+	static final class OtuSetDigests {
+
+		@CheckForNull
+		private final String otuSetDigest;
+		private final List<String> standardMatrixDigests;
+		private final List<String> dnaMatrixDigests;
+		private final List<String> proteinMatrixDigests;
+		private final List<String> treeSetDigests;
+
+		private OtuSetDigests(
+				final PPodOtuSet sourceOtuSet) {
+			standardMatrixDigests =
+					newArrayListWithCapacity(sourceOtuSet
+							.getStandardMatrices().size());
+			for (final PPodStandardMatrix sourceMatrix : sourceOtuSet
+					.getStandardMatrices()) {
+				standardMatrixDigests.add(of(sourceOtuSet, sourceMatrix));
+			}
+			dnaMatrixDigests =
+					newArrayListWithCapacity(sourceOtuSet.getDnaMatrices()
+							.size());
+			for (final PPodDnaMatrix sourceMatrix : sourceOtuSet
+					.getDnaMatrices()) {
+				dnaMatrixDigests.add(of(sourceOtuSet, sourceMatrix));
+			}
+			proteinMatrixDigests =
+					newArrayListWithCapacity(sourceOtuSet
+							.getProteinMatrices().size());
+			for (final PPodProteinMatrix sourceMatrix : sourceOtuSet
+					.getProteinMatrices()) {
+				proteinMatrixDigests.add(of(sourceOtuSet, sourceMatrix));
+			}
+			treeSetDigests =
+					newArrayListWithCapacity(sourceOtuSet.getTreeSets()
+							.size());
+			for (final PPodTreeSet sourceTreeSet : sourceOtuSet
+					.getTreeSets()) {
+				treeSetDigests.add(of(sourceOtuSet, sourceTreeSet));
+			}
+			otuSetDigest =
+					of(sourceOtuSet,
+							standardMatrixDigests,
+							dnaMatrixDigests,
+							proteinMatrixDigests,
+							treeSetDigests);
+		}
+
+		/** @return the digests of the DNA matrices, in order */
+		List<String> getDnaMatrixDigests() {
+			return dnaMatrixDigests;
+		}
+
+		/** @return the digest of the OTU set */
+		@CheckForNull
+		String getOtuSetDigest() {
+			return otuSetDigest;
+		}
+
+		/** @return the digests of the protein matrices, in order */
+		List<String> getProteinMatrixDigests() {
+			return proteinMatrixDigests;
+		}
+
+		/** @return the digests of the standard matrices, in order */
+		List<String> getStandardMatrixDigests() {
+			return standardMatrixDigests;
+		}
+
+		/** @return the digests of the tree sets, in order */
+		List<String> getTreeSetDigests() {
+			return treeSetDigests;
+		}
+	}
+
+	private static final Comparator<PPodStandardState> BY_STATE_NUMBER =
+			new Comparator<PPodStandardState>() {
+				public int compare(
+						final PPodStandardState state0,
+						final PPodStandardState state1) {
+					return state0.getStateNumber() < state1.getStateNumber()
+							? -1
+							: (state0.getStateNumber() == state1
+									.getStateNumber() ? 0 : 1);
+				}
+			};
+
+	/** What a standard row contributes to its matrix's digest. */
+	static final Function<PPodStandardRow, String> STANDARD_ROW_CONTENT =
+			new Function<PPodStandardRow, String>() {
+				public String apply(final PPodStandardRow sourceRow) {
+					return CellsFingerprint.of(sourceRow);
+				}
+			};
+
+	/** What a DNA row contributes to its matrix's digest. */
+	static final Function<PPodDnaRow, String> DNA_ROW_CONTENT =
+			new Function<PPodDnaRow, String>() {
+				public String apply(final PPodDnaRow sourceRow) {
+					return sourceRow.getSequence();
+				}
+			};
+
+	/** What a protein row contributes to its matrix's digest. */
+	static final Function<PPodProteinRow, String> PROTEIN_ROW_CONTENT =
+			new Function<PPodProteinRow, String>() {
+				public String apply(final PPodProteinRow sourceRow) {
+					return sourceRow.getSequence();
+				}
+			};
+
+	private final ContentDigest digest = new ContentDigest();
+
+	private boolean complete = true;
+
+	private SubtreeDigest(final String kind) {
+		digest.putString(kind);
+	}
+
+	/**
+	 * Start the digest of a standard matrix. Its rows are to be added with
+	 * {@link #digestRows(Iterable, Function)} and
+	 * {@link #STANDARD_ROW_CONTENT}.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, with everything but the rows
+	 */
+	static SubtreeDigest startStandardMatrix(
+			final PPodOtuSet sourceOtuSet,
+			final PPodStandardMatrix sourceMatrix) {
+		checkNotNull(sourceOtuSet);
+		checkNotNull(sourceMatrix);
+		final SubtreeDigest subtreeDigest =
+				new SubtreeDigest("standard matrix");
+		subtreeDigest.putOtus(sourceOtuSet);
+		subtreeDigest.putEntity(
+				sourceMatrix.getPPodId(),
+				sourceMatrix.getLabel());
+		subtreeDigest.digest.putInt(sourceMatrix.getCharacters().size());
+		for (final PPodStandardCharacter sourceCharacter : sourceMatrix
+				.getCharacters()) {
+			subtreeDigest.putEntity(
+					sourceCharacter.getPPodId(),
+					sourceCharacter.getLabel());
+			subtreeDigest.digest.putString(sourceCharacter.getMesquiteId());
+			final List<PPodStandardState> sourceStates =
+					newArrayList(sourceCharacter.getStates());
+			Collections.sort(sourceStates, BY_STATE_NUMBER);
+			subtreeDigest.digest.putInt(sourceStates.size());
+			for (final PPodStandardState sourceState : sourceStates) {
+				subtreeDigest.digest.putInt(sourceState.getStateNumber());
+				subtreeDigest.digest.putString(sourceState.getLabel());
+			}
+		}
+		return subtreeDigest;
+	}
+
+	/**
+	 * Start the digest of a DNA matrix. Its rows are to be added with
+	 * {@link #digestRows(Iterable, Function)} and {@link #DNA_ROW_CONTENT}.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, with everything but the rows
+	 */
+	static SubtreeDigest startDnaMatrix(
+			final PPodOtuSet sourceOtuSet,
+			final PPodDnaMatrix sourceMatrix) {
+		checkNotNull(sourceOtuSet);
+		checkNotNull(sourceMatrix);
+		final SubtreeDigest subtreeDigest = new SubtreeDigest("DNA matrix");
+		subtreeDigest.putOtus(sourceOtuSet);
+		subtreeDigest.putEntity(
+				sourceMatrix.getPPodId(),
+				sourceMatrix.getLabel());
+		return subtreeDigest;
+	}
+
+	/**
+	 * Start the digest of a protein matrix. Its rows are to be added with
+	 * {@link #digestRows(Iterable, Function)} and
+	 * {@link #PROTEIN_ROW_CONTENT}.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, with everything but the rows
+	 */
+	static SubtreeDigest startProteinMatrix(
+			final PPodOtuSet sourceOtuSet,
+			final PPodProteinMatrix sourceMatrix) {
+		checkNotNull(sourceOtuSet);
+		checkNotNull(sourceMatrix);
+		final SubtreeDigest subtreeDigest =
+				new SubtreeDigest("protein matrix");
+		subtreeDigest.putOtus(sourceOtuSet);
+		subtreeDigest.putEntity(
+				sourceMatrix.getPPodId(),
+				sourceMatrix.getLabel());
+		return subtreeDigest;
+	}
+
+	/**
+	 * Get the digest of a whole standard matrix.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, or {@code null} if the matrix can't be skipped
+	 */
+	@CheckForNull
+	static String of(
+			final PPodOtuSet sourceOtuSet,
+			final PPodStandardMatrix sourceMatrix) {
+		final SubtreeDigest subtreeDigest =
+				startStandardMatrix(sourceOtuSet, sourceMatrix);
+		for (final PPodStandardRow sourceRow : sourceMatrix.getRows()) {
+			subtreeDigest.digest.putString(
+					STANDARD_ROW_CONTENT.apply(sourceRow));
+		}
+		return subtreeDigest.toHexString();
+	}
+
+	/**
+	 * Get the digest of a whole DNA matrix.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, or {@code null} if the matrix can't be skipped
+	 */
+	@CheckForNull
+	static String of(
+			final PPodOtuSet sourceOtuSet,
+			final PPodDnaMatrix sourceMatrix) {
+		final SubtreeDigest subtreeDigest =
+				startDnaMatrix(sourceOtuSet, sourceMatrix);
+		for (final PPodDnaRow sourceRow : sourceMatrix.getRows()) {
+			subtreeDigest.digest.putString(DNA_ROW_CONTENT.apply(sourceRow));
+		}
+		return subtreeDigest.toHexString();
+	}
+
+	/**
+	 * Get the digest of a whole protein matrix.
+	 * 
+	 * @param sourceOtuSet the OTU set of the matrix
+	 * @param sourceMatrix the matrix
+	 * 
+	 * @return the digest, or {@code null} if the matrix can't be skipped
+	 */
+	@CheckForNull
+	static String of(
+			final PPodOtuSet sourceOtuSet,
+			final PPodProteinMatrix sourceMatrix) {
+		final SubtreeDigest subtreeDigest =
+				startProteinMatrix(sourceOtuSet, sourceMatrix);
+		for (final PPodProteinRow sourceRow : sourceMatrix.getRows()) {
+			subtreeDigest.digest.putString(
+					PROTEIN_ROW_CONTENT.apply(sourceRow));
+		}
+		return subtreeDigest.toHexString();
+	}
+
+	/**
+	 * Get the digest of a tree set. The OTUs in the Newick strings are
+	 * digested as the pPOD IDs they'll be stored as, since their document IDs
+	 * needn't be the same from one upload to the next.
+	 * 
+	 * @param sourceOtuSet the OTU set of the tree set
+	 * @param sourceTreeSet the tree set
+	 * 
+	 * @return the digest, or {@code null} if the tree set can't be skipped
+	 */
+	@CheckForNull
+	static String of(
+			final PPodOtuSet sourceOtuSet,
+			final PPodTreeSet sourceTreeSet) {
+		checkNotNull(sourceOtuSet);
+		checkNotNull(sourceTreeSet);
+		final SubtreeDigest subtreeDigest = new SubtreeDigest("tree set");
+		subtreeDigest.putOtus(sourceOtuSet);
+		subtreeDigest.putEntity(
+				sourceTreeSet.getPPodId(),
+				sourceTreeSet.getLabel());
+		if (!subtreeDigest.complete) {
+			return null;
+		}
+		final Map<String, String> docIdsToPPodIds =
+				newHashMapWithExpectedSize(sourceOtuSet.getOtus().size());
+		for (final PPodOtu sourceOtu : sourceOtuSet.getOtus()) {
+			docIdsToPPodIds.put(sourceOtu.getDocId(), sourceOtu.getPPodId());
+		}
+		subtreeDigest.digest.putInt(sourceTreeSet.getTrees().size());
+		for (final PPodTree sourceTree : sourceTreeSet.getTrees()) {
+			subtreeDigest.putEntity(
+					sourceTree.getPPodId(),
+					sourceTree.getLabel());
+			subtreeDigest.digest.putString(
+					NewickOtuRewriter.rewrite(
+							sourceTree.getNewick(),
+							docIdsToPPodIds));
+		}
+		return subtreeDigest.toHexString();
+	}
+
+	/**
+	 * Digest a whole incoming OTU set.
+	 * 
+	 * @param sourceOtuSet the OTU set
+	 * 
+	 * @return the digests of the OTU set and its matrices and tree sets
+	 */
+	static OtuSetDigests of(final PPodOtuSet sourceOtuSet) {
+		checkNotNull(sourceOtuSet);
+		return new OtuSetDigests(sourceOtuSet);
+	}
+
+	/**
+	 * Get the digest of an OTU set from the digests of its matrices and tree
+	 * sets.
+	 * 
+	 * @param sourceOtuSet the OTU set
+	 * @param standardMatrixDigests the digests of its standard matrices, in
+	 *            order
+	 * @param dnaMatrixDigests the digests of its DNA matrices, in order
+	 * @param proteinMatrixDigests the digests of its protein matrices, in
+	 *            order
+	 * @param treeSetDigests the digests of its tree sets, in order
+	 * 
+	 * @return the digest, or {@code null} if the OTU set can't be skipped
+	 */
+	@CheckForNull
+	static String of(
+			final PPodOtuSet sourceOtuSet,
+			final List<String> standardMatrixDigests,
+			final List<String> dnaMatrixDigests,
+			final List<String> proteinMatrixDigests,
+			final List<String> treeSetDigests) {
+		checkNotNull(sourceOtuSet);
+		final SubtreeDigest subtreeDigest = new SubtreeDigest("OTU set");
+		subtreeDigest.putEntity(
+				sourceOtuSet.getPPodId(),
+				sourceOtuSet.getLabel());
+		subtreeDigest.putOtus(sourceOtuSet);
+		subtreeDigest.putDigests(standardMatrixDigests);
+		subtreeDigest.putDigests(dnaMatrixDigests);
+		subtreeDigest.putDigests(proteinMatrixDigests);
+		subtreeDigest.putDigests(treeSetDigests);
+		return subtreeDigest.toHexString();
+	}
+
+	/**
+	 * Forget the digests of a matrix and its OTU set, because the matrix is
+	 * being changed by something other than an upload.
+	 * 
+	 * @param dbMatrix the persistent matrix
+	 */
+	static void clear(final Matrix<?> dbMatrix) {
+		dbMatrix.setContentDigest(null);
+		if (dbMatrix.getParent() != null) {
+			dbMatrix.getParent().setContentDigest(null);
+		}
+	}
+
+	/**
+	 * Does {@code sourceDigest} say that the persistent entity with
+	 * {@code dbDigest} is already up to date?
+	 * 
+	 * @param sourceDigest the digest of the incoming entity
+	 * @param dbDigest the digest of the persistent entity
+	 * 
+	 * @return {@code true} if the two digests are known and the same
+	 */
+	static boolean matches(
+			@CheckForNull final String sourceDigest,
+			@CheckForNull final String dbDigest) {
+		return sourceDigest != null && sourceDigest.equals(dbDigest);
+	}
+
+	/**
+	 * Digest each of {@code sourceRows} as it's iterated over.
+	 * 
+	 * @param sourceRows the rows of the matrix
+	 * @param rowContent what each row contributes to the digest
+	 * 
+	 * @return a view of {@code sourceRows} that adds each row to this digest
+	 */
+	<R> Iterable<R> digestRows(
+			final Iterable<R> sourceRows,
+			final Function<? super R, String> rowContent) {
+		checkNotNull(sourceRows);
+		checkNotNull(rowContent);
+		return transform(sourceRows, new Function<R, R>() {
+			public R apply(final R sourceRow) {
+				digest.putString(rowContent.apply(sourceRow));
+				return sourceRow;
+			}
+		});
+	}
+
+	/**
+	 * Finish the digest.
+	 * 
+	 * @return the digest as a hex string, or {@code null} if what was digested
+	 *         can't be skipped
+	 */
+	@CheckForNull
+	String toHexString() {
+		final String hex = digest.toHexString();
+		return complete ? hex : null;
+	}
+
+	private void putDigests(final List<String> digests) {
+		digest.putInt(digests.size());
+		for (final String childDigest : digests) {
+			if (childDigest == null) {
+				complete = false;
+			}
+			digest.putString(childDigest);
+		}
+	}
+
+	private void putEntity(
+			@CheckForNull final String pPodId,
+			final String label) {
+		if (pPodId == null) {
+			complete = false;
+		}
+		digest.putString(pPodId);
+		digest.putString(label);
+	}
+
+	private void putOtus(final PPodOtuSet sourceOtuSet) {
+		digest.putInt(sourceOtuSet.getOtus().size());
+		for (final PPodOtu sourceOtu : sourceOtuSet.getOtus()) {
+			putEntity(sourceOtu.getPPodId(), sourceOtu.getLabel());
+		}
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+import static com.google.common.collect.Maps.newTreeMap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IStandardMatrixDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCellBlock;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdit;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdits;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.StandardCell;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+
+/**
+ * Goes to the edited rows by way of their OTUs' ids, so neither the rest of
+ * the matrix's rows nor the rest of the study are loaded.
+ * 
+ * @author Sam Donnelly
+ */
+final class UpdateStandardCells implements IUpdateStandardCells {
+
+	static final int DEFAULT_ROWS_PER_FLUSH = 100;
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(UpdateStandardCells.class);
+
+	private final IStandardMatrixDAO matrixDao;
+
+	private final IStandardRowDAO rowDao;
+
+	private final int rowsPerFlush;
+
+	@Inject
+	UpdateStandardCells(
+			final IStandardMatrixDAO matrixDao,
+			final IStandardRowDAO rowDao) {
+		this(matrixDao, rowDao, DEFAULT_ROWS_PER_FLUSH);
+	}
+
+	UpdateStandardCells(
+			final IStandardMatrixDAO matrixDao,
+			final IStandardRowDAO rowDao,
+			final int rowsPerFlush) {
+		checkArgument(rowsPerFlush > 0, "rowsPerFlush must be positive");
+		this.matrixDao = checkNotNull(matrixDao);
+		this.rowDao = checkNotNull(rowDao);
+		this.rowsPerFlush = rowsPerFlush;
+	}
+
+	public StandardMatrix updateCells(
+			final String matrixPPodId,
+			final PPodStandardCellBlock block) {
+		checkNotNull(matrixPPodId);
+		checkNotNull(block);
+		final SortedMap<Integer, SortedMap<Integer, PPodStandardCell>> cellsByRowAndColumn =
+				newTreeMap();
+		int rowPos = block.getFirstRow() - 1;
+		for (final PPodStandardRow sourceRow : block.getRows()) {
+			rowPos++;
+			int columnPos = block.getFirstColumn() - 1;
+			for (final PPodStandardCell sourceCell : sourceRow.getCells()) {
+				columnPos++;
+				getCellsByColumn(cellsByRowAndColumn, rowPos)
+						.put(columnPos, sourceCell);
+			}
+		}
+		return updateCells(matrixPPodId, cellsByRowAndColumn);
+	}
+
+	public StandardMatrix updateCells(
+			final String matrixPPodId,
+			final PPodStandardCellEdits cellEdits) {
+		checkNotNull(matrixPPodId);
+		checkNotNull(cellEdits);
+		final SortedMap<Integer, SortedMap<Integer, PPodStandardCell>> cellsByRowAndColumn =
+				newTreeMap();
+		for (final PPodStandardCellEdit cellEdit : cellEdits.getCellEdits()) {
+			getCellsByColumn(cellsByRowAndColumn, cellEdit.getRow())
+					.put(cellEdit.getColumn(), cellEdit.getCell());
+		}
+		return updateCells(matrixPPodId, cellsByRowAndColumn);
+	}
+
+	private static SortedMap<Integer, PPodStandardCell> getCellsByColumn(
+			final SortedMap<Integer, SortedMap<Integer, PPodStandardCell>> cellsByRowAndColumn,
+			final Integer rowPos) {
+		SortedMap<Integer, PPodStandardCell> cellsByColumn =
+				cellsByRowAndColumn.get(rowPos);
+		if (cellsByColumn == null) {
+			cellsByColumn = newTreeMap();
+			cellsByRowAndColumn.put(rowPos, cellsByColumn);
+		}
+		return cellsByColumn;
+	}
+
+	private StandardMatrix updateCells(
+			final String matrixPPodId,
+			final SortedMap<Integer, SortedMap<Integer, PPodStandardCell>> cellsByRowAndColumn) {
+		final String METHOD = "updateCells(...)";
+
+		final StandardMatrix dbMatrix = getMatrix(matrixPPodId);
+
+		if (cellsByRowAndColumn.isEmpty()) {
+			return dbMatrix;
+		}
+
+		SubtreeDigest.clear(dbMatrix);
+
+		final List<Otu> dbOtus = dbMatrix.getParent().getOtus();
+		final int columnCount = dbMatrix.getCharacters().size();
+
+		checkArgument(
+				cellsByRowAndColumn.lastKey() < dbOtus.size(),
+				"row " + cellsByRowAndColumn.lastKey()
+						+ " is out of range: the matrix has "
+						+ dbOtus.size() + " rows");
+
+		final List<Long> otuIds = newArrayList();
+		for (final Map.Entry<Integer, SortedMap<Integer, PPodStandardCell>> cellsByColumn : cellsByRowAndColumn
+				.entrySet()) {
+			checkArgument(
+					cellsByColumn.getKey() >= 0,
+					"row " + cellsByColumn.getKey() + " is out of range");
+			checkArgument(
+					cellsByColumn.getValue().firstKey() >= 0
+							&& cellsByColumn.getValue().lastKey() < columnCount,
+					"row " + cellsByColumn.getKey()
+							+ " has cells outside of the matrix's "
+							+ columnCount + " columns");
+			otuIds.add(dbOtus.get(cellsByColumn.getKey()).getId());
+		}
+
+		final Map<Long, Long> rowIdsByOtuId =
+				newHashMapWithExpectedSize(otuIds.size());
+		for (final Object[] otuIdAndRowId : rowDao
+				.getOtuIdsIdsByMatrixAndOtuIds(dbMatrix, otuIds)) {
+			rowIdsByOtuId.put((Long) otuIdAndRowId[0],
+					(Long) otuIdAndRowId[1]);
+		}
+
+		final List<StandardRow> unflushedRows =
+				newArrayList();
+		for (final Map.Entry<Integer, SortedMap<Integer, PPodStandardCell>> cellsByColumn : cellsByRowAndColumn
+				.entrySet()) {
+			final Integer rowPos = cellsByColumn.getKey();
+			final Long rowId =
+					rowIdsByOtuId.get(dbOtus.get(rowPos).getId());
+			checkArgument(rowId != null, "row " + rowPos + " has no cells");
+			final StandardRow dbRow = rowDao.findById(rowId, false);
+
+			logger.debug("{}: updating {} cells of row number {}",
+					new Object[] {
+							METHOD,
+							cellsByColumn.getValue().size(),
+							rowPos });
+
+			if (dbRow.getPackedCells() == null) {
+				for (final Map.Entry<Integer, PPodStandardCell> sourceCell : cellsByColumn
+						.getValue().entrySet()) {
+					updateCell(
+							dbRow.getCells().get(sourceCell.getKey()),
+							sourceCell.getValue());
+				}
+			} else {
+				updatePackedCells(
+						dbRow,
+						cellsByColumn.getValue(),
+						dbMatrix.getCharacters());
+			}
+
+			unflushedRows.add(dbRow);
+			if (unflushedRows.size() == rowsPerFlush) {
+				flushAndEvict(unflushedRows);
+			}
+		}
+		flushAndEvict(unflushedRows);
+		return dbMatrix;
+	}
+
+	public StandardMatrix packCells(final String matrixPPodId) {
+		final String METHOD = "packCells(...)";
+		final StandardMatrix dbMatrix = getMatrix(matrixPPodId);
+		final int packedRows = rowDao.packCells(dbMatrix);
+		logger.debug("{}: packed {} rows", METHOD, packedRows);
+		return dbMatrix;
+	}
+
+	private StandardMatrix getMatrix(final String matrixPPodId) {
+		checkNotNull(matrixPPodId);
+		final StandardMatrix dbMatrix =
+				matrixDao.getMatrixByPPodId(matrixPPodId);
+		checkArgument(
+				dbMatrix != null,
+				"no standard matrix with pPOD ID " + matrixPPodId);
+		return dbMatrix;
+	}
+
+	private void flushAndEvict(final List<StandardRow> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		rowDao.flush();
+		for (final StandardRow row : rows) {
+			rowDao.evict(row);
+		}
+		rows.clear();
+	}
+
+	private static void updatePackedCells(
+			final StandardRow dbRow,
+			final SortedMap<Integer, PPodStandardCell> sourceCellsByColumn,
+			final List<StandardCharacter> dbCharacters) {
+		final List<PPodStandardCell> cells =
+				StandardCellsCodec.decode(dbRow.getPackedCells());
+		for (final Map.Entry<Integer, PPodStandardCell> sourceCell : sourceCellsByColumn
+				.entrySet()) {
+			BulkStandardCellWriter.checkStates(
+					dbCharacters,
+					sourceCell.getKey(),
+					Collections.singletonList(sourceCell.getValue()));
+			cells.set(sourceCell.getKey(), sourceCell.getValue());
+		}
+		dbRow.setPackedCells(StandardCellsCodec.encode(cells));
+		dbRow.setCellsFingerprint(null);
+	}
+
+	private static void updateCell(
+			final StandardCell dbCell,
+			final PPodStandardCell sourceCell) {
+		switch (sourceCell.getType()) {
+			case UNASSIGNED:
+				dbCell.setUnassigned();
+				break;
+			case SINGLE:
+				dbCell.setSingle(getOnlyElement(sourceCell.getStates()));
+				break;
+			case POLYMORPHIC:
+				dbCell.setPolymorphic(sourceCell.getStates());
+				break;
+			case UNCERTAIN:
+				dbCell.setUncertain(sourceCell.getStates());
+				break;
+			case INAPPLICABLE:
+				dbCell.setInapplicable();
+				break;
+			default:
+				throw new AssertionError("unknown cell type");
+		}
+	}
+}
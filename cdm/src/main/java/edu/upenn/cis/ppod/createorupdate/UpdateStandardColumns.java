@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IStandardMatrixDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dao.StagedStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardColumns;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardState;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+
+/**
+ * Shifts the stored cells with set-based statements and inserts the cells of
+ * new columns in blocks, without loading any cells. Rows with packed cells
+ * are rewritten whole, a block at a time.
+ * 
+ * @author Sam Donnelly
+ */
+final class UpdateStandardColumns implements IUpdateStandardColumns {
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(UpdateStandardColumns.class);
+
+	/** Where a column's cells are parked while a move makes room for them. */
+	private static final int PARKING_POSITION = -1;
+
+	/** An edit to the cells of a row with packed cells. */
+	private interface IPackedCellsEdit {
+		void edit(List<PPodStandardCell> cells);
+	}
+
+	private final IStandardMatrixDAO matrixDao;
+
+	private final IStandardRowDAO rowDao;
+
+	private final int rowsPerBlock;
+
+	@Inject
+	UpdateStandardColumns(
+			final IStandardMatrixDAO matrixDao,
+			final IStandardRowDAO rowDao) {
+		this(matrixDao, rowDao, BulkStandardCellWriter.DEFAULT_ROWS_PER_BLOCK);
+	}
+
+	UpdateStandardColumns(
+			final IStandardMatrixDAO matrixDao,
+			final IStandardRowDAO rowDao,
+			final int rowsPerBlock) {
+		checkArgument(rowsPerBlock > 0, "rowsPerBlock must be positive");
+		this.matrixDao = checkNotNull(matrixDao);
+		this.rowDao = checkNotNull(rowDao);
+		this.rowsPerBlock = rowsPerBlock;
+	}
+
+	private StandardMatrix getMatrix(final String matrixPPodId) {
+		checkNotNull(matrixPPodId);
+		final StandardMatrix dbMatrix =
+				matrixDao.getMatrixByPPodId(matrixPPodId);
+		checkArgument(
+				dbMatrix != null,
+				"no standard matrix with pPOD ID " + matrixPPodId);
+		return dbMatrix;
+	}
+
+	public StandardMatrix insertColumns(
+			final String matrixPPodId,
+			final int position,
+			final PPodStandardColumns columns) {
+		final String METHOD = "insertColumns(...)";
+		checkNotNull(columns);
+		final StandardMatrix dbMatrix = getMatrix(matrixPPodId);
+		final List<StandardCharacter> dbCharacters =
+				newArrayList(dbMatrix.getCharacters());
+		checkArgument(
+				position >= 0 && position <= dbCharacters.size(),
+				"position " + position + " is out of range: the matrix has "
+						+ dbCharacters.size() + " columns");
+
+		final int count = columns.getCharacters().size();
+		if (count == 0) {
+			return dbMatrix;
+		}
+
+		final List<Otu> dbOtus = dbMatrix.getParent().getOtus();
+		checkArgument(
+				columns.getRows().isEmpty()
+						|| columns.getRows().size() == dbOtus.size(),
+				"there are " + columns.getRows().size()
+						+ " rows but the matrix has " + dbOtus.size());
+		int rowPos = -1;
+		for (final PPodStandardRow sourceRow : columns.getRows()) {
+			rowPos++;
+			checkArgument(
+					sourceRow.getCells().size() == count,
+					"row " + rowPos + " has " + sourceRow.getCells().size()
+							+ " cells but there are " + count
+							+ " new columns");
+		}
+
+		SubtreeDigest.clear(dbMatrix);
+
+		// Make room
+		rowDao.shiftCellPositions(dbMatrix, position, Integer.MAX_VALUE,
+				count);
+
+		final List<StandardCharacter> newDbCharacters =
+				newArrayListWithCapacity(count);
+		for (final PPodStandardCharacter sourceCharacter : columns
+				.getCharacters()) {
+			final StandardCharacter newDbCharacter = new StandardCharacter();
+			newDbCharacter.setLabel(sourceCharacter.getLabel());
+			newDbCharacter.setMesquiteId(sourceCharacter.getMesquiteId());
+			for (final PPodStandardState sourceState : sourceCharacter
+					.getStates()) {
+				final StandardState newDbState =
+						new StandardState(sourceState.getStateNumber());
+				newDbState.setLabel(sourceState.getLabel());
+				newDbCharacter.addState(newDbState);
+			}
+			newDbCharacters.add(newDbCharacter);
+		}
+		dbCharacters.addAll(position, newDbCharacters);
+		dbMatrix.clearAndAddCharacters(dbCharacters);
+
+		// So that the new states have ids
+		rowDao.flush();
+
+		final PPodStandardRow unassignedRow = new PPodStandardRow();
+		for (int i = 0; i < count; i++) {
+			unassignedRow.getCells().add(PPodStandardCell.UNASSIGNED);
+		}
+
+		final List<StagedStandardRow> block =
+				newArrayListWithCapacity(rowsPerBlock);
+		final List<StandardRow> packedBlock =
+				newArrayListWithCapacity(rowsPerBlock);
+		rowPos = -1;
+		for (final Otu dbOtu : dbOtus) {
+			rowPos++;
+			final StandardRow dbRow = dbMatrix.getRows().get(dbOtu);
+			checkArgument(
+					dbRow != null && dbRow.getId() != null,
+					"row " + rowPos + " has never had cells");
+
+			// insertCells(...) and updatePackedCells(...) bump its version
+			// and store its fingerprint
+			rowDao.evict(dbRow);
+			dbRow.setCellsFingerprint(null);
+
+			final PPodStandardRow sourceRow =
+					columns.getRows().isEmpty()
+							? unassignedRow
+							: columns.getRows().get(rowPos);
+			if (dbRow.getPackedCells() == null) {
+				block.add(
+						BulkStandardCellWriter.stageRow(
+								dbRow,
+								sourceRow,
+								position,
+								dbCharacters));
+				if (block.size() == rowsPerBlock) {
+					logger.debug("{}: writing {} rows", METHOD, block.size());
+					rowDao.insertCells(block);
+					block.clear();
+				}
+			} else {
+				BulkStandardCellWriter.checkStates(
+						dbCharacters,
+						position,
+						sourceRow);
+				final PPodStandardRow packedRow =
+						StandardCellsCodec.decodeRow(dbRow.getPackedCells());
+				packedRow.getCells().addAll(position, sourceRow.getCells());
+				dbRow.setPackedCells(StandardCellsCodec.encode(packedRow));
+				packedBlock.add(dbRow);
+				if (packedBlock.size() == rowsPerBlock) {
+					logger.debug("{}: writing {} packed rows",
+							METHOD,
+							packedBlock.size());
+					rowDao.updatePackedCells(packedBlock);
+					packedBlock.clear();
+				}
+			}
+		}
+		rowDao.insertCells(block);
+		rowDao.updatePackedCells(packedBlock);
+		return dbMatrix;
+	}
+
+	/**
+	 * Apply {@code cellsEdit} to the rows of {@code dbMatrix} that have packed
+	 * cells and write them back a block at a time.
+	 */
+	private void editPackedRows(
+			final StandardMatrix dbMatrix,
+			final IPackedCellsEdit cellsEdit) {
+		final List<StandardRow> packedBlock =
+				newArrayListWithCapacity(rowsPerBlock);
+		for (final StandardRow dbRow : dbMatrix.getRows().values()) {
+			if (dbRow == null || dbRow.getPackedCells() == null) {
+				continue;
+			}
+			rowDao.evict(dbRow);
+			final List<PPodStandardCell> cells =
+					StandardCellsCodec.decode(dbRow.getPackedCells());
+			cellsEdit.edit(cells);
+			dbRow.setPackedCells(StandardCellsCodec.encode(cells));
+			dbRow.setCellsFingerprint(null);
+			packedBlock.add(dbRow);
+			if (packedBlock.size() == rowsPerBlock) {
+				rowDao.updatePackedCells(packedBlock);
+				packedBlock.clear();
+			}
+		}
+		rowDao.updatePackedCells(packedBlock);
+	}
+
+	public StandardMatrix removeColumns(
+			final String matrixPPodId,
+			final int position,
+			final int count) {
+		final StandardMatrix dbMatrix = getMatrix(matrixPPodId);
+		final List<StandardCharacter> dbCharacters =
+				newArrayList(dbMatrix.getCharacters());
+		checkArgument(
+				position >= 0 && count > 0
+						&& position + count <= dbCharacters.size(),
+				"columns " + position + " through " + (position + count - 1)
+						+ " are out of range: the matrix has "
+						+ dbCharacters.size() + " columns");
+
+		// The cells have to go before the states that they point to
+		rowDao.deleteCellsByMatrixAndPositions(
+				dbMatrix,
+				position,
+				position + count - 1);
+		rowDao.shiftCellPositions(
+				dbMatrix,
+				position + count,
+				Integer.MAX_VALUE,
+				-count);
+		editPackedRows(dbMatrix, new IPackedCellsEdit() {
+			public void edit(final List<PPodStandardCell> cells) {
+				cells.subList(position, position + count).clear();
+			}
+		});
+		rowDao.clearCellsFingerprints(dbMatrix);
+		SubtreeDigest.clear(dbMatrix);
+
+		dbCharacters.subList(position, position + count).clear();
+		dbMatrix.clearAndAddCharacters(dbCharacters);
+		return dbMatrix;
+	}
+
+	public StandardMatrix moveColumn(
+			final String matrixPPodId,
+			final int from,
+			final int to) {
+		final StandardMatrix dbMatrix = getMatrix(matrixPPodId);
+		final List<StandardCharacter> dbCharacters =
+				newArrayList(dbMatrix.getCharacters());
+		checkArgument(
+				from >= 0 && from < dbCharacters.size()
+						&& to >= 0 && to < dbCharacters.size(),
+				"can't move column " + from + " to " + to
+						+ ": the matrix has " + dbCharacters.size()
+						+ " columns");
+		if (from == to) {
+			return dbMatrix;
+		}
+
+		rowDao.shiftCellPositions(dbMatrix, from, from,
+				PARKING_POSITION - from);
+		if (from < to) {
+			rowDao.shiftCellPositions(dbMatrix, from + 1, to, -1);
+		} else {
+			rowDao.shiftCellPositions(dbMatrix, to, from - 1, 1);
+		}
+		rowDao.shiftCellPositions(dbMatrix, PARKING_POSITION,
+				PARKING_POSITION, to - PARKING_POSITION);
+		editPackedRows(dbMatrix, new IPackedCellsEdit() {
+			public void edit(final List<PPodStandardCell> cells) {
+				cells.add(to, cells.remove(from));
+			}
+		});
+		rowDao.clearCellsFingerprints(dbMatrix);
+		SubtreeDigest.clear(dbMatrix);
+
+		dbCharacters.add(to, dbCharacters.remove(from));
+		dbMatrix.clearAndAddCharacters(dbCharacters);
+		return dbMatrix;
+	}
+}
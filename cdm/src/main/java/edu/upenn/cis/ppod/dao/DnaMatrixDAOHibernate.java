@@ -15,12 +15,16 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import org.hibernate.Session;
 
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.model.DnaMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.PPodIds;
 
 final class DnaMatrixDAOHibernate
 		extends GenericHibernateDAO<DnaMatrix, Long>
@@ -30,4 +34,17 @@ final class DnaMatrixDAOHibernate
 	DnaMatrixDAOHibernate(final Session session) {
 		setSession(session);
 	}
+
+	@Nullable
+	public DnaMatrix getMatrixByPPodId(final String pPodId) {
+		checkNotNull(pPodId);
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
+		return (DnaMatrix) getSession()
+				.getNamedQuery(
+						DnaMatrix.class.getSimpleName() + "-getByPPodId")
+				.setParameter("pPodId", pPodId)
+				.uniqueResult();
+	}
 }
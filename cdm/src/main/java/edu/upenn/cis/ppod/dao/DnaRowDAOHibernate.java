@@ -15,19 +15,92 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
 
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.model.DnaMatrix;
 import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.SequenceCodec;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
 
 final class DnaRowDAOHibernate
 		extends GenericHibernateDAO<DnaRow, Long>
 		implements IDnaRowDAO {
 
+	private static final SubsequenceReader subsequenceReader =
+			new SubsequenceReader(
+					SequenceCodec.DNA,
+					DnaMatrix.TABLE,
+					DnaMatrix.ID_COLUMN,
+					DnaRow.TABLE,
+					DnaRow.ID_COLUMN);
+
+	private static final MatrixRowScroller rowScroller =
+			new MatrixRowScroller(
+					DnaRow.class,
+					DnaMatrix.TABLE,
+					DnaMatrix.ID_COLUMN,
+					DnaRow.TABLE,
+					DnaRow.ID_COLUMN);
+
 	@Inject
 	DnaRowDAOHibernate(final Session session) {
 		setSession(session);
 	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getOtuIdsIdsSequenceHashesByMatrix(
+			final DnaMatrix matrix) {
+		checkNotNull(matrix);
+		return (List<Object[]>) getSession()
+				.createSQLQuery(
+						"select mr." + Otu.ID_COLUMN
+								+ ", r." + DnaRow.ID_COLUMN
+								+ ", r.sequence_hash"
+								+ " from " + DnaMatrix.TABLE + "_"
+								+ DnaRow.TABLE + " mr"
+								+ " join " + DnaRow.TABLE + " r"
+								+ " on r." + DnaRow.ID_COLUMN
+								+ " = mr." + DnaRow.ID_COLUMN
+								+ " where mr." + DnaMatrix.ID_COLUMN
+								+ " = :matrixId")
+				.addScalar(Otu.ID_COLUMN, StandardBasicTypes.LONG)
+				.addScalar(DnaRow.ID_COLUMN, StandardBasicTypes.LONG)
+				.addScalar("sequence_hash", StandardBasicTypes.STRING)
+				.setParameter("matrixId", matrix.getId())
+				.list();
+	}
+
+	public ScrollableResults scrollOtuIdsRowsByMatrix(
+			final DnaMatrix matrix) {
+		checkNotNull(matrix);
+		return rowScroller.scrollOtuIdsRows(
+				getSession(),
+				checkNotNull(matrix.getId(), "matrix has not been flushed"));
+	}
+
+	public Map<Long, String> getSubsequencesByOtuId(
+			final DnaMatrix matrix,
+			@CheckForNull final Collection<Long> otuIds,
+			final int start,
+			final int end) {
+		checkNotNull(matrix);
+		return subsequenceReader.getSubsequencesByOtuId(
+				getSession(),
+				checkNotNull(matrix.getId(), "matrix has not been flushed"),
+				otuIds,
+				start,
+				end);
+	}
 }
@@ -17,8 +17,20 @@ package edu.upenn.cis.ppod.dao;
 
 import com.google.inject.ImplementedBy;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.model.DnaMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
 
 @ImplementedBy(DnaMatrixDAOHibernate.class)
-public interface IDnaMatrixDAO extends IDAO<DnaMatrix, Long> {}
+public interface IDnaMatrixDAO extends IDAO<DnaMatrix, Long> {
+
+	/**
+	 * Get the matrix with the given pPOD ID.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the matrix with the given pPOD ID, or {@code null} if there is
+	 *         no such matrix
+	 */
+	@Nullable
+	DnaMatrix getMatrixByPPodId(String pPodId);
+}
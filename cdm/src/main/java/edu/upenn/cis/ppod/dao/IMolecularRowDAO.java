@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.ScrollableResults;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
+
+/**
+ * DAO for the rows of a DNA or protein matrix.
+ * 
+ * @author Sam Donnelly
+ * 
+ * @param <R> the row type
+ * @param <M> the matrix type
+ */
+public interface IMolecularRowDAO<R, M> extends IDAO<R, Long> {
+
+	/**
+	 * Get the stored rows of a matrix without loading them or their
+	 * sequences: for each row, its OTU's id, its id, and its sequence hash,
+	 * which may be {@code null}.
+	 * 
+	 * @param matrix a persistent matrix
+	 * 
+	 * @return {@code [otuId, rowId, sequenceHash]} for each row of the matrix
+	 */
+	List<Object[]> getOtuIdsIdsSequenceHashesByMatrix(M matrix);
+
+	/**
+	 * Scroll through the rows of a matrix in the order of its OTUs without
+	 * going through the matrix's row map. The rows are loaded read-only, and
+	 * each should be evicted, along with its
+	 * {@link edu.upenn.cis.ppod.model.SequenceBlob}, once it's been used.
+	 * 
+	 * @param matrix a persistent matrix
+	 * 
+	 * @return {@code [otuId, row]} for each row of the matrix, which the
+	 *         caller must close
+	 */
+	ScrollableResults scrollOtuIdsRowsByMatrix(M matrix);
+
+	/**
+	 * Get {@code sequence[start, end)} of some rows of a matrix without
+	 * loading them or their whole sequences: only the chunks of a chunked
+	 * sequence that cover the range are read.
+	 * 
+	 * @param matrix a persistent matrix
+	 * @param otuIds the ids of the OTUs whose rows we want, or {@code null} for
+	 *            all of the rows
+	 * @param start the first residue
+	 * @param end one past the last residue
+	 * 
+	 * @return the subsequences by OTU id. Sequences that end before
+	 *         {@code end} are cut short.
+	 * 
+	 * @throws IllegalArgumentException if {@code start < 0} or
+	 *             {@code start > end}
+	 */
+	Map<Long, String> getSubsequencesByOtuId(
+			M matrix,
+			@CheckForNull Collection<Long> otuIds,
+			int start,
+			int end);
+}
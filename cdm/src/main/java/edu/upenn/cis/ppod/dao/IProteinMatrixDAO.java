@@ -17,8 +17,20 @@ package edu.upenn.cis.ppod.dao;
 
 import com.google.inject.ImplementedBy;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
 
 @ImplementedBy(ProteinMatrixDAOHibernate.class)
-public interface IProteinMatrixDAO extends IDAO<ProteinMatrix, Long> {}
+public interface IProteinMatrixDAO extends IDAO<ProteinMatrix, Long> {
+
+	/**
+	 * Get the matrix with the given pPOD ID.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the matrix with the given pPOD ID, or {@code null} if there is
+	 *         no such matrix
+	 */
+	@Nullable
+	ProteinMatrix getMatrixByPPodId(String pPodId);
+}
@@ -17,8 +17,9 @@ package edu.upenn.cis.ppod.dao;
 
 import com.google.inject.ImplementedBy;
 
+import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.model.ProteinRow;
-import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
 
 @ImplementedBy(ProteinRowDAOHibernate.class)
-public interface IProteinRowDAO extends IDAO<ProteinRow, Long> {}
+public interface IProteinRowDAO
+		extends IMolecularRowDAO<ProteinRow, ProteinMatrix> {}
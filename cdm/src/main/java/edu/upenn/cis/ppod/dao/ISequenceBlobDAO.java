@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import java.util.Date;
+
+import com.google.inject.ImplementedBy;
+
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
+
+/**
+ * DAO for the {@link SequenceBlob}s that DNA and protein rows share.
+ * 
+ * @author Sam Donnelly
+ */
+@ImplementedBy(SequenceBlobDAOHibernate.class)
+public interface ISequenceBlobDAO extends IDAO<SequenceBlob, Long> {
+
+	/**
+	 * Get the stored sequence that's {@code sequence}, storing it first if
+	 * there isn't one.
+	 * 
+	 * @param alphabet the alphabet of {@code sequence}
+	 * @param sequence the sequence
+	 * 
+	 * @return the persistent sequence
+	 */
+	SequenceBlob getOrMakePersistent(
+			SequenceBlob.Alphabet alphabet,
+			String sequence);
+
+	/**
+	 * Delete the stored sequences that no row has any more. Meant to be run
+	 * now and then rather than with every update.
+	 * <p>
+	 * Sequences stored since {@code createdBefore} are left alone, since the
+	 * rows that are about to have them may not have been written yet.
+	 * 
+	 * @param createdBefore only delete sequences stored before this
+	 * 
+	 * @return the number of sequences that were deleted
+	 */
+	int deleteUnreferenced(Date createdBefore);
+}
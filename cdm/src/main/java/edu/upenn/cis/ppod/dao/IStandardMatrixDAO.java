@@ -19,6 +19,8 @@ import java.util.List;
 
 import com.google.inject.ImplementedBy;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
+
 import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
 
@@ -36,6 +38,16 @@ public interface IStandardMatrixDAO extends
 
 	List<Long> getColumnPPodVersionsByMatrixId(Long matrixId);
 
+	/**
+	 * Get the matrix with the given pPOD ID.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the matrix with the given pPOD ID, or {@code null} if there is
+	 *         no such matrix
+	 */
+	@Nullable
+	StandardMatrix getMatrixByPPodId(String pPodId);
+
 	List<Object[]> getRowIdxsIdsVersionsByMatrixIdAndMinPPodVersion(
 			Long matrixId, Long minPPodVersion);
 }
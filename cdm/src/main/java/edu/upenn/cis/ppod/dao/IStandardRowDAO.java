@@ -15,10 +15,14 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.hibernate.ScrollableResults;
+
 import com.google.inject.ImplementedBy;
 
+import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.model.StandardRow;
 import edu.upenn.cis.ppod.thirdparty.dao.IDAO;
 
@@ -34,4 +38,124 @@ public interface IStandardRowDAO extends IDAO<StandardRow, Long> {
 			Long rowId,
 			Long minVersion);
 
+	/**
+	 * Delete the cells of the given rows with set-based statements that go
+	 * around the session. The rows should already have been evicted.
+	 * 
+	 * @param rowIds the ids of the rows whose cells we're deleting
+	 */
+	void deleteCellsByRowIds(Collection<Long> rowIds);
+
+	/**
+	 * Get the stored rows of a matrix without loading them or their cells:
+	 * for each row, its OTU's id and its
+	 * {@link StandardRow#getCellsFingerprint() fingerprint}, which may be
+	 * {@code null}.
+	 * 
+	 * @param matrix a persistent matrix
+	 * 
+	 * @return {@code [otuId, cellsFingerprint]} for each row of the matrix
+	 */
+	List<Object[]> getOtuIdsCellsFingerprintsByMatrix(StandardMatrix matrix);
+
+	/**
+	 * Scroll through the rows of a matrix in the order of its OTUs without
+	 * going through {@link StandardMatrix#getRows()}. The rows are loaded
+	 * read-only, and each should be evicted once it's been used.
+	 * 
+	 * @param matrix a persistent matrix
+	 * 
+	 * @return {@code [otuId, row]} for each row of the matrix, which the
+	 *         caller must close
+	 */
+	ScrollableResults scrollOtuIdsRowsByMatrix(StandardMatrix matrix);
+
+	/**
+	 * Get the ids of some of the rows of a matrix without loading the rest of
+	 * its rows.
+	 * 
+	 * @param matrix the matrix
+	 * @param otuIds the ids of the OTUs whose rows we want
+	 * 
+	 * @return an {@code Object[]} of (OTU id, row id) for each of the rows
+	 */
+	List<Object[]> getOtuIdsIdsByMatrixAndOtuIds(
+			StandardMatrix matrix,
+			Collection<Long> otuIds);
+
+	/**
+	 * Delete the cells of {@code matrix} in columns {@code firstPosition}
+	 * through {@code lastPosition} with set-based statements that go around
+	 * the session. The rows of {@code matrix} should not be in the session.
+	 * 
+	 * @param matrix the matrix
+	 * @param firstPosition the first column to delete
+	 * @param lastPosition the last column to delete
+	 */
+	void deleteCellsByMatrixAndPositions(
+			StandardMatrix matrix,
+			int firstPosition,
+			int lastPosition);
+
+	/**
+	 * Add {@code offset} to the positions of the cells of {@code matrix} in
+	 * columns {@code firstPosition} through {@code lastPosition} with a
+	 * set-based statement that goes around the session. The rows of
+	 * {@code matrix} should not be in the session.
+	 * 
+	 * @param matrix the matrix
+	 * @param firstPosition the first column to move
+	 * @param lastPosition the last column to move
+	 * @param offset how far to move the columns
+	 */
+	void shiftCellPositions(
+			StandardMatrix matrix,
+			int firstPosition,
+			int lastPosition,
+			int offset);
+
+	/**
+	 * Bump the versions of the rows of {@code matrix} and clear their
+	 * {@link StandardRow#getCellsFingerprint() fingerprints}, for when their
+	 * cells have been changed behind the session's back.
+	 * 
+	 * @param matrix the matrix
+	 */
+	void clearCellsFingerprints(StandardMatrix matrix);
+
+	/**
+	 * Insert the staged cells of a block of rows with batched statements that
+	 * go around the session, bump the versions of the rows, and store their
+	 * {@link StandardRow#getCellsFingerprint() fingerprints}. The rows and
+	 * the states of the staged cells must already have been flushed, and the
+	 * rows must not have any stored cells in the staged columns.
+	 * 
+	 * @param rows the staged rows
+	 */
+	void insertCells(List<StagedStandardRow> rows);
+
+	/**
+	 * Write the {@link StandardRow#getPackedCells() packed cells} and
+	 * {@link StandardRow#getCellsFingerprint() fingerprints} of some rows and
+	 * bump their versions, with one batched statement that goes around the
+	 * session. The rows must already have been flushed and must not have any
+	 * stored {@link StandardRow#getCells() cells}.
+	 * 
+	 * @param rows the rows
+	 */
+	void updatePackedCells(List<StandardRow> rows);
+
+	/**
+	 * Move the cells of the rows of {@code matrix} that are stored one
+	 * {@code StandardCell} per cell into their rows' packed cells, with
+	 * set-based statements that go around the session. This is how the
+	 * stored cells of a matrix are migrated to packed rows. The rows of
+	 * {@code matrix} should not be in the session.
+	 * 
+	 * @param matrix the matrix
+	 * 
+	 * @return the number of rows that were packed
+	 */
+	int packCells(StandardMatrix matrix);
+
 }
@@ -54,6 +54,20 @@ public interface IStudyDAO extends IDAO<Study, Long> {
 	@Nullable
 	Study getStudyByPPodId(@CheckForNull String pPodId);
 
+	/**
+	 * Retrieve a {@link Study} given its pPOD id along with everything in it,
+	 * in a fixed number of queries however big the study is. For reading the
+	 * whole study - don't use this to get a study that's going to be
+	 * updated.
+	 * 
+	 * @param pPodId the pPOD id of the {@link Study} we want - {@code null} is
+	 *            legal
+	 * @return the loaded {@link Study} with its pPOD id, or {@code null} if
+	 *         {@code pPodId == null} or there is no such study
+	 */
+	@Nullable
+	Study getStudyByPPodIdEager(@CheckForNull String pPodId);
+
 	@Nullable
 	Study getStudyByLabel(String label);
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
+
+import edu.upenn.cis.ppod.model.Otu;
+
+/**
+ * Scrolls through the rows of a matrix in the order of its OTUs without going
+ * through the matrix's row map, so that the rows can be loaded and let go of
+ * one at a time.
+ * 
+ * @author Sam Donnelly
+ */
+final class MatrixRowScroller {
+
+	/**
+	 * How many rows the driver should fetch at a time. MySQL Connector/J only
+	 * honors this with {@code useCursorFetch=true} and otherwise reads the
+	 * whole result - which is just the row table's columns, not the cells or
+	 * sequences.
+	 */
+	static final int ROWS_PER_FETCH = 100;
+
+	private final Class<?> rowClass;
+
+	private final String selectRows;
+
+	/**
+	 * @param rowClass the row entity
+	 * @param matrixTable the matrix table
+	 * @param matrixIdColumn the id column of the matrix table
+	 * @param rowTable the row table
+	 * @param rowIdColumn the id column of the row table
+	 */
+	MatrixRowScroller(
+			final Class<?> rowClass,
+			final String matrixTable,
+			final String matrixIdColumn,
+			final String rowTable,
+			final String rowIdColumn) {
+		this.rowClass = checkNotNull(rowClass);
+		selectRows =
+				"select mr." + Otu.ID_COLUMN + " as " + Otu.ID_COLUMN
+						+ ", {r.*}"
+						+ " from " + matrixTable + "_" + rowTable + " mr"
+						+ " join " + rowTable + " r"
+						+ " on r." + rowIdColumn + " = mr." + rowIdColumn
+						+ " join " + Otu.TABLE + " o"
+						+ " on o." + Otu.ID_COLUMN + " = mr." + Otu.ID_COLUMN
+						+ " where mr." + matrixIdColumn + " = :matrixId"
+						+ " order by o.position";
+	}
+
+	/**
+	 * Scroll through the rows of a matrix in the order of its OTUs. The rows
+	 * are loaded read-only and stay in the session until they're evicted.
+	 * 
+	 * @param session the session
+	 * @param matrixId the id of the matrix
+	 * 
+	 * @return {@code [otuId, row]} for each row of the matrix. The caller
+	 *         must close it.
+	 */
+	ScrollableResults scrollOtuIdsRows(
+			final Session session,
+			final Long matrixId) {
+		checkNotNull(session);
+		checkNotNull(matrixId);
+		return session.createSQLQuery(selectRows)
+				.addScalar(Otu.ID_COLUMN, StandardBasicTypes.LONG)
+				.addEntity("r", rowClass)
+				.setParameter("matrixId", matrixId)
+				.setReadOnly(true)
+				.setCacheMode(CacheMode.IGNORE)
+				.setFetchSize(ROWS_PER_FETCH)
+				.scroll(ScrollMode.FORWARD_ONLY);
+	}
+}
@@ -25,6 +25,7 @@ import com.google.inject.Inject;
 
 import edu.upenn.cis.ppod.model.OtuSet;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.PPodIds;
 
 /**
  * An {@link OTUSet} Hibernate DAO.
@@ -40,6 +41,9 @@ final class OtuSetDAOHibernate
 	}
 
 	public OtuSet getOTUSetByPPodId(final String pPodId) {
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
 		return (OtuSet) getSession()
 				.getNamedQuery(OtuSet.class.getSimpleName() + "-getByPPodId")
 				.setParameter("pPodId", pPodId)
@@ -15,12 +15,16 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import org.hibernate.Session;
 
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.PPodIds;
 
 class ProteinMatrixDAOHibernate extends
 		GenericHibernateDAO<ProteinMatrix, Long>
@@ -30,4 +34,16 @@ class ProteinMatrixDAOHibernate extends
 		setSession(session);
 	}
 
+	@Nullable
+	public ProteinMatrix getMatrixByPPodId(final String pPodId) {
+		checkNotNull(pPodId);
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
+		return (ProteinMatrix) getSession()
+				.getNamedQuery(
+						ProteinMatrix.class.getSimpleName() + "-getByPPodId")
+				.setParameter("pPodId", pPodId)
+				.uniqueResult();
+	}
 }
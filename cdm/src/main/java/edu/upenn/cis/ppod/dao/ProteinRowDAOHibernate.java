@@ -15,20 +15,93 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
 
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.model.ProteinRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.SequenceCodec;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
 
 class ProteinRowDAOHibernate
 		extends GenericHibernateDAO<ProteinRow, Long>
 		implements IProteinRowDAO {
 
+	private static final SubsequenceReader subsequenceReader =
+			new SubsequenceReader(
+					SequenceCodec.PROTEIN,
+					ProteinMatrix.TABLE,
+					ProteinMatrix.ID_COLUMN,
+					ProteinRow.TABLE,
+					ProteinRow.ID_COLUMN);
+
+	private static final MatrixRowScroller rowScroller =
+			new MatrixRowScroller(
+					ProteinRow.class,
+					ProteinMatrix.TABLE,
+					ProteinMatrix.ID_COLUMN,
+					ProteinRow.TABLE,
+					ProteinRow.ID_COLUMN);
+
 	@Inject
 	ProteinRowDAOHibernate(final Session session) {
 		setSession(session);
 	}
 
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getOtuIdsIdsSequenceHashesByMatrix(
+			final ProteinMatrix matrix) {
+		checkNotNull(matrix);
+		return (List<Object[]>) getSession()
+				.createSQLQuery(
+						"select mr." + Otu.ID_COLUMN
+								+ ", r." + ProteinRow.ID_COLUMN
+								+ ", r.sequence_hash"
+								+ " from " + ProteinMatrix.TABLE + "_"
+								+ ProteinRow.TABLE + " mr"
+								+ " join " + ProteinRow.TABLE + " r"
+								+ " on r." + ProteinRow.ID_COLUMN
+								+ " = mr." + ProteinRow.ID_COLUMN
+								+ " where mr." + ProteinMatrix.ID_COLUMN
+								+ " = :matrixId")
+				.addScalar(Otu.ID_COLUMN, StandardBasicTypes.LONG)
+				.addScalar(ProteinRow.ID_COLUMN, StandardBasicTypes.LONG)
+				.addScalar("sequence_hash", StandardBasicTypes.STRING)
+				.setParameter("matrixId", matrix.getId())
+				.list();
+	}
+
+	public ScrollableResults scrollOtuIdsRowsByMatrix(
+			final ProteinMatrix matrix) {
+		checkNotNull(matrix);
+		return rowScroller.scrollOtuIdsRows(
+				getSession(),
+				checkNotNull(matrix.getId(), "matrix has not been flushed"));
+	}
+
+	public Map<Long, String> getSubsequencesByOtuId(
+			final ProteinMatrix matrix,
+			@CheckForNull final Collection<Long> otuIds,
+			final int start,
+			final int end) {
+		checkNotNull(matrix);
+		return subsequenceReader.getSubsequencesByOtuId(
+				getSession(),
+				checkNotNull(matrix.getId(), "matrix has not been flushed"),
+				otuIds,
+				start,
+				end);
+	}
+
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Date;
+
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.jdbc.Work;
+
+import com.google.inject.Inject;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.ProteinRow;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+final class SequenceBlobDAOHibernate
+		extends GenericHibernateDAO<SequenceBlob, Long>
+		implements ISequenceBlobDAO {
+
+	@Inject
+	SequenceBlobDAOHibernate(final Session session) {
+		setSession(session);
+	}
+
+	@CheckForNull
+	private SequenceBlob getByAlphabetAndHash(
+			final SequenceBlob.Alphabet alphabet,
+			final String hash,
+			final LockMode lockMode) {
+		return (SequenceBlob) getSession()
+				.getNamedQuery(
+						SequenceBlob.class.getSimpleName()
+								+ "-getByAlphabetAndHash")
+				.setParameter("alphabet", alphabet)
+				.setParameter("hash", hash)
+				.setLockMode("b", lockMode)
+				.uniqueResult();
+	}
+
+	public SequenceBlob getOrMakePersistent(
+			final SequenceBlob.Alphabet alphabet,
+			final String sequence) {
+		checkNotNull(alphabet);
+		checkNotNull(sequence);
+		final SequenceBlob storedBlob =
+				getByAlphabetAndHash(
+						alphabet,
+						ContentDigest.hexDigestOf(sequence),
+						LockMode.NONE);
+		if (storedBlob != null) {
+			return storedBlob;
+		}
+		return insertOrGet(new SequenceBlob(alphabet, sequence));
+	}
+
+	/**
+	 * Insert {@code newBlob} or, if someone else has stored the same sequence
+	 * since we looked, get theirs.
+	 * <p>
+	 * The insert is flushed by a session of its own inside of a savepoint so
+	 * that losing the race on the unique key costs neither our session nor
+	 * our transaction. The lookup after that is a locking read because a
+	 * plain one can be answered from a snapshot that's older than their
+	 * commit.
+	 * 
+	 * @param newBlob the sequence to store
+	 * 
+	 * @return {@code newBlob}, persistent in our session, or the one that was
+	 *         stored first
+	 */
+	SequenceBlob insertOrGet(final SequenceBlob newBlob) {
+		final ConstraintViolationException[] violation = { null };
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final Savepoint savepoint = connection.setSavepoint();
+				final Session insertSession =
+						getSession().getSessionFactory().openSession(
+								connection);
+				try {
+					insertSession.save(newBlob);
+					insertSession.flush();
+					connection.releaseSavepoint(savepoint);
+				} catch (final ConstraintViolationException e) {
+					connection.rollback(savepoint);
+					violation[0] = e;
+				} finally {
+					insertSession.close();
+				}
+			}
+		});
+		if (violation[0] == null) {
+			getSession().buildLockRequest(LockOptions.NONE).lock(newBlob);
+			return newBlob;
+		}
+		final SequenceBlob storedBlob =
+				getByAlphabetAndHash(
+						newBlob.getAlphabet(),
+						newBlob.getHash(),
+						LockMode.PESSIMISTIC_READ);
+		if (storedBlob == null) {
+			// Some other constraint
+			throw violation[0];
+		}
+		return storedBlob;
+	}
+
+	public int deleteUnreferenced(final Date createdBefore) {
+		checkNotNull(createdBefore);
+		// The chunks first, since they point to the blobs
+		getSession()
+				.createSQLQuery(
+						"delete from " + SequenceBlob.CHUNK_TABLE
+								+ " where " + unreferenced(SequenceBlob.CHUNK_TABLE)
+								+ " and " + SequenceBlob.ID_COLUMN
+								+ " in (select " + SequenceBlob.ID_COLUMN
+								+ " from " + SequenceBlob.TABLE
+								+ " where " + createdBefore() + ")")
+				.setTimestamp("createdBefore", createdBefore)
+				.executeUpdate();
+		return getSession()
+				.createSQLQuery(
+						"delete from " + SequenceBlob.TABLE
+								+ " where " + unreferenced(SequenceBlob.TABLE)
+								+ " and " + createdBefore())
+				.setTimestamp("createdBefore", createdBefore)
+				.executeUpdate();
+	}
+
+	/** Blobs from before we kept the time count as old. */
+	private static String createdBefore() {
+		return "(" + SequenceBlob.CREATED_COLUMN + " is null or "
+				+ SequenceBlob.CREATED_COLUMN + " < :createdBefore)";
+	}
+
+	/**
+	 * No subquery on the table we're deleting from, since MySQL doesn't allow
+	 * it.
+	 */
+	private static String unreferenced(final String table) {
+		return "not exists (select 1 from " + DnaRow.TABLE + " r"
+				+ " where r." + SequenceBlob.ID_COLUMN
+				+ " = " + table + "." + SequenceBlob.ID_COLUMN + ")"
+				+ " and not exists (select 1 from " + ProteinRow.TABLE + " r"
+				+ " where r." + SequenceBlob.ID_COLUMN
+				+ " = " + table + "." + SequenceBlob.ID_COLUMN + ")";
+	}
+}
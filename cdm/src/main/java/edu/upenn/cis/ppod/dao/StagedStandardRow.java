@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.util.List;
+import java.util.Set;
+
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+
+/**
+ * The cells of a {@link StandardRow} staged for a bulk write: a type and a set
+ * of states per column.
+ *
+ * @author Sam Donnelly
+ */
+public final class StagedStandardRow {
+
+	private final StandardRow row;
+	private final int firstPosition;
+	private final List<PPodCellType> types;
+	private final List<Set<StandardState>> states;
+
+	/**
+	 * @param row the row the cells belong to
+	 * @param expectedCells the number of cells we expect to stage
+	 */
+	public StagedStandardRow(final StandardRow row, final int expectedCells) {
+		this(row, 0, expectedCells);
+	}
+
+	/**
+	 * @param row the row the cells belong to
+	 * @param firstPosition the column of the first cell we're staging
+	 * @param expectedCells the number of cells we expect to stage
+	 */
+	public StagedStandardRow(
+			final StandardRow row,
+			final int firstPosition,
+			final int expectedCells) {
+		checkArgument(firstPosition >= 0, "firstPosition < 0");
+		this.row = checkNotNull(row);
+		this.firstPosition = firstPosition;
+		types = newArrayListWithCapacity(expectedCells);
+		states = newArrayListWithCapacity(expectedCells);
+	}
+
+	/**
+	 * Stage the next cell of the row.
+	 *
+	 * @param type the type of the cell
+	 * @param cellStates the states of the cell: empty for unassigned and
+	 *            inapplicable, one state for single, and more than one for
+	 *            polymorphic and uncertain cells
+	 */
+	public void addCell(
+			final PPodCellType type,
+			final Set<StandardState> cellStates) {
+		checkNotNull(type);
+		checkNotNull(cellStates);
+		switch (type) {
+			case UNASSIGNED:
+			case INAPPLICABLE:
+				checkArgument(cellStates.isEmpty(),
+						type + " cells can't have states");
+				break;
+			case SINGLE:
+				checkArgument(cellStates.size() == 1,
+						"SINGLE cells must have exactly one state");
+				break;
+			case POLYMORPHIC:
+			case UNCERTAIN:
+				checkArgument(
+						cellStates.size() > 1,
+						"POLYMORPIC AND UNCERTAIN must have greater than 1 element but elements has "
+								+ cellStates.size());
+				break;
+			default:
+				throw new AssertionError("unknown cell type");
+		}
+		types.add(type);
+		states.add(cellStates);
+	}
+
+	public StandardRow getRow() {
+		return row;
+	}
+
+	/**
+	 * The column of the first staged cell. {@link #getType(int)} and
+	 * {@link #getStates(int)} are relative to it.
+	 */
+	public int getFirstPosition() {
+		return firstPosition;
+	}
+
+	public int getCellCount() {
+		return types.size();
+	}
+
+	public PPodCellType getType(final int position) {
+		return types.get(position);
+	}
+
+	/**
+	 * Don't modify the returned set - that's undefined.
+	 */
+	public Set<StandardState> getStates(final int position) {
+		return states.get(position);
+	}
+}
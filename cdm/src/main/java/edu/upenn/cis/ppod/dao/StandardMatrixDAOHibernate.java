@@ -15,14 +15,19 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.List;
 
 import org.hibernate.Session;
 
 import com.google.inject.Inject;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
+
 import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.PPodIds;
 
 /**
  * A default {@link StandardMatrix} Hibernate DAO.
@@ -58,6 +63,19 @@ final class StandardMatrixDAOHibernate
 				.list();
 	}
 
+	@Nullable
+	public StandardMatrix getMatrixByPPodId(final String pPodId) {
+		checkNotNull(pPodId);
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
+		return (StandardMatrix) getSession()
+				.getNamedQuery(
+						StandardMatrix.class.getSimpleName() + "-getByPPodId")
+				.setParameter("pPodId", pPodId)
+				.uniqueResult();
+	}
+
 	public Long getPPodVersionById(final Long id) {
 		return (Long) getSession()
 				.getNamedQuery(
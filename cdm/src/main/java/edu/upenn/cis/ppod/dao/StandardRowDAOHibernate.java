@@ -15,13 +15,44 @@
  */
 package edu.upenn.cis.ppod.dao;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Lists.partition;
+import static com.google.common.collect.Sets.newHashSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.StandardBasicTypes;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.StandardCell;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
+import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
 
 /**
@@ -31,6 +62,29 @@ final class StandardRowDAOHibernate
 		extends GenericHibernateDAO<StandardRow, Long>
 		implements IStandardRowDAO {
 
+	/** Batch size to use if {@code hibernate.jdbc.batch_size} isn't set. */
+	private static final int DEFAULT_BATCH_SIZE = 30;
+
+	/** Keep our {@code in (...)} lists to a size that all databases accept. */
+	private static final int MAX_IN_LIST_SIZE = 500;
+
+	private static final String MATRIX_ROWS_TABLE =
+			StandardMatrix.TABLE + "_" + StandardRow.TABLE;
+
+	/** The ids of the rows of the matrix whose id is the parameter. */
+	private static final String MATRIX_ROW_IDS =
+			"select " + StandardRow.ID_COLUMN
+					+ " from " + MATRIX_ROWS_TABLE
+					+ " where " + StandardMatrix.ID_COLUMN + " = ?";
+
+	private static final MatrixRowScroller rowScroller =
+			new MatrixRowScroller(
+					StandardRow.class,
+					StandardMatrix.TABLE,
+					StandardMatrix.ID_COLUMN,
+					StandardRow.TABLE,
+					StandardRow.ID_COLUMN);
+
 	@Inject
 	StandardRowDAOHibernate(final Session session) {
 		setSession(session);
@@ -49,4 +103,535 @@ final class StandardRowDAOHibernate
 				.list();
 	}
 
+	public void deleteCellsByRowIds(final Collection<Long> rowIds) {
+		checkNotNull(rowIds);
+		if (rowIds.isEmpty()) {
+			return;
+		}
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				for (final List<Long> rowIdsChunk : partition(
+						newArrayList(rowIds), MAX_IN_LIST_SIZE)) {
+					deleteCells(connection, rowIdsChunk);
+				}
+			}
+		});
+	}
+
+	private static void deleteCells(
+			final Connection connection,
+			final List<Long> rowIds) throws SQLException {
+		executeUpdate(
+				connection,
+				"delete from " + StandardCell.TABLE
+						+ " where " + StandardRow.ID_COLUMN
+						+ " in " + inList(rowIds.size()),
+				rowIds);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getOtuIdsCellsFingerprintsByMatrix(
+			final StandardMatrix matrix) {
+		checkNotNull(matrix);
+		return (List<Object[]>) getSession()
+				.createSQLQuery(
+						"select mr." + Otu.ID_COLUMN
+								+ ", r.cells_fingerprint"
+								+ " from " + MATRIX_ROWS_TABLE + " mr"
+								+ " join " + StandardRow.TABLE + " r"
+								+ " on r." + StandardRow.ID_COLUMN
+								+ " = mr." + StandardRow.ID_COLUMN
+								+ " where mr." + StandardMatrix.ID_COLUMN
+								+ " = :matrixId")
+				.addScalar(Otu.ID_COLUMN, StandardBasicTypes.LONG)
+				.addScalar("cells_fingerprint", StandardBasicTypes.STRING)
+				.setParameter("matrixId", matrix.getId())
+				.list();
+	}
+
+	public ScrollableResults scrollOtuIdsRowsByMatrix(
+			final StandardMatrix matrix) {
+		checkNotNull(matrix);
+		return rowScroller.scrollOtuIdsRows(
+				getSession(),
+				checkNotNull(matrix.getId(), "matrix has not been flushed"));
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object[]> getOtuIdsIdsByMatrixAndOtuIds(
+			final StandardMatrix matrix,
+			final Collection<Long> otuIds) {
+		checkNotNull(matrix);
+		checkNotNull(otuIds);
+		final List<Object[]> otuIdsIds = newArrayList();
+		for (final List<Long> otuIdsChunk : partition(
+				newArrayList(otuIds), MAX_IN_LIST_SIZE)) {
+			otuIdsIds.addAll(
+					getSession()
+							.createSQLQuery(
+									"select mr." + Otu.ID_COLUMN
+											+ ", mr." + StandardRow.ID_COLUMN
+											+ " from " + MATRIX_ROWS_TABLE
+											+ " mr"
+											+ " where mr."
+											+ StandardMatrix.ID_COLUMN
+											+ " = :matrixId and mr."
+											+ Otu.ID_COLUMN
+											+ " in (:otuIds)")
+							.addScalar(Otu.ID_COLUMN, StandardBasicTypes.LONG)
+							.addScalar(
+									StandardRow.ID_COLUMN,
+									StandardBasicTypes.LONG)
+							.setParameter("matrixId", matrix.getId())
+							.setParameterList("otuIds", otuIdsChunk)
+							.list());
+		}
+		return otuIdsIds;
+	}
+
+	public void deleteCellsByMatrixAndPositions(
+			final StandardMatrix matrix,
+			final int firstPosition,
+			final int lastPosition) {
+		checkNotNull(matrix);
+		final long matrixId =
+				checkNotNull(matrix.getId(), "matrix has not been flushed");
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				executeUpdate(
+						connection,
+						"delete from " + StandardCell.TABLE
+								+ " where " + StandardRow.ID_COLUMN
+								+ " in (" + MATRIX_ROW_IDS + ")"
+								+ " and position >= ? and position <= ?",
+						matrixId,
+						firstPosition,
+						lastPosition);
+			}
+		});
+	}
+
+	public void shiftCellPositions(
+			final StandardMatrix matrix,
+			final int firstPosition,
+			final int lastPosition,
+			final int offset) {
+		checkNotNull(matrix);
+		final long matrixId =
+				checkNotNull(matrix.getId(), "matrix has not been flushed");
+		if (offset == 0 || firstPosition > lastPosition) {
+			return;
+		}
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final PreparedStatement statement =
+						connection.prepareStatement(
+								"update " + StandardCell.TABLE
+										+ " set position = position + ?"
+										+ " where " + StandardRow.ID_COLUMN
+										+ " in (" + MATRIX_ROW_IDS + ")"
+										+ " and position >= ?"
+										+ " and position <= ?");
+				try {
+					statement.setInt(1, offset);
+					statement.setLong(2, matrixId);
+					statement.setInt(3, firstPosition);
+					statement.setInt(4, lastPosition);
+					statement.executeUpdate();
+				} finally {
+					statement.close();
+				}
+			}
+		});
+	}
+
+	public void clearCellsFingerprints(final StandardMatrix matrix) {
+		checkNotNull(matrix);
+		final long matrixId =
+				checkNotNull(matrix.getId(), "matrix has not been flushed");
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				executeUpdate(
+						connection,
+						"update " + StandardRow.TABLE
+								+ " set obj_version = obj_version + 1,"
+								+ " cells_fingerprint = null"
+								+ " where " + StandardRow.ID_COLUMN
+								+ " in (" + MATRIX_ROW_IDS + ")",
+						matrixId);
+			}
+		});
+	}
+
+	public void insertCells(final List<StagedStandardRow> rows) {
+		checkNotNull(rows);
+		if (rows.isEmpty()) {
+			return;
+		}
+		final int batchSize = getBatchSize();
+
+		// The cells' ids come from where Hibernate gets them
+		final SessionImplementor session = (SessionImplementor) getSession();
+		final IdentifierGenerator cellIdGenerator =
+				session.getFactory().getIdentifierGenerator(
+						StandardCell.class.getName());
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final PreparedStatement insertCell =
+						connection.prepareStatement(
+								"insert into " + StandardCell.TABLE
+										+ " (" + StandardCell.ID_COLUMN
+										+ ", obj_version, position, "
+										+ StandardCell.TYPE_COLUMN + ", "
+										+ StandardState.ID_COLUMN + ", "
+										+ StandardCell.STATE_BITMASK_COLUMN
+										+ ", " + StandardRow.ID_COLUMN
+										+ ") values (?, 0, ?, ?, ?, ?, ?)");
+				try {
+					int batched = 0;
+					for (final StagedStandardRow row : rows) {
+						final Long rowId =
+								checkNotNull(
+										row.getRow().getId(),
+										"row has not been flushed");
+						for (int position = 0; position < row
+								.getCellCount(); position++) {
+							final PPodCellType type = row.getType(position);
+							insertCell.setLong(
+									1,
+									(Long) cellIdGenerator.generate(
+											session,
+											null));
+							insertCell.setInt(
+									2,
+									row.getFirstPosition() + position);
+							insertCell.setInt(3, type.ordinal());
+							if (type == PPodCellType.SINGLE) {
+								insertCell.setLong(
+										4,
+										getStateId(getOnlyElement(row
+												.getStates(position))));
+								insertCell.setLong(5, 0);
+							} else {
+								insertCell.setNull(4, Types.BIGINT);
+								insertCell.setLong(
+										5,
+										getStateBitmask(row
+												.getStates(position)));
+							}
+							insertCell.setLong(6, rowId);
+							insertCell.addBatch();
+							if (++batched % batchSize == 0) {
+								insertCell.executeBatch();
+							}
+						}
+					}
+					insertCell.executeBatch();
+				} finally {
+					insertCell.close();
+				}
+
+				final PreparedStatement updateRow =
+						connection.prepareStatement(
+								"update " + StandardRow.TABLE
+										+ " set obj_version = obj_version + 1,"
+										+ " cells_fingerprint = ?, "
+										+ StandardRow.PACKED_CELLS_COLUMN
+										+ " = null"
+										+ " where " + StandardRow.ID_COLUMN
+										+ " = ?");
+				try {
+					int batched = 0;
+					for (final StagedStandardRow row : rows) {
+						updateRow.setString(
+								1,
+								row.getRow().getCellsFingerprint());
+						updateRow.setLong(2, row.getRow().getId());
+						updateRow.addBatch();
+						if (++batched % batchSize == 0) {
+							updateRow.executeBatch();
+						}
+					}
+					updateRow.executeBatch();
+				} finally {
+					updateRow.close();
+				}
+			}
+		});
+	}
+
+	public void updatePackedCells(final List<StandardRow> rows) {
+		checkNotNull(rows);
+		if (rows.isEmpty()) {
+			return;
+		}
+		final int batchSize = getBatchSize();
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final PreparedStatement updateRow =
+						connection.prepareStatement(
+								"update " + StandardRow.TABLE
+										+ " set obj_version = obj_version + 1,"
+										+ " cells_fingerprint = ?, "
+										+ StandardRow.PACKED_CELLS_COLUMN
+										+ " = ?"
+										+ " where " + StandardRow.ID_COLUMN
+										+ " = ?");
+				try {
+					int batched = 0;
+					for (final StandardRow row : rows) {
+						updateRow.setString(1, row.getCellsFingerprint());
+						updateRow.setBytes(
+								2,
+								checkNotNull(
+										row.getPackedCells(),
+										"row has no packed cells"));
+						updateRow.setLong(
+								3,
+								checkNotNull(
+										row.getId(),
+										"row has not been flushed"));
+						updateRow.addBatch();
+						if (++batched % batchSize == 0) {
+							updateRow.executeBatch();
+						}
+					}
+					updateRow.executeBatch();
+				} finally {
+					updateRow.close();
+				}
+			}
+		});
+	}
+
+	public int packCells(final StandardMatrix matrix) {
+		checkNotNull(matrix);
+		final long matrixId =
+				checkNotNull(matrix.getId(), "matrix has not been flushed");
+		final int batchSize = getBatchSize();
+		final List<Long> rowIds = newArrayList();
+		getSession().doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final PreparedStatement selectRowIds =
+						connection.prepareStatement(
+								"select " + StandardRow.ID_COLUMN
+										+ " from " + StandardRow.TABLE
+										+ " where " + StandardRow.ID_COLUMN
+										+ " in (" + MATRIX_ROW_IDS + ")"
+										+ " and "
+										+ StandardRow.PACKED_CELLS_COLUMN
+										+ " is null");
+				try {
+					selectRowIds.setLong(1, matrixId);
+					final ResultSet rs = selectRowIds.executeQuery();
+					try {
+						while (rs.next()) {
+							rowIds.add(rs.getLong(1));
+						}
+					} finally {
+						rs.close();
+					}
+				} finally {
+					selectRowIds.close();
+				}
+				for (final List<Long> rowIdsChunk : partition(
+						rowIds, MAX_IN_LIST_SIZE)) {
+					packCells(connection, rowIdsChunk, batchSize);
+					deleteCells(connection, rowIdsChunk);
+				}
+			}
+		});
+		return rowIds.size();
+	}
+
+	/**
+	 * Read the stored cells of some rows in order, a row at a time, and write
+	 * them into the rows' packed cells.
+	 */
+	private static void packCells(
+			final Connection connection,
+			final List<Long> rowIds,
+			final int batchSize) throws SQLException {
+		final String rowIdsIn = inList(rowIds.size());
+
+		final PreparedStatement selectCells =
+				connection.prepareStatement(
+						"select c." + StandardRow.ID_COLUMN
+								+ ", c.position, c."
+								+ StandardCell.TYPE_COLUMN
+								+ ", s." + StandardState.STATE_NUMBER_COLUMN
+								+ ", c." + StandardCell.STATE_BITMASK_COLUMN
+								+ " from " + StandardCell.TABLE + " c"
+								+ " left join " + StandardState.TABLE + " s"
+								+ " on s." + StandardState.ID_COLUMN
+								+ " = c." + StandardState.ID_COLUMN
+								+ " where c." + StandardRow.ID_COLUMN
+								+ " in " + rowIdsIn
+								+ " order by c." + StandardRow.ID_COLUMN
+								+ ", c.position");
+		final PreparedStatement updateRow =
+				connection.prepareStatement(
+						"update " + StandardRow.TABLE
+								+ " set obj_version = obj_version + 1, "
+								+ StandardRow.PACKED_CELLS_COLUMN + " = ?"
+								+ " where " + StandardRow.ID_COLUMN + " = ?");
+		try {
+			setIds(selectCells, rowIds);
+			final ResultSet rs = selectCells.executeQuery();
+			try {
+				final PPodCellType[] types = PPodCellType.values();
+				final Set<Long> unpackedRowIds = newHashSet(rowIds);
+				final List<PPodStandardCell> cells = newArrayList();
+				Long rowId = null;
+				int batched = 0;
+				while (rs.next()) {
+					final Long cellRowId = rs.getLong(1);
+					if (!cellRowId.equals(rowId)) {
+						if (rowId != null) {
+							addPackedCells(updateRow, rowId, cells);
+							unpackedRowIds.remove(rowId);
+							if (++batched % batchSize == 0) {
+								updateRow.executeBatch();
+							}
+						}
+						rowId = cellRowId;
+						cells.clear();
+					}
+					final int position = rs.getInt(2);
+					checkState(
+							position == cells.size(),
+							"row " + rowId + " has no cell in column "
+									+ cells.size());
+					final PPodCellType type = types[rs.getInt(3)];
+					switch (type) {
+						case UNASSIGNED:
+						case INAPPLICABLE:
+							cells.add(PPodStandardCell.of(
+									type,
+									PPodStandardCell.EMPTY_STATES));
+							break;
+						case SINGLE:
+							cells.add(PPodStandardCell.of(
+									type,
+									ImmutableSet.of(rs.getInt(4))));
+							break;
+						case POLYMORPHIC:
+						case UNCERTAIN:
+							cells.add(PPodStandardCell.of(
+									type,
+									rs.getLong(5)));
+							break;
+						default:
+							throw new AssertionError("unknown cell type");
+					}
+				}
+				if (rowId != null) {
+					addPackedCells(updateRow, rowId, cells);
+					unpackedRowIds.remove(rowId);
+				}
+
+				// Rows without any cells
+				cells.clear();
+				for (final Long emptyRowId : unpackedRowIds) {
+					addPackedCells(updateRow, emptyRowId, cells);
+				}
+				updateRow.executeBatch();
+			} finally {
+				rs.close();
+			}
+		} finally {
+			updateRow.close();
+			selectCells.close();
+		}
+	}
+
+	private static void addPackedCells(
+			final PreparedStatement updateRow,
+			final Long rowId,
+			final List<PPodStandardCell> cells) throws SQLException {
+		updateRow.setBytes(1, StandardCellsCodec.encode(cells));
+		updateRow.setLong(2, rowId);
+		updateRow.addBatch();
+	}
+
+	private static void executeUpdate(
+			final Connection connection,
+			final String sql,
+			final List<Long> ids) throws SQLException {
+		final PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			setIds(statement, ids);
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static void setIds(
+			final PreparedStatement statement,
+			final List<Long> ids) throws SQLException {
+		int paramIdx = 0;
+		for (final Long id : ids) {
+			statement.setLong(++paramIdx, id);
+		}
+	}
+
+	private static void executeUpdate(
+			final Connection connection,
+			final String sql,
+			final long matrixId,
+			final int... positions) throws SQLException {
+		final PreparedStatement statement = connection.prepareStatement(sql);
+		try {
+			statement.setLong(1, matrixId);
+			int paramIdx = 1;
+			for (final int position : positions) {
+				statement.setInt(++paramIdx, position);
+			}
+			statement.executeUpdate();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private int getBatchSize() {
+		final int batchSize =
+				((SessionFactoryImplementor) getSession()
+						.getSessionFactory())
+						.getSettings()
+						.getJdbcBatchSize();
+		return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+	}
+
+	private static long getStateId(final StandardState state) {
+		return checkNotNull(state.getId(), "state has not been flushed")
+				.longValue();
+	}
+
+	private static long getStateBitmask(final Set<StandardState> states) {
+		final List<Integer> stateNumbers =
+				newArrayListWithCapacity(states.size());
+		for (final StandardState state : states) {
+			stateNumbers.add(state.getStateNumber());
+		}
+		return PPodStandardRow.toStateBitmask(stateNumbers);
+	}
+
+	private static String inList(final int size) {
+		final StringBuilder inList = new StringBuilder("(");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				inList.append(", ");
+			}
+			inList.append('?');
+		}
+		return inList.append(')').toString();
+	}
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ import java.util.Set;
 
 import org.hibernate.Session;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
@@ -31,6 +32,7 @@ import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.dto.PPodLabelAndId;
 import edu.upenn.cis.ppod.model.Study;
 import edu.upenn.cis.ppod.thirdparty.dao.hibernate.GenericHibernateDAO;
+import edu.upenn.cis.ppod.util.PPodIds;
 
 /**
  * An {@link IStudyDAO} Hibernate DAO.
@@ -41,6 +43,67 @@ final class StudyDAOHibernate
 		extends GenericHibernateDAO<Study, Long>
 		implements IStudyDAO {
 
+	/**
+	 * What {@link #getStudyByPPodIdEager(String)} runs: a query per
+	 * collection, joining in its elements. Joining them all into one query
+	 * would multiply the rows returned.
+	 */
+	private static final List<String> STUDY_FETCH_QUERIES =
+			ImmutableList.of(
+					"from Study s "
+							+ "left join fetch s.otuSets "
+							+ "where s = :study",
+					"from OtuSet os "
+							+ "left join fetch os.otus "
+							+ "where os.parent = :study",
+					"from OtuSet os "
+							+ "left join fetch os.standardMatrices "
+							+ "where os.parent = :study",
+					"from OtuSet os "
+							+ "left join fetch os.dnaMatrices "
+							+ "where os.parent = :study",
+					"from OtuSet os "
+							+ "left join fetch os.proteinMatrices "
+							+ "where os.parent = :study",
+					"from OtuSet os "
+							+ "left join fetch os.treeSets "
+							+ "where os.parent = :study",
+					"from StandardMatrix m "
+							+ "left join fetch m.characters "
+							+ "where m.parent.parent = :study",
+					"from StandardCharacter c "
+							+ "left join fetch c.states "
+							+ "where c.parent.parent.parent = :study",
+					"from StandardMatrix m "
+							+ "left join fetch m.rows "
+							+ "where m.parent.parent = :study",
+					"from StandardRow r "
+							+ "left join fetch r.cells "
+							+ "where r.parent.parent.parent = :study",
+					"from DnaMatrix m "
+							+ "left join fetch m.rows "
+							+ "where m.parent.parent = :study",
+					"from DnaRow r "
+							+ "left join fetch r.sequenceBlob "
+							+ "where r.parent.parent.parent = :study",
+					"from ProteinMatrix m "
+							+ "left join fetch m.rows "
+							+ "where m.parent.parent = :study",
+					"from ProteinRow r "
+							+ "left join fetch r.sequenceBlob "
+							+ "where r.parent.parent.parent = :study",
+					"from SequenceBlob b "
+							+ "left join fetch b.packedChunks "
+							+ "where b.id in ("
+							+ "select r.sequenceBlob.id from DnaRow r "
+							+ "where r.parent.parent.parent = :study) "
+							+ "or b.id in ("
+							+ "select r.sequenceBlob.id from ProteinRow r "
+							+ "where r.parent.parent.parent = :study)",
+					"from TreeSet ts "
+							+ "left join fetch ts.trees "
+							+ "where ts.parent.parent = :study");
+
 	@Inject
 	StudyDAOHibernate(final Session session) {
 		setSession(session);
@@ -69,6 +132,9 @@ final class StudyDAOHibernate
 	}
 
 	public Long getPPodVersionByPPodId(final String pPodId) {
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
 		return (Long) getSession()
 				.getNamedQuery("Study-getPPodVersionByPPodId")
 				// .setReadOnly(true)
@@ -78,6 +144,9 @@ final class StudyDAOHibernate
 
 	@Nullable
 	public Study getStudyByPPodId(@CheckForNull final String pPodId) {
+		if (!PPodIds.isPPodId(pPodId)) {
+			return null;
+		}
 		return (Study) getSession()
 				.getNamedQuery(
 						Study.class.getSimpleName() + "-getByPPodId")
@@ -95,24 +164,20 @@ final class StudyDAOHibernate
 				.uniqueResult();
 	}
 
-	public Study getStudyByPPodIdEager(final String pPodId) {
-
-		throw new UnsupportedOperationException();
-		// return (Study) getSession()
-		// .createCriteria(Study.class)
-		// .add(Restrictions.eq("pPodId", pPodId))
-		// .setFetchMode("otuSets", FetchMode.JOIN)
-		// .createCriteria("otuSets")
-		// .setFetchMode("otus", FetchMode.JOIN)
-		// .setFetchMode("matrices", FetchMode.JOIN)
-		// .setFetchMode("dnaSequenceSets", FetchMode.JOIN)
-		// .setFetchMode("treeSets", FetchMode.JOIN)
-		// .createCriteria("matrices")
-		// .setFetchMode("characters", FetchMode.JOIN)
-		// .setFetchMode("characterIdx", FetchMode.JOIN)
-		// .setFetchMode("otusToRows", FetchMode.JOIN)
-		// .createCriteria("otusToRows")
-		// .setFetchMode("otusToRows", FetchMode.JOIN)
-		// .uniqueResult();
+	@Nullable
+	public Study getStudyByPPodIdEager(@CheckForNull final String pPodId) {
+		final Study study = getStudyByPPodId(pPodId);
+		if (study == null) {
+			return null;
+		}
+		// Each query initializes one collection of every owner in the study,
+		// and we only want what they leave in the session.
+		for (final String fetchQuery : STUDY_FETCH_QUERIES) {
+			getSession()
+					.createQuery(fetchQuery)
+					.setParameter("study", study)
+					.list();
+		}
+		return study;
 	}
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.partition;
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.model.SequenceCodec;
+
+/**
+ * Reads part of the sequences of some rows of a DNA or protein matrix straight
+ * from the row and {@link SequenceBlob} tables, reading only the rows we want
+ * and only the chunks of chunked sequences that cover the part we want. A
+ * sequence that several rows share is read once.
+ * 
+ * @author Sam Donnelly
+ */
+final class SubsequenceReader {
+
+	/** Keep our {@code in (...)} lists to a size that all databases accept. */
+	private static final int MAX_IN_LIST_SIZE = 500;
+
+	private final SequenceCodec codec;
+
+	private final String selectRows;
+
+	private final String selectChunks;
+
+	/**
+	 * @param codec the codec the sequences are packed with
+	 * @param matrixTable the matrix table
+	 * @param matrixIdColumn the id column of the matrix table
+	 * @param rowTable the row table
+	 * @param rowIdColumn the id column of the row table
+	 */
+	SubsequenceReader(
+			final SequenceCodec codec,
+			final String matrixTable,
+			final String matrixIdColumn,
+			final String rowTable,
+			final String rowIdColumn) {
+		this.codec = checkNotNull(codec);
+		selectRows =
+				"select mr." + Otu.ID_COLUMN
+						+ ", r." + SequenceBlob.ID_COLUMN
+						+ ", b." + SequenceBlob.PACKED_SEQUENCE_COLUMN
+						+ ", r.sequence"
+						+ ", b." + SequenceBlob.LENGTH_COLUMN
+						+ " from " + matrixTable + "_" + rowTable + " mr"
+						+ " join " + rowTable + " r"
+						+ " on r." + rowIdColumn + " = mr." + rowIdColumn
+						+ " left join " + SequenceBlob.TABLE + " b"
+						+ " on b." + SequenceBlob.ID_COLUMN
+						+ " = r." + SequenceBlob.ID_COLUMN
+						+ " where mr." + matrixIdColumn + " = ?";
+		selectChunks =
+				"select " + SequenceBlob.ID_COLUMN
+						+ ", " + SequenceBlob.CHUNK_INDEX_COLUMN
+						+ ", " + SequenceBlob.PACKED_CHUNK_COLUMN
+						+ " from " + SequenceBlob.CHUNK_TABLE
+						+ " where " + SequenceBlob.CHUNK_INDEX_COLUMN
+						+ " >= ? and " + SequenceBlob.CHUNK_INDEX_COLUMN
+						+ " <= ? and " + SequenceBlob.ID_COLUMN + " in ";
+	}
+
+	/**
+	 * Get {@code sequence[start, end)} of some rows of a matrix.
+	 * 
+	 * @param session the session
+	 * @param matrixId the id of the matrix
+	 * @param otuIds the ids of the OTUs whose rows we want, or {@code null} for
+	 *            all of them
+	 * @param start the first residue
+	 * @param end one past the last residue
+	 * 
+	 * @return the subsequences by OTU id. Sequences that end before
+	 *         {@code end} are cut short.
+	 */
+	Map<Long, String> getSubsequencesByOtuId(
+			final Session session,
+			final long matrixId,
+			@CheckForNull final Collection<Long> otuIds,
+			final int start,
+			final int end) {
+		checkNotNull(session);
+		checkArgument(start >= 0, "start < 0");
+		checkArgument(start <= end, "start > end");
+		final Map<Long, String> subsequencesByOtuId = newHashMap();
+		session.doWork(new Work() {
+			public void execute(final Connection connection)
+					throws SQLException {
+				final Map<Long, String> subsequencesByBlobId = newHashMap();
+				final Map<Long, List<Long>> otuIdsByChunkedBlobId =
+						newHashMap();
+				final Map<Long, Integer> lengthsByChunkedBlobId = newHashMap();
+				if (otuIds == null) {
+					readRows(
+							connection,
+							matrixId,
+							null,
+							start,
+							end,
+							subsequencesByBlobId,
+							otuIdsByChunkedBlobId,
+							lengthsByChunkedBlobId,
+							subsequencesByOtuId);
+				} else {
+					for (final List<Long> otuIdsChunk : partition(
+							newArrayList(otuIds),
+							MAX_IN_LIST_SIZE)) {
+						readRows(
+								connection,
+								matrixId,
+								otuIdsChunk,
+								start,
+								end,
+								subsequencesByBlobId,
+								otuIdsByChunkedBlobId,
+								lengthsByChunkedBlobId,
+								subsequencesByOtuId);
+					}
+				}
+				for (final List<Long> blobIdsChunk : partition(
+						newArrayList(otuIdsByChunkedBlobId.keySet()),
+						MAX_IN_LIST_SIZE)) {
+					readChunks(
+							connection,
+							blobIdsChunk,
+							otuIdsByChunkedBlobId,
+							lengthsByChunkedBlobId,
+							start,
+							end,
+							subsequencesByOtuId);
+				}
+			}
+		});
+		return subsequencesByOtuId;
+	}
+
+	/**
+	 * Read the rows of the matrix whose OTUs are in {@code otuIds}, or all of
+	 * them if it's {@code null}. The subsequences of the rows whose sequences
+	 * are stored whole are put into {@code subsequencesByOtuId} as we go. The
+	 * OTUs of the rows whose sequences are chunked are put into
+	 * {@code otuIdsByChunkedBlobId}, and the lengths of those sequences into
+	 * {@code lengthsByChunkedBlobId}, so that their chunks can be read later.
+	 */
+	private void readRows(
+			final Connection connection,
+			final long matrixId,
+			@CheckForNull final List<Long> otuIds,
+			final int start,
+			final int end,
+			final Map<Long, String> subsequencesByBlobId,
+			final Map<Long, List<Long>> otuIdsByChunkedBlobId,
+			final Map<Long, Integer> lengthsByChunkedBlobId,
+			final Map<Long, String> subsequencesByOtuId) throws SQLException {
+		final PreparedStatement rowsStatement =
+				connection.prepareStatement(
+						otuIds == null
+								? selectRows
+								: selectRows + " and mr." + Otu.ID_COLUMN
+										+ " in " + inList(otuIds.size()));
+		try {
+			rowsStatement.setLong(1, matrixId);
+			if (otuIds != null) {
+				int paramIdx = 1;
+				for (final Long otuId : otuIds) {
+					rowsStatement.setLong(++paramIdx, otuId);
+				}
+			}
+			final ResultSet rows = rowsStatement.executeQuery();
+			try {
+				while (rows.next()) {
+					final Long otuId = rows.getLong(1);
+					final long blobId = rows.getLong(2);
+					if (rows.wasNull()) {
+						// Stored before we kept sequence blobs
+						final String sequence = rows.getString(4);
+						if (sequence != null) {
+							subsequencesByOtuId.put(
+									otuId,
+									substring(sequence, start, end));
+						}
+						continue;
+					}
+					if (subsequencesByBlobId.containsKey(blobId)) {
+						subsequencesByOtuId.put(
+								otuId,
+								subsequencesByBlobId.get(blobId));
+						continue;
+					}
+					final byte[] packedSequence = rows.getBytes(3);
+					if (packedSequence != null) {
+						final String subsequence =
+								substring(
+										codec.decode(packedSequence),
+										start,
+										end);
+						subsequencesByBlobId.put(blobId, subsequence);
+						subsequencesByOtuId.put(otuId, subsequence);
+					} else {
+						List<Long> blobOtuIds =
+								otuIdsByChunkedBlobId.get(blobId);
+						if (blobOtuIds == null) {
+							blobOtuIds = newArrayList();
+							otuIdsByChunkedBlobId.put(blobId, blobOtuIds);
+							lengthsByChunkedBlobId.put(blobId, rows.getInt(5));
+						}
+						blobOtuIds.add(otuId);
+					}
+				}
+			} finally {
+				rows.close();
+			}
+		} finally {
+			rowsStatement.close();
+		}
+	}
+
+	/**
+	 * Read the chunks that cover {@code [start, end)} of the chunked sequences
+	 * {@code blobIds}, with {@code end} cut back to the longest of them so
+	 * that we never ask for, or make room for, residues that aren't there.
+	 */
+	private void readChunks(
+			final Connection connection,
+			final List<Long> blobIds,
+			final Map<Long, List<Long>> otuIdsByBlobId,
+			final Map<Long, Integer> lengthsByBlobId,
+			final int start,
+			final int end,
+			final Map<Long, String> subsequencesByOtuId) throws SQLException {
+		int maxLength = 0;
+		for (final Long blobId : blobIds) {
+			maxLength = Math.max(maxLength, lengthsByBlobId.get(blobId));
+		}
+		final int chunksEnd = Math.min(end, maxLength);
+		final Map<Long, StringBuilder> residuesByBlobId = newHashMap();
+		final int firstChunk = start / SequenceCodec.CHUNK_LENGTH;
+		final int firstChunkStart = firstChunk * SequenceCodec.CHUNK_LENGTH;
+		if (start < chunksEnd) {
+			final int lastChunk = (chunksEnd - 1) / SequenceCodec.CHUNK_LENGTH;
+			final PreparedStatement chunksStatement =
+					connection.prepareStatement(selectChunks
+							+ inList(blobIds.size())
+							+ " order by " + SequenceBlob.CHUNK_INDEX_COLUMN);
+			try {
+				chunksStatement.setInt(1, firstChunk);
+				chunksStatement.setInt(2, lastChunk);
+				int paramIdx = 2;
+				for (final Long blobId : blobIds) {
+					chunksStatement.setLong(++paramIdx, blobId);
+				}
+				final ResultSet chunks = chunksStatement.executeQuery();
+				try {
+					while (chunks.next()) {
+						final Long blobId = chunks.getLong(1);
+						final String residues = codec.decode(chunks.getBytes(3));
+						StringBuilder blobResidues =
+								residuesByBlobId.get(blobId);
+						if (blobResidues == null) {
+							blobResidues =
+									new StringBuilder(
+											(lastChunk - chunks.getInt(2) + 1)
+													* residues.length());
+							residuesByBlobId.put(blobId, blobResidues);
+						}
+						blobResidues.append(residues);
+					}
+				} finally {
+					chunks.close();
+				}
+			} finally {
+				chunksStatement.close();
+			}
+		}
+		for (final Long blobId : blobIds) {
+			final StringBuilder residues = residuesByBlobId.get(blobId);
+			final String subsequence =
+					residues == null
+							? ""
+							: substring(
+									residues.toString(),
+									start - firstChunkStart,
+									end - firstChunkStart);
+			for (final Long otuId : otuIdsByBlobId.get(blobId)) {
+				subsequencesByOtuId.put(otuId, subsequence);
+			}
+		}
+	}
+
+	/** A parameter list {@code (?, ?, ...)} of {@code size} parameters. */
+	private static String inList(final int size) {
+		final StringBuilder inList = new StringBuilder("(");
+		for (int i = 0; i < size; i++) {
+			inList.append(i == 0 ? "?" : ", ?");
+		}
+		return inList.append(")").toString();
+	}
+
+	private static String substring(
+			final String sequence,
+			final int start,
+			final int end) {
+		return sequence.substring(
+				Math.min(start, sequence.length()),
+				Math.min(end, sequence.length()));
+	}
+}
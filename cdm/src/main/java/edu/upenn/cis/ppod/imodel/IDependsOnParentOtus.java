@@ -16,11 +16,15 @@
 package edu.upenn.cis.ppod.imodel;
 
 import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.OtuSetDelta;
 
 public interface IDependsOnParentOtus extends IChild<OtuSet> {
 
 	/**
-	 * Signal to the child that the otus may have changed - added or deleted.
+	 * Signal to the child that the otus have changed - added, removed, or
+	 * moved.
+	 * 
+	 * @param delta how the otus changed
 	 */
-	void updateOtus();
+	void updateOtus(OtuSetDelta delta);
 }
@@ -28,6 +28,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.MapKeyJoinColumn;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.Version;
@@ -40,6 +41,9 @@ import edu.upenn.cis.ppod.util.UPennCisPPodUtil;
  * 
  * @author Sam Donnelly
  */
+@NamedQuery(
+		name = "DnaMatrix-getByPPodId",
+		query = "select m from DnaMatrix m where m.pPodId = :pPodId")
 @Entity
 @Table(name = DnaMatrix.TABLE)
 public class DnaMatrix extends Matrix<DnaRow> {
@@ -69,7 +73,18 @@ public class DnaMatrix extends Matrix<DnaRow> {
 		return id;
 	}
 
-	@OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+	/**
+	 * We want everything but SAVE_UPDATE (which ALL will give us) - once it's
+	 * evicted out of the persistence context, we don't want it back in via
+	 * cascading UPDATE. So that we can run leaner for large matrices.
+	 */
+	@OneToMany(cascade = {
+			CascadeType.PERSIST,
+			CascadeType.MERGE,
+			CascadeType.REMOVE,
+			CascadeType.DETACH,
+			CascadeType.REFRESH },
+			orphanRemoval = true)
 	@JoinTable(name = TABLE + "_" + DnaRow.TABLE,
 			joinColumns = @JoinColumn(name = ID_COLUMN),
 			inverseJoinColumns = @JoinColumn(name = DnaRow.ID_COLUMN))
@@ -112,7 +127,7 @@ public class DnaMatrix extends Matrix<DnaRow> {
 		this.version = version;
 	}
 
-	public void updateOtus() {
-		UPennCisPPodUtil.updateOtus(getParent(), rows);
+	public void updateOtus(final OtuSetDelta delta) {
+		UPennCisPPodUtil.updateOtus(delta, rows);
 	}
 }
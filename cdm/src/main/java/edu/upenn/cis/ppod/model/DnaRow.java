@@ -15,6 +15,11 @@
  */
 package edu.upenn.cis.ppod.model;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -24,11 +29,16 @@ import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.imodel.IChild;
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 /**
  * A row of {@link DnaCell}s.
@@ -36,6 +46,7 @@ import edu.upenn.cis.ppod.imodel.IChild;
  * @author Sam Donnelly
  */
 @Entity
+@Access(AccessType.PROPERTY)
 @Table(name = DnaRow.TABLE)
 public class DnaRow implements IChild<DnaMatrix> {
 
@@ -52,13 +63,36 @@ public class DnaRow implements IChild<DnaMatrix> {
 	@CheckForNull
 	private DnaMatrix parent;
 
+	/**
+	 * The sequence of rows that were stored before we kept
+	 * {@link #sequenceBlob}. Field access so that loading a row doesn't go
+	 * through {@link #setSequenceBlob(SequenceBlob)} and recompute {@link #sequenceHash}.
+	 */
+	@Access(AccessType.FIELD)
+	@Lob
+	@Column(name = "sequence")
 	@CheckForNull
 	private String sequence;
 
+	/**
+	 * Field access so that loading a row that was stored before we kept it
+	 * doesn't go through {@link #setSequenceBlob(SequenceBlob)}, which doesn't
+	 * take {@code null}.
+	 */
+	@Access(AccessType.FIELD)
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = SequenceBlob.ID_COLUMN)
+	@CheckForNull
+	private SequenceBlob sequenceBlob;
+
+	@CheckForNull
+	private String sequenceHash;
+
 	public DnaRow() {}
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
@@ -72,13 +106,47 @@ public class DnaRow implements IChild<DnaMatrix> {
 		return parent;
 	}
 
-	@Lob
-	@Column(nullable = false)
+	/**
+	 * Get the sequence, unpacking it if it's packed. It isn't kept unpacked,
+	 * so hold on to the returned value rather than calling this repeatedly.
+	 * 
+	 * @return the sequence
+	 */
+	@Transient
 	@Nullable
 	public String getSequence() {
+		if (sequenceBlob != null) {
+			return sequenceBlob.getSequence();
+		}
 		return sequence;
 	}
 
+	/**
+	 * Get the stored sequence, which other rows may share.
+	 * 
+	 * @return the stored sequence, or {@code null} for rows stored before we
+	 *         kept it
+	 */
+	@Transient
+	@CheckForNull
+	public SequenceBlob getSequenceBlob() {
+		return sequenceBlob;
+	}
+
+	/**
+	 * Get the {@link ContentDigest#hexDigestOf(String) digest} of the
+	 * sequence, so that an incoming sequence can be compared with this one
+	 * without loading it. Will be {@code null} for rows stored before we kept
+	 * the digest.
+	 *
+	 * @return the digest of the sequence
+	 */
+	@Column(name = "sequence_hash", length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	public String getSequenceHash() {
+		return sequenceHash;
+	}
+
 	/**
 	 * @return the version
 	 */
@@ -99,8 +167,30 @@ public class DnaRow implements IChild<DnaMatrix> {
 		this.parent = parent;
 	}
 
-	public void setSequence(final String sequence) {
-		this.sequence = sequence;
+	/**
+	 * Set the sequence and its {@link #getSequenceHash() digest}.
+	 * <p>
+	 * Rows with the same sequence should share a {@code SequenceBlob}, so a
+	 * persistent one should be looked up before making a new one.
+	 * 
+	 * @param sequenceBlob the sequence
+	 * 
+	 * @throws IllegalArgumentException if {@code sequenceBlob} isn't a
+	 *             {@link SequenceBlob.Alphabet#DNA} sequence
+	 */
+	public void setSequenceBlob(final SequenceBlob sequenceBlob) {
+		checkNotNull(sequenceBlob);
+		checkArgument(
+				sequenceBlob.getAlphabet() == SequenceBlob.Alphabet.DNA,
+				"not a DNA sequence");
+		this.sequenceBlob = sequenceBlob;
+		this.sequence = null;
+		this.sequenceHash = sequenceBlob.getHash();
+	}
+
+	@SuppressWarnings("unused")
+	private void setSequenceHash(@CheckForNull final String sequenceHash) {
+		this.sequenceHash = sequenceHash;
 	}
 
 	/**
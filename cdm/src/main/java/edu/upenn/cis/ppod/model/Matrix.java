@@ -27,6 +27,7 @@ import javax.persistence.Transient;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.imodel.IDependsOnParentOtus;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 /**
  * A matrix is a set of OTU-keyed rows with column header pPOD versions which
@@ -45,6 +46,9 @@ public abstract class Matrix<R>
 	/** Label column. */
 	public static final String LABEL_COLUMN = "label";
 
+	@CheckForNull
+	private String contentDigest;
+
 	/** Free-form description. */
 	@CheckForNull
 	private String description;
@@ -62,6 +66,19 @@ public abstract class Matrix<R>
 	/** Default constructor. */
 	Matrix() {}
 
+	/**
+	 * The digest of the incoming matrix this matrix was last merged from, or
+	 * {@code null} if that's not known. An upload whose matrix has the same
+	 * digest can leave this matrix alone.
+	 * 
+	 * @return the content digest
+	 */
+	@Column(name = "content_digest", length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	public String getContentDigest() {
+		return contentDigest;
+	}
+
 	/**
 	 * Getter.
 	 * 
@@ -127,6 +144,16 @@ public abstract class Matrix<R>
 	@Nullable
 	public abstract void putRow(final Otu otu, final R row);
 
+	/**
+	 * Set the digest of the incoming matrix this matrix was just merged from.
+	 * Should be set to {@code null} when this matrix is changed any other way.
+	 * 
+	 * @param contentDigest the digest, or {@code null} if it's not known
+	 */
+	public void setContentDigest(@CheckForNull final String contentDigest) {
+		this.contentDigest = contentDigest;
+	}
+
 	/**
 	 * Setter.
 	 * 
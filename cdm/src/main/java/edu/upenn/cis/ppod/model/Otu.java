@@ -24,12 +24,14 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.dto.ILabeled;
 import edu.upenn.cis.ppod.imodel.IChild;
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
 
 /**
  * Operational Taxonomic Unit.
@@ -74,7 +76,8 @@ public class Otu
 	}
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
@@ -21,9 +21,11 @@ import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
 import static com.google.common.collect.Sets.newHashSet;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.CascadeType;
@@ -43,12 +45,14 @@ import javax.persistence.Version;
 import org.hibernate.annotations.Index;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.dto.ILabeled;
 import edu.upenn.cis.ppod.imodel.IChild;
 import edu.upenn.cis.ppod.imodel.IDependsOnParentOtus;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 /**
  * A set of OTUs, standard matrices, dna matrices, and protein matrices.
@@ -85,6 +89,9 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 	@CheckForNull
 	private String description;
 
+	@CheckForNull
+	private String contentDigest;
+
 	private List<StandardMatrix> standardMatrices = newArrayList();
 
 	private List<DnaMatrix> dnaMatrices = newArrayList();
@@ -133,6 +140,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		dnaMatrices.add(matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	public void addDnaMatrix(
@@ -146,6 +154,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		dnaMatrices.add(pos, matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	/**
@@ -203,8 +212,9 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 	 */
 	public void addOtu(final Otu otu) {
 		checkNotNull(otu);
+		final List<Otu> oldOtus = newArrayList(otus);
 		addOtuWithoutUpdateOtusOnChildren(otu);
-		updateOtusOnChildren();
+		updateOtusOnChildren(OtuSetDelta.between(oldOtus, otus));
 	}
 
 	private void addOtuWithoutUpdateOtusOnChildren(final Otu otu) {
@@ -224,6 +234,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		proteinMatrices.add(pos, matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	public void addProteinMatrix(final ProteinMatrix matrix) {
@@ -234,6 +245,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		proteinMatrices.add(matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	/**
@@ -261,6 +273,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		standardMatrices.add(pos, matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	/** {@inheritDoc} */
@@ -273,6 +286,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ matrix.getLabel() + "]");
 		standardMatrices.add(matrix);
 		matrix.setParent(this);
+		updateOtusOnNewChild(matrix);
 	}
 
 	/**
@@ -293,6 +307,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ treeSet.getLabel() + "]");
 		treeSets.add(treeSetPos, treeSet);
 		treeSet.setParent(this);
+		updateOtusOnNewChild(treeSet);
 	}
 
 	/** {@inheritDoc} */
@@ -304,6 +319,7 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 						+ treeSet.getLabel() + "]");
 		treeSets.add(treeSet);
 		treeSet.setParent(this);
+		updateOtusOnNewChild(treeSet);
 	}
 
 	private void checkForDuplicateOtuLabels(
@@ -325,29 +341,56 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 		}
 	}
 
+	private void checkForDuplicateOtuLabels(final List<? extends Otu> otus) {
+		final Map<String, Otu> otusByLabel =
+				newHashMapWithExpectedSize(otus.size());
+		for (final Otu otu : otus) {
+			final Otu dupNameOtu = otusByLabel.put(otu.getLabel(), otu);
+			if (dupNameOtu == null || otu.equals(dupNameOtu)) {
+
+			} else {
+				checkArgument(false, "OtuSet labeled '" + getLabel()
+									+ "' already has an Otu labeled '"
+									+ otu.getLabel() + "'");
+			}
+		}
+	}
+
 	/**
-	 * Set this OTU set's OTUs, calls updateOtus on dependent children.
+	 * Set this OTU set's OTUs, calls updateOtus on dependent children with
+	 * the {@link OtuSetDelta delta} between the old and new OTUs.
+	 * <p>
+	 * Does nothing beyond checking labels if {@code otus} are already this OTU
+	 * set's OTUs, in order, so that an unchanged OTU set doesn't drag in the
+	 * rows of its matrices.
 	 * <p>
 	 * Takes care of both sides of the OTU set <-> OTU relationship.
 	 * 
 	 * @param otus the otus to assign to this OTU set
+	 * 
+	 * @return how the otus changed
 	 */
-	public void clearAndAddOtus(final List<? extends Otu> otus) {
+	public OtuSetDelta clearAndAddOtus(final List<? extends Otu> otus) {
 		checkNotNull(otus);
+		checkForDuplicateOtuLabels(otus);
 
-		final List<Otu> removedOtus = newArrayList(this.otus);
-		removedOtus.removeAll(otus);
+		final OtuSetDelta delta = OtuSetDelta.between(this.otus, otus);
+		if (delta.isEmpty()) {
+			return delta;
+		}
 
-		for (final Otu removedOtu : removedOtus) {
+		for (final Otu removedOtu : delta.getRemovedOtus()) {
 			removedOtu.setParent(null);
 		}
 
 		this.otus.clear();
 
 		for (final Otu otu : otus) {
-			addOtuWithoutUpdateOtusOnChildren(otu);
+			this.otus.add(otu);
+			otu.setParent(this);
 		}
-		updateOtusOnChildren();
+		updateOtusOnChildren(delta);
+		return delta;
 	}
 
 	@Transient
@@ -365,11 +408,25 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 		final Set<IDependsOnParentOtus> children = newHashSet();
 		children.addAll(getStandardMatrices());
 		children.addAll(getDnaMatrices());
+		children.addAll(getProteinMatrices());
 		children.addAll(getTreeSets());
 		// children.addAll(getDnaSequenceSets());
 		return children;
 	}
 
+	/**
+	 * The digest of the incoming OTU set this OTU set was last merged from, or
+	 * {@code null} if that's not known. An upload whose OTU set has the same
+	 * digest can leave this OTU set alone.
+	 * 
+	 * @return the content digest
+	 */
+	@Column(name = "content_digest", length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	public String getContentDigest() {
+		return contentDigest;
+	}
+
 	/**
 	 * Get the description.
 	 * 
@@ -576,6 +633,16 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 		treeSet.setParent(null);
 	}
 
+	/**
+	 * Set the digest of the incoming OTU set this OTU set was just merged from.
+	 * Should be set to {@code null} when this OTU set is changed any other way.
+	 * 
+	 * @param contentDigest the digest, or {@code null} if it's not known
+	 */
+	public void setContentDigest(@CheckForNull final String contentDigest) {
+		this.contentDigest = contentDigest;
+	}
+
 	/**
 	 * Set the description.
 	 * 
@@ -640,9 +707,20 @@ public class OtuSet extends UuPPodEntity implements ILabeled {
 		this.version = version;
 	}
 
-	private void updateOtusOnChildren() {
+	/**
+	 * A new child hasn't seen any of our OTUs yet, so they're all added as far
+	 * as it's concerned.
+	 */
+	private void updateOtusOnNewChild(final IDependsOnParentOtus child) {
+		child.updateOtus(OtuSetDelta.between(ImmutableList.<Otu> of(), otus));
+	}
+
+	private void updateOtusOnChildren(final OtuSetDelta delta) {
+		if (delta.isEmpty()) {
+			return;
+		}
 		for (final IDependsOnParentOtus child : getDependentChildren()) {
-			child.updateOtus();
+			child.updateOtus(delta);
 		}
 	}
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+import static com.google.common.collect.Sets.newHashSetWithExpectedSize;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.upenn.cis.ppod.imodel.IDependsOnParentOtus;
+
+/**
+ * How the OTUs of an {@link OtuSet} changed: which OTUs were added, which were
+ * removed, and which are still there but at a different position. This is
+ * what gets pushed to the {@link IDependsOnParentOtus} children of an OTU set
+ * so that they only have to look at the OTUs that changed.
+ * 
+ * @author Sam Donnelly
+ */
+public final class OtuSetDelta {
+
+	/**
+	 * Compute the delta between two lists of OTUs in a single pass over each.
+	 * 
+	 * @param oldOtus the OTUs before
+	 * @param newOtus the OTUs after
+	 * 
+	 * @return the delta between {@code oldOtus} and {@code newOtus}
+	 */
+	static OtuSetDelta between(
+			final List<? extends Otu> oldOtus,
+			final List<? extends Otu> newOtus) {
+		checkNotNull(oldOtus);
+		checkNotNull(newOtus);
+
+		final Map<Otu, Integer> oldPositions =
+				newHashMapWithExpectedSize(oldOtus.size());
+		int oldPos = -1;
+		for (final Otu oldOtu : oldOtus) {
+			oldPos++;
+			oldPositions.put(oldOtu, oldPos);
+		}
+
+		final ImmutableList.Builder<Otu> addedOtus = ImmutableList.builder();
+		final ImmutableList.Builder<Otu> movedOtus = ImmutableList.builder();
+		final Set<Otu> newOtusSet = newHashSetWithExpectedSize(newOtus.size());
+		int newPos = -1;
+		for (final Otu newOtu : newOtus) {
+			newPos++;
+			newOtusSet.add(newOtu);
+			final Integer oldOtuPos = oldPositions.get(newOtu);
+			if (oldOtuPos == null) {
+				addedOtus.add(newOtu);
+			} else if (oldOtuPos.intValue() != newPos) {
+				movedOtus.add(newOtu);
+			}
+		}
+
+		final ImmutableList.Builder<Otu> removedOtus = ImmutableList.builder();
+		for (final Otu oldOtu : oldOtus) {
+			if (!newOtusSet.contains(oldOtu)) {
+				removedOtus.add(oldOtu);
+			}
+		}
+
+		return new OtuSetDelta(
+				addedOtus.build(),
+				removedOtus.build(),
+				movedOtus.build());
+	}
+
+	private final List<Otu> addedOtus;
+	private final List<Otu> removedOtus;
+	private final List<Otu> movedOtus;
+
+	private OtuSetDelta(
+			final List<Otu> addedOtus,
+			final List<Otu> removedOtus,
+			final List<Otu> movedOtus) {
+		this.addedOtus = addedOtus;
+		this.removedOtus = removedOtus;
+		this.movedOtus = movedOtus;
+	}
+
+	/**
+	 * Get the OTUs that were added, in their new order.
+	 * 
+	 * @return the OTUs that were added
+	 */
+	public List<Otu> getAddedOtus() {
+		return addedOtus;
+	}
+
+	/**
+	 * Get the OTUs that are still there, but at a different position, in
+	 * their new order.
+	 * 
+	 * @return the OTUs that were moved
+	 */
+	public List<Otu> getMovedOtus() {
+		return movedOtus;
+	}
+
+	/**
+	 * Get the OTUs that were removed, in their old order.
+	 * 
+	 * @return the OTUs that were removed
+	 */
+	public List<Otu> getRemovedOtus() {
+		return removedOtus;
+	}
+
+	/**
+	 * Did anything change?
+	 * 
+	 * @return {@code true} if no OTUs were added, removed, or moved
+	 */
+	public boolean isEmpty() {
+		return addedOtus.isEmpty() && removedOtus.isEmpty()
+				&& movedOtus.isEmpty();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.hibernate.usertype.UserType;
+
+import com.google.common.base.Objects;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.util.PPodIds;
+
+/**
+ * Keeps a pPOD ID, which is a {@code String} in Java, as its
+ * {@link PPodIds#BINARY_LENGTH} bytes in the database.
+ * <p>
+ * Queries that compare a pPOD ID property to a named parameter get the
+ * parameter converted too, so {@code setParameter("pPodId", pPodId)} with the
+ * string form works.
+ *
+ * @author Sam Donnelly
+ */
+// Hibernate 3.6 has no undeprecated nullSafeGet and nullSafeSet to implement
+@SuppressWarnings("deprecation")
+public final class PPodIdUserType implements UserType {
+
+	private static final int[] SQL_TYPES = { Types.BINARY };
+
+	public Object assemble(
+			final Serializable cached,
+			@CheckForNull final Object owner) {
+		return cached;
+	}
+
+	public Object deepCopy(@CheckForNull final Object value) {
+		return value;
+	}
+
+	public Serializable disassemble(final Object value) {
+		return (Serializable) value;
+	}
+
+	public boolean equals(
+			@CheckForNull final Object x,
+			@CheckForNull final Object y) {
+		return Objects.equal(x, y);
+	}
+
+	public int hashCode(final Object x) {
+		return x.hashCode();
+	}
+
+	public boolean isMutable() {
+		return false;
+	}
+
+	@CheckForNull
+	public Object nullSafeGet(
+			final ResultSet rs,
+			final String[] names,
+			@CheckForNull final Object owner) throws SQLException {
+		final byte[] bytes = rs.getBytes(names[0]);
+		if (bytes == null) {
+			return null;
+		}
+		return PPodIds.toString(bytes);
+	}
+
+	public void nullSafeSet(
+			final PreparedStatement st,
+			@CheckForNull final Object value,
+			final int index) throws SQLException {
+		if (value == null) {
+			st.setNull(index, Types.BINARY);
+		} else {
+			st.setBytes(index, PPodIds.toBytes((String) value));
+		}
+	}
+
+	public Object replace(
+			final Object original,
+			@CheckForNull final Object target,
+			@CheckForNull final Object owner) {
+		return original;
+	}
+
+	public Class<?> returnedClass() {
+		return String.class;
+	}
+
+	public int[] sqlTypes() {
+		return SQL_TYPES;
+	}
+}
@@ -28,6 +28,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.MapKeyJoinColumn;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.Version;
@@ -35,6 +36,9 @@ import javax.persistence.Version;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.util.UPennCisPPodUtil;
 
+@NamedQuery(
+		name = "ProteinMatrix-getByPPodId",
+		query = "select m from ProteinMatrix m where m.pPodId = :pPodId")
 @Entity
 @Table(name = ProteinMatrix.TABLE)
 public class ProteinMatrix
@@ -65,7 +69,18 @@ public class ProteinMatrix
 		return id;
 	}
 
-	@OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+	/**
+	 * We want everything but SAVE_UPDATE (which ALL will give us) - once it's
+	 * evicted out of the persistence context, we don't want it back in via
+	 * cascading UPDATE. So that we can run leaner for large matrices.
+	 */
+	@OneToMany(cascade = {
+			CascadeType.PERSIST,
+			CascadeType.MERGE,
+			CascadeType.REMOVE,
+			CascadeType.DETACH,
+			CascadeType.REFRESH },
+			orphanRemoval = true)
 	@JoinTable(name = TABLE + "_" + ProteinRow.TABLE,
 			joinColumns = @JoinColumn(name = ID_COLUMN),
 			inverseJoinColumns = @JoinColumn(name = ProteinRow.ID_COLUMN))
@@ -102,7 +117,7 @@ public class ProteinMatrix
 		this.version = version;
 	}
 
-	public void updateOtus() {
-		UPennCisPPodUtil.updateOtus(getParent(), rows);
+	public void updateOtus(final OtuSetDelta delta) {
+		UPennCisPPodUtil.updateOtus(delta, rows);
 	}
 }
@@ -80,12 +80,20 @@ abstract class Row<C extends StandardCell, M extends Matrix<?>>
 	 */
 	public abstract void clearAndAddCells(final List<? extends C> cells);
 
-	void setCellsHelper(
+	/**
+	 * Set the cells of this row and their positions.
+	 * 
+	 * @param cells the cells
+	 * 
+	 * @return {@code true} if the cells changed, {@code false} if they were
+	 *         already {@code cells}
+	 */
+	boolean setCellsHelper(
 			final List<? extends C> cells) {
 		checkNotNull(cells);
 
 		if (cells.equals(getCells())) {
-			return;
+			return false;
 		}
 		final M matrix = getParent();
 
@@ -103,6 +111,7 @@ abstract class Row<C extends StandardCell, M extends Matrix<?>>
 			cellPos++;
 			cell.setPosition(cellPos);
 		}
+		return true;
 	}
 
 }
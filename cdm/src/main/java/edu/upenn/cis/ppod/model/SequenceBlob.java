@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.NamedQuery;
+import javax.persistence.OrderColumn;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.BatchSize;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.upenn.cis.ppod.util.ContentDigest;
+
+/**
+ * An immutable, packed DNA or protein sequence that's shared by all of the
+ * {@link DnaRow}s or {@link ProteinRow}s that have it, wherever they are. There
+ * is one per {@link #getAlphabet() alphabet} and
+ * {@link ContentDigest#hexDigestOf(String) digest}.
+ * <p>
+ * Nothing keeps track of how many rows have a sequence, so sequences that no
+ * row has any more are left behind until they're deleted in bulk. Each one
+ * knows when it was stored so that the ones that no row has yet, because the
+ * rows haven't been written, can be left alone.
+ * <p>
+ * The sequences of the rows of a matrix are loaded {@link #BATCH_SIZE} at a
+ * time, and so are their chunks, instead of one by one as each row is
+ * read.
+ * 
+ * @author Sam Donnelly
+ */
+@NamedQuery(
+		name = "SequenceBlob-getByAlphabetAndHash",
+		query = "select b from SequenceBlob b "
+				+ "where b.alphabet = :alphabet and b.hash = :hash")
+@Entity
+@Access(AccessType.FIELD)
+@Table(
+		name = SequenceBlob.TABLE,
+		uniqueConstraints = @UniqueConstraint(columnNames = {
+				SequenceBlob.ALPHABET_COLUMN,
+				SequenceBlob.HASH_COLUMN }))
+@BatchSize(size = SequenceBlob.BATCH_SIZE)
+public class SequenceBlob {
+
+	/** The alphabets of the sequences, and how they're packed. */
+	public static enum Alphabet {
+		DNA(SequenceCodec.DNA),
+		PROTEIN(SequenceCodec.PROTEIN);
+
+		private final SequenceCodec codec;
+
+		private Alphabet(final SequenceCodec codec) {
+			this.codec = codec;
+		}
+
+		public SequenceCodec getCodec() {
+			return codec;
+		}
+	}
+
+	public static final String TABLE = "sequence_blob";
+
+	public static final String ID_COLUMN = TABLE + "_id";
+
+	public static final String ALPHABET_COLUMN = "alphabet";
+
+	public static final String HASH_COLUMN = "hash";
+
+	public static final String LENGTH_COLUMN = "length";
+
+	public static final String PACKED_SEQUENCE_COLUMN = "packed_sequence";
+
+	public static final String CREATED_COLUMN = "created";
+
+	public static final String CHUNK_TABLE = TABLE + "_chunk";
+
+	public static final String CHUNK_INDEX_COLUMN = "chunk_index";
+
+	public static final String PACKED_CHUNK_COLUMN = "packed_chunk";
+
+	/** How many sequences are loaded at a time when they're batch fetched. */
+	public static final int BATCH_SIZE = 100;
+
+	@Id
+	@GeneratedValue
+	@Column(name = ID_COLUMN)
+	@CheckForNull
+	private Long id;
+
+	@Enumerated(EnumType.ORDINAL)
+	@Column(name = ALPHABET_COLUMN, nullable = false, updatable = false)
+	@CheckForNull
+	private Alphabet alphabet;
+
+	@Column(
+			name = HASH_COLUMN,
+			nullable = false,
+			updatable = false,
+			length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	private String hash;
+
+	@Column(name = LENGTH_COLUMN, nullable = false, updatable = false)
+	private int length;
+
+	/**
+	 * The sequence, packed with {@link Alphabet#getCodec()}, if it's no longer
+	 * than {@link SequenceCodec#CHUNK_LENGTH}.
+	 */
+	@Lob
+	@Column(name = PACKED_SEQUENCE_COLUMN, updatable = false)
+	@CheckForNull
+	private byte[] packedSequence;
+
+	/**
+	 * The sequence, packed with {@link SequenceCodec#encodeChunks(String)}, if
+	 * it's longer than {@link SequenceCodec#CHUNK_LENGTH}.
+	 */
+	@ElementCollection
+	@CollectionTable(
+			name = CHUNK_TABLE,
+			joinColumns = @JoinColumn(name = ID_COLUMN))
+	@OrderColumn(name = CHUNK_INDEX_COLUMN)
+	@Column(
+			name = PACKED_CHUNK_COLUMN,
+			nullable = false,
+			length = SequenceCodec.MAX_PACKED_CHUNK_LENGTH)
+	@BatchSize(size = BATCH_SIZE)
+	private List<byte[]> packedChunks = newArrayList();
+
+	/** When this was stored, or {@code null} if it was before we kept it. */
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = CREATED_COLUMN, updatable = false)
+	@CheckForNull
+	private Date created;
+
+	/** For Hibernate. */
+	SequenceBlob() {}
+
+	/**
+	 * @param alphabet the alphabet of {@code sequence}
+	 * @param sequence the sequence
+	 */
+	public SequenceBlob(final Alphabet alphabet, final String sequence) {
+		this.alphabet = checkNotNull(alphabet);
+		checkNotNull(sequence);
+		this.hash = ContentDigest.hexDigestOf(sequence);
+		this.length = sequence.length();
+		this.created = new Date();
+		if (sequence.length() > SequenceCodec.CHUNK_LENGTH) {
+			packedChunks = alphabet.getCodec().encodeChunks(sequence);
+		} else {
+			packedSequence = alphabet.getCodec().encode(sequence);
+		}
+	}
+
+	public Alphabet getAlphabet() {
+		return checkNotNull(alphabet);
+	}
+
+	/**
+	 * Get the {@link ContentDigest#hexDigestOf(String) digest} of the
+	 * sequence.
+	 * 
+	 * @return the digest of the sequence
+	 */
+	public String getHash() {
+		return checkNotNull(hash);
+	}
+
+	@Nullable
+	public Long getId() {
+		return id;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Get the sequence. It isn't kept unpacked, so hold on to the returned
+	 * value rather than calling this repeatedly.
+	 * 
+	 * @return the sequence
+	 */
+	public String getSequence() {
+		if (packedSequence != null) {
+			return getAlphabet().getCodec().decode(packedSequence);
+		}
+		return getAlphabet().getCodec().decodeChunks(packedChunks);
+	}
+}
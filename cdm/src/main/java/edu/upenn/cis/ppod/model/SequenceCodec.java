@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs the sequence of a {@link DnaRow} or {@link ProteinRow} into as few
+ * bits per residue as its alphabet needs: four for the IUPAC nucleotide codes
+ * and five for the amino acid codes.
+ * <p>
+ * The format is a format byte and then either, for {@link #RAW}, the sequence
+ * in UTF-8 or, for {@link #PACKED}:
+ * <ol>
+ * <li>the length of the sequence</li>
+ * <li>the runs of characters that aren't stored as codes, as a count followed
+ * by the number of residues since the end of the last run, the length of the
+ * run and the character of each. These are the runs of at least
+ * {@link #MIN_GAP_RUN} gaps and the runs of any length of characters outside
+ * of the alphabet, {@code '?'} in a DNA sequence for example.</li>
+ * <li>the runs of lower case residues, as a count followed by the number of
+ * residues since the end of the last run and the length of each. A run can
+ * take in gaps and the like, which have no case, so that a lower case stretch
+ * of an alignment is one run.</li>
+ * <li>the codes of the residues outside of the runs of the second item, folded
+ * to upper case, highest bits first.</li>
+ * </ol>
+ * The numbers are written seven bits to a byte, lowest bits first, with the
+ * high bit set on every byte but the last. A sequence is written raw if that
+ * is shorter, which it can only be if most of it is outside of the alphabet.
+ * Either way {@link #decode(byte[])} gives back exactly what was encoded.
+ * <p>
+ * Sequences longer than {@link #CHUNK_LENGTH} are packed as a list of chunks
+ * of that many residues, each in the format above, so that part of a sequence
+ * can be read without reading all of it.
+ * 
+ * @author Sam Donnelly
+ */
+public final class SequenceCodec {
+
+	/** The IUPAC nucleotide codes and the gap. */
+	public static final SequenceCodec DNA =
+			new SequenceCodec("ACGTRYSWKMBDHVN-");
+
+	/** The IUPAC amino acid codes, stop, gap and unknown. */
+	public static final SequenceCodec PROTEIN =
+			new SequenceCodec("ACDEFGHIKLMNPQRSTVWYBZJUOX*-?");
+
+	/** The number of residues in each chunk of a chunked sequence. */
+	public static final int CHUNK_LENGTH = 1024;
+
+	/**
+	 * The most bytes that a packed chunk can take: a raw chunk with three
+	 * bytes of UTF-8 for every residue.
+	 */
+	public static final int MAX_PACKED_CHUNK_LENGTH = 1 + 3 * CHUNK_LENGTH;
+
+	/** The format of sequences that are stored as they are. */
+	static final byte RAW = 0;
+
+	/** The format of sequences that are stored as codes. */
+	static final byte PACKED = 1;
+
+	/** Shorter runs of gaps than this are cheaper to store as codes. */
+	static final int MIN_GAP_RUN = 8;
+
+	private static final char GAP = '-';
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int CONTINUES = 0x80;
+
+	private static final int BITS_PER_BYTE = 7;
+
+	private final char[] residues;
+
+	private final byte[] codes = new byte[128];
+
+	private final int bitsPerCode;
+
+	private SequenceCodec(final String alphabet) {
+		residues = alphabet.toCharArray();
+		Arrays.fill(codes, (byte) -1);
+		for (int code = 0; code < residues.length; code++) {
+			codes[residues[code]] = (byte) code;
+		}
+		bitsPerCode =
+				Integer.SIZE - Integer.numberOfLeadingZeros(residues.length - 1);
+	}
+
+	private int getCode(final char residue) {
+		return residue < codes.length ? codes[residue] : -1;
+	}
+
+	/**
+	 * Get the code of the upper case version of a lower case residue.
+	 * 
+	 * @param residue the residue
+	 * 
+	 * @return the code, or -1 if {@code residue} isn't the lower case version
+	 *         of a residue in the alphabet
+	 */
+	private int getLowerCaseCode(final char residue) {
+		final char upperCase = Character.toUpperCase(residue);
+		if (upperCase == residue
+				|| Character.toLowerCase(upperCase) != residue) {
+			return -1;
+		}
+		return getCode(upperCase);
+	}
+
+	/**
+	 * Pack a sequence.
+	 * 
+	 * @param sequence the sequence
+	 * 
+	 * @return the packed sequence
+	 */
+	public byte[] encode(final String sequence) {
+		checkNotNull(sequence);
+		final ByteArrayOutputStream packedSequence =
+				new ByteArrayOutputStream(
+						8 + sequence.length() * bitsPerCode / 8);
+		packedSequence.write(PACKED);
+		writeNumber(packedSequence, sequence.length());
+
+		final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+		int runCount = 0;
+		int lastRunEnd = 0;
+		final ByteArrayOutputStream lowerCaseRuns = new ByteArrayOutputStream();
+		int lowerCaseRunCount = 0;
+		int lastLowerCaseRunEnd = 0;
+		int lowerCaseRunStart = -1;
+		int lowerCaseRunEnd = -1;
+		int bits = 0;
+		int bitCount = 0;
+		final ByteArrayOutputStream packedCodes =
+				new ByteArrayOutputStream(sequence.length() * bitsPerCode / 8
+						+ 1);
+		for (int i = 0; i < sequence.length();) {
+			final char residue = sequence.charAt(i);
+			int code = getCode(residue);
+			boolean lowerCase = false;
+			if (code == -1) {
+				code = getLowerCaseCode(residue);
+				lowerCase = code != -1;
+			}
+			if (lowerCase) {
+				if (lowerCaseRunStart == -1) {
+					lowerCaseRunStart = i;
+				}
+				lowerCaseRunEnd = i + 1;
+			} else if (Character.toLowerCase(residue) != residue
+					&& lowerCaseRunStart != -1) {
+				writeNumber(lowerCaseRuns, lowerCaseRunStart
+						- lastLowerCaseRunEnd);
+				writeNumber(lowerCaseRuns, lowerCaseRunEnd - lowerCaseRunStart);
+				lowerCaseRunCount++;
+				lastLowerCaseRunEnd = lowerCaseRunEnd;
+				lowerCaseRunStart = -1;
+			}
+
+			final int runLength = getRunLength(sequence, i);
+			if (code == -1 || (residue == GAP && runLength >= MIN_GAP_RUN)) {
+				writeNumber(runs, i - lastRunEnd);
+				writeNumber(runs, runLength);
+				writeNumber(runs, residue);
+				runCount++;
+				i += runLength;
+				lastRunEnd = i;
+				continue;
+			}
+			bits = bits << bitsPerCode | code;
+			bitCount += bitsPerCode;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				packedCodes.write(bits >>> bitCount);
+				bits &= (1 << bitCount) - 1;
+			}
+			i++;
+		}
+		if (lowerCaseRunStart != -1) {
+			writeNumber(lowerCaseRuns, lowerCaseRunStart - lastLowerCaseRunEnd);
+			writeNumber(lowerCaseRuns, lowerCaseRunEnd - lowerCaseRunStart);
+			lowerCaseRunCount++;
+		}
+		if (bitCount > 0) {
+			packedCodes.write(bits << 8 - bitCount);
+		}
+		writeNumber(packedSequence, runCount);
+		write(packedSequence, runs);
+		writeNumber(packedSequence, lowerCaseRunCount);
+		write(packedSequence, lowerCaseRuns);
+		write(packedSequence, packedCodes);
+
+		// UTF-8 takes at least a byte a character, so only check when it might
+		// be shorter
+		if (packedSequence.size() > 1 + sequence.length()) {
+			final byte[] utf8 = sequence.getBytes(UTF_8);
+			if (utf8.length + 1 < packedSequence.size()) {
+				final byte[] rawSequence = new byte[utf8.length + 1];
+				rawSequence[0] = RAW;
+				System.arraycopy(utf8, 0, rawSequence, 1, utf8.length);
+				return rawSequence;
+			}
+		}
+		return packedSequence.toByteArray();
+	}
+
+	private static void write(
+			final ByteArrayOutputStream out,
+			final ByteArrayOutputStream bytes) {
+		out.write(bytes.toByteArray(), 0, bytes.size());
+	}
+
+	/**
+	 * Pack a sequence as chunks of {@link #CHUNK_LENGTH} residues, the last of
+	 * which may be shorter.
+	 * 
+	 * @param sequence the sequence
+	 * 
+	 * @return the packed chunks
+	 */
+	public List<byte[]> encodeChunks(final String sequence) {
+		checkNotNull(sequence);
+		final List<byte[]> packedChunks =
+				newArrayListWithCapacity(sequence.length() / CHUNK_LENGTH + 1);
+		for (int chunkStart = 0; chunkStart < sequence.length(); chunkStart += CHUNK_LENGTH) {
+			packedChunks.add(encode(sequence.substring(
+					chunkStart,
+					Math.min(chunkStart + CHUNK_LENGTH, sequence.length()))));
+		}
+		return packedChunks;
+	}
+
+	/**
+	 * Unpack a sequence that was packed with {@link #encodeChunks(String)}.
+	 * 
+	 * @param packedChunks the packed chunks
+	 * 
+	 * @return the sequence
+	 * 
+	 * @throws IllegalArgumentException if any of {@code packedChunks} aren't
+	 *             {@link #encode(String)} output
+	 */
+	public String decodeChunks(final List<byte[]> packedChunks) {
+		checkNotNull(packedChunks);
+		final StringBuilder sequence =
+				new StringBuilder(packedChunks.size() * CHUNK_LENGTH);
+		for (final byte[] packedChunk : packedChunks) {
+			sequence.append(decode(packedChunk));
+		}
+		return sequence.toString();
+	}
+
+	private static int getRunLength(final String sequence, final int start) {
+		final char residue = sequence.charAt(start);
+		int end = start + 1;
+		while (end < sequence.length() && sequence.charAt(end) == residue) {
+			end++;
+		}
+		return end - start;
+	}
+
+	/**
+	 * Unpack a sequence.
+	 * 
+	 * @param packedSequence a sequence that was packed with
+	 *            {@link #encode(String)}
+	 * 
+	 * @return the sequence
+	 * 
+	 * @throws IllegalArgumentException if {@code packedSequence} isn't
+	 *             {@link #encode(String)} output
+	 */
+	public String decode(final byte[] packedSequence) {
+		checkNotNull(packedSequence);
+		checkArgument(
+				packedSequence.length > 0,
+				"empty packed sequence");
+		if (packedSequence[0] == RAW) {
+			return new String(
+					packedSequence,
+					1,
+					packedSequence.length - 1,
+					UTF_8);
+		}
+		checkArgument(
+				packedSequence[0] == PACKED,
+				"unknown packed sequence format");
+		final int[] pos = { 1 };
+		final char[] sequence = new char[readNumber(packedSequence, pos)];
+
+		final boolean[] inRun = new boolean[sequence.length];
+		final int runCount = readNumber(packedSequence, pos);
+		int runEnd = 0;
+		for (int run = 0; run < runCount; run++) {
+			final int runStart = runEnd + readNumber(packedSequence, pos);
+			runEnd = runStart + readNumber(packedSequence, pos);
+			checkArgument(
+					runEnd <= sequence.length,
+					"run past the end of the sequence");
+			final char residue = (char) readNumber(packedSequence, pos);
+			Arrays.fill(sequence, runStart, runEnd, residue);
+			Arrays.fill(inRun, runStart, runEnd, true);
+		}
+
+		final int[] lowerCaseRuns = new int[2 * readNumber(packedSequence, pos)];
+		int lowerCaseRunEnd = 0;
+		for (int run = 0; run < lowerCaseRuns.length; run += 2) {
+			lowerCaseRuns[run] =
+					lowerCaseRunEnd + readNumber(packedSequence, pos);
+			lowerCaseRunEnd =
+					lowerCaseRuns[run] + readNumber(packedSequence, pos);
+			checkArgument(
+					lowerCaseRunEnd <= sequence.length,
+					"lower case run past the end of the sequence");
+			lowerCaseRuns[run + 1] = lowerCaseRunEnd;
+		}
+
+		int bits = 0;
+		int bitCount = 0;
+		final int codeMask = (1 << bitsPerCode) - 1;
+		for (int i = 0; i < sequence.length; i++) {
+			if (inRun[i]) {
+				continue;
+			}
+			if (bitCount < bitsPerCode) {
+				checkArgument(
+						pos[0] < packedSequence.length,
+						"packed sequence ends in the middle of the sequence");
+				bits = bits << 8 | packedSequence[pos[0]++] & 0xff;
+				bitCount += 8;
+			}
+			bitCount -= bitsPerCode;
+			final int code = bits >>> bitCount & codeMask;
+			checkArgument(code < residues.length, "bad residue code " + code);
+			sequence[i] = residues[code];
+			bits &= (1 << bitCount) - 1;
+		}
+
+		for (int run = 0; run < lowerCaseRuns.length; run += 2) {
+			for (int i = lowerCaseRuns[run]; i < lowerCaseRuns[run + 1]; i++) {
+				sequence[i] = Character.toLowerCase(sequence[i]);
+			}
+		}
+		return new String(sequence);
+	}
+
+	private static void writeNumber(
+			final ByteArrayOutputStream out,
+			final int number) {
+		int remaining = number;
+		while (remaining >= CONTINUES) {
+			out.write(remaining & CONTINUES - 1 | CONTINUES);
+			remaining >>>= BITS_PER_BYTE;
+		}
+		out.write(remaining);
+	}
+
+	private static int readNumber(final byte[] in, final int[] pos) {
+		int number = 0;
+		int shift = 0;
+		int b;
+		do {
+			checkArgument(
+					pos[0] < in.length,
+					"packed sequence ends in the middle of a number");
+			b = in[pos[0]++] & 0xff;
+			number |= (b & CONTINUES - 1) << shift;
+			shift += BITS_PER_BYTE;
+		} while ((b & CONTINUES) != 0);
+		return number;
+	}
+}
@@ -31,17 +31,19 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
-import javax.persistence.JoinTable;
-import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
 import edu.upenn.cis.ppod.imodel.IChild;
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
 
 /**
  * A cell in a {@link StandardMatrix}.
@@ -78,12 +80,15 @@ public class StandardCell implements IChild<StandardRow> {
 	private StandardState state;
 
 	/**
-	 * The heart of the cell: the states.
+	 * The heart of the cell: the states, as a bitmask of their state numbers.
+	 * Bit {@code n} is set if the state with state number {@code n} is one of
+	 * the cell's states. Kept as numbers instead of a collection of states so
+	 * that reading or writing them never touches the states.
 	 * <p>
-	 * Will be empty if type is not {@link Type#POLYMORPHIC} or
+	 * Will be {@code 0} if type is not {@link Type#POLYMORPHIC} or
 	 * {@link Type#UNCERTAIN}.
 	 */
-	private Set<StandardState> states = newHashSet();
+	private long stateBitmask;
 
 	/**
 	 * The {@code CharacterStateRow} to which this {@code CharacterStateCell}
@@ -94,6 +99,8 @@ public class StandardCell implements IChild<StandardRow> {
 
 	public static final String TYPE_COLUMN = "type";
 
+	public static final String STATE_BITMASK_COLUMN = "state_bitmask";
+
 	@CheckForNull
 	private Integer position;
 
@@ -123,7 +130,8 @@ public class StandardCell implements IChild<StandardRow> {
 	}
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
@@ -157,15 +165,17 @@ public class StandardCell implements IChild<StandardRow> {
 		return state;
 	}
 
-	@SuppressWarnings("unused")
-	@ManyToMany
-	@JoinTable(name = StandardCell.TABLE + "_" + StandardState.TABLE,
-			joinColumns = @JoinColumn(
-					name = ID_COLUMN),
-			inverseJoinColumns = @JoinColumn(
-					name = StandardState.ID_COLUMN))
-	private Set<StandardState> getStates() {
-		return states;
+	/**
+	 * Get the states of a multi-state cell as a bitmask of their state
+	 * numbers, as made by {@link PPodStandardRow#toStateBitmask(Iterable)}.
+	 * Single-state cells keep their state elsewhere, so this is {@code 0} for
+	 * them.
+	 * 
+	 * @return the states of a multi-state cell
+	 */
+	@Column(name = STATE_BITMASK_COLUMN, nullable = false)
+	public long getStateBitmask() {
+		return stateBitmask;
 	}
 
 	@Transient
@@ -187,8 +197,41 @@ public class StandardCell implements IChild<StandardRow> {
 		return states;
 	}
 
+	/**
+	 * Get the state numbers of this cell without touching its states.
+	 * 
+	 * @throws IllegalStateException if the type has not been set for this cell,
+	 *             i.e. if {@link #getType() == null}
+	 */
+	@Transient
+	public Set<Integer> getStateNumbers() {
+		checkState(type != null,
+				"type has yet to be assigned for this cell");
+
+		switch (type) {
+			case INAPPLICABLE:
+			case UNASSIGNED:
+				return Collections.emptySet();
+			case SINGLE:
+				if (state == null) {
+					throw new AssertionError(
+							"getElement() == null for SINGLE cell!");
+				}
+				return Collections.singleton(state.getStateNumber());
+			case POLYMORPHIC:
+			case UNCERTAIN:
+				return PPodStandardRow.fromStateBitmask(stateBitmask);
+			default:
+				throw new AssertionError("Unknown Cell.Type: " + type);
+		}
+	}
+
 	/**
 	 * Don't modify the returned collection - that's undefined.
+	 * <p>
+	 * The states of {@link PPodCellType#POLYMORPHIC} and
+	 * {@link PPodCellType#UNCERTAIN} cells are looked up in this column's
+	 * character, so use {@link #getStateNumbers()} if the numbers are enough.
 	 * 
 	 * @throws IllegalStateException if the type has not been set for this cell,
 	 *             i.e. if {@link #getType() == null}
@@ -213,24 +256,17 @@ public class StandardCell implements IChild<StandardRow> {
 				return elementInASet;
 			case POLYMORPHIC:
 			case UNCERTAIN:
-
-				// We have to hit states, which we want to avoid as much as
-				// possible since it will trigger a database hit, which in the
-				// aggregate
-				// is expensive since there're are so many cells.
-
-				if (states == null) {
-					throw new AssertionError(
-							"elements is null in a POLYMORPHIC or UNCERTAIN cell");
-				}
-
-				if (states.size() < 2) {
+				final Set<Integer> stateNumbers =
+						PPodStandardRow.fromStateBitmask(stateBitmask);
+				if (stateNumbers.size() < 2) {
 					throw new AssertionError("type is "
 														+ getType()
 												+ " and getElements() has "
-												+ states.size() + " elements");
+												+ stateNumbers.size()
+												+ " elements");
 				}
-				return states;
+				checkRowMatrixCharacter();
+				return getStatesByStateNumbers(stateNumbers);
 
 			default:
 				throw new AssertionError("Unknown Cell.Type: " + type);
@@ -274,8 +310,11 @@ public class StandardCell implements IChild<StandardRow> {
 	 * empty set.
 	 */
 	public void setInapplicable() {
-		type = PPodCellType.INAPPLICABLE;
-		setStateAndClearStates(null);
+		if (type == PPodCellType.INAPPLICABLE) {
+			// Already inapplicable: no state and no states
+			return;
+		}
+		setTypeAndState(PPodCellType.INAPPLICABLE, null);
 	}
 
 	/** {@inheritDoc} */
@@ -299,27 +338,56 @@ public class StandardCell implements IChild<StandardRow> {
 		checkArgument(
 				stateNumbers.size() > 1,
 				"polymorphic states must be > 1");
-		type = PPodCellType.POLYMORPHIC;
-		setPolymorphicOrUncertain(getStatesByStateNumbers(stateNumbers));
+		setPolymorphicOrUncertain(PPodCellType.POLYMORPHIC, stateNumbers);
 	}
 
 	/**
-	 * Add a set of {@code CharacterState}s to this {@code CharacterStateCell}.
-	 * 
-	 * @param states to be added. Each must not be in a detached state.
+	 * Set the type to {@code type} and the states to those with the given
+	 * state numbers.
 	 * 
-	 * @return {@code state}
+	 * @param type {@link PPodCellType#POLYMORPHIC} or
+	 *            {@link PPodCellType#UNCERTAIN}
+	 * @param stateNumbers the state numbers of the states we want
 	 */
 	private void setPolymorphicOrUncertain(
-			final Set<StandardState> states) {
+			final PPodCellType type,
+			final Set<Integer> stateNumbers) {
+		final long newStateBitmask =
+				PPodStandardRow.toStateBitmask(stateNumbers);
+		if (hasStates() && stateBitmask == newStateBitmask) {
+			if (this.type != type) {
+				this.type = type;
+				cellChanged();
+			}
+			return;
+		}
+		checkRowMatrixCharacter();
+		final Set<StandardState> newStates =
+				getStatesByStateNumbers(stateNumbers);
 		checkArgument(
-				states.size() > 1,
+				newStates.size() > 1,
 				"POLYMORPIC AND UNCERTAIN must have greater than 1 element but elements has "
-						+ states.size());
-		checkRowMatrixCharacter();
+						+ newStates.size());
+		this.type = type;
 		this.state = null;
-		this.states.clear();
-		this.states.addAll(states);
+		this.stateBitmask = newStateBitmask;
+		cellChanged();
+	}
+
+	/**
+	 * Only {@link PPodCellType#POLYMORPHIC} and
+	 * {@link PPodCellType#UNCERTAIN} cells have anything in
+	 * {@code stateBitmask}.
+	 */
+	private boolean hasStates() {
+		return type == PPodCellType.POLYMORPHIC
+				|| type == PPodCellType.UNCERTAIN;
+	}
+
+	private void cellChanged() {
+		if (parent != null) {
+			parent.setCellsFingerprint(null);
+		}
 	}
 
 	/**
@@ -379,8 +447,7 @@ public class StandardCell implements IChild<StandardRow> {
 						+ character.getLabel()
 						+ "]");
 
-		type = PPodCellType.SINGLE;
-		setStateAndClearStates(state);
+		setTypeAndState(PPodCellType.SINGLE, state);
 	}
 
 	@SuppressWarnings("unused")
@@ -388,14 +455,18 @@ public class StandardCell implements IChild<StandardRow> {
 		this.state = state;
 	}
 
-	private void setStateAndClearStates(@CheckForNull final StandardState state) {
+	private void setTypeAndState(
+			final PPodCellType type,
+			@CheckForNull final StandardState state) {
+		stateBitmask = 0;
+		this.type = type;
 		this.state = state;
-		states.clear();
+		cellChanged();
 	}
 
 	@SuppressWarnings("unused")
-	private void setStates(final Set<StandardState> states) {
-		this.states = states;
+	private void setStateBitmask(final long stateBitmask) {
+		this.stateBitmask = stateBitmask;
 	}
 
 	@SuppressWarnings("unused")
@@ -408,8 +479,11 @@ public class StandardCell implements IChild<StandardRow> {
 	 * empty set.
 	 */
 	public void setUnassigned() {
-		type = PPodCellType.UNASSIGNED;
-		setStateAndClearStates(null);
+		if (type == PPodCellType.UNASSIGNED) {
+			// Already unassigned: no state and no states
+			return;
+		}
+		setTypeAndState(PPodCellType.UNASSIGNED, null);
 	}
 
 	/**
@@ -426,8 +500,7 @@ public class StandardCell implements IChild<StandardRow> {
 		checkArgument(
 				stateNumbers.size() > 1,
 				"polymorphic states must be > 1");
-		type = PPodCellType.UNCERTAIN;
-		setPolymorphicOrUncertain(getStatesByStateNumbers(stateNumbers));
+		setPolymorphicOrUncertain(PPodCellType.UNCERTAIN, stateNumbers);
 	}
 
 	/**
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+
+/**
+ * Packs the cells of a {@link StandardRow} into a single value for
+ * {@link StandardRow#getPackedCells()}.
+ * <p>
+ * The format is a format version byte followed by, for each cell, a byte with
+ * the ordinal of its {@link PPodCellType} and then, for cells that have
+ * states, a bitmask of its state numbers. The bitmask is written seven bits
+ * to a byte, lowest bits first, with the high bit set on every byte but the
+ * last. So a cell with only states below 7 takes two bytes, and unassigned
+ * and inapplicable cells take one.
+ * 
+ * @author Sam Donnelly
+ */
+public final class StandardCellsCodec {
+
+	/** The format version we write. */
+	static final byte FORMAT = 1;
+
+	private static final PPodCellType[] TYPES = PPodCellType.values();
+
+	private static final int CONTINUES = 0x80;
+
+	private static final int BITS_PER_BYTE = 7;
+
+	private static final int BYTE_BITS = (1 << BITS_PER_BYTE) - 1;
+
+	private StandardCellsCodec() {
+		throw new AssertionError("Can't instantiate a StandardCellsCodec");
+	}
+
+	/**
+	 * Pack some cells.
+	 * 
+	 * @param cells the cells
+	 * 
+	 * @return the packed cells
+	 * 
+	 * @throws IllegalArgumentException if any of the cells have a state number
+	 *             greater than {@link PPodStandardRow#MAX_STATE_NUMBER}
+	 */
+	public static byte[] encode(final List<PPodStandardCell> cells) {
+		checkNotNull(cells);
+		final PPodStandardRow row = new PPodStandardRow();
+		row.setCells(cells);
+		return encode(row);
+	}
+
+	/**
+	 * Pack the cells of a row straight from its
+	 * {@link PPodStandardRow#getStateBitmask(int) dense form}.
+	 * 
+	 * @param row the row
+	 * 
+	 * @return the packed cells
+	 */
+	public static byte[] encode(final PPodStandardRow row) {
+		checkNotNull(row);
+		final ByteArrayOutputStream packedCells =
+				new ByteArrayOutputStream(1 + 2 * row.getCellCount());
+		packedCells.write(FORMAT);
+		for (int cellPos = 0; cellPos < row.getCellCount(); cellPos++) {
+			writeCell(
+					packedCells,
+					row.getType(cellPos),
+					row.getStateBitmask(cellPos));
+		}
+		return packedCells.toByteArray();
+	}
+
+	private static void writeCell(
+			final ByteArrayOutputStream packedCells,
+			final PPodCellType type,
+			final long stateBitmask) {
+		packedCells.write(type.ordinal());
+		switch (type) {
+			case UNASSIGNED:
+			case INAPPLICABLE:
+				break;
+			case SINGLE:
+			case POLYMORPHIC:
+			case UNCERTAIN:
+				long remaining = stateBitmask;
+				while ((remaining & ~BYTE_BITS) != 0) {
+					packedCells.write((int) (remaining & BYTE_BITS)
+							| CONTINUES);
+					remaining >>>= BITS_PER_BYTE;
+				}
+				packedCells.write((int) remaining);
+				break;
+			default:
+				throw new AssertionError("unknown cell type");
+		}
+	}
+
+	/**
+	 * Unpack some cells.
+	 * 
+	 * @param packedCells cells that were packed with {@link #encode(List)}
+	 * 
+	 * @return the cells, a view of the {@link #decodeRow(byte[])} row
+	 * 
+	 * @throws IllegalArgumentException if {@code packedCells} aren't
+	 *             {@link #encode(List)} output
+	 */
+	public static List<PPodStandardCell> decode(final byte[] packedCells) {
+		return decodeRow(packedCells).getCells();
+	}
+
+	/**
+	 * Unpack some cells into the dense form of a row, without making a
+	 * {@link PPodStandardCell} for each of them.
+	 * 
+	 * @param packedCells cells that were packed with {@link #encode(List)}
+	 * 
+	 * @return a row with the cells
+	 * 
+	 * @throws IllegalArgumentException if {@code packedCells} aren't
+	 *             {@link #encode(List)} output, or have a state number greater
+	 *             than {@link PPodStandardRow#MAX_STATE_NUMBER}
+	 */
+	public static PPodStandardRow decodeRow(final byte[] packedCells) {
+		checkNotNull(packedCells);
+		checkArgument(
+				packedCells.length > 0 && packedCells[0] == FORMAT,
+				"unknown packed cells format");
+		final PPodStandardRow row = new PPodStandardRow();
+		int pos = 1;
+		while (pos < packedCells.length) {
+			final int typeOrdinal = packedCells[pos++];
+			checkArgument(
+					typeOrdinal >= 0 && typeOrdinal < TYPES.length,
+					"bad cell type " + typeOrdinal);
+			final PPodCellType type = TYPES[typeOrdinal];
+			switch (type) {
+				case UNASSIGNED:
+				case INAPPLICABLE:
+					row.addCell(type, 0);
+					break;
+				case SINGLE:
+				case POLYMORPHIC:
+				case UNCERTAIN:
+					long stateBitmask = 0;
+					int shift = 0;
+					int packedByte;
+					do {
+						checkArgument(
+								pos < packedCells.length,
+								"packed cells end in the middle of a cell");
+						packedByte = packedCells[pos++] & 0xff;
+						final long bits = packedByte & BYTE_BITS;
+						if (shift >= Long.SIZE) {
+							checkArgument(bits == 0, "state number too big");
+						} else {
+							checkArgument(
+									Long.SIZE - shift >= BITS_PER_BYTE
+											|| bits >>> Long.SIZE - shift == 0,
+									"state number too big");
+							stateBitmask |= bits << shift;
+						}
+						shift += BITS_PER_BYTE;
+					} while ((packedByte & CONTINUES) != 0);
+					row.addCell(type, stateBitmask);
+					break;
+				default:
+					throw new AssertionError("unknown cell type");
+			}
+		}
+		return row;
+	}
+}
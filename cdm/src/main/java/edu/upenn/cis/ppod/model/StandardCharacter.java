@@ -32,10 +32,12 @@ import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
 
 /**
  * A standard character, aka a morphological character. For example,
@@ -105,7 +107,8 @@ public class StandardCharacter extends UuPPodEntity {
 	}
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
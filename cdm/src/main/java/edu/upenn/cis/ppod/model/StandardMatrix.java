@@ -19,8 +19,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -33,6 +33,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.MapKeyJoinColumn;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.OrderColumn;
 import javax.persistence.Table;
@@ -46,6 +47,9 @@ import edu.upenn.cis.ppod.util.UPennCisPPodUtil;
  * 
  * @author Sam Donnelly
  */
+@NamedQuery(
+		name = "StandardMatrix-getByPPodId",
+		query = "select m from StandardMatrix m where m.pPodId = :pPodId")
 @Entity
 @Table(name = StandardMatrix.TABLE)
 public class StandardMatrix extends Matrix<StandardRow> {
@@ -94,6 +98,8 @@ public class StandardMatrix extends Matrix<StandardRow> {
 			final List<? extends StandardCharacter> characters) {
 		checkNotNull(characters);
 
+		final Map<StandardCharacter, Integer> newCharacterPositions =
+				newHashMapWithExpectedSize(characters.size());
 		int newCharacterPos = -1;
 		for (final StandardCharacter character : characters) {
 			newCharacterPos++;
@@ -101,25 +107,21 @@ public class StandardMatrix extends Matrix<StandardRow> {
 												+ newCharacterPos
 												+ "] is null");
 
-			for (final Iterator<? extends StandardCharacter> itr = characters
-					.listIterator(newCharacterPos + 1); itr
-					.hasNext();) {
-				final StandardCharacter character2 = itr.next();
-				checkArgument(!character.equals(character2),
-						"two characters are the same "
-								+ character.getLabel()
-								+ " at positions "
-								+ characters.indexOf(character)
-								+ " and "
-								+ characters.indexOf(character2));
-			}
+			final Integer otherCharacterPos =
+					newCharacterPositions.put(character, newCharacterPos);
+			checkArgument(otherCharacterPos == null,
+					"two characters are the same "
+							+ character.getLabel()
+							+ " at positions "
+							+ otherCharacterPos
+							+ " and "
+							+ newCharacterPos);
 		}
 
-		final List<StandardCharacter> removedCharacters = newArrayList(getCharacters());
-
-		removedCharacters.removeAll(characters);
-		for (final StandardCharacter removedCharacter : removedCharacters) {
-			removedCharacter.setParent(null);
+		for (final StandardCharacter oldCharacter : getCharacters()) {
+			if (!newCharacterPositions.containsKey(oldCharacter)) {
+				oldCharacter.setParent(null);
+			}
 		}
 
 		this.characters.clear();
@@ -207,7 +209,7 @@ public class StandardMatrix extends Matrix<StandardRow> {
 	}
 
 	/** {@inheritDoc} */
-	public void updateOtus() {
-		UPennCisPPodUtil.updateOtus(getParent(), rows);
+	public void updateOtus(final OtuSetDelta delta) {
+		UPennCisPPodUtil.updateOtus(delta, rows);
 	}
 }
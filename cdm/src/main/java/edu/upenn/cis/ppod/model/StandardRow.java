@@ -28,16 +28,25 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.OrderColumn;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 /**
  * Rows of a {@link StandardMatrix}.
+ * <p>
+ * A row keeps its cells either as {@link StandardCell}s in
+ * {@link #getCells()} or, if it was written packed, all in one value in
+ * {@link #getPackedCells()}: never both.
  * 
  * @author Sam Donnelly
  */
@@ -57,11 +66,19 @@ public class StandardRow
 
 	public static final String ID_COLUMN = TABLE + "_id";
 
+	public static final String PACKED_CELLS_COLUMN = "packed_cells";
+
 	private List<StandardCell> cells = newArrayList();
 
 	@CheckForNull
 	private StandardMatrix parent;
 
+	@CheckForNull
+	private String cellsFingerprint;
+
+	@CheckForNull
+	private byte[] packedCells;
+
 	public StandardRow() {}
 
 	@Override
@@ -74,7 +91,9 @@ public class StandardRow
 						+ " than cells "
 						+ cells.size());
 
-		super.setCellsHelper(cells);
+		if (super.setCellsHelper(cells)) {
+			cellsFingerprint = null;
+		}
 
 		for (final StandardCell cell : getCells()) {
 			cell.setParent(this);
@@ -91,8 +110,38 @@ public class StandardRow
 		return cells;
 	}
 
+	/**
+	 * A fingerprint of the incoming cells that this row's cells were last
+	 * written from, or {@code null} if that's not known. Cleared whenever the
+	 * cells are changed through this object model, so a non-{@code null} value
+	 * always describes the stored cells.
+	 * 
+	 * @return the fingerprint of this row's cells
+	 */
+	@Column(name = "cells_fingerprint", length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	public String getCellsFingerprint() {
+		return cellsFingerprint;
+	}
+
+	/**
+	 * This row's cells as packed by {@link StandardCellsCodec}, or
+	 * {@code null} if they're in {@link #getCells()}.
+	 * <p>
+	 * Don't modify the returned array - that's undefined.
+	 * 
+	 * @return the packed cells
+	 */
+	@Lob
+	@Column(name = PACKED_CELLS_COLUMN)
+	@CheckForNull
+	public byte[] getPackedCells() {
+		return packedCells;
+	}
+
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
@@ -121,6 +170,29 @@ public class StandardRow
 		this.cells = cells;
 	}
 
+	/**
+	 * Set the fingerprint of the incoming cells this row's cells were just
+	 * written from.
+	 * 
+	 * @param cellsFingerprint the fingerprint, or {@code null} if it's not
+	 *            known
+	 */
+	public void setCellsFingerprint(
+			@CheckForNull final String cellsFingerprint) {
+		this.cellsFingerprint = cellsFingerprint;
+	}
+
+	/**
+	 * Set this row's packed cells. The caller is responsible for keeping
+	 * {@link #getCells()} empty while they're set.
+	 * 
+	 * @param packedCells cells packed by {@link StandardCellsCodec}, or
+	 *            {@code null} if the cells are in {@link #getCells()}
+	 */
+	public void setPackedCells(@CheckForNull final byte[] packedCells) {
+		this.packedCells = packedCells;
+	}
+
 	@SuppressWarnings("unused")
 	private void setId(final Long id) {
 		this.id = id;
@@ -15,9 +15,17 @@
  */
 package edu.upenn.cis.ppod.model;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.List;
+import java.util.Set;
+
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
@@ -25,9 +33,14 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
+import javax.persistence.OrderColumn;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
+import org.hibernate.annotations.GenericGenerator;
+
+import edu.upenn.cis.ppod.persistence.PooledIdGenerator;
+
 /**
  * A phylogenetic tree.
  * 
@@ -41,6 +54,10 @@ public class Tree extends UuPPodEntity {
 
 	public static final String ID_COLUMN = TABLE + "_id";
 
+	public static final String NODE_TABLE = TABLE + "_node";
+
+	public static final String NODE_INDEX_COLUMN = "node_index";
+
 	@CheckForNull
 	private Long id;
 
@@ -53,6 +70,11 @@ public class Tree extends UuPPodEntity {
 	@CheckForNull
 	private String newick;
 
+	private List<TreeNode> nodes = newArrayList();
+
+	@CheckForNull
+	private Integer nodeCount;
+
 	@CheckForNull
 	private TreeSet parent;
 
@@ -62,7 +84,8 @@ public class Tree extends UuPPodEntity {
 	public Tree() {}
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(generator = TABLE)
+	@GenericGenerator(name = TABLE, strategy = PooledIdGenerator.STRATEGY)
 	@Column(name = ID_COLUMN)
 	@Nullable
 	public Long getId() {
@@ -94,6 +117,36 @@ public class Tree extends UuPPodEntity {
 		return newick;
 	}
 
+	/**
+	 * Get the nodes of the tree in pre-order, parsed from the
+	 * {@link #getNewick() Newick string} so that the tree can be used without
+	 * parsing it. Empty for trees stored before we kept the nodes, and for
+	 * trees whose Newick string couldn't be parsed.
+	 * 
+	 * @return the nodes of the tree
+	 */
+	@ElementCollection
+	@CollectionTable(
+			name = NODE_TABLE,
+			joinColumns = @JoinColumn(name = ID_COLUMN))
+	@OrderColumn(name = NODE_INDEX_COLUMN)
+	public List<TreeNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Get the number of {@link #getNodes() nodes}, so that we can tell if a
+	 * tree has been parsed without loading its nodes.
+	 * 
+	 * @return the number of nodes, or {@code null} for trees stored before we
+	 *         kept the nodes
+	 */
+	@Column(name = "node_count")
+	@CheckForNull
+	public Integer getNodeCount() {
+		return nodeCount;
+	}
+
 	@ManyToOne(fetch = FetchType.LAZY, optional = false)
 	@JoinColumn(name = TreeSet.ID_COLUMN, insertable = false,
 				updatable = false)
@@ -137,6 +190,51 @@ public class Tree extends UuPPodEntity {
 		this.newick = newick;
 	}
 
+	/**
+	 * Replace the nodes of the tree, which should be the nodes of
+	 * {@link #getNewick()}.
+	 * 
+	 * @param nodes the nodes in pre-order
+	 */
+	public void clearAndAddNodes(final List<TreeNode> nodes) {
+		checkNotNull(nodes);
+		// A new list, so that Hibernate replaces the stored nodes in one go
+		this.nodes = newArrayList(nodes);
+		this.nodeCount = nodes.size();
+	}
+
+	/**
+	 * Make the nodes that are any of the given OTUs plain labeled nodes, as
+	 * they would be if the Newick string were parsed without those OTUs.
+	 * 
+	 * @param otuPPodIds the pPOD IDs of the OTUs
+	 */
+	void removeOtus(final Set<String> otuPPodIds) {
+		checkNotNull(otuPPodIds);
+		for (int i = 0; i < nodes.size(); i++) {
+			final TreeNode node = nodes.get(i);
+			if (node.getOtu() != null
+					&& otuPPodIds.contains(node.getOtu().getPPodId())) {
+				nodes.set(i, new TreeNode(
+						node.getParentIndex(),
+						node.getSubtreeEnd(),
+						null,
+						node.getOtu().getPPodId(),
+						node.getBranchLength()));
+			}
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private void setNodeCount(@CheckForNull final Integer nodeCount) {
+		this.nodeCount = nodeCount;
+	}
+
+	@SuppressWarnings("unused")
+	private void setNodes(final List<TreeNode> nodes) {
+		this.nodes = nodes;
+	}
+
 	/** {@inheritDoc} */
 	public void setParent(@CheckForNull final TreeSet parent) {
 		this.parent = parent;
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.FetchType;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * A node of a {@link Tree}, as parsed from its Newick string. A tree's nodes
+ * are kept in pre-order, so a node's subtree is the nodes from its own
+ * position up to {@link #getSubtreeEnd()}, and its first child, if it has
+ * any, comes right after it.
+ * 
+ * @author Sam Donnelly
+ */
+@Embeddable
+@Access(AccessType.FIELD)
+public class TreeNode {
+
+	@Column(name = "parent_index", nullable = false)
+	private int parentIndex;
+
+	@Column(name = "subtree_end", nullable = false)
+	private int subtreeEnd;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = Otu.ID_COLUMN)
+	@CheckForNull
+	private Otu otu;
+
+	@Column(name = "label")
+	@CheckForNull
+	private String label;
+
+	@Column(name = "branch_length")
+	@CheckForNull
+	private Double branchLength;
+
+	/** For Hibernate. */
+	TreeNode() {}
+
+	/**
+	 * @param parentIndex the position of the parent, or {@code -1} for the
+	 *            root
+	 * @param subtreeEnd one past the position of the last node of the subtree
+	 * @param otu the OTU that the node's label is, if any
+	 * @param label the label, if it's not an OTU
+	 * @param branchLength the length of the branch to the parent, if any
+	 */
+	public TreeNode(
+			final int parentIndex,
+			final int subtreeEnd,
+			@CheckForNull final Otu otu,
+			@CheckForNull final String label,
+			@CheckForNull final Double branchLength) {
+		checkArgument(parentIndex >= -1, "parentIndex < -1");
+		checkArgument(subtreeEnd > 0, "subtreeEnd <= 0");
+		this.parentIndex = parentIndex;
+		this.subtreeEnd = subtreeEnd;
+		this.otu = otu;
+		this.label = label;
+		this.branchLength = branchLength;
+	}
+
+	/**
+	 * Get the length of the branch to the parent.
+	 * 
+	 * @return the branch length, or {@code null} if the tree doesn't have
+	 *         one
+	 */
+	@CheckForNull
+	public Double getBranchLength() {
+		return branchLength;
+	}
+
+	/**
+	 * Get the label of the node if it's not an OTU, as for some internal
+	 * nodes.
+	 * 
+	 * @return the label, or {@code null} if there's no label or the label is
+	 *         an OTU
+	 */
+	@CheckForNull
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Get the OTU that the node is.
+	 * 
+	 * @return the OTU, or {@code null} if the node isn't an OTU
+	 */
+	@CheckForNull
+	public Otu getOtu() {
+		return otu;
+	}
+
+	/**
+	 * @return the position of the parent, or {@code -1} for the root
+	 */
+	public int getParentIndex() {
+		return parentIndex;
+	}
+
+	/**
+	 * @return one past the position of the last node of this node's subtree
+	 */
+	public int getSubtreeEnd() {
+		return subtreeEnd;
+	}
+}
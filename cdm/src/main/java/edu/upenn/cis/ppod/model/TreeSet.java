@@ -18,8 +18,11 @@ package edu.upenn.cis.ppod.model;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.collect.Sets.newHashSetWithExpectedSize;
 
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -36,9 +39,8 @@ import javax.persistence.OrderColumn;
 import javax.persistence.Table;
 import javax.persistence.Version;
 
-import com.google.common.collect.Iterators;
-
 import edu.upenn.cis.ppod.imodel.IDependsOnParentOtus;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 /**
  * An ordered, unique collection of {@link Tree}s.
@@ -67,6 +69,9 @@ public class TreeSet extends UuPPodEntity implements IDependsOnParentOtus {
 
 	private List<Tree> trees = newArrayList();
 
+	@CheckForNull
+	private String contentDigest;
+
 	public TreeSet() {}
 
 	/**
@@ -97,28 +102,39 @@ public class TreeSet extends UuPPodEntity implements IDependsOnParentOtus {
 	 */
 	public void clearAndAddTrees(final List<? extends Tree> trees) {
 		checkNotNull(trees);
-		int treePos = -1;
+		final Set<Tree> newTrees = newHashSetWithExpectedSize(trees.size());
 		for (final Tree tree : trees) {
-			treePos++;
-			checkArgument(
-						!Iterators.contains(trees.listIterator(treePos + 1),
-								tree),
-						"argument trees contains duplicates");
+			checkArgument(newTrees.add(tree),
+					"argument trees contains duplicates");
 		}
 
-		final List<Tree> removedTrees = newArrayList(this.trees);
-		removedTrees.removeAll(trees);
-
-		for (final Tree removedTree : removedTrees) {
-			removedTree.setParent(null);
+		for (final Tree oldTree : this.trees) {
+			if (!newTrees.contains(oldTree)) {
+				oldTree.setParent(null);
+			}
 		}
 
 		this.trees.clear();
-		for (final Tree newTree : trees) {
-			addTree(newTree);
+		this.trees.addAll(trees);
+
+		for (final Tree tree : this.trees) {
+			tree.setParent(this);
 		}
 	}
 
+	/**
+	 * The digest of the incoming tree set this tree set was last merged from, or
+	 * {@code null} if that's not known. An upload whose tree set has the same
+	 * digest can leave this tree set alone.
+	 * 
+	 * @return the content digest
+	 */
+	@Column(name = "content_digest", length = ContentDigest.HEX_LENGTH)
+	@CheckForNull
+	public String getContentDigest() {
+		return contentDigest;
+	}
+
 	@Id
 	@GeneratedValue
 	@Column(name = ID_COLUMN)
@@ -170,6 +186,16 @@ public class TreeSet extends UuPPodEntity implements IDependsOnParentOtus {
 		return version;
 	}
 
+	/**
+	 * Set the digest of the incoming tree set this tree set was just merged from.
+	 * Should be set to {@code null} when this tree set is changed any other way.
+	 * 
+	 * @param contentDigest the digest, or {@code null} if it's not known
+	 */
+	public void setContentDigest(@CheckForNull final String contentDigest) {
+		this.contentDigest = contentDigest;
+	}
+
 	@SuppressWarnings("unused")
 	private void setId(final Long id) {
 		this.id = id;
@@ -187,7 +213,6 @@ public class TreeSet extends UuPPodEntity implements IDependsOnParentOtus {
 	/** {@inheritDoc} */
 	public void setParent(@CheckForNull final OtuSet parent) {
 		this.parent = parent;
-		updateOtus();
 	}
 
 	@SuppressWarnings("unused")
@@ -204,11 +229,22 @@ public class TreeSet extends UuPPodEntity implements IDependsOnParentOtus {
 	}
 
 	/**
-	 * There's nothing for a tree set to do since the OTU's are stored as pPOD
-	 * IDs in the newick strings which can't be modified.
+	 * The OTUs are stored as pPOD IDs in the Newick strings, which stay as
+	 * they are, but the nodes of the trees can't point to removed OTUs, so
+	 * those nodes are left with just the pPOD IDs as their labels.
 	 */
-	public void updateOtus() {
-
+	public void updateOtus(final OtuSetDelta delta) {
+		checkNotNull(delta);
+		if (delta.getRemovedOtus().isEmpty()) {
+			return;
+		}
+		final Set<String> removedOtuPPodIds = newHashSet();
+		for (final Otu removedOtu : delta.getRemovedOtus()) {
+			removedOtuPPodIds.add(removedOtu.getPPodId());
+		}
+		for (final Tree tree : trees) {
+			tree.removeOtus(removedOtuPPodIds);
+		}
 	}
 
 }
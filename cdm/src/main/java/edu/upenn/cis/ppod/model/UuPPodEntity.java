@@ -15,27 +15,42 @@
  */
 package edu.upenn.cis.ppod.model;
 
-import java.util.UUID;
-
 import javax.persistence.Column;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Type;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.imodel.IUuPPodEntity;
+import edu.upenn.cis.ppod.util.PPodIds;
 
+/**
+ * An entity with a pPOD ID.
+ * <p>
+ * The pPOD ID of a new entity is made the first time it's asked for, so that
+ * entities loaded from the database, which get theirs from there, don't pay
+ * for making one. See {@link PPodIds} for what they look like and
+ * {@link PPodIdUserType} for how they're stored.
+ */
 @MappedSuperclass
 public abstract class UuPPodEntity implements IUuPPodEntity {
 
 	public final static String PPOD_ID_COLUMN = "ppod_id";
-	public final static int PPOD_ID_COLUMN_LENGTH = 36;
 
-	/**
-	 * {@code updatable = false} makes this property immutable
-	 */
-	private String pPodId = UUID.randomUUID().toString();
+	/** The length, in bytes, of {@link #PPOD_ID_COLUMN}. */
+	public final static int PPOD_ID_COLUMN_LENGTH = PPodIds.BINARY_LENGTH;
+
+	/** Spelled out since not every dialect has a fixed length binary type. */
+	private final static String PPOD_ID_COLUMN_DEFINITION =
+			"binary(" + PPOD_ID_COLUMN_LENGTH + ")";
+
+	@CheckForNull
+	private String pPodId;
 
 	/**
 	 * Weird looking so that the hibernate property is "pPodId".
+	 * {@code updatable = false} makes this property immutable.
 	 * 
 	 * @return
 	 */
@@ -44,13 +59,18 @@ public abstract class UuPPodEntity implements IUuPPodEntity {
 			unique = true,
 			nullable = false,
 			length = PPOD_ID_COLUMN_LENGTH,
+			columnDefinition = PPOD_ID_COLUMN_DEFINITION,
 			updatable = false)
+	@Type(type = "edu.upenn.cis.ppod.model.PPodIdUserType")
 	private String getpPodId() {
 		return getPPodId();
 	}
 
 	@Transient
 	public String getPPodId() {
+		if (pPodId == null) {
+			pPodId = PPodIds.newPPodId();
+		}
 		return pPodId;
 	}
 
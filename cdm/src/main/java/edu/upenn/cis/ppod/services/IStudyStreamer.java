@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import com.google.inject.ImplementedBy;
+
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.util.IPPodStudyHandler;
+
+/**
+ * Hands a stored study to an {@link IPPodStudyHandler} piece by piece, reading
+ * the rows of its matrices as they're handed over, so that the whole study
+ * never has to be in memory.
+ * 
+ * @author Sam Donnelly
+ */
+@ImplementedBy(StudyStreamer.class)
+public interface IStudyStreamer {
+
+	/**
+	 * Walk {@code dbStudy}'s OTU sets, matrices and tree sets in document
+	 * order, calling back {@code handler} as we go. The rows of each matrix
+	 * are read in the order of its OTUs and evicted once they've been handed
+	 * over. Has to be called inside of a transaction.
+	 * 
+	 * @param dbStudy a persistent study
+	 * @param handler receives the pieces of the study
+	 */
+	void streamStudy(Study dbStudy, IPPodStudyHandler handler);
+}
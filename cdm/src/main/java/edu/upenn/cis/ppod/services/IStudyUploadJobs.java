@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import java.io.InputStream;
+
+import com.google.inject.ImplementedBy;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.StudyUploadJobInfo;
+
+/**
+ * Study uploads that are merged in the background, so that the request that
+ * submits one doesn't have to wait for it.
+ * 
+ * @author Sam Donnelly
+ */
+@ImplementedBy(StudyUploadJobs.class)
+public interface IStudyUploadJobs {
+
+	/**
+	 * Save the XML-serialized study in {@code incomingStudy} and queue it to
+	 * be created or updated.
+	 * 
+	 * @param incomingStudy the XML-serialized study, which is read to the end
+	 *            but not closed
+	 * @param cellWriteMode how to write the cells of the standard matrices
+	 * 
+	 * @return the info of the new job
+	 */
+	StudyUploadJobInfo submit(
+			InputStream incomingStudy,
+			CellWriteMode cellWriteMode);
+
+	/**
+	 * Get the current info of a job.
+	 * 
+	 * @param jobId the id of the job
+	 * 
+	 * @return the info of the job, or {@code null} if there is no such job or
+	 *         it finished too long ago
+	 */
+	@CheckForNull
+	StudyUploadJobInfo getJobInfo(String jobId);
+
+	/**
+	 * Stop taking jobs and interrupt the running ones.
+	 */
+	void shutdown();
+}
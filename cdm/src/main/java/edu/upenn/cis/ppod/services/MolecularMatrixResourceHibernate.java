@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IDnaMatrixDAO;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IMolecularRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinMatrixDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.dto.PPodSubsequence;
+import edu.upenn.cis.ppod.dto.PPodSubsequences;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.Matrix;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.ProteinMatrix;
+
+/**
+ * As in {@link StudyResourceHibernate}, we commit the transactions here so
+ * that the response knows if the commit goes wrong.
+ * 
+ * @author Sam Donnelly
+ */
+final class MolecularMatrixResourceHibernate
+		implements IMolecularMatrixResource {
+
+	/** A read of a matrix, or other work, to be run in a transaction. */
+	private interface IMatrixRead<T> {
+		T read();
+	}
+
+	/**
+	 * How long, in milliseconds, a stored sequence is kept before it can be
+	 * deleted for not being in any row. Much longer than any transaction.
+	 */
+	private static final long UNREFERENCED_SEQUENCE_AGE = 60 * 60 * 1000L;
+
+	private final IDnaMatrixDAO dnaMatrixDao;
+
+	private final IDnaRowDAO dnaRowDao;
+
+	private final IProteinMatrixDAO proteinMatrixDao;
+
+	private final IProteinRowDAO proteinRowDao;
+
+	private final ISequenceBlobDAO sequenceBlobDao;
+
+	private final Session session;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(MolecularMatrixResourceHibernate.class);
+
+	@Inject
+	MolecularMatrixResourceHibernate(
+			final IDnaMatrixDAO dnaMatrixDao,
+			final IDnaRowDAO dnaRowDao,
+			final IProteinMatrixDAO proteinMatrixDao,
+			final IProteinRowDAO proteinRowDao,
+			final ISequenceBlobDAO sequenceBlobDao,
+			final Session session) {
+		this.dnaMatrixDao = dnaMatrixDao;
+		this.dnaRowDao = dnaRowDao;
+		this.proteinMatrixDao = proteinMatrixDao;
+		this.proteinRowDao = proteinRowDao;
+		this.sequenceBlobDao = sequenceBlobDao;
+		this.session = session;
+	}
+
+	private <T> T readMatrix(
+			final String METHOD,
+			final IMatrixRead<T> matrixRead) {
+		final long inTime = new Date().getTime();
+
+		Transaction trx = null;
+
+		try {
+
+			trx = session.beginTransaction();
+
+			final T result = matrixRead.read();
+
+			trx.commit();
+
+			return result;
+
+		} catch (final Throwable t) {
+			try {
+				if (trx != null && trx.isActive()) {
+					trx.rollback();
+				}
+			} catch (final Throwable rbEx) {
+				logger.error("error rolling back transaction", rbEx);
+			}
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			session.close();
+			logger.info("{}: response time: {} milliseconds",
+					METHOD,
+					Long.valueOf(new Date().getTime() - inTime));
+		}
+	}
+
+	public PPodSubsequences getDnaSubsequences(
+			final String pPodId,
+			final int start,
+			final int end,
+			final List<Integer> rows) {
+		return readMatrix("getDnaSubsequences(...)",
+				new IMatrixRead<PPodSubsequences>() {
+			public PPodSubsequences read() {
+				checkNotNull(pPodId);
+				final DnaMatrix dbMatrix =
+						dnaMatrixDao.getMatrixByPPodId(pPodId);
+				checkArgument(
+						dbMatrix != null,
+						"no DNA matrix with pPOD ID " + pPodId);
+				return getSubsequences(dbMatrix, dnaRowDao, start, end, rows);
+			}
+		});
+	}
+
+	public PPodSubsequences getProteinSubsequences(
+			final String pPodId,
+			final int start,
+			final int end,
+			final List<Integer> rows) {
+		return readMatrix("getProteinSubsequences(...)",
+				new IMatrixRead<PPodSubsequences>() {
+			public PPodSubsequences read() {
+				checkNotNull(pPodId);
+				final ProteinMatrix dbMatrix =
+						proteinMatrixDao.getMatrixByPPodId(pPodId);
+				checkArgument(
+						dbMatrix != null,
+						"no protein matrix with pPOD ID " + pPodId);
+				return getSubsequences(
+						dbMatrix,
+						proteinRowDao,
+						start,
+						end,
+						rows);
+			}
+		});
+	}
+
+	public String deleteUnreferencedSequences() {
+		return readMatrix(
+				"deleteUnreferencedSequences()",
+				new IMatrixRead<String>() {
+					public String read() {
+						return String.valueOf(
+								sequenceBlobDao.deleteUnreferenced(
+										new Date(new Date().getTime()
+												- UNREFERENCED_SEQUENCE_AGE)));
+					}
+				});
+	}
+
+	/**
+	 * Rows are identified by the position of their OTU, so we go through the
+	 * OTUs of the matrix, but never through its rows.
+	 */
+	private static <M extends Matrix<?>> PPodSubsequences getSubsequences(
+			final M dbMatrix,
+			final IMolecularRowDAO<?, M> rowDao,
+			final int start,
+			final int end,
+			final List<Integer> rows) {
+		checkArgument(start >= 0, "start < 0");
+		checkArgument(start <= end, "start > end");
+		checkArgument(
+				end - start <= MAX_SUBSEQUENCE_LENGTH,
+				"end - start > " + MAX_SUBSEQUENCE_LENGTH);
+		final List<Otu> dbOtus = dbMatrix.getParent().getOtus();
+		final List<Integer> rowPositions;
+		final List<Long> otuIds;
+		if (rows.isEmpty()) {
+			rowPositions = newArrayListWithCapacity(dbOtus.size());
+			for (int rowPos = 0; rowPos < dbOtus.size(); rowPos++) {
+				rowPositions.add(rowPos);
+			}
+			otuIds = null;
+		} else {
+			rowPositions = rows;
+			otuIds = newArrayListWithCapacity(rows.size());
+			for (final Integer rowPos : rows) {
+				checkArgument(
+						rowPos >= 0 && rowPos < dbOtus.size(),
+						"row " + rowPos + " is not in the matrix, which has "
+								+ dbOtus.size() + " rows");
+				otuIds.add(dbOtus.get(rowPos).getId());
+			}
+		}
+		final Map<Long, String> subsequencesByOtuId =
+				rowDao.getSubsequencesByOtuId(dbMatrix, otuIds, start, end);
+		final PPodSubsequences subsequences = new PPodSubsequences(start, end);
+		for (final Integer rowPos : rowPositions) {
+			final String subsequence =
+					subsequencesByOtuId.get(dbOtus.get(rowPos).getId());
+			if (subsequence != null) {
+				subsequences.getSubsequences().add(
+						new PPodSubsequence(rowPos, subsequence));
+			}
+		}
+		return subsequences;
+	}
+}
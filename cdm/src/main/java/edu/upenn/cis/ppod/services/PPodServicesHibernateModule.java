@@ -26,6 +26,10 @@ public class PPodServicesHibernateModule extends AbstractModule {
 	protected void configure() {
 		bind(IPPodGreetingResource.class).to(PPodGreetingService.class);
 		bind(IStudyResource.class).to(StudyResourceHibernate.class);
+		bind(IStandardMatrixResource.class)
+				.to(StandardMatrixResourceHibernate.class);
+		bind(IMolecularMatrixResource.class)
+				.to(MolecularMatrixResourceHibernate.class);
 		bind(IPPodEntitiesResource.class)
 				.to(PPodEntitiesResourceHibernate.class);
 	}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import java.util.Date;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.createorupdate.IUpdateStandardCells;
+import edu.upenn.cis.ppod.createorupdate.IUpdateStandardColumns;
+import edu.upenn.cis.ppod.dto.PPodStandardCellBlock;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdits;
+import edu.upenn.cis.ppod.dto.PPodStandardColumns;
+import edu.upenn.cis.ppod.dto.StandardMatrixInfo;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.util.Study2StudyInfo;
+
+/**
+ * As in {@link StudyResourceHibernate}, we commit the transactions here so
+ * that the response knows if the commit goes wrong.
+ * 
+ * @author Sam Donnelly
+ */
+final class StandardMatrixResourceHibernate implements IStandardMatrixResource {
+
+	/** An edit to a matrix, to be run in a transaction. */
+	private interface IMatrixEdit {
+		StandardMatrix edit();
+	}
+
+	private final IUpdateStandardCells updateStandardCells;
+
+	private final IUpdateStandardColumns updateStandardColumns;
+
+	private final Session session;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(StandardMatrixResourceHibernate.class);
+
+	@Inject
+	StandardMatrixResourceHibernate(
+			final IUpdateStandardCells updateStandardCells,
+			final IUpdateStandardColumns updateStandardColumns,
+			final Session session) {
+		this.updateStandardCells = updateStandardCells;
+		this.updateStandardColumns = updateStandardColumns;
+		this.session = session;
+	}
+
+	private StandardMatrixInfo editMatrix(
+			final String METHOD,
+			final IMatrixEdit matrixEdit) {
+		final long inTime = new Date().getTime();
+
+		Transaction trx = null;
+
+		try {
+
+			trx = session.beginTransaction();
+
+			final StandardMatrix dbMatrix = matrixEdit.edit();
+
+			final StandardMatrixInfo matrixInfo =
+					Study2StudyInfo.toStandardMatrixInfo(dbMatrix);
+
+			trx.commit();
+
+			return matrixInfo;
+
+		} catch (final Throwable t) {
+			try {
+				if (trx != null && trx.isActive()) {
+					trx.rollback();
+				}
+			} catch (final Throwable rbEx) {
+				logger.error("error rolling back transaction", rbEx);
+			}
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			session.close();
+			logger.info("{}: response time: {} milliseconds",
+					METHOD,
+					Long.valueOf(new Date().getTime() - inTime));
+		}
+	}
+
+	public StandardMatrixInfo insertColumns(
+			final PPodStandardColumns columns,
+			final String pPodId,
+			final int position) {
+		return editMatrix("insertColumns(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardColumns.insertColumns(
+						pPodId,
+						position,
+						columns);
+			}
+		});
+	}
+
+	public StandardMatrixInfo moveColumn(
+			final String pPodId,
+			final int position,
+			final int to) {
+		return editMatrix("moveColumn(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardColumns.moveColumn(pPodId, position, to);
+			}
+		});
+	}
+
+	public StandardMatrixInfo packCells(final String pPodId) {
+		return editMatrix("packCells(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardCells.packCells(pPodId);
+			}
+		});
+	}
+
+	public StandardMatrixInfo removeColumns(
+			final String pPodId,
+			final int position,
+			final int count) {
+		return editMatrix("removeColumns(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardColumns.removeColumns(
+						pPodId,
+						position,
+						count);
+			}
+		});
+	}
+
+	public StandardMatrixInfo updateCellBlock(
+			final PPodStandardCellBlock block,
+			final String pPodId) {
+		return editMatrix("updateCellBlock(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardCells.updateCells(pPodId, block);
+			}
+		});
+	}
+
+	public StandardMatrixInfo updateCells(
+			final PPodStandardCellEdits cellEdits,
+			final String pPodId) {
+		return editMatrix("updateCells(...)", new IMatrixEdit() {
+			public StandardMatrix edit() {
+				return updateStandardCells.updateCells(pPodId, cellEdits);
+			}
+		});
+	}
+}
@@ -15,9 +15,14 @@
  */
 package edu.upenn.cis.ppod.services;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.Set;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.slf4j.Logger;
@@ -28,11 +33,15 @@ import com.google.inject.Inject;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.createorupdate.ICreateOrUpdateStudy;
 import edu.upenn.cis.ppod.dao.IStudyDAO;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
 import edu.upenn.cis.ppod.dto.PPodLabelAndId;
 import edu.upenn.cis.ppod.dto.PPodStudy;
 import edu.upenn.cis.ppod.dto.StudyInfo;
+import edu.upenn.cis.ppod.dto.StudyUploadJobInfo;
 import edu.upenn.cis.ppod.model.Study;
 import edu.upenn.cis.ppod.util.DbStudy2DocStudy;
+import edu.upenn.cis.ppod.util.PPodStudyWriter;
 import edu.upenn.cis.ppod.util.Study2StudyInfo;
 
 /**
@@ -56,6 +65,10 @@ final class StudyResourceHibernate implements IStudyResource {
 
 	private final DbStudy2DocStudy dbStudy2DocStudy;
 
+	private final IStudyUploadJobs studyUploadJobs;
+
+	private final IStudyStreamer studyStreamer;
+
 	private static final Logger logger = LoggerFactory
 			.getLogger(StudyResourceHibernate.class);
 
@@ -63,14 +76,64 @@ final class StudyResourceHibernate implements IStudyResource {
 	StudyResourceHibernate(
 			final IStudyDAO studyDAO,
 			final ICreateOrUpdateStudy createOrUpdateStudy,
-			final Session session) {
+			final Session session,
+			final IStudyUploadJobs studyUploadJobs,
+			final IStudyStreamer studyStreamer) {
 		this.studyDAO = studyDAO;
 		this.createOrUpdateStudy = createOrUpdateStudy;
 		this.session = session;
+		this.studyUploadJobs = studyUploadJobs;
+		this.studyStreamer = studyStreamer;
 		dbStudy2DocStudy = new DbStudy2DocStudy();
 	}
 
-	private StudyInfo createOrUpdateStudy(final PPodStudy incomingStudy) {
+	private StudyInfo createOrUpdateStudy(
+			final PPodStudy incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		final String METHOD = "createOrUpdateStudy(...)";
+		final long inTime = new Date().getTime();
+
+		Transaction trx = null;
+
+		try {
+
+			trx = session.beginTransaction();
+
+			final Study dbStudy =
+					createOrUpdateStudy.createOrUpdateStudy(
+							incomingStudy,
+							cellWriteMode);
+
+			final StudyInfo studyInfo = Study2StudyInfo.toStudyInfo(dbStudy);
+
+			trx.commit();
+
+			return studyInfo;
+
+		} catch (final Throwable t) {
+			try {
+				if (trx != null && trx.isActive()) {
+					trx.rollback();
+				}
+			} catch (final Throwable rbEx) {
+				logger.error("error rolling back transaction", rbEx);
+			}
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			session.close();
+			logger.info("{}: response time: {} milliseconds",
+					METHOD,
+					Long.valueOf(new Date().getTime() - inTime));
+		}
+	}
+
+	private StudyInfo createOrUpdateStudy(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode) {
 		final String METHOD = "createOrUpdateStudy(...)";
 		final long inTime = new Date().getTime();
 
@@ -81,7 +144,9 @@ final class StudyResourceHibernate implements IStudyResource {
 			trx = session.beginTransaction();
 
 			final Study dbStudy =
-					createOrUpdateStudy.createOrUpdateStudy(incomingStudy);
+					createOrUpdateStudy.createOrUpdateStudy(
+							incomingStudy,
+							cellWriteMode);
 
 			final StudyInfo studyInfo = Study2StudyInfo.toStudyInfo(dbStudy);
 
@@ -110,11 +175,34 @@ final class StudyResourceHibernate implements IStudyResource {
 		}
 	}
 
-	public StudyInfo createStudy(final PPodStudy incomingStudy) {
-		final StudyInfo studyInfo = createOrUpdateStudy(incomingStudy);
+	public StudyInfo createStudy(
+			final PPodStudy incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		final StudyInfo studyInfo =
+				createOrUpdateStudy(incomingStudy, cellWriteMode);
 		return studyInfo;
 	}
 
+	public StudyInfo createStudyFromStream(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		return createOrUpdateStudy(incomingStudy, cellWriteMode);
+	}
+
+	public StudyUploadJobInfo getStudyUploadJob(final String jobId) {
+		try {
+			final StudyUploadJobInfo jobInfo =
+					studyUploadJobs.getJobInfo(jobId);
+			if (jobInfo == null) {
+				throw new IllegalArgumentException("no such job: " + jobId);
+			}
+			return jobInfo;
+		} finally {
+			// The job has its own session
+			session.close();
+		}
+	}
+
 	public PPodStudy getStudyByPPodId(final String pPodId) {
 		final String METHOD = "getStudyByPPodId(...)";
 		final long inTime = new Date().getTime();
@@ -123,7 +211,7 @@ final class StudyResourceHibernate implements IStudyResource {
 
 			trx = session.beginTransaction();
 
-			final Study dbStudy = studyDAO.getStudyByPPodId(pPodId);
+			final Study dbStudy = studyDAO.getStudyByPPodIdEager(pPodId);
 			final PPodStudy docStudy = dbStudy2DocStudy
 					.dbStudy2DocStudy(dbStudy);
 
@@ -148,6 +236,81 @@ final class StudyResourceHibernate implements IStudyResource {
 		}
 	}
 
+	public Response getStudyByPPodIdAsStream(final String pPodId) {
+		final String METHOD = "getStudyByPPodIdAsStream(...)";
+		final long inTime = new Date().getTime();
+		Transaction trx = null;
+		final Study dbStudy;
+		try {
+			trx = session.beginTransaction();
+
+			// So that what we load isn't also kept as a snapshot
+			session.setDefaultReadOnly(true);
+
+			dbStudy = studyDAO.getStudyByPPodId(pPodId);
+		} catch (final Throwable t) {
+			rollback(trx);
+			session.close();
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		}
+
+		// Decide the status while we can still send one
+		if (dbStudy == null) {
+			rollback(trx);
+			session.close();
+			logger.info("{}: no such study: {}", METHOD, pPodId);
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+
+		// The transaction and session stay open until the study has been
+		// written
+		final Transaction studyTrx = trx;
+		final StreamingOutput study = new StreamingOutput() {
+			public void write(final OutputStream out) {
+				writeStudy(studyTrx, dbStudy, out, inTime);
+			}
+		};
+		return Response.ok(study).build();
+	}
+
+	private void writeStudy(
+			final Transaction trx,
+			final Study dbStudy,
+			final OutputStream out,
+			final long inTime) {
+		final String METHOD = "writeStudy(...)";
+		try {
+			studyStreamer.streamStudy(dbStudy, new PPodStudyWriter(out));
+			trx.commit();
+		} catch (final Throwable t) {
+			rollback(trx);
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			session.close();
+			logger.info("{}: response time: {} milliseconds",
+					METHOD,
+					Long.valueOf(new Date().getTime() - inTime));
+		}
+	}
+
+	private void rollback(@CheckForNull final Transaction trx) {
+		try {
+			if (trx != null && trx.isActive()) {
+				trx.rollback();
+			}
+		} catch (final Throwable rbEx) {
+			logger.error("error rolling back transaction", rbEx);
+		}
+	}
+
 	public Set<PPodLabelAndId> getStudyPPodIdLabelPairs() {
 		final String METHOD = "getStudyPPodIdLabelPairs()";
 		final long inTime = new Date().getTime();
@@ -177,11 +340,64 @@ final class StudyResourceHibernate implements IStudyResource {
 		}
 	}
 
+	public MergePlan planStudyUpload(
+			final PPodStudy incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		final String METHOD = "planStudyUpload(...)";
+		final long inTime = new Date().getTime();
+		Transaction trx = null;
+		try {
+			trx = session.beginTransaction();
+			return createOrUpdateStudy.planCreateOrUpdateStudy(
+					incomingStudy,
+					cellWriteMode);
+		} catch (final Throwable t) {
+			logger.error("caught", t);
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			throw new IllegalStateException(t);
+		} finally {
+			// It's a dry run, so whatever happened, nothing gets committed
+			try {
+				if (trx != null && trx.isActive()) {
+					trx.rollback();
+				}
+			} catch (final Throwable rbEx) {
+				logger.error("error rolling back transaction", rbEx);
+			}
+			session.close();
+			logger.info("{}: response time: {} milliseconds",
+					METHOD,
+					Long.valueOf(new Date().getTime() - inTime));
+		}
+	}
+
+	public StudyUploadJobInfo submitStudyUpload(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		try {
+			return studyUploadJobs.submit(incomingStudy, cellWriteMode);
+		} finally {
+			// The job has its own session
+			session.close();
+		}
+	}
+
 	public StudyInfo updateStudy(
 			final PPodStudy incomingStudy,
-			final String pPodId) {
-		final StudyInfo studyInfo = createOrUpdateStudy(incomingStudy);
+			final String pPodId,
+			final CellWriteMode cellWriteMode) {
+		final StudyInfo studyInfo =
+				createOrUpdateStudy(incomingStudy, cellWriteMode);
 		return studyInfo;
 	}
 
-}
\ No newline at end of file
+	public StudyInfo updateStudyFromStream(
+			final InputStream incomingStudy,
+			final String pPodId,
+			final CellWriteMode cellWriteMode) {
+		return createOrUpdateStudy(incomingStudy, cellWriteMode);
+	}
+
+}
\ No newline at end of file
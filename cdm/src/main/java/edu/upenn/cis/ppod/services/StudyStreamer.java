@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.hibernate.ScrollableResults;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.inject.Inject;
+
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.ProteinMatrix;
+import edu.upenn.cis.ppod.model.ProteinRow;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.model.TreeSet;
+import edu.upenn.cis.ppod.util.DbStudy2DocStudy;
+import edu.upenn.cis.ppod.util.IPPodStudyHandler;
+
+/**
+ * Walks a stored study with {@link ScrollableResults} over the rows of its
+ * matrices instead of their row maps, so that only one row is in the session
+ * at a time.
+ * 
+ * @author Sam Donnelly
+ */
+final class StudyStreamer implements IStudyStreamer {
+
+	private final IStandardRowDAO standardRowDao;
+	private final IDnaRowDAO dnaRowDao;
+	private final IProteinRowDAO proteinRowDao;
+	private final ISequenceBlobDAO sequenceBlobDao;
+	private final DbStudy2DocStudy dbStudy2DocStudy = new DbStudy2DocStudy();
+
+	@Inject
+	StudyStreamer(
+			final IStandardRowDAO standardRowDao,
+			final IDnaRowDAO dnaRowDao,
+			final IProteinRowDAO proteinRowDao,
+			final ISequenceBlobDAO sequenceBlobDao) {
+		this.standardRowDao = standardRowDao;
+		this.dnaRowDao = dnaRowDao;
+		this.proteinRowDao = proteinRowDao;
+		this.sequenceBlobDao = sequenceBlobDao;
+	}
+
+	public void streamStudy(
+			final Study dbStudy,
+			final IPPodStudyHandler handler) {
+		checkNotNull(dbStudy);
+		checkNotNull(handler);
+		handler.startStudy(dbStudy2DocStudy.dbStudy2DocStudyShallow(dbStudy));
+		for (final OtuSet dbOtuSet : dbStudy.getOtuSets()) {
+			handler.startOtuSet(
+					dbStudy2DocStudy.dbOtuSet2DocOtuSetShallow(dbOtuSet));
+			final List<Otu> dbOtus = dbOtuSet.getOtus();
+			for (final StandardMatrix dbMatrix : dbOtuSet
+					.getStandardMatrices()) {
+				final ScrolledRows<StandardRow, PPodStandardRow> rows =
+						new ScrolledRows<StandardRow, PPodStandardRow>(
+								StandardRow.class,
+								standardRowDao
+										.scrollOtuIdsRowsByMatrix(dbMatrix),
+								dbOtus) {
+							@Override
+							PPodStandardRow convertAndEvict(
+									final StandardRow dbRow) {
+								final PPodStandardRow docRow =
+										dbStudy2DocStudy
+												.dbStandardRow2DocStandardRow(dbRow);
+								// Takes its cells with it
+								standardRowDao.evict(dbRow);
+								return docRow;
+							}
+						};
+				try {
+					handler.standardMatrix(
+							dbStudy2DocStudy
+									.dbStandardMatrix2DocStandardMatrixShallow(dbMatrix),
+							rows);
+				} finally {
+					rows.close();
+				}
+			}
+			for (final DnaMatrix dbMatrix : dbOtuSet.getDnaMatrices()) {
+				final ScrolledRows<DnaRow, PPodDnaRow> rows =
+						new ScrolledRows<DnaRow, PPodDnaRow>(
+								DnaRow.class,
+								dnaRowDao.scrollOtuIdsRowsByMatrix(dbMatrix),
+								dbOtus) {
+							@Override
+							PPodDnaRow convertAndEvict(final DnaRow dbRow) {
+								final PPodDnaRow docRow =
+										dbStudy2DocStudy
+												.dbDnaRow2DocDnaRow(dbRow);
+								dnaRowDao.evict(dbRow);
+								if (dbRow.getSequenceBlob() != null) {
+									sequenceBlobDao.evict(dbRow
+											.getSequenceBlob());
+								}
+								return docRow;
+							}
+						};
+				try {
+					handler.dnaMatrix(
+							dbStudy2DocStudy.dbDnaMatrix2DocDnaMatrixShallow(dbMatrix),
+							rows);
+				} finally {
+					rows.close();
+				}
+			}
+			for (final ProteinMatrix dbMatrix : dbOtuSet.getProteinMatrices()) {
+				final ScrolledRows<ProteinRow, PPodProteinRow> rows =
+						new ScrolledRows<ProteinRow, PPodProteinRow>(
+								ProteinRow.class,
+								proteinRowDao
+										.scrollOtuIdsRowsByMatrix(dbMatrix),
+								dbOtus) {
+							@Override
+							PPodProteinRow convertAndEvict(
+									final ProteinRow dbRow) {
+								final PPodProteinRow docRow =
+										dbStudy2DocStudy
+												.dbProteinRow2DocProteinRow(dbRow);
+								proteinRowDao.evict(dbRow);
+								if (dbRow.getSequenceBlob() != null) {
+									sequenceBlobDao.evict(dbRow
+											.getSequenceBlob());
+								}
+								return docRow;
+							}
+						};
+				try {
+					handler.proteinMatrix(
+							dbStudy2DocStudy
+									.dbProteinMatrix2DocProteinMatrixShallow(dbMatrix),
+							rows);
+				} finally {
+					rows.close();
+				}
+			}
+			for (final TreeSet dbTreeSet : dbOtuSet.getTreeSets()) {
+				handler.treeSet(dbStudy2DocStudy.dbTreeSet2DocTreeSet(dbTreeSet));
+			}
+			handler.endOtuSet();
+		}
+		handler.endStudy();
+	}
+
+	/**
+	 * The rows of a matrix, converted as they're scrolled to. Checks that
+	 * there's a row for each OTU, in order.
+	 * 
+	 * @param <R> the row type
+	 * @param <D> the doc row type
+	 */
+	private static abstract class ScrolledRows<R, D> implements Iterable<D> {
+
+		private final Class<R> rowClass;
+		private final ScrollableResults otuIdsRows;
+		private final List<Otu> dbOtus;
+		private boolean iterated = false;
+
+		ScrolledRows(
+				final Class<R> rowClass,
+				final ScrollableResults otuIdsRows,
+				final List<Otu> dbOtus) {
+			this.rowClass = rowClass;
+			this.otuIdsRows = otuIdsRows;
+			this.dbOtus = dbOtus;
+		}
+
+		/**
+		 * Convert {@code dbRow} and evict it from the session.
+		 */
+		abstract D convertAndEvict(R dbRow);
+
+		public Iterator<D> iterator() {
+			checkState(!iterated, "the rows can only be iterated once");
+			iterated = true;
+			return new AbstractIterator<D>() {
+
+				private int otuPos = -1;
+
+				@Override
+				protected D computeNext() {
+					if (!otuIdsRows.next()) {
+						checkState(
+								otuPos == dbOtus.size() - 1,
+								"the matrix has " + (otuPos + 1)
+										+ " rows but its otu set has "
+										+ dbOtus.size() + " otus");
+						return endOfData();
+					}
+					otuPos++;
+					final Object[] otuIdRow = otuIdsRows.get();
+					checkState(
+							otuPos < dbOtus.size()
+									&& dbOtus.get(otuPos).getId()
+											.equals(otuIdRow[0]),
+							"the rows of the matrix don't line up with the"
+									+ " otus of its otu set at row " + otuPos);
+					return convertAndEvict(rowClass.cast(otuIdRow[1]));
+				}
+			};
+		}
+
+		void close() {
+			otuIdsRows.close();
+		}
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletScopes;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.createorupdate.ICreateOrUpdateStudy;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.StudyInfo;
+import edu.upenn.cis.ppod.dto.StudyUploadJobInfo;
+import edu.upenn.cis.ppod.dto.StudyUploadJobState;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.util.PPodStudyReader;
+import edu.upenn.cis.ppod.util.Study2StudyInfo;
+
+/**
+ * Runs study uploads on a fixed number of worker threads. Jobs that are
+ * submitted while all of the workers are busy wait in a queue.
+ * <p>
+ * An upload is saved to a temporary file when it's submitted, and is read
+ * back from there with {@link ICreateOrUpdateStudy#createOrUpdateStudy(
+ * InputStream, CellWriteMode, AtomicLong)}, so neither a queued nor a running
+ * job holds its study in memory. Each job runs in its own request scope, and
+ * so gets its own session.
+ * 
+ * @author Sam Donnelly
+ */
+@Singleton
+final class StudyUploadJobs implements IStudyUploadJobs {
+
+	static final int DEFAULT_WORKER_COUNT = 2;
+
+	/** How long we hold on to a finished job so that it can be polled. */
+	static final long FINISHED_JOB_RETENTION_MILLIS = 60L * 60L * 1000L;
+
+	private static final Logger logger =
+			LoggerFactory.getLogger(StudyUploadJobs.class);
+
+	private final Provider<Session> sessionProvider;
+
+	private final Provider<ICreateOrUpdateStudy> createOrUpdateStudyProvider;
+
+	private final PPodStudyReader studyReader = new PPodStudyReader();
+
+	private final ExecutorService workers;
+
+	private final ConcurrentMap<String, Job> jobs =
+			new ConcurrentHashMap<String, Job>();
+
+	@Inject
+	StudyUploadJobs(
+			final Provider<Session> sessionProvider,
+			final Provider<ICreateOrUpdateStudy> createOrUpdateStudyProvider) {
+		this(sessionProvider, createOrUpdateStudyProvider,
+				DEFAULT_WORKER_COUNT);
+	}
+
+	StudyUploadJobs(
+			final Provider<Session> sessionProvider,
+			final Provider<ICreateOrUpdateStudy> createOrUpdateStudyProvider,
+			final int workerCount) {
+		checkArgument(workerCount > 0, "workerCount must be positive");
+		this.sessionProvider = checkNotNull(sessionProvider);
+		this.createOrUpdateStudyProvider =
+				checkNotNull(createOrUpdateStudyProvider);
+		workers = Executors.newFixedThreadPool(
+				workerCount,
+				new ThreadFactoryBuilder()
+						.setNameFormat("ppod-study-upload-%d")
+						.setDaemon(true)
+						.build());
+	}
+
+	public StudyUploadJobInfo submit(
+			final InputStream incomingStudy,
+			final CellWriteMode cellWriteMode) {
+		checkNotNull(incomingStudy);
+		checkNotNull(cellWriteMode);
+
+		removeOldJobs();
+
+		final Job job =
+				new Job(
+						UUID.randomUUID().toString(),
+						save(incomingStudy),
+						cellWriteMode);
+		jobs.put(job.id, job);
+		try {
+			workers.execute(job);
+		} catch (final RuntimeException e) {
+			jobs.remove(job.id);
+			job.upload.delete();
+			throw e;
+		}
+		return job.getInfo();
+	}
+
+	@CheckForNull
+	public StudyUploadJobInfo getJobInfo(final String jobId) {
+		checkNotNull(jobId);
+		final Job job = jobs.get(jobId);
+		return job == null ? null : job.getInfo();
+	}
+
+	public void shutdown() {
+		workers.shutdownNow();
+	}
+
+	private void removeOldJobs() {
+		final long now = System.currentTimeMillis();
+		for (final Iterator<Job> jobsItr = jobs.values().iterator(); jobsItr
+				.hasNext();) {
+			final Job job = jobsItr.next();
+			if (job.finishedAt != -1
+					&& now - job.finishedAt > FINISHED_JOB_RETENTION_MILLIS) {
+				jobsItr.remove();
+			}
+		}
+	}
+
+	private static File save(final InputStream incomingStudy) {
+		File upload = null;
+		OutputStream out = null;
+		boolean saved = false;
+		try {
+			upload = File.createTempFile("ppod-study-upload-", ".xml");
+			out = new FileOutputStream(upload);
+			ByteStreams.copy(incomingStudy, out);
+			out.close();
+			saved = true;
+			return upload;
+		} catch (final IOException e) {
+			throw new IllegalStateException("could not save upload", e);
+		} finally {
+			if (!saved) {
+				Closeables.closeQuietly(out);
+				if (upload != null) {
+					upload.delete();
+				}
+			}
+		}
+	}
+
+	private final class Job implements Runnable {
+
+		private final String id;
+		private final File upload;
+		private final CellWriteMode cellWriteMode;
+
+		private final AtomicLong rowsMerged = new AtomicLong();
+		private volatile long totalRows = -1;
+		private volatile StudyUploadJobState state = StudyUploadJobState.QUEUED;
+
+		@CheckForNull
+		private volatile StudyInfo studyInfo;
+
+		@CheckForNull
+		private volatile String errorMessage;
+
+		private volatile long finishedAt = -1;
+
+		Job(
+				final String id,
+				final File upload,
+				final CellWriteMode cellWriteMode) {
+			this.id = id;
+			this.upload = upload;
+			this.cellWriteMode = cellWriteMode;
+		}
+
+		StudyUploadJobInfo getInfo() {
+			final StudyUploadJobInfo info = new StudyUploadJobInfo(id, state);
+			info.setRowsMerged(rowsMerged.get());
+			info.setTotalRows(totalRows);
+			info.setStudyInfo(studyInfo);
+			info.setErrorMessage(errorMessage);
+			return info;
+		}
+
+		public void run() {
+			final String METHOD = "run()";
+			final long inTime = System.currentTimeMillis();
+			state = StudyUploadJobState.RUNNING;
+			try {
+				totalRows = countRows();
+				studyInfo =
+						ServletScopes.scopeRequest(
+								new Callable<StudyInfo>() {
+									public StudyInfo call() throws IOException {
+										return createOrUpdateStudy();
+									}
+								},
+								Collections.<Key<?>, Object> emptyMap())
+								.call();
+				state = StudyUploadJobState.SUCCEEDED;
+			} catch (final Throwable t) {
+				logger.error("job " + id + " failed", t);
+				errorMessage =
+						t.getMessage() == null ? t.toString() : t.getMessage();
+				state = StudyUploadJobState.FAILED;
+			} finally {
+				upload.delete();
+				finishedAt = System.currentTimeMillis();
+				logger.info("{}: job {} took {} milliseconds",
+						new Object[] {
+								METHOD,
+								id,
+								Long.valueOf(finishedAt - inTime) });
+			}
+		}
+
+		private long countRows() throws IOException {
+			final InputStream in =
+					new BufferedInputStream(new FileInputStream(upload));
+			try {
+				return studyReader.countRows(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		private StudyInfo createOrUpdateStudy() throws IOException {
+			final Session session = sessionProvider.get();
+			Transaction trx = null;
+			final InputStream in =
+					new BufferedInputStream(new FileInputStream(upload));
+			try {
+
+				trx = session.beginTransaction();
+
+				final Study dbStudy =
+						createOrUpdateStudyProvider.get()
+								.createOrUpdateStudy(
+										in,
+										cellWriteMode,
+										rowsMerged);
+
+				final StudyInfo studyInfo =
+						Study2StudyInfo.toStudyInfo(dbStudy);
+
+				trx.commit();
+
+				return studyInfo;
+
+			} catch (final RuntimeException e) {
+				try {
+					if (trx != null && trx.isActive()) {
+						trx.rollback();
+					}
+				} catch (final Throwable rbEx) {
+					logger.error("error rolling back transaction", rbEx);
+				}
+				throw e;
+			} finally {
+				Closeables.closeQuietly(in);
+				session.close();
+			}
+		}
+	}
+}
@@ -19,6 +19,7 @@ import com.google.inject.servlet.ServletModule;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.persistence.PPodPersistenceModule;
+import edu.upenn.cis.ppod.services.IStudyUploadJobs;
 import edu.upenn.cis.ppod.services.PPodExceptionMapper;
 import edu.upenn.cis.ppod.services.PPodServicesHibernateModule;
 
@@ -67,6 +68,8 @@ public class PPodGuiceResteasyBootstrap
 
 	@Override
 	public void contextDestroyed(final ServletContextEvent event) {
+		logger.debug("shutting down study upload jobs...");
+		injector.getInstance(IStudyUploadJobs.class).shutdown();
 		logger.debug("shutting down hibernate...");
 		if (sessionFactory != null) {
 			sessionFactory.close();
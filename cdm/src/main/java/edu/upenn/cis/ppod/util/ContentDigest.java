@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Accumulates a SHA-1 digest of some content, for telling whether the content
+ * has changed without comparing it piece by piece.
+ * <p>
+ * Strings are length prefixed so that different sequences of values can't run
+ * together into the same bytes.
+ *
+ * @author Sam Donnelly
+ */
+public final class ContentDigest {
+
+	/** The length of {@link #toHexString()}. */
+	public static final int HEX_LENGTH = 40;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final MessageDigest digest;
+
+	private final byte[] intBytes = new byte[4];
+
+	public ContentDigest() {
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Get the hex digest of a single string.
+	 *
+	 * @param s the string
+	 *
+	 * @return the hex digest of {@code s}
+	 */
+	public static String hexDigestOf(@CheckForNull final String s) {
+		return new ContentDigest().putString(s).toHexString();
+	}
+
+	public ContentDigest putInt(final int i) {
+		intBytes[0] = (byte) (i >>> 24);
+		intBytes[1] = (byte) (i >>> 16);
+		intBytes[2] = (byte) (i >>> 8);
+		intBytes[3] = (byte) i;
+		digest.update(intBytes);
+		return this;
+	}
+
+	/**
+	 * Add a string, or a marker for {@code null}.
+	 *
+	 * @param s the string
+	 *
+	 * @return this
+	 */
+	public ContentDigest putString(@CheckForNull final String s) {
+		if (s == null) {
+			return putInt(-1);
+		}
+		final byte[] bytes = s.getBytes(UTF_8);
+		putInt(bytes.length);
+		digest.update(bytes);
+		return this;
+	}
+
+	/**
+	 * Finish the digest and return it as a lowercase hex string of length
+	 * {@link #HEX_LENGTH}. This resets the digest.
+	 *
+	 * @return the digest as a hex string
+	 */
+	public String toHexString() {
+		final byte[] bytes = digest.digest();
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -16,15 +16,13 @@
 package edu.upenn.cis.ppod.util;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.transform;
-import static com.google.common.collect.Sets.newHashSet;
+import edu.upenn.cis.ppod.dto.PPodCellType;
 import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
 import edu.upenn.cis.ppod.dto.PPodDnaRow;
 import edu.upenn.cis.ppod.dto.PPodOtu;
 import edu.upenn.cis.ppod.dto.PPodOtuSet;
 import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
 import edu.upenn.cis.ppod.dto.PPodProteinRow;
-import edu.upenn.cis.ppod.dto.PPodStandardCell;
 import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
 import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
 import edu.upenn.cis.ppod.dto.PPodStandardRow;
@@ -39,6 +37,7 @@ import edu.upenn.cis.ppod.model.OtuSet;
 import edu.upenn.cis.ppod.model.ProteinMatrix;
 import edu.upenn.cis.ppod.model.ProteinRow;
 import edu.upenn.cis.ppod.model.StandardCell;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
 import edu.upenn.cis.ppod.model.StandardCharacter;
 import edu.upenn.cis.ppod.model.StandardMatrix;
 import edu.upenn.cis.ppod.model.StandardRow;
@@ -51,21 +50,36 @@ public final class DbStudy2DocStudy {
 
 	public PPodDnaMatrix dbDnaMatrix2DocDnaMatrix(
 			final DnaMatrix dbMatrix) {
-		checkNotNull(dbMatrix);
 		final PPodDnaMatrix docMatrix =
-				new PPodDnaMatrix(
-						dbMatrix.getPPodId(),
-						dbMatrix.getLabel());
+				dbDnaMatrix2DocDnaMatrixShallow(dbMatrix);
 
 		for (final Otu dbOtu : dbMatrix.getParent().getOtus()) {
-			final DnaRow dbRow = dbMatrix.getRows().get(dbOtu);
-			final PPodDnaRow docRow = new PPodDnaRow(
-					dbRow.getSequence());
-			docMatrix.getRows().add(docRow);
+			docMatrix.getRows().add(
+					dbDnaRow2DocDnaRow(dbMatrix.getRows().get(dbOtu)));
 		}
 		return docMatrix;
 	}
 
+	/**
+	 * Convert a matrix but not its rows.
+	 * 
+	 * @param dbMatrix to be converted
+	 * 
+	 * @return a doc version of {@code dbMatrix} without any rows
+	 */
+	public PPodDnaMatrix dbDnaMatrix2DocDnaMatrixShallow(
+			final DnaMatrix dbMatrix) {
+		checkNotNull(dbMatrix);
+		return new PPodDnaMatrix(
+				dbMatrix.getPPodId(),
+				dbMatrix.getLabel());
+	}
+
+	public PPodDnaRow dbDnaRow2DocDnaRow(final DnaRow dbRow) {
+		checkNotNull(dbRow);
+		return new PPodDnaRow(dbRow.getSequence());
+	}
+
 	/**
 	 * This method evicts rows from the persistence context after they are
 	 * processed.
@@ -143,24 +157,57 @@ public final class DbStudy2DocStudy {
 
 	public PPodProteinMatrix dbProteinMatrix2DocProteinMatrix(
 			final ProteinMatrix dbMatrix) {
-		checkNotNull(dbMatrix);
 		final PPodProteinMatrix docMatrix =
-				new PPodProteinMatrix(
-						dbMatrix.getPPodId(),
-						dbMatrix.getLabel());
+				dbProteinMatrix2DocProteinMatrixShallow(dbMatrix);
 
 		for (final Otu dbOtu : dbMatrix.getParent().getOtus()) {
-			final ProteinRow dbRow = dbMatrix.getRows().get(dbOtu);
-			final PPodProteinRow docRow =
-					new PPodProteinRow(
-							dbRow.getSequence());
-			docMatrix.getRows().add(docRow);
+			docMatrix.getRows().add(
+					dbProteinRow2DocProteinRow(dbMatrix.getRows().get(dbOtu)));
 		}
 		return docMatrix;
 	}
 
+	/**
+	 * Convert a matrix but not its rows.
+	 * 
+	 * @param dbMatrix to be converted
+	 * 
+	 * @return a doc version of {@code dbMatrix} without any rows
+	 */
+	public PPodProteinMatrix dbProteinMatrix2DocProteinMatrixShallow(
+			final ProteinMatrix dbMatrix) {
+		checkNotNull(dbMatrix);
+		return new PPodProteinMatrix(
+				dbMatrix.getPPodId(),
+				dbMatrix.getLabel());
+	}
+
+	public PPodProteinRow dbProteinRow2DocProteinRow(final ProteinRow dbRow) {
+		checkNotNull(dbRow);
+		return new PPodProteinRow(dbRow.getSequence());
+	}
+
 	public PPodStandardMatrix dbStandardMatrix2DocStandardMatrix(
 						final StandardMatrix dbMatrix) {
+		final PPodStandardMatrix docMatrix =
+				dbStandardMatrix2DocStandardMatrixShallow(dbMatrix);
+		for (final Otu dbOtu : dbMatrix.getParent().getOtus()) {
+			docMatrix.getRows().add(
+					dbStandardRow2DocStandardRow(
+							dbMatrix.getRows().get(dbOtu)));
+		}
+		return docMatrix;
+	}
+
+	/**
+	 * Convert a matrix and its characters, but not its rows.
+	 * 
+	 * @param dbMatrix to be converted
+	 * 
+	 * @return a doc version of {@code dbMatrix} without any rows
+	 */
+	public PPodStandardMatrix dbStandardMatrix2DocStandardMatrixShallow(
+			final StandardMatrix dbMatrix) {
 		checkNotNull(dbMatrix);
 		final PPodStandardMatrix docMatrix =
 				new PPodStandardMatrix(
@@ -179,25 +226,27 @@ public final class DbStudy2DocStudy {
 			}
 		}
 
-		for (final Otu dbOtu : dbMatrix.getParent().getOtus()) {
-			final StandardRow dbRow = dbMatrix.getRows().get(dbOtu);
-			final PPodStandardRow docRow = new PPodStandardRow();
-			docMatrix.getRows().add(docRow);
-
-			for (final StandardCell dbCell : dbRow.getCells()) {
-				final PPodStandardCell docCell =
-						new PPodStandardCell(
-								dbCell.getType(),
-								newHashSet(
-										transform(dbCell.getStatesSmartly(),
-												StandardState.getStateNumber)));
-				docRow.getCells().add(docCell);
-			}
-		}
-
 		return docMatrix;
 	}
 
+	public PPodStandardRow dbStandardRow2DocStandardRow(
+			final StandardRow dbRow) {
+		checkNotNull(dbRow);
+		if (dbRow.getPackedCells() != null) {
+			return StandardCellsCodec.decodeRow(dbRow.getPackedCells());
+		}
+		final PPodStandardRow docRow = new PPodStandardRow();
+		for (final StandardCell dbCell : dbRow.getCells()) {
+			docRow.addCell(
+					dbCell.getType(),
+					dbCell.getType() == PPodCellType.SINGLE
+							? PPodStandardRow.toStateBitmask(
+									dbCell.getStateNumbers())
+							: dbCell.getStateBitmask());
+		}
+		return docRow;
+	}
+
 	public PPodStudy dbStudy2DocStudyShallow(final Study dbStudy) {
 		checkNotNull(dbStudy);
 		return new PPodStudy(
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+
+/**
+ * Receives the pieces of a study as {@link PPodStudyReader} reads them, in
+ * document order.
+ * <p>
+ * The study, OTU set and matrix objects that are handed over are headers: they
+ * don't hold their children. The rows of a matrix are handed over as an
+ * {@code Iterable} that reads them from the document one at a time, can be
+ * iterated only once, and is only good until the call it's passed to returns.
+ * 
+ * @author Sam Donnelly
+ */
+public interface IPPodStudyHandler {
+
+	/**
+	 * Called first, with the label and pPOD ID of the study.
+	 * 
+	 * @param study the study, without its OTU sets
+	 */
+	void startStudy(PPodStudy study);
+
+	/**
+	 * Called at the start of each OTU set, once its OTUs have been read.
+	 * 
+	 * @param otuSet the OTU set with its OTUs but without its matrices and tree
+	 *            sets
+	 */
+	void startOtuSet(PPodOtuSet otuSet);
+
+	/**
+	 * Called for each standard matrix of the current OTU set.
+	 * 
+	 * @param matrix the matrix with its characters but without its rows
+	 * @param rows the rows of the matrix
+	 */
+	void standardMatrix(PPodStandardMatrix matrix, Iterable<PPodStandardRow> rows);
+
+	/**
+	 * Called for each DNA matrix of the current OTU set.
+	 * 
+	 * @param matrix the matrix without its rows
+	 * @param rows the rows of the matrix
+	 */
+	void dnaMatrix(PPodDnaMatrix matrix, Iterable<PPodDnaRow> rows);
+
+	/**
+	 * Called for each protein matrix of the current OTU set.
+	 * 
+	 * @param matrix the matrix without its rows
+	 * @param rows the rows of the matrix
+	 */
+	void proteinMatrix(PPodProteinMatrix matrix, Iterable<PPodProteinRow> rows);
+
+	/**
+	 * Called for each tree set of the current OTU set.
+	 * 
+	 * @param treeSet the whole tree set
+	 */
+	void treeSet(PPodTreeSet treeSet);
+
+	/**
+	 * Called at the end of each OTU set.
+	 */
+	void endOtuSet();
+
+	/**
+	 * Called last, at the end of the study.
+	 */
+	void endStudy();
+}
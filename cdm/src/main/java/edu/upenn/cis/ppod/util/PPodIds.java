@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Makes and converts pPOD IDs.
+ * <p>
+ * On the wire a pPOD ID is the usual 36 character UUID string, and in the
+ * database it's those 16 bytes. New IDs are time-ordered in the manner of
+ * version 7 UUIDs: the first 48 bits are the milliseconds since the epoch and
+ * the rest, but for the version and variant, are random. So the IDs of new
+ * rows go at the end of the pPOD ID indexes instead of all over them.
+ *
+ * @author Sam Donnelly
+ */
+public final class PPodIds {
+
+	/** The length of the string form of a pPOD ID. */
+	public static final int STRING_LENGTH = 36;
+
+	/** The length of the binary form of a pPOD ID. */
+	public static final int BINARY_LENGTH = 16;
+
+	private static final long VERSION = 0x7000L;
+
+	private static final long VARIANT = 0x8000000000000000L;
+
+	private static final Random random = new SecureRandom();
+
+	private static final Pattern PPOD_ID_PATTERN =
+			Pattern.compile("\\p{XDigit}{8}-\\p{XDigit}{4}-\\p{XDigit}{4}-"
+					+ "\\p{XDigit}{4}-\\p{XDigit}{12}");
+
+	/**
+	 * Make a new pPOD ID.
+	 *
+	 * @return the string form of a new pPOD ID
+	 */
+	public static String newPPodId() {
+		return newPPodId(System.currentTimeMillis(), random);
+	}
+
+	static String newPPodId(final long currentTimeMillis, final Random random) {
+		final long mostSigBits =
+				currentTimeMillis << 16
+						| VERSION
+						| random.nextInt() & 0xfffL;
+		final long leastSigBits =
+				random.nextLong() & 0x3fffffffffffffffL | VARIANT;
+		return new UUID(mostSigBits, leastSigBits).toString();
+	}
+
+	/**
+	 * Is a string the string form of a pPOD ID? Anything else can't be the
+	 * pPOD ID of anything, so lookups should treat it as no match rather than
+	 * pass it to {@link #toBytes(String)}.
+	 *
+	 * @param s the string
+	 *
+	 * @return {@code true} if {@code s} is a UUID string, {@code false} if
+	 *         it's anything else, {@code null} included
+	 */
+	public static boolean isPPodId(@CheckForNull final String s) {
+		return s != null && PPOD_ID_PATTERN.matcher(s).matches();
+	}
+
+	/**
+	 * Get the binary form of a pPOD ID.
+	 *
+	 * @param pPodId the string form of the pPOD ID
+	 *
+	 * @return the {@link #BINARY_LENGTH} bytes of {@code pPodId}
+	 *
+	 * @throws IllegalArgumentException if {@code pPodId} isn't a UUID string
+	 */
+	public static byte[] toBytes(final String pPodId) {
+		checkNotNull(pPodId);
+		checkArgument(isPPodId(pPodId), "not a pPOD ID: [" + pPodId + "]");
+		final UUID uuid = UUID.fromString(pPodId);
+		final byte[] bytes = new byte[BINARY_LENGTH];
+		putLong(bytes, 0, uuid.getMostSignificantBits());
+		putLong(bytes, 8, uuid.getLeastSignificantBits());
+		return bytes;
+	}
+
+	/**
+	 * Get the string form of a pPOD ID.
+	 *
+	 * @param bytes the binary form of the pPOD ID, as made by
+	 *            {@link #toBytes(String)}
+	 *
+	 * @return the string form of the pPOD ID
+	 *
+	 * @throws IllegalArgumentException if {@code bytes} isn't
+	 *             {@link #BINARY_LENGTH} long
+	 */
+	public static String toString(final byte[] bytes) {
+		checkNotNull(bytes);
+		checkArgument(
+				bytes.length == BINARY_LENGTH,
+				"a pPOD ID is " + BINARY_LENGTH + " bytes, not "
+						+ bytes.length);
+		return new UUID(getLong(bytes, 0), getLong(bytes, 8)).toString();
+	}
+
+	private static long getLong(final byte[] bytes, final int offset) {
+		long l = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			l = l << 8 | bytes[i] & 0xff;
+		}
+		return l;
+	}
+
+	private static void putLong(
+			final byte[] bytes,
+			final int offset,
+			final long l) {
+		for (int i = 0; i < 8; i++) {
+			bytes[offset + i] = (byte) (l >>> 56 - 8 * i);
+		}
+	}
+
+	private PPodIds() {
+		throw new AssertionError("Can't instantiate a PPodIds");
+	}
+}
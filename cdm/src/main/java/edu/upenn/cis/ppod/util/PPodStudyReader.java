@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.collect.AbstractIterator;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+
+/**
+ * Reads an XML-serialized {@link PPodStudy} with StAX and hands it to an
+ * {@link IPPodStudyHandler} piece by piece, so that only one row of a matrix
+ * has to be in memory at a time. The pieces themselves - OTUs, characters,
+ * rows and tree sets - are unmarshalled with JAXB.
+ * <p>
+ * DNA sequence sets are skipped, as they are by
+ * {@link edu.upenn.cis.ppod.createorupdate.ICreateOrUpdateStudy}.
+ * 
+ * @author Sam Donnelly
+ */
+public final class PPodStudyReader {
+
+	private static final String STUDY = "pPodStudy";
+	private static final String OTU_SET = "otuSet";
+	private static final String OTU = "otu";
+	private static final String STANDARD_MATRIX = "standardMatrix";
+	private static final String CHARACTER = "character";
+	private static final String DNA_MATRIX = "dnaMatrix";
+	private static final String PROTEIN_MATRIX = "proteinMatrix";
+	private static final String ROW = "row";
+	private static final String TREE_SET = "treeSet";
+	private static final String LABEL = "label";
+	private static final String PPOD_ID = "pPodId";
+
+	private static final JAXBContext context;
+
+	static {
+		try {
+			context = JAXBContext.newInstance(PPodStudy.class);
+		} catch (final JAXBException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final XMLInputFactory inputFactory;
+
+	public PPodStudyReader() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+	}
+
+	/**
+	 * Read the study in {@code in}, calling back {@code handler} as we go.
+	 * {@code in} is not closed.
+	 * 
+	 * @param in the XML-serialized study
+	 * @param handler receives the pieces of the study
+	 * 
+	 * @throws IllegalArgumentException if {@code in} doesn't hold a
+	 *             well-formed study
+	 */
+	public void read(final InputStream in, final IPPodStudyHandler handler) {
+		checkNotNull(in);
+		checkNotNull(handler);
+		try {
+			final XMLStreamReader reader =
+					inputFactory.createXMLStreamReader(in);
+			try {
+				new Reading(reader, context.createUnmarshaller(), handler)
+						.readStudy();
+			} finally {
+				reader.close();
+			}
+		} catch (final XMLStreamException e) {
+			throw new IllegalArgumentException("could not read study", e);
+		} catch (final JAXBException e) {
+			throw new IllegalArgumentException("could not read study", e);
+		}
+	}
+
+	/**
+	 * Count the matrix rows in the study in {@code in} without unmarshalling
+	 * anything. {@code in} is not closed.
+	 * 
+	 * @param in the XML-serialized study
+	 * 
+	 * @return the number of matrix rows in the study
+	 * 
+	 * @throws IllegalArgumentException if {@code in} isn't well-formed
+	 */
+	public long countRows(final InputStream in) {
+		checkNotNull(in);
+		try {
+			final XMLStreamReader reader =
+					inputFactory.createXMLStreamReader(in);
+			try {
+				long rowCount = 0;
+				int depth = 0;
+				while (reader.hasNext()) {
+					final int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+						// study, otu set, matrix, row
+						if (depth == 4 && ROW.equals(reader.getLocalName())) {
+							rowCount++;
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+					}
+				}
+				return rowCount;
+			} finally {
+				reader.close();
+			}
+		} catch (final XMLStreamException e) {
+			throw new IllegalArgumentException("could not read study", e);
+		}
+	}
+
+	/** The state of one call to {@link PPodStudyReader#read}. */
+	private static final class Reading {
+
+		private final XMLStreamReader reader;
+		private final Unmarshaller unmarshaller;
+		private final IPPodStudyHandler handler;
+
+		Reading(
+				final XMLStreamReader reader,
+				final Unmarshaller unmarshaller,
+				final IPPodStudyHandler handler) {
+			this.reader = reader;
+			this.unmarshaller = unmarshaller;
+			this.handler = handler;
+		}
+
+		void readStudy() throws XMLStreamException, JAXBException {
+			if (nextTag() != XMLStreamConstants.START_ELEMENT
+					|| !STUDY.equals(reader.getLocalName())) {
+				throw new IllegalArgumentException("expected <" + STUDY + ">");
+			}
+			handler.startStudy(
+					new PPodStudy(getPPodId(), getLabel()));
+			reader.next();
+			while (nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if (OTU_SET.equals(reader.getLocalName())) {
+					readOtuSet();
+				} else {
+					skipElement();
+				}
+			}
+			handler.endStudy();
+		}
+
+		private void readOtuSet() throws XMLStreamException, JAXBException {
+			final PPodOtuSet otuSet = new PPodOtuSet(getPPodId(), getLabel());
+			boolean started = false;
+			reader.next();
+			while (nextTag() == XMLStreamConstants.START_ELEMENT) {
+				final String name = reader.getLocalName();
+				if (OTU.equals(name)) {
+					if (started) {
+						throw new IllegalArgumentException(
+								"otu set [" + otuSet.getLabel()
+										+ "] has an <" + OTU
+										+ "> after its matrices or tree sets");
+					}
+					otuSet.getOtus().add(unmarshal(PPodOtu.class));
+					continue;
+				}
+				if (!started) {
+					handler.startOtuSet(otuSet);
+					started = true;
+				}
+				if (STANDARD_MATRIX.equals(name)) {
+					readStandardMatrix();
+				} else if (DNA_MATRIX.equals(name)) {
+					final PPodDnaMatrix matrix =
+							new PPodDnaMatrix(getPPodId(), getLabel());
+					reader.next();
+					final RowIterable<PPodDnaRow> rows =
+							new RowIterable<PPodDnaRow>(PPodDnaRow.class);
+					handler.dnaMatrix(matrix, rows);
+					rows.skipRest();
+				} else if (PROTEIN_MATRIX.equals(name)) {
+					final PPodProteinMatrix matrix =
+							new PPodProteinMatrix(getPPodId(), getLabel());
+					reader.next();
+					final RowIterable<PPodProteinRow> rows =
+							new RowIterable<PPodProteinRow>(
+									PPodProteinRow.class);
+					handler.proteinMatrix(matrix, rows);
+					rows.skipRest();
+				} else if (TREE_SET.equals(name)) {
+					handler.treeSet(unmarshal(PPodTreeSet.class));
+				} else {
+					skipElement();
+				}
+			}
+			if (!started) {
+				handler.startOtuSet(otuSet);
+			}
+			reader.next();
+			handler.endOtuSet();
+		}
+
+		private void readStandardMatrix()
+				throws XMLStreamException, JAXBException {
+			final PPodStandardMatrix matrix =
+					new PPodStandardMatrix(getPPodId(), getLabel());
+			reader.next();
+			while (nextTag() == XMLStreamConstants.START_ELEMENT
+					&& !ROW.equals(reader.getLocalName())) {
+				if (CHARACTER.equals(reader.getLocalName())) {
+					matrix.getCharacters().add(
+							unmarshal(PPodStandardCharacter.class));
+				} else {
+					skipElement();
+				}
+			}
+			final RowIterable<PPodStandardRow> rows =
+					new RowIterable<PPodStandardRow>(PPodStandardRow.class);
+			handler.standardMatrix(matrix, rows);
+			rows.skipRest();
+		}
+
+		/**
+		 * Move to the current or next start or end tag.
+		 * 
+		 * @return the type of the tag
+		 */
+		private int nextTag() throws XMLStreamException {
+			while (!reader.isStartElement() && !reader.isEndElement()) {
+				if (reader.getEventType() == XMLStreamConstants.END_DOCUMENT) {
+					throw new IllegalArgumentException(
+							"unexpected end of document");
+				}
+				reader.next();
+			}
+			return reader.getEventType();
+		}
+
+		/** Skip the element that we're at the start tag of. */
+		private void skipElement() throws XMLStreamException {
+			int depth = 0;
+			do {
+				if (reader.isStartElement()) {
+					depth++;
+				} else if (reader.isEndElement()) {
+					depth--;
+				}
+				reader.next();
+			} while (depth > 0);
+		}
+
+		private <T> T unmarshal(final Class<T> declaredType)
+				throws JAXBException {
+			return unmarshaller.unmarshal(reader, declaredType).getValue();
+		}
+
+		private String getLabel() {
+			final String label = reader.getAttributeValue(null, LABEL);
+			if (label == null) {
+				throw new IllegalArgumentException(
+						"<" + reader.getLocalName() + "> has no " + LABEL);
+			}
+			return label;
+		}
+
+		@CheckForNull
+		private String getPPodId() {
+			return reader.getAttributeValue(null, PPOD_ID);
+		}
+
+		/**
+		 * The {@code <row>}s of the matrix whose start tag we've just passed,
+		 * read as they're iterated over. Anything else in the matrix is
+		 * skipped.
+		 */
+		private final class RowIterable<R> implements Iterable<R> {
+
+			private final Class<R> rowClass;
+			private boolean iterated = false;
+			private boolean done = false;
+
+			RowIterable(final Class<R> rowClass) {
+				this.rowClass = rowClass;
+			}
+
+			public Iterator<R> iterator() {
+				checkState(!iterated, "the rows can only be iterated once");
+				iterated = true;
+				return new AbstractIterator<R>() {
+					@Override
+					protected R computeNext() {
+						final R row = nextRow();
+						return row == null ? endOfData() : row;
+					}
+				};
+			}
+
+			@CheckForNull
+			private R nextRow() {
+				if (done) {
+					return null;
+				}
+				try {
+					while (nextTag() == XMLStreamConstants.START_ELEMENT) {
+						if (ROW.equals(reader.getLocalName())) {
+							return unmarshal(rowClass);
+						}
+						if (CHARACTER.equals(reader.getLocalName())) {
+							throw new IllegalArgumentException(
+									"a matrix's <" + CHARACTER
+											+ ">s have to come before its <"
+											+ ROW + ">s");
+						}
+						skipElement();
+					}
+				} catch (final XMLStreamException e) {
+					throw new IllegalArgumentException(
+							"could not read row", e);
+				} catch (final JAXBException e) {
+					throw new IllegalArgumentException(
+							"could not read row", e);
+				}
+				// Past the end tag of the matrix
+				done = true;
+				try {
+					reader.next();
+				} catch (final XMLStreamException e) {
+					throw new IllegalArgumentException(
+							"could not read row", e);
+				}
+				return null;
+			}
+
+			/** Skip whatever rows the handler didn't read. */
+			void skipRest() throws XMLStreamException {
+				if (done) {
+					return;
+				}
+				done = true;
+				while (nextTag() == XMLStreamConstants.START_ELEMENT) {
+					skipElement();
+				}
+				reader.next();
+			}
+		}
+	}
+}
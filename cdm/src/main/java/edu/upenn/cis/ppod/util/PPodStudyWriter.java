@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.OutputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+
+/**
+ * An {@link IPPodStudyHandler} that writes the study it's handed as an
+ * XML-serialized {@link PPodStudy} with StAX, piece by piece, so that only one
+ * row of a matrix has to be in memory at a time. The pieces themselves - OTUs,
+ * characters, rows and tree sets - are marshalled with JAXB. What it writes
+ * can be read back with {@link PPodStudyReader} or unmarshalled as a
+ * {@code PPodStudy}.
+ * <p>
+ * The output stream is flushed at the start of the study and of each matrix,
+ * and at the end of the study, but is never closed.
+ * 
+ * @author Sam Donnelly
+ */
+public final class PPodStudyWriter implements IPPodStudyHandler {
+
+	private static final String STUDY = "pPodStudy";
+	private static final String OTU_SET = "otuSet";
+	private static final QName OTU = new QName("otu");
+	private static final String STANDARD_MATRIX = "standardMatrix";
+	private static final QName CHARACTER = new QName("character");
+	private static final String DNA_MATRIX = "dnaMatrix";
+	private static final String PROTEIN_MATRIX = "proteinMatrix";
+	private static final QName ROW = new QName("row");
+	private static final QName TREE_SET = new QName("treeSet");
+	private static final String LABEL = "label";
+	private static final String PPOD_ID = "pPodId";
+
+	private static final JAXBContext context;
+
+	static {
+		try {
+			context = JAXBContext.newInstance(PPodStudy.class);
+		} catch (final JAXBException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final XMLStreamWriter writer;
+
+	private final Marshaller marshaller;
+
+	/**
+	 * @param out where the study is written
+	 */
+	public PPodStudyWriter(final OutputStream out) {
+		checkNotNull(out);
+		try {
+			writer =
+					XMLOutputFactory.newInstance()
+							.createXMLStreamWriter(out, "UTF-8");
+			marshaller = context.createMarshaller();
+			marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write study", e);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write study", e);
+		}
+	}
+
+	public void startStudy(final PPodStudy study) {
+		checkNotNull(study);
+		try {
+			writer.writeStartDocument("UTF-8", "1.0");
+			writeStartElement(STUDY, study.getLabel(), study.getPPodId());
+			writer.flush();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write study", e);
+		}
+	}
+
+	public void startOtuSet(final PPodOtuSet otuSet) {
+		checkNotNull(otuSet);
+		try {
+			writeStartElement(OTU_SET, otuSet.getLabel(), otuSet.getPPodId());
+			for (final PPodOtu otu : otuSet.getOtus()) {
+				marshal(OTU, PPodOtu.class, otu);
+			}
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write otu set", e);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write otu set", e);
+		}
+	}
+
+	public void standardMatrix(
+			final PPodStandardMatrix matrix,
+			final Iterable<PPodStandardRow> rows) {
+		checkNotNull(matrix);
+		checkNotNull(rows);
+		try {
+			writeStartElement(
+					STANDARD_MATRIX,
+					matrix.getLabel(),
+					matrix.getPPodId());
+			for (final PPodStandardCharacter character : matrix
+					.getCharacters()) {
+				marshal(CHARACTER, PPodStandardCharacter.class, character);
+			}
+			writer.flush();
+			for (final PPodStandardRow row : rows) {
+				marshal(ROW, PPodStandardRow.class, row);
+			}
+			writer.writeEndElement();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		}
+	}
+
+	public void dnaMatrix(
+			final PPodDnaMatrix matrix,
+			final Iterable<PPodDnaRow> rows) {
+		checkNotNull(matrix);
+		checkNotNull(rows);
+		try {
+			writeStartElement(DNA_MATRIX, matrix.getLabel(), matrix.getPPodId());
+			writer.flush();
+			for (final PPodDnaRow row : rows) {
+				marshal(ROW, PPodDnaRow.class, row);
+			}
+			writer.writeEndElement();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		}
+	}
+
+	public void proteinMatrix(
+			final PPodProteinMatrix matrix,
+			final Iterable<PPodProteinRow> rows) {
+		checkNotNull(matrix);
+		checkNotNull(rows);
+		try {
+			writeStartElement(
+					PROTEIN_MATRIX,
+					matrix.getLabel(),
+					matrix.getPPodId());
+			writer.flush();
+			for (final PPodProteinRow row : rows) {
+				marshal(ROW, PPodProteinRow.class, row);
+			}
+			writer.writeEndElement();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write matrix", e);
+		}
+	}
+
+	public void treeSet(final PPodTreeSet treeSet) {
+		checkNotNull(treeSet);
+		try {
+			marshal(TREE_SET, PPodTreeSet.class, treeSet);
+		} catch (final JAXBException e) {
+			throw new IllegalStateException("could not write tree set", e);
+		}
+	}
+
+	public void endOtuSet() {
+		try {
+			writer.writeEndElement();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write otu set", e);
+		}
+	}
+
+	public void endStudy() {
+		try {
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+			// Doesn't close the output stream
+			writer.close();
+		} catch (final XMLStreamException e) {
+			throw new IllegalStateException("could not write study", e);
+		}
+	}
+
+	private void writeStartElement(
+			final String localName,
+			final String label,
+			@CheckForNull final String pPodId) throws XMLStreamException {
+		writer.writeStartElement(localName);
+		writer.writeAttribute(LABEL, label);
+		if (pPodId != null) {
+			writer.writeAttribute(PPOD_ID, pPodId);
+		}
+	}
+
+	private <T> void marshal(
+			final QName name,
+			final Class<T> declaredType,
+			final T value) throws JAXBException {
+		marshaller.marshal(
+				new JAXBElement<T>(name, declaredType, value),
+				writer);
+	}
+}
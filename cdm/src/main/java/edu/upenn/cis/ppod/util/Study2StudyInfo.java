@@ -16,7 +16,6 @@
 package edu.upenn.cis.ppod.util;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.get;
 import edu.upenn.cis.ppod.dto.MatrixInfo;
 import edu.upenn.cis.ppod.dto.OtuSetInfo;
 import edu.upenn.cis.ppod.dto.PPodEntityInfo;
@@ -59,27 +58,8 @@ public final class Study2StudyInfo {
 
 			for (final StandardMatrix matrix : otuSet
 					.getStandardMatrices()) {
-				final StandardMatrixInfo matrixInfo = new StandardMatrixInfo();
-				otuSetInfo.getStandardMatrixInfos().add(matrixInfo);
-				matrixInfo.setPPodId(matrix.getPPodId());
-
-				int characterIdx = -1;
-				for (final StandardCharacter standardCharacter : matrix
-						.getCharacters()) {
-					characterIdx++;
-					final PPodEntityInfo characterInfo =
-							new PPodEntityInfo();
-					characterInfo.setPPodId(standardCharacter.getPPodId());
-					matrixInfo.getCharacterInfosByIdx()
-							.put(characterIdx, characterInfo);
-				}
-
-				for (int columnPosition = 0; columnPosition < get(
-						matrix.getRows().values(), 0).getCells().size(); columnPosition++) {
-					matrixInfo.getColumnHeaderVersionsByIdx()
-								.put(columnPosition, 1L);
-				}
-
+				otuSetInfo.getStandardMatrixInfos().add(
+						toStandardMatrixInfo(matrix));
 			}
 
 			// TODO: refactor so matrices don't have
@@ -122,4 +102,31 @@ public final class Study2StudyInfo {
 		}
 		return studyInfo;
 	}
+
+	public static StandardMatrixInfo toStandardMatrixInfo(
+			final StandardMatrix matrix) {
+		checkNotNull(matrix);
+		final StandardMatrixInfo matrixInfo = new StandardMatrixInfo();
+		matrixInfo.setPPodId(matrix.getPPodId());
+
+		int characterIdx = -1;
+		for (final StandardCharacter standardCharacter : matrix
+				.getCharacters()) {
+			characterIdx++;
+			final PPodEntityInfo characterInfo =
+					new PPodEntityInfo();
+			characterInfo.setPPodId(standardCharacter.getPPodId());
+			matrixInfo.getCharacterInfosByIdx()
+					.put(characterIdx, characterInfo);
+		}
+
+		// Go by the characters: the rows' cells may not be in the
+		// session anymore.
+		for (int columnPosition = 0; columnPosition < matrix
+				.getCharacters().size(); columnPosition++) {
+			matrixInfo.getColumnHeaderVersionsByIdx()
+						.put(columnPosition, 1L);
+		}
+		return matrixInfo;
+	}
 }
@@ -19,19 +19,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Predicates.compose;
 import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.collect.Iterables.contains;
-import static com.google.common.collect.Sets.newHashSet;
 
 import java.util.Map;
-import java.util.Set;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 
-import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.upenn.cis.ppod.imodel.IChild;
 import edu.upenn.cis.ppod.model.Otu;
 import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.OtuSetDelta;
 
 /**
  * Project wide utilities.
@@ -70,36 +67,30 @@ public class UPennCisPPodUtil {
 		}
 	}
 
+	/**
+	 * Apply an OTU delta to the rows of an OTU-keyed map: drop the rows of the
+	 * removed OTUs and make room for the added ones. Moved OTUs keep their
+	 * rows since the map is keyed by OTU.
+	 * 
+	 * @param delta how the OTUs changed
+	 * @param rows the rows
+	 */
 	public static <C extends IChild<?>> void updateOtus(
-			@CheckForNull final OtuSet parent,
+			final OtuSetDelta delta,
 			final Map<Otu, C> rows) {
+		checkNotNull(delta);
+		checkNotNull(rows);
 
-		final Set<Otu> otusToBeRemoved = newHashSet();
-
-		for (final Otu otu : rows.keySet()) {
-			if (parent != null && contains(parent.getOtus(), otu)) {
-				// it stays
-			} else {
-				otusToBeRemoved.add(otu);
-			}
-		}
-
-		for (final Otu otuToBeRemoved : otusToBeRemoved) {
-			final C row = rows.get(otuToBeRemoved);
+		for (final Otu removedOtu : delta.getRemovedOtus()) {
+			final C row = rows.remove(removedOtu);
 			if (row != null) {
 				row.setParent(null);
 			}
 		}
 
-		rows.keySet().removeAll(otusToBeRemoved);
-
-		if (parent != null) {
-			for (final Otu otu : parent.getOtus()) {
-				if (rows.containsKey(otu)) {
-
-				} else {
-					rows.put(otu, null);
-				}
+		for (final Otu addedOtu : delta.getAddedOtus()) {
+			if (!rows.containsKey(addedOtu)) {
+				rows.put(addedOtu, null);
 			}
 		}
 	}
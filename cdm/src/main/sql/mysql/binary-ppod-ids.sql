@@ -0,0 +1,75 @@
+-- Copyright (C) 2011 Trustees of the University of Pennsylvania
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Store pPOD IDs as 16 bytes instead of 36 characters. The IDs themselves
+-- don't change: each one is its UUID string with the dashes taken out and the
+-- hex decoded, which is what PPodIdUserType reads and writes.
+--
+-- Dropping the old column drops its unique index, and the new column gets
+-- one of its own.
+
+alter table study add column ppod_id_binary binary(16);
+update study set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table study drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table otu_set add column ppod_id_binary binary(16);
+update otu_set set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table otu_set drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table otu add column ppod_id_binary binary(16);
+update otu set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table otu drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table standard_matrix add column ppod_id_binary binary(16);
+update standard_matrix set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table standard_matrix drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table standard_character add column ppod_id_binary binary(16);
+update standard_character
+	set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table standard_character drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table dna_matrix add column ppod_id_binary binary(16);
+update dna_matrix set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table dna_matrix drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table protein_matrix add column ppod_id_binary binary(16);
+update protein_matrix set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table protein_matrix drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table tree_set add column ppod_id_binary binary(16);
+update tree_set set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table tree_set drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
+
+alter table tree add column ppod_id_binary binary(16);
+update tree set ppod_id_binary = unhex(replace(ppod_id, '-', ''));
+alter table tree drop column ppod_id,
+	change column ppod_id_binary ppod_id binary(16) not null,
+	add unique (ppod_id);
@@ -0,0 +1,40 @@
+-- Copyright (C) 2011 Trustees of the University of Pennsylvania
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Keep the states of polymorphic and uncertain cells as a bitmask of their
+-- state numbers instead of in the standard_cell_standard_state join table.
+-- Bit n of a cell's state_bitmask is set if the cell has the state whose
+-- state_number is n. Single-state cells keep their state in standard_state_id
+-- and get 0.
+--
+-- If the schema tool has already added state_bitmask, leave out the first
+-- statement: the column is there, filled with 0, and the update fills it in.
+--
+-- The type column holds the ordinal of PPodCellType, and 2 and 3 are
+-- POLYMORPHIC and UNCERTAIN.
+
+alter table standard_cell add column state_bitmask bigint not null default 0;
+
+update standard_cell c
+	join (select cs.standard_cell_id,
+			bit_or(1 << s.state_number) as state_bitmask
+		from standard_cell_standard_state cs
+		join standard_state s on s.standard_state_id = cs.standard_state_id
+		group by cs.standard_cell_id) b
+	on b.standard_cell_id = c.standard_cell_id
+	set c.state_bitmask = b.state_bitmask,
+		c.obj_version = c.obj_version + 1
+	where c.type in (2, 3);
+
+drop table standard_cell_standard_state;
@@ -0,0 +1,23 @@
+-- Copyright (C) 2011 Trustees of the University of Pennsylvania
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Rows keep their sequences packed now, and a row that is written leaves its
+-- old sequence column null, so that column can't be not null anymore. The
+-- schema tool adds columns but won't relax one, hence this script. Rows that
+-- haven't been written since keep their sequences where they are, and are
+-- read from there.
+
+alter table dna_row modify column sequence longtext null;
+
+alter table protein_row modify column sequence longtext null;
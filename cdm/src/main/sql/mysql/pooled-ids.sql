@@ -0,0 +1,44 @@
+-- Copyright (C) 2011 Trustees of the University of Pennsylvania
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+-- http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Give the entities whose ids come from PooledIdGenerator the tables it hands
+-- them out from. Each table holds the first id of the next block, so starting
+-- it one past the biggest id there is keeps every existing id as it is.
+--
+-- The id columns keep their auto_increment: nothing uses it any more, but
+-- it's harmless and leaving it makes this easy to undo.
+
+create table standard_cell_seq (next_val bigint);
+insert into standard_cell_seq select coalesce(max(standard_cell_id), 0) + 1 from standard_cell;
+
+create table standard_row_seq (next_val bigint);
+insert into standard_row_seq select coalesce(max(standard_row_id), 0) + 1 from standard_row;
+
+create table standard_state_seq (next_val bigint);
+insert into standard_state_seq select coalesce(max(standard_state_id), 0) + 1 from standard_state;
+
+create table standard_character_seq (next_val bigint);
+insert into standard_character_seq select coalesce(max(standard_character_id), 0) + 1 from standard_character;
+
+create table dna_row_seq (next_val bigint);
+insert into dna_row_seq select coalesce(max(dna_row_id), 0) + 1 from dna_row;
+
+create table protein_row_seq (next_val bigint);
+insert into protein_row_seq select coalesce(max(protein_row_id), 0) + 1 from protein_row;
+
+create table otu_seq (next_val bigint);
+insert into otu_seq select coalesce(max(otu_id), 0) + 1 from otu;
+
+create table tree_seq (next_val bigint);
+insert into tree_seq select coalesce(max(tree_id), 0) + 1 from tree;
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dao.StagedStandardRow;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.StandardCellsCodec;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+import edu.upenn.cis.ppod.util.PPodEntityProvider;
+
+/**
+ * Test {@link BulkStandardCellWriter}.
+ *
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class BulkStandardCellWriterTest {
+
+	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
+			dataProviderClass = PPodEntityProvider.class)
+	public void writeCells(final PPodOtuSet sourceOtuSet) {
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		final List<List<StagedStandardRow>> blocks = newArrayList();
+
+		// The writer reuses its block list, so copy what we're given
+		doAnswer(new Answer<Void>() {
+			@SuppressWarnings("unchecked")
+			public Void answer(final InvocationOnMock invocation) {
+				blocks.add(newArrayList((List<StagedStandardRow>) invocation
+						.getArguments()[0]));
+				return null;
+			}
+		}).when(rowDao).insertCells(anyListOf(StagedStandardRow.class));
+
+		final PPodStandardMatrix sourceMatrix =
+				getOnlyElement(sourceOtuSet.getStandardMatrices());
+
+		final OtuSet targetOtuSet = new OtuSet();
+		final StandardMatrix targetMatrix = new StandardMatrix();
+		targetOtuSet.addStandardMatrix(targetMatrix);
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+
+		new CreateOrUpdateStandardMatrix(rowDao)
+				.createOrUpdateMatrix(
+						targetMatrix,
+						sourceMatrix,
+						CellWriteMode.BULK);
+
+		final List<StagedStandardRow> stagedRows = newArrayList();
+		for (final List<StagedStandardRow> block : blocks) {
+			assertTrue(block.size() <= BulkStandardCellWriter.DEFAULT_ROWS_PER_BLOCK);
+			stagedRows.addAll(block);
+		}
+
+		assertEquals(stagedRows.size(), sourceMatrix.getRows().size());
+
+		for (int rowPos = 0; rowPos < stagedRows.size(); rowPos++) {
+			final StagedStandardRow stagedRow = stagedRows.get(rowPos);
+			final PPodStandardRow sourceRow =
+					sourceMatrix.getRows().get(rowPos);
+
+			assertSame(
+					stagedRow.getRow(),
+					targetMatrix.getRows().get(
+							targetOtuSet.getOtus().get(rowPos)));
+			assertEquals(
+					stagedRow.getCellCount(),
+					sourceRow.getCells().size());
+
+			for (int cellPos = 0; cellPos < stagedRow.getCellCount(); cellPos++) {
+				final PPodStandardCell sourceCell =
+						sourceRow.getCells().get(cellPos);
+				assertEquals(stagedRow.getType(cellPos), sourceCell.getType());
+				final Set<StandardState> stagedStates =
+						stagedRow.getStates(cellPos);
+				assertEquals(stagedStates.size(), sourceCell.getStates()
+						.size());
+				for (final StandardState stagedState : stagedStates) {
+					assertSame(
+							stagedState.getParent(),
+							targetMatrix.getCharacters().get(cellPos));
+					assertTrue(sourceCell.getStates().contains(
+							stagedState.getStateNumber()));
+				}
+			}
+		}
+	}
+
+	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
+			dataProviderClass = PPodEntityProvider.class)
+	public void writeCellsInBlocks(final PPodOtuSet sourceOtuSet) {
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		final List<Integer> blockSizes = newArrayList();
+		doAnswer(new Answer<Void>() {
+			public Void answer(final InvocationOnMock invocation) {
+				blockSizes.add(((List<?>) invocation.getArguments()[0])
+						.size());
+				return null;
+			}
+		}).when(rowDao).insertCells(anyListOf(StagedStandardRow.class));
+
+		final PPodStandardMatrix sourceMatrix =
+				getOnlyElement(sourceOtuSet.getStandardMatrices());
+
+		final OtuSet targetOtuSet = new OtuSet();
+		final StandardMatrix targetMatrix = new StandardMatrix();
+		targetOtuSet.addStandardMatrix(targetMatrix);
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+
+		// Sets up the characters
+		new CreateOrUpdateStandardMatrix(mock(IStandardRowDAO.class))
+				.createOrUpdateMatrix(targetMatrix, sourceMatrix);
+
+		// As if every column were new, so that no row is skipped
+		final int[] sourceToDbCharPositions =
+				new int[sourceMatrix.getCharacters().size()];
+		Arrays.fill(sourceToDbCharPositions, -1);
+
+		new BulkStandardCellWriter(rowDao, 2)
+				.writeCells(
+						targetMatrix,
+						sourceMatrix.getRows(),
+						sourceToDbCharPositions,
+						false);
+
+		final int rowCount = sourceMatrix.getRows().size();
+		assertEquals(blockSizes.size(), (rowCount + 1) / 2);
+		for (int i = 0; i < blockSizes.size() - 1; i++) {
+			assertEquals(blockSizes.get(i), Integer.valueOf(2));
+		}
+	}
+
+	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
+			dataProviderClass = PPodEntityProvider.class)
+	public void writePackedCells(final PPodOtuSet sourceOtuSet) {
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		final List<StandardRow> packedRows = newArrayList();
+		doAnswer(new Answer<Void>() {
+			@SuppressWarnings("unchecked")
+			public Void answer(final InvocationOnMock invocation) {
+				packedRows.addAll((List<StandardRow>) invocation
+						.getArguments()[0]);
+				return null;
+			}
+		}).when(rowDao).updatePackedCells(anyListOf(StandardRow.class));
+
+		final PPodStandardMatrix sourceMatrix =
+				getOnlyElement(sourceOtuSet.getStandardMatrices());
+
+		final OtuSet targetOtuSet = new OtuSet();
+		final StandardMatrix targetMatrix = new StandardMatrix();
+		targetOtuSet.addStandardMatrix(targetMatrix);
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+
+		new CreateOrUpdateStandardMatrix(rowDao)
+				.createOrUpdateMatrix(
+						targetMatrix,
+						sourceMatrix,
+						CellWriteMode.PACKED);
+
+		verify(rowDao, never()).insertCells(
+				anyListOf(StagedStandardRow.class));
+		assertEquals(packedRows.size(), sourceMatrix.getRows().size());
+		for (int rowPos = 0; rowPos < packedRows.size(); rowPos++) {
+			final StandardRow packedRow = packedRows.get(rowPos);
+			assertSame(
+					packedRow,
+					targetMatrix.getRows().get(
+							targetOtuSet.getOtus().get(rowPos)));
+			assertTrue(packedRow.getCells().isEmpty());
+			final List<PPodStandardCell> sourceCells =
+					sourceMatrix.getRows().get(rowPos).getCells();
+			final List<PPodStandardCell> packedCells =
+					StandardCellsCodec.decode(packedRow.getPackedCells());
+			assertEquals(packedCells.size(), sourceCells.size());
+			for (int cellPos = 0; cellPos < sourceCells.size(); cellPos++) {
+				assertEquals(
+						packedCells.get(cellPos).getType(),
+						sourceCells.get(cellPos).getType());
+				assertEquals(
+						packedCells.get(cellPos).getStates(),
+						sourceCells.get(cellPos).getStates());
+			}
+		}
+	}
+
+	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
+			dataProviderClass = PPodEntityProvider.class)
+	public void writeCellsSkipsUnchangedRows(final PPodOtuSet sourceOtuSet) {
+		final PPodStandardMatrix sourceMatrix =
+				getOnlyElement(sourceOtuSet.getStandardMatrices());
+
+		final OtuSet targetOtuSet = new OtuSet();
+		final StandardMatrix targetMatrix = new StandardMatrix();
+		targetOtuSet.addStandardMatrix(targetMatrix);
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+
+		new CreateOrUpdateStandardMatrix(mock(IStandardRowDAO.class))
+				.createOrUpdateMatrix(targetMatrix, sourceMatrix);
+
+		// Simulate passing back in the persisted characters
+		for (int i = 0; i < sourceMatrix.getCharacters().size(); i++) {
+			sourceMatrix.getCharacters()
+					.get(i)
+					.setPPodId(targetMatrix
+							.getCharacters()
+							.get(i)
+							.getPPodId());
+		}
+
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+		new CreateOrUpdateStandardMatrix(rowDao)
+				.createOrUpdateMatrix(
+						targetMatrix,
+						sourceMatrix,
+						CellWriteMode.BULK);
+
+		verify(rowDao, never()).insertCells(
+				anyListOf(StagedStandardRow.class));
+	}
+}
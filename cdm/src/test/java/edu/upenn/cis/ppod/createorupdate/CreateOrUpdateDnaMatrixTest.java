@@ -1,10 +1,185 @@
 package edu.upenn.cis.ppod.createorupdate;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.Test;
 
 import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.util.ContentDigest;
 
 @Test(groups = TestGroupDefs.FAST)
 public class CreateOrUpdateDnaMatrixTest {
 
+	private static final String[] SEQUENCES = { "ACGT", "ACGTT", "AC-GT" };
+
+	private static PPodDnaMatrix newSourceMatrix() {
+		final PPodDnaMatrix sourceMatrix = new PPodDnaMatrix(null, "matrix-0");
+		for (final String sequence : SEQUENCES) {
+			sourceMatrix.getRows().add(new PPodDnaRow(sequence));
+		}
+		return sourceMatrix;
+	}
+
+	private static DnaMatrix newDbMatrix(final Long... otuIds) {
+		final OtuSet otuSet = new OtuSet();
+		final List<Otu> otus = newArrayList();
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			final Otu otu = spy(new Otu("otu-" + i));
+			if (otuIds.length > 0) {
+				doReturn(otuIds[i]).when(otu).getId();
+			}
+			otus.add(otu);
+		}
+		otuSet.clearAndAddOtus(otus);
+		final DnaMatrix dbMatrix = spy(new DnaMatrix());
+		otuSet.addDnaMatrix(dbMatrix);
+		return dbMatrix;
+	}
+
+	/**
+	 * A DAO whose stored sequences are the ones it's been asked for so far.
+	 */
+	private static ISequenceBlobDAO newSequenceBlobDao() {
+		final ISequenceBlobDAO sequenceBlobDao = mock(ISequenceBlobDAO.class);
+		final Map<String, SequenceBlob> storedBlobs = newHashMap();
+		when(
+				sequenceBlobDao.getOrMakePersistent(
+						any(SequenceBlob.Alphabet.class),
+						anyString()))
+				.thenAnswer(new Answer<SequenceBlob>() {
+					public SequenceBlob answer(
+							final InvocationOnMock invocation) {
+						final SequenceBlob.Alphabet alphabet =
+								(SequenceBlob.Alphabet) invocation
+										.getArguments()[0];
+						final String sequence =
+								(String) invocation.getArguments()[1];
+						SequenceBlob storedBlob = storedBlobs.get(sequence);
+						if (storedBlob == null) {
+							storedBlob = new SequenceBlob(alphabet, sequence);
+							storedBlobs.put(sequence, storedBlob);
+						}
+						return storedBlob;
+					}
+				});
+		return sequenceBlobDao;
+	}
+
+	public void createMatrix() {
+		final IDnaRowDAO rowDao = mock(IDnaRowDAO.class);
+		final DnaMatrix dbMatrix = newDbMatrix();
+		final PPodDnaMatrix sourceMatrix = newSourceMatrix();
+
+		final ISequenceBlobDAO sequenceBlobDao = newSequenceBlobDao();
+
+		new CreateOrUpdateDnaMatrix(rowDao, sequenceBlobDao, 2)
+				.createOrUpdateMatrix(dbMatrix, sourceMatrix);
+
+		assertEquals(dbMatrix.getLabel(), sourceMatrix.getLabel());
+		assertEquals(dbMatrix.getRows().size(), SEQUENCES.length);
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			final DnaRow dbRow =
+					dbMatrix.getRows().get(
+							dbMatrix.getParent().getOtus().get(i));
+			assertSame(dbRow.getParent(), dbMatrix);
+			assertEquals(dbRow.getSequence(), SEQUENCES[i]);
+			assertEquals(
+					dbRow.getSequenceHash(),
+					ContentDigest.hexDigestOf(SEQUENCES[i]));
+			verify(rowDao).makePersistent(dbRow);
+			verify(rowDao).evict(dbRow);
+			verify(sequenceBlobDao).evict(dbRow.getSequenceBlob());
+		}
+
+		// A full window of 2 and then the last row
+		verify(rowDao, times(2)).flush();
+	}
+
+	public void skipUnchangedRows() {
+		final IDnaRowDAO rowDao = mock(IDnaRowDAO.class);
+		final DnaMatrix dbMatrix = newDbMatrix(10L, 11L, 12L);
+		doReturn(1L).when(dbMatrix).getId();
+
+		final DnaRow changedRow = new DnaRow();
+		changedRow.setSequenceBlob(
+				new SequenceBlob(SequenceBlob.Alphabet.DNA, "TTTT"));
+
+		final List<Object[]> storedRows = newArrayList();
+		storedRows.add(new Object[] { 10L, 20L,
+				ContentDigest.hexDigestOf(SEQUENCES[0]) });
+		storedRows.add(new Object[] { 11L, 21L,
+				changedRow.getSequenceHash() });
+		storedRows.add(new Object[] { 12L, 22L,
+				ContentDigest.hexDigestOf(SEQUENCES[2]) });
+
+		when(rowDao.getOtuIdsIdsSequenceHashesByMatrix(dbMatrix))
+				.thenReturn(storedRows);
+		when(rowDao.findById(21L, false)).thenReturn(changedRow);
+
+		new CreateOrUpdateDnaMatrix(rowDao, newSequenceBlobDao())
+				.createOrUpdateMatrix(dbMatrix, newSourceMatrix());
+
+		// Only the changed row is loaded
+		verify(rowDao, times(1)).findById(anyLong(), anyBoolean());
+		assertEquals(changedRow.getSequence(), SEQUENCES[1]);
+		assertEquals(
+				changedRow.getSequenceHash(),
+				ContentDigest.hexDigestOf(SEQUENCES[1]));
+		verify(rowDao).evict(changedRow);
+		verify(rowDao, times(1)).flush();
+
+		// And we didn't go through the rows of the matrix
+		verify(dbMatrix, never()).getRows();
+	}
+
+	public void shareSequenceBlobs() {
+		final DnaMatrix dbMatrix = newDbMatrix();
+		final PPodDnaMatrix sourceMatrix = new PPodDnaMatrix(null, "matrix-0");
+		sourceMatrix.getRows().add(new PPodDnaRow("ACGT"));
+		sourceMatrix.getRows().add(new PPodDnaRow("TTTT"));
+		sourceMatrix.getRows().add(new PPodDnaRow("ACGT"));
+
+		new CreateOrUpdateDnaMatrix(mock(IDnaRowDAO.class), newSequenceBlobDao())
+				.createOrUpdateMatrix(dbMatrix, sourceMatrix);
+
+		final List<Otu> dbOtus = dbMatrix.getParent().getOtus();
+		final SequenceBlob blob0 =
+				dbMatrix.getRows().get(dbOtus.get(0)).getSequenceBlob();
+		assertSame(
+				dbMatrix.getRows().get(dbOtus.get(2)).getSequenceBlob(),
+				blob0);
+		assertNotSame(
+				dbMatrix.getRows().get(dbOtus.get(1)).getSequenceBlob(),
+				blob0);
+		assertEquals(blob0.getSequence(), "ACGT");
+	}
 }
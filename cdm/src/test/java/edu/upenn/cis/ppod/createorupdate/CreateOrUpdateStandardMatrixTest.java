@@ -18,6 +18,9 @@ package edu.upenn.cis.ppod.createorupdate;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
 
 import java.util.List;
 
@@ -25,6 +28,7 @@ import org.testng.annotations.Test;
 
 import edu.upenn.cis.ppod.TestGroupDefs;
 import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.PPodCellType;
 import edu.upenn.cis.ppod.dto.PPodOtu;
 import edu.upenn.cis.ppod.dto.PPodOtuSet;
 import edu.upenn.cis.ppod.dto.PPodStandardCell;
@@ -73,6 +77,78 @@ public class CreateOrUpdateStandardMatrixTest {
 				sourceMatrix);
 	}
 
+	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
+			dataProviderClass = PPodEntityProvider.class)
+	public void skipUnchangedRows(final PPodOtuSet sourceOtuSet) {
+
+		final ICreateOrUpdateStandardMatrix createOrUpdateStandardMatrix =
+				new CreateOrUpdateStandardMatrix(
+						mock(IStandardRowDAO.class));
+
+		final PPodStandardMatrix sourceMatrix = getOnlyElement(sourceOtuSet
+				.getStandardMatrices());
+
+		final OtuSet targetOtuSet = new OtuSet();
+		final StandardMatrix targetMatrix = new StandardMatrix();
+		targetOtuSet.addStandardMatrix(targetMatrix);
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet,
+				sourceOtuSet);
+
+		createOrUpdateStandardMatrix
+				.createOrUpdateMatrix(targetMatrix, sourceMatrix);
+
+		// Simulate passing back in the persisted characters.
+		for (int i = 0; i < sourceMatrix.getCharacters().size(); i++) {
+			sourceMatrix.getCharacters()
+					.get(i)
+					.setPPodId(targetMatrix
+							.getCharacters()
+							.get(i)
+							.getPPodId());
+		}
+
+		final StandardRow targetRow0 =
+				targetMatrix.getRows().get(targetOtuSet.getOtus().get(0));
+		final String targetRow0Fingerprint = targetRow0.getCellsFingerprint();
+		assertNotNull(targetRow0Fingerprint);
+
+		// Go behind the fingerprint's back: if the row is skipped, this sticks
+		targetRow0.setCellsFingerprint(null);
+		targetRow0.getCells().get(0).setInapplicable();
+		targetRow0.setCellsFingerprint(targetRow0Fingerprint);
+
+		createOrUpdateStandardMatrix.createOrUpdateMatrix(
+				targetMatrix,
+				sourceMatrix);
+
+		assertEquals(
+				targetRow0.getCells().get(0).getType(),
+				PPodCellType.INAPPLICABLE);
+
+		// But a real change goes through
+		final PPodStandardRow sourceRow0 = sourceMatrix.getRows().get(0);
+		final List<PPodStandardCell> newSourceCells =
+				newArrayList(sourceRow0.getCells());
+		newSourceCells.set(0,
+				new PPodStandardCell(
+						sourceRow0.getCells().get(0).getType() == PPodCellType.UNASSIGNED
+								? PPodCellType.INAPPLICABLE
+								: PPodCellType.UNASSIGNED,
+						PPodStandardCell.EMPTY_STATES));
+		sourceRow0.setCells(newSourceCells);
+
+		createOrUpdateStandardMatrix.createOrUpdateMatrix(
+				targetMatrix,
+				sourceMatrix);
+
+		ModelAssert.assertEqualsStandardMatrices(
+				targetMatrix,
+				sourceMatrix);
+		assertFalse(targetRow0Fingerprint.equals(
+				targetRow0.getCellsFingerprint()));
+	}
+
 	@Test(dataProvider = PPodEntityProvider.STANDARD_MATRICES_PROVIDER,
 			dataProviderClass = PPodEntityProvider.class)
 	public void moveRows(final PPodOtuSet sourceOtuSet) {
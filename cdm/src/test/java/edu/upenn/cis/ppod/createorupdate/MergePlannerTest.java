@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardState;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.Study;
+
+/**
+ * Test {@link MergePlanner}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class MergePlannerTest {
+
+	private static final int OTU_COUNT = 2;
+
+	private IStandardRowDAO standardRowDAO;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		standardRowDAO = mock(IStandardRowDAO.class);
+	}
+
+	private MergePlanner newPlanner() {
+		return new MergePlanner(
+				standardRowDAO,
+				mock(IDnaRowDAO.class),
+				mock(IProteinRowDAO.class));
+	}
+
+	private static Study newDbStudy() {
+		final OtuSet dbOtuSet = new OtuSet();
+		dbOtuSet.setLabel("otu-set");
+		final List<Otu> dbOtus = newArrayList();
+		for (int i = 0; i < OTU_COUNT; i++) {
+			final Otu dbOtu = spy(new Otu("otu-" + i));
+			doReturn(Long.valueOf(10 + i)).when(dbOtu).getId();
+			dbOtus.add(dbOtu);
+		}
+		dbOtuSet.clearAndAddOtus(dbOtus);
+
+		final StandardMatrix dbMatrix = new StandardMatrix();
+		dbMatrix.setLabel("matrix");
+		dbOtuSet.addStandardMatrix(dbMatrix);
+		final StandardCharacter dbCharacter = new StandardCharacter();
+		dbCharacter.setLabel("character");
+		dbMatrix.clearAndAddCharacters(ImmutableList.of(dbCharacter));
+
+		final Study dbStudy = new Study();
+		dbStudy.setLabel("study");
+		dbStudy.addOtuSet(dbOtuSet);
+		return dbStudy;
+	}
+
+	/**
+	 * The incoming version of {@code dbStudy}, or of a new study if it's
+	 * {@code null}.
+	 */
+	private static PPodStudy newIncomingStudy(final Study dbStudy) {
+		final OtuSet dbOtuSet =
+				dbStudy == null ? null : dbStudy.getOtuSets().get(0);
+		final StandardMatrix dbMatrix =
+				dbOtuSet == null ? null : dbOtuSet.getStandardMatrices()
+						.get(0);
+
+		final PPodStudy incomingStudy =
+				new PPodStudy(
+						dbStudy == null ? null : dbStudy.getPPodId(),
+						"study");
+		final PPodOtuSet incomingOtuSet =
+				new PPodOtuSet(
+						dbOtuSet == null ? null : dbOtuSet.getPPodId(),
+						"otu-set");
+		incomingStudy.getOtuSets().add(incomingOtuSet);
+		for (int i = 0; i < OTU_COUNT; i++) {
+			incomingOtuSet.getOtus().add(
+					new PPodOtu(
+							dbOtuSet == null ? null : dbOtuSet.getOtus()
+									.get(i).getPPodId(),
+							"otu-" + i));
+		}
+
+		final PPodStandardMatrix incomingMatrix =
+				new PPodStandardMatrix(
+						dbMatrix == null ? null : dbMatrix.getPPodId(),
+						"matrix");
+		incomingOtuSet.getStandardMatrices().add(incomingMatrix);
+		final PPodStandardCharacter incomingCharacter =
+				new PPodStandardCharacter(
+						dbMatrix == null ? null : dbMatrix.getCharacters()
+								.get(0).getPPodId(),
+						"character",
+						null);
+		incomingCharacter.getStates().add(new PPodStandardState(0, "zero"));
+		incomingMatrix.getCharacters().add(incomingCharacter);
+		for (int i = 0; i < OTU_COUNT; i++) {
+			final PPodStandardRow incomingRow = new PPodStandardRow();
+			incomingRow.getCells().add(
+					new PPodStandardCell(
+							PPodCellType.SINGLE,
+							ImmutableSet.of(0)));
+			incomingMatrix.getRows().add(incomingRow);
+		}
+		return incomingStudy;
+	}
+
+	public void planNewStudy() {
+		final MergePlan plan =
+				newPlanner().plan(
+						newIncomingStudy(null),
+						null,
+						CellWriteMode.BULK);
+
+		// Study, OTU set, OTUs, matrix and character
+		assertEquals(plan.getEntitiesToCreate(), 4 + OTU_COUNT);
+		assertEquals(plan.getEntitiesToUpdate(), 0);
+		assertEquals(plan.getEntitiesToDelete(), 0);
+		assertEquals(plan.getRowsChanged(), OTU_COUNT);
+		assertEquals(plan.getCellsChanged(), OTU_COUNT);
+		assertEquals(plan.getRowsUntouched(), 0);
+
+		// The entities, the state, and each row and its cell
+		assertEquals(plan.getEstimatedStatements(),
+				4 + OTU_COUNT + 1 + 2 * OTU_COUNT);
+		verifyZeroInteractions(standardRowDAO);
+	}
+
+	public void planUnchangedOtuSet() {
+		final Study dbStudy = newDbStudy();
+		final PPodStudy incomingStudy = newIncomingStudy(dbStudy);
+		dbStudy.getOtuSets()
+				.get(0)
+				.setContentDigest(
+						SubtreeDigest.of(incomingStudy.getOtuSets().get(0))
+								.getOtuSetDigest());
+
+		final MergePlan plan =
+				newPlanner().plan(incomingStudy, dbStudy, CellWriteMode.BULK);
+
+		assertEquals(plan.getSubtreesUnchanged(), 1);
+		assertEquals(plan.getRowsUntouched(), OTU_COUNT);
+		assertEquals(plan.getRowsChanged(), 0);
+		assertEquals(plan.getEstimatedStatements(), 0);
+		verifyZeroInteractions(standardRowDAO);
+	}
+
+	public void planChangedRows() {
+		final Study dbStudy = newDbStudy();
+		final PPodStudy incomingStudy = newIncomingStudy(dbStudy);
+		final StandardMatrix dbMatrix =
+				dbStudy.getOtuSets().get(0).getStandardMatrices().get(0);
+
+		final List<Object[]> storedRows = newArrayList();
+		storedRows.add(new Object[] {
+				10L,
+				CellsFingerprint.of(incomingStudy.getOtuSets().get(0)
+						.getStandardMatrices().get(0).getRows().get(0)) });
+		storedRows.add(new Object[] { 11L, null });
+		when(standardRowDAO.getOtuIdsCellsFingerprintsByMatrix(dbMatrix))
+				.thenReturn(storedRows);
+
+		final MergePlan plan =
+				newPlanner().plan(
+						incomingStudy,
+						dbStudy,
+						CellWriteMode.PER_CELL);
+
+		// The OTU set and the matrix
+		assertEquals(plan.getEntitiesToUpdate(), 2);
+		assertEquals(plan.getEntitiesToCreate(), 0);
+		assertEquals(plan.getRowsUntouched(), 1);
+		assertEquals(plan.getRowsChanged(), 1);
+		assertEquals(plan.getCellsChanged(), 1);
+	}
+
+	public void planMovedColumns() {
+		final Study dbStudy = newDbStudy();
+		final PPodStudy incomingStudy = newIncomingStudy(dbStudy);
+		final PPodStandardMatrix incomingMatrix =
+				incomingStudy.getOtuSets().get(0).getStandardMatrices().get(0);
+		incomingMatrix.getCharacters().add(
+				0,
+				new PPodStandardCharacter(null, "new-character", null));
+		for (final PPodStandardRow incomingRow : incomingMatrix.getRows()) {
+			final List<PPodStandardCell> cells =
+					newArrayList(incomingRow.getCells());
+			cells.add(0, new PPodStandardCell(
+					PPodCellType.INAPPLICABLE,
+					ImmutableSet.<Integer> of()));
+			incomingRow.setCells(cells);
+		}
+
+		final MergePlan plan =
+				newPlanner().plan(incomingStudy, dbStudy, CellWriteMode.BULK);
+
+		assertEquals(plan.getEntitiesToCreate(), 1);
+		assertEquals(plan.getRowsChanged(), OTU_COUNT);
+		assertEquals(plan.getCellsChanged(), 2 * OTU_COUNT);
+		verify(standardRowDAO, never()).getOtuIdsCellsFingerprintsByMatrix(
+				any(StandardMatrix.class));
+	}
+}
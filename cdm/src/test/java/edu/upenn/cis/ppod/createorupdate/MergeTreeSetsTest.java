@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodTree;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.Tree;
+import edu.upenn.cis.ppod.model.TreeNode;
+import edu.upenn.cis.ppod.model.TreeSet;
+
+/**
+ * Test {@link MergeTreeSets}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class MergeTreeSetsTest {
+
+	private OtuSet targetOtuSet;
+
+	private TreeSet targetTreeSet;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		targetOtuSet = new OtuSet();
+		targetTreeSet = new TreeSet();
+		targetOtuSet.addTreeSet(targetTreeSet);
+
+		final PPodOtuSet sourceOtuSet = new PPodOtuSet("otu-set-0");
+		for (int i = 0; i < 3; i++) {
+			sourceOtuSet.getOtus().add(
+					new PPodOtu(null, "otu-" + i, "otu" + i));
+		}
+		final PPodTreeSet sourceTreeSet = new PPodTreeSet(null, "tree-set-0");
+		sourceTreeSet.getTrees().add(
+				new PPodTree(null, "tree-0", "((otu0,otu1)clade,otu2);"));
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+		new MergeTreeSets().mergeTreeSets(
+				targetTreeSet,
+				sourceTreeSet,
+				sourceOtuSet);
+	}
+
+	/**
+	 * The OTU set and tree set as a client would send them back, with the
+	 * Newick string in pPOD IDs, and without the OTUs {@code removedOtus}.
+	 */
+	private void mergeAgain(final int... removedOtus) {
+		final PPodOtuSet sourceOtuSet =
+				new PPodOtuSet(targetOtuSet.getPPodId(), "otu-set-0");
+		final List<Otu> targetOtus = targetOtuSet.getOtus();
+		int removedOtuPos = 0;
+		for (int i = 0; i < targetOtus.size(); i++) {
+			if (removedOtuPos < removedOtus.length
+					&& removedOtus[removedOtuPos] == i) {
+				removedOtuPos++;
+				continue;
+			}
+			sourceOtuSet.getOtus().add(
+					new PPodOtu(
+							targetOtus.get(i).getPPodId(),
+							targetOtus.get(i).getLabel(),
+							"otu" + i));
+		}
+		final Tree targetTree = getOnlyElement(targetTreeSet.getTrees());
+		final PPodTreeSet sourceTreeSet =
+				new PPodTreeSet(targetTreeSet.getPPodId(), "tree-set-0");
+		sourceTreeSet.getTrees().add(
+				new PPodTree(
+						targetTree.getPPodId(),
+						"tree-0",
+						targetTree.getNewick()));
+
+		new MergeOtuSets().mergeOtuSets(targetOtuSet, sourceOtuSet);
+		new MergeTreeSets().mergeTreeSets(
+				targetTreeSet,
+				sourceTreeSet,
+				sourceOtuSet);
+	}
+
+	public void fillNodes() {
+		final List<Otu> targetOtus = targetOtuSet.getOtus();
+		final Tree targetTree = getOnlyElement(targetTreeSet.getTrees());
+		assertEquals(
+				targetTree.getNewick(),
+				"((" + targetOtus.get(0).getPPodId()
+						+ "," + targetOtus.get(1).getPPodId()
+						+ ")clade," + targetOtus.get(2).getPPodId() + ");");
+
+		final List<TreeNode> nodes = targetTree.getNodes();
+		assertEquals(nodes.size(), 5);
+		assertEquals(targetTree.getNodeCount(), Integer.valueOf(5));
+		assertNull(nodes.get(0).getOtu());
+		assertEquals(nodes.get(1).getLabel(), "clade");
+		assertSame(nodes.get(2).getOtu(), targetOtus.get(0));
+		assertSame(nodes.get(3).getOtu(), targetOtus.get(1));
+		assertSame(nodes.get(4).getOtu(), targetOtus.get(2));
+	}
+
+	public void keepNodesOfUnchangedTree() {
+		final Tree targetTree = getOnlyElement(targetTreeSet.getTrees());
+		final List<TreeNode> nodes = targetTree.getNodes();
+
+		mergeAgain();
+
+		assertSame(getOnlyElement(targetTreeSet.getTrees()), targetTree);
+		assertSame(targetTree.getNodes(), nodes);
+	}
+
+	public void fillNodesOfTreeStoredWithoutThem() {
+		final Tree targetTree = getOnlyElement(targetTreeSet.getTrees());
+		final Tree legacyTree = spy(new Tree());
+		legacyTree.setNewick(targetTree.getNewick());
+		doReturn(targetTree.getPPodId()).when(legacyTree).getPPodId();
+		targetTreeSet.clearAndAddTrees(ImmutableList.of(legacyTree));
+		assertNull(legacyTree.getNodeCount());
+
+		mergeAgain();
+
+		assertEquals(legacyTree.getNodes().size(), 5);
+		assertEquals(legacyTree.getNodeCount(), Integer.valueOf(5));
+		assertSame(
+				legacyTree.getNodes().get(4).getOtu(),
+				targetOtuSet.getOtus().get(2));
+	}
+
+	public void removeOtusFromNodesOfUnchangedTree() {
+		final Otu removedOtu = targetOtuSet.getOtus().get(1);
+		final Otu keptOtu = targetOtuSet.getOtus().get(2);
+
+		mergeAgain(1);
+
+		final List<TreeNode> nodes =
+				getOnlyElement(targetTreeSet.getTrees()).getNodes();
+		assertEquals(nodes.size(), 5);
+
+		// As if the Newick string were parsed without the OTU
+		assertNull(nodes.get(3).getOtu());
+		assertEquals(nodes.get(3).getLabel(), removedOtu.getPPodId());
+		assertEquals(nodes.get(3).getParentIndex(), 1);
+		assertEquals(nodes.get(3).getSubtreeEnd(), 4);
+
+		assertSame(nodes.get(4).getOtu(), keptOtu);
+	}
+}
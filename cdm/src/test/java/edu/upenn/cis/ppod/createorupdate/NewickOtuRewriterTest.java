@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+
+/**
+ * Test {@link NewickOtuRewriter}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class NewickOtuRewriterTest {
+
+	public void rewriteQuotedLabels() {
+		final Map<String, String> labelsToReplacements =
+				ImmutableMap.of("a", "x", "b", "y", "c", "z");
+		assertEquals(
+				NewickOtuRewriter.rewrite(
+						"('a',('b','c'));",
+						labelsToReplacements),
+				"('x',('y','z'));");
+	}
+
+	public void rewriteLabelThatIsAPrefixOfAnother() {
+		final Map<String, String> labelsToReplacements =
+				ImmutableMap.of("otu1", "first", "otu10", "tenth");
+		assertEquals(
+				NewickOtuRewriter.rewrite(
+						"(otu1,otu10,'otu10');",
+						labelsToReplacements),
+				"(first,tenth,'tenth');");
+	}
+
+	public void rewriteLeavesBranchLengthsAndCommentsAlone() {
+		final Map<String, String> labelsToReplacements =
+				ImmutableMap.of("1", "one", "2", "two");
+		assertEquals(
+				NewickOtuRewriter.rewrite(
+						"(1:2, 2:1 [&comment 1 [2]])3:1;",
+						labelsToReplacements),
+				"(one:2, two:1 [&comment 1 [2]])3:1;");
+	}
+
+	public void rewriteEscapedQuotes() {
+		final Map<String, String> labelsToReplacements =
+				ImmutableMap.of("o'neil", "smith's");
+		assertEquals(
+				NewickOtuRewriter.rewrite(
+						"('o''neil','other');",
+						labelsToReplacements),
+				"('smith''s','other');");
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.TreeNode;
+
+/**
+ * Test {@link NewickParser}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class NewickParserTest {
+
+	public void parse() {
+		final Otu otuA = new Otu("a");
+		final Otu otuB = new Otu("b");
+		final Otu otuC = new Otu("c");
+		final Map<String, Otu> otusByLabel =
+				ImmutableMap.of("a", otuA, "b", otuB, "c", otuC);
+
+		final List<TreeNode> nodes =
+				NewickParser.parse(
+						"('a':1.5,(b:2, c [&comment])clade:0.25)root;",
+						otusByLabel);
+
+		assertEquals(nodes.size(), 5);
+
+		assertEquals(nodes.get(0).getParentIndex(), -1);
+		assertEquals(nodes.get(0).getSubtreeEnd(), 5);
+		assertEquals(nodes.get(0).getLabel(), "root");
+		assertNull(nodes.get(0).getOtu());
+
+		assertEquals(nodes.get(1).getParentIndex(), 0);
+		assertEquals(nodes.get(1).getSubtreeEnd(), 2);
+		assertSame(nodes.get(1).getOtu(), otuA);
+		assertNull(nodes.get(1).getLabel());
+		assertEquals(nodes.get(1).getBranchLength(), 1.5);
+
+		assertEquals(nodes.get(2).getParentIndex(), 0);
+		assertEquals(nodes.get(2).getSubtreeEnd(), 5);
+		assertEquals(nodes.get(2).getLabel(), "clade");
+		assertEquals(nodes.get(2).getBranchLength(), 0.25);
+
+		assertEquals(nodes.get(3).getParentIndex(), 2);
+		assertSame(nodes.get(3).getOtu(), otuB);
+		assertEquals(nodes.get(3).getBranchLength(), 2.0);
+
+		assertEquals(nodes.get(4).getParentIndex(), 2);
+		assertEquals(nodes.get(4).getSubtreeEnd(), 5);
+		assertSame(nodes.get(4).getOtu(), otuC);
+		assertNull(nodes.get(4).getBranchLength());
+	}
+
+	public void parseUnlabeledLeaves() {
+		final List<TreeNode> nodes =
+				NewickParser.parse(
+						"(,x);",
+						Collections.<String, Otu> emptyMap());
+		assertEquals(nodes.size(), 3);
+		assertNull(nodes.get(1).getLabel());
+		assertEquals(nodes.get(2).getLabel(), "x");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void parseUnclosed() {
+		NewickParser.parse("(a,(b,c);", Collections.<String, Otu> emptyMap());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void parseTwoTrees() {
+		NewickParser.parse("(a,b)(c,d);", Collections.<String, Otu> emptyMap());
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+import edu.upenn.cis.ppod.model.TreeSet;
+
+/**
+ * Test {@link PPodIdReconciliation}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class PPodIdReconciliationTest {
+
+	@Test
+	public void reconcile() {
+		final TreeSet dbTreeSet0 = new TreeSet();
+		final TreeSet dbTreeSet1 = new TreeSet();
+		final TreeSet dbTreeSet2 = new TreeSet();
+
+		final List<TreeSet> dbTreeSets =
+				ImmutableList.of(dbTreeSet0, dbTreeSet1, dbTreeSet2);
+
+		final List<PPodTreeSet> sourceTreeSets = newArrayList();
+		sourceTreeSets.add(new PPodTreeSet(dbTreeSet2.getPPodId(), "ts-2"));
+		sourceTreeSets.add(new PPodTreeSet(null, "ts-new"));
+		sourceTreeSets.add(new PPodTreeSet(dbTreeSet0.getPPodId(), "ts-0"));
+
+		final PPodIdReconciliation<TreeSet> reconciliation =
+				PPodIdReconciliation.reconcile(dbTreeSets, sourceTreeSets);
+
+		assertSame(reconciliation.getMatch(0), dbTreeSet2);
+		assertNull(reconciliation.getMatch(1));
+		assertSame(reconciliation.getMatch(2), dbTreeSet0);
+		assertEquals(reconciliation.getRemoveds(),
+				ImmutableList.of(dbTreeSet1));
+	}
+
+	@Test
+	public void reconcileNoSources() {
+		final TreeSet dbTreeSet0 = new TreeSet();
+		final TreeSet dbTreeSet1 = new TreeSet();
+
+		final PPodIdReconciliation<TreeSet> reconciliation =
+				PPodIdReconciliation.reconcile(
+						ImmutableList.of(dbTreeSet0, dbTreeSet1),
+						ImmutableList.<PPodTreeSet> of());
+
+		assertEquals(reconciliation.getRemoveds(),
+				ImmutableList.of(dbTreeSet0, dbTreeSet1));
+	}
+
+	@Test
+	public void reconcileUnknownPPodId() {
+		final List<PPodTreeSet> sourceTreeSets = newArrayList();
+		sourceTreeSets.add(new PPodTreeSet("not-in-the-db", "ts-0"));
+
+		final PPodIdReconciliation<TreeSet> reconciliation =
+				PPodIdReconciliation.reconcile(
+						ImmutableList.<TreeSet> of(),
+						sourceTreeSets);
+
+		assertNull(reconciliation.getMatch(0));
+		assertTrue(reconciliation.getRemoveds().isEmpty());
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardState;
+import edu.upenn.cis.ppod.dto.PPodTree;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+
+/**
+ * Test {@link SubtreeDigest}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class SubtreeDigestTest {
+
+	private static PPodOtuSet newOtuSet(final String otuDocIdPrefix) {
+		final PPodOtuSet otuSet = new PPodOtuSet("otu-set-id", "otu-set");
+		for (int i = 0; i < 2; i++) {
+			otuSet.getOtus().add(
+					new PPodOtu("otu-id-" + i, "otu-" + i, otuDocIdPrefix + i));
+		}
+		return otuSet;
+	}
+
+	private static PPodStandardMatrix newMatrix(final int stateNumber) {
+		final PPodStandardMatrix matrix =
+				new PPodStandardMatrix("matrix-id", "matrix");
+		final PPodStandardCharacter character =
+				new PPodStandardCharacter("character-id", "character", null);
+		character.getStates().add(new PPodStandardState(0, "zero"));
+		character.getStates().add(new PPodStandardState(1, "one"));
+		matrix.getCharacters().add(character);
+		for (int i = 0; i < 2; i++) {
+			final PPodStandardRow row = new PPodStandardRow();
+			row.getCells().add(
+					new PPodStandardCell(
+							PPodCellType.SINGLE,
+							ImmutableSet.of(stateNumber)));
+			matrix.getRows().add(row);
+		}
+		return matrix;
+	}
+
+	public void matrixDigest() {
+		final String digest = SubtreeDigest.of(newOtuSet("doc-"), newMatrix(0));
+		assertNotNull(digest);
+		assertEquals(
+				SubtreeDigest.of(newOtuSet("doc-"), newMatrix(0)),
+				digest);
+		assertFalse(SubtreeDigest.of(newOtuSet("doc-"), newMatrix(1))
+				.equals(digest));
+
+		final PPodOtuSet renamedOtuSet = newOtuSet("doc-");
+		renamedOtuSet.getOtus().get(1).setLabel("otu-renamed");
+		assertFalse(SubtreeDigest.of(renamedOtuSet, newMatrix(0))
+				.equals(digest));
+	}
+
+	public void streamedMatrixDigest() {
+		final PPodOtuSet otuSet = newOtuSet("doc-");
+		final PPodStandardMatrix matrix = newMatrix(0);
+		final SubtreeDigest streamedDigest =
+				SubtreeDigest.startStandardMatrix(otuSet, matrix);
+		int rowCount = 0;
+		for (final PPodStandardRow row : streamedDigest.digestRows(
+				matrix.getRows(),
+				SubtreeDigest.STANDARD_ROW_CONTENT)) {
+			assertEquals(row, matrix.getRows().get(rowCount++));
+		}
+		assertEquals(
+				streamedDigest.toHexString(),
+				SubtreeDigest.of(otuSet, matrix));
+	}
+
+	public void noDigestWithoutPPodIds() {
+		final PPodStandardMatrix matrix = newMatrix(0);
+		matrix.getCharacters().get(0).setPPodId(null);
+		assertNull(SubtreeDigest.of(newOtuSet("doc-"), matrix));
+
+		final PPodOtuSet otuSet = newOtuSet("doc-");
+		otuSet.getOtus().get(0).setPPodId(null);
+		assertNull(SubtreeDigest.of(otuSet, newMatrix(0)));
+
+		final List<String> noDigests = Collections.emptyList();
+		assertNull(SubtreeDigest.of(
+				newOtuSet("doc-"),
+				Collections.<String> singletonList(null),
+				noDigests,
+				noDigests,
+				noDigests));
+		assertNotNull(SubtreeDigest.of(
+				newOtuSet("doc-"),
+				ImmutableList.of(SubtreeDigest.of(
+						newOtuSet("doc-"),
+						newMatrix(0))),
+				noDigests,
+				noDigests,
+				noDigests));
+
+		assertFalse(SubtreeDigest.matches(null, null));
+	}
+
+	public void treeSetDigestIgnoresDocIds() {
+		final PPodTreeSet treeSet = new PPodTreeSet("tree-set-id", "tree-set");
+		treeSet.getTrees().add(new PPodTree("tree-id", "tree", "(doc-0,doc-1);"));
+		final PPodTreeSet otherDocIdsTreeSet =
+				new PPodTreeSet("tree-set-id", "tree-set");
+		otherDocIdsTreeSet.getTrees().add(
+				new PPodTree("tree-id", "tree", "(x0,x1);"));
+		final PPodTreeSet otherTreeSet =
+				new PPodTreeSet("tree-set-id", "tree-set");
+		otherTreeSet.getTrees().add(
+				new PPodTree("tree-id", "tree", "(doc-1,doc-0);"));
+
+		final String digest = SubtreeDigest.of(newOtuSet("doc-"), treeSet);
+		assertNotNull(digest);
+		assertEquals(
+				SubtreeDigest.of(newOtuSet("x"), otherDocIdsTreeSet),
+				digest);
+		assertFalse(SubtreeDigest.of(newOtuSet("doc-"), otherTreeSet)
+				.equals(digest));
+	}
+
+	public void clear() {
+		final OtuSet dbOtuSet = new OtuSet();
+		final StandardMatrix dbMatrix = new StandardMatrix();
+		dbOtuSet.addStandardMatrix(dbMatrix);
+		dbOtuSet.setContentDigest("otu-set-digest");
+		dbMatrix.setContentDigest("matrix-digest");
+
+		SubtreeDigest.clear(dbMatrix);
+
+		assertNull(dbMatrix.getContentDigest());
+		assertNull(dbOtuSet.getContentDigest());
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IStandardMatrixDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCellBlock;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdit;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdits;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.StandardCell;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+
+/**
+ * Test {@link UpdateStandardCells}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class UpdateStandardCellsTest {
+
+	private static final int ROW_COUNT = 3;
+
+	private static final int COLUMN_COUNT = 3;
+
+	private static final String MATRIX_PPOD_ID = "matrix-0";
+
+	/**
+	 * A matrix whose OTUs have ids 10, 11, ... and whose rows have ids 20,
+	 * 21, ..., and all of whose cells are unassigned.
+	 */
+	private static StandardMatrix newDbMatrix() {
+		final OtuSet otuSet = new OtuSet();
+		final List<Otu> otus = newArrayList();
+		for (int i = 0; i < ROW_COUNT; i++) {
+			final Otu otu = spy(new Otu("otu-" + i));
+			doReturn(Long.valueOf(10 + i)).when(otu).getId();
+			otus.add(otu);
+		}
+		otuSet.clearAndAddOtus(otus);
+
+		final StandardMatrix dbMatrix = new StandardMatrix();
+		otuSet.addStandardMatrix(dbMatrix);
+
+		final List<StandardCharacter> characters = newArrayList();
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			final StandardCharacter character = new StandardCharacter();
+			character.setLabel("character-" + i);
+			character.addState(new StandardState(0));
+			character.addState(new StandardState(1));
+			character.addState(new StandardState(2));
+			characters.add(character);
+		}
+		dbMatrix.clearAndAddCharacters(characters);
+
+		for (int i = 0; i < ROW_COUNT; i++) {
+			final StandardRow dbRow = spy(new StandardRow());
+			doReturn(Long.valueOf(20 + i)).when(dbRow).getId();
+			dbMatrix.putRow(otus.get(i), dbRow);
+			final List<StandardCell> dbCells = newArrayList();
+			for (int j = 0; j < COLUMN_COUNT; j++) {
+				dbCells.add(new StandardCell());
+			}
+			dbRow.clearAndAddCells(dbCells);
+			for (final StandardCell dbCell : dbRow.getCells()) {
+				dbCell.setUnassigned();
+			}
+			dbRow.setCellsFingerprint("fingerprint-" + i);
+		}
+		return dbMatrix;
+	}
+
+	private static IStandardRowDAO newRowDao(final StandardMatrix dbMatrix) {
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+		final List<Object[]> otuIdsIds = newArrayList();
+		for (final Otu otu : dbMatrix.getParent().getOtus()) {
+			final StandardRow dbRow = dbMatrix.getRows().get(otu);
+			otuIdsIds.add(new Object[] { otu.getId(), dbRow.getId() });
+			when(rowDao.findById(dbRow.getId(), false)).thenReturn(dbRow);
+		}
+		when(rowDao.getOtuIdsIdsByMatrixAndOtuIds(
+						eq(dbMatrix),
+						anyCollectionOf(Long.class))).thenReturn(otuIdsIds);
+		return rowDao;
+	}
+
+	private static IStandardMatrixDAO newMatrixDao(
+			final StandardMatrix dbMatrix) {
+		final IStandardMatrixDAO matrixDao = mock(IStandardMatrixDAO.class);
+		when(matrixDao.getMatrixByPPodId(MATRIX_PPOD_ID)).thenReturn(dbMatrix);
+		return matrixDao;
+	}
+
+	private static StandardCell getCell(
+			final StandardMatrix dbMatrix,
+			final int rowPos,
+			final int columnPos) {
+		return dbMatrix.getRows()
+				.get(dbMatrix.getParent().getOtus().get(rowPos))
+				.getCells()
+				.get(columnPos);
+	}
+
+	private static StandardRow getRow(
+			final StandardMatrix dbMatrix,
+			final int rowPos) {
+		return dbMatrix.getRows()
+				.get(dbMatrix.getParent().getOtus().get(rowPos));
+	}
+
+	public void updateCellBlock() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = newRowDao(dbMatrix);
+
+		// Columns 1 and 2 of rows 1 and 2
+		final PPodStandardCellBlock block = new PPodStandardCellBlock(1, 1);
+		for (int i = 0; i < 2; i++) {
+			final PPodStandardRow sourceRow = new PPodStandardRow();
+			sourceRow.getCells().add(
+					new PPodStandardCell(
+							PPodCellType.SINGLE,
+							ImmutableSet.of(i)));
+			sourceRow.getCells().add(
+					new PPodStandardCell(
+							PPodCellType.POLYMORPHIC,
+							ImmutableSet.of(1, 2)));
+			block.getRows().add(sourceRow);
+		}
+
+		final StandardMatrix returnedMatrix =
+				new UpdateStandardCells(newMatrixDao(dbMatrix), rowDao)
+						.updateCells(MATRIX_PPOD_ID, block);
+		assertSame(returnedMatrix, dbMatrix);
+
+		for (int rowPos = 0; rowPos < ROW_COUNT; rowPos++) {
+			assertEquals(
+					getCell(dbMatrix, rowPos, 0).getType(),
+					PPodCellType.UNASSIGNED);
+		}
+		assertEquals(
+				getCell(dbMatrix, 0, 1).getType(),
+				PPodCellType.UNASSIGNED);
+		for (int i = 0; i < 2; i++) {
+			final StandardCell singleCell = getCell(dbMatrix, i + 1, 1);
+			assertEquals(singleCell.getType(), PPodCellType.SINGLE);
+			assertEquals(
+					getOnlyStateNumber(singleCell),
+					Integer.valueOf(i));
+			assertEquals(
+					getCell(dbMatrix, i + 1, 2).getType(),
+					PPodCellType.POLYMORPHIC);
+			assertNull(getRow(dbMatrix, i + 1).getCellsFingerprint());
+		}
+		assertEquals(
+				getRow(dbMatrix, 0).getCellsFingerprint(),
+				"fingerprint-0");
+
+		// Only the edited rows are loaded
+		verify(rowDao, times(2)).findById(anyLong(), anyBoolean());
+		verify(rowDao, never()).findById(20L, false);
+		verify(rowDao).flush();
+	}
+
+	public void updateCells() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = newRowDao(dbMatrix);
+
+		final PPodStandardCellEdits cellEdits = new PPodStandardCellEdits();
+		cellEdits.getCellEdits().add(
+				new PPodStandardCellEdit(
+						2,
+						0,
+						new PPodStandardCell(
+								PPodCellType.SINGLE,
+								ImmutableSet.of(2))));
+		cellEdits.getCellEdits().add(
+				new PPodStandardCellEdit(
+						0,
+						2,
+						new PPodStandardCell(
+								PPodCellType.INAPPLICABLE,
+								PPodStandardCell.EMPTY_STATES)));
+
+		new UpdateStandardCells(newMatrixDao(dbMatrix), rowDao, 1)
+				.updateCells(MATRIX_PPOD_ID, cellEdits);
+
+		assertEquals(
+				getOnlyStateNumber(getCell(dbMatrix, 2, 0)),
+				Integer.valueOf(2));
+		assertEquals(
+				getCell(dbMatrix, 0, 2).getType(),
+				PPodCellType.INAPPLICABLE);
+		assertEquals(
+				getCell(dbMatrix, 1, 1).getType(),
+				PPodCellType.UNASSIGNED);
+
+		verify(rowDao, never()).findById(21L, false);
+
+		// One row per flush
+		verify(rowDao, times(2)).flush();
+		verify(rowDao).evict(getRow(dbMatrix, 0));
+		verify(rowDao).evict(getRow(dbMatrix, 2));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void updateCellsOutsideOfMatrix() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final PPodStandardCellEdits cellEdits = new PPodStandardCellEdits();
+		cellEdits.getCellEdits().add(
+				new PPodStandardCellEdit(
+						0,
+						COLUMN_COUNT,
+						new PPodStandardCell(
+								PPodCellType.UNASSIGNED,
+								PPodStandardCell.EMPTY_STATES)));
+		new UpdateStandardCells(newMatrixDao(dbMatrix), newRowDao(dbMatrix))
+				.updateCells(MATRIX_PPOD_ID, cellEdits);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void updateCellsOfUnknownMatrix() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		new UpdateStandardCells(newMatrixDao(dbMatrix), newRowDao(dbMatrix))
+				.updateCells("no-such-matrix", new PPodStandardCellEdits());
+	}
+
+	private static Integer getOnlyStateNumber(final StandardCell cell) {
+		final StandardState state =
+				cell.getStatesSmartly().iterator().next();
+		return state.getStateNumber();
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.createorupdate;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IStandardMatrixDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dao.StagedStandardRow;
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardColumns;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStandardState;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+
+/**
+ * Test {@link UpdateStandardColumns}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class UpdateStandardColumnsTest {
+
+	private static final int ROW_COUNT = 3;
+
+	private static final int COLUMN_COUNT = 4;
+
+	private static final String MATRIX_PPOD_ID = "matrix-0";
+
+	private static StandardMatrix newDbMatrix() {
+		final OtuSet otuSet = new OtuSet();
+		final List<Otu> otus = newArrayList();
+		for (int i = 0; i < ROW_COUNT; i++) {
+			otus.add(new Otu("otu-" + i));
+		}
+		otuSet.clearAndAddOtus(otus);
+
+		final StandardMatrix dbMatrix = spy(new StandardMatrix());
+		doReturn(1L).when(dbMatrix).getId();
+		otuSet.addStandardMatrix(dbMatrix);
+
+		final List<StandardCharacter> characters = newArrayList();
+		for (int i = 0; i < COLUMN_COUNT; i++) {
+			final StandardCharacter character = new StandardCharacter();
+			character.setLabel("character-" + i);
+			characters.add(character);
+		}
+		dbMatrix.clearAndAddCharacters(characters);
+
+		for (int i = 0; i < ROW_COUNT; i++) {
+			final StandardRow dbRow = spy(new StandardRow());
+			doReturn(Long.valueOf(20 + i)).when(dbRow).getId();
+			dbMatrix.putRow(otus.get(i), dbRow);
+			dbRow.setCellsFingerprint("fingerprint-" + i);
+		}
+		return dbMatrix;
+	}
+
+	private static IStandardMatrixDAO newMatrixDao(
+			final StandardMatrix dbMatrix) {
+		final IStandardMatrixDAO matrixDao = mock(IStandardMatrixDAO.class);
+		when(matrixDao.getMatrixByPPodId(MATRIX_PPOD_ID)).thenReturn(dbMatrix);
+		return matrixDao;
+	}
+
+	private static List<String> getLabels(
+			final List<StandardCharacter> characters) {
+		final List<String> labels = newArrayList();
+		for (final StandardCharacter character : characters) {
+			labels.add(character.getLabel());
+		}
+		return labels;
+	}
+
+	public void insertColumns() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		final List<StagedStandardRow> stagedRows = newArrayList();
+		doAnswer(new Answer<Void>() {
+			@SuppressWarnings("unchecked")
+			public Void answer(final InvocationOnMock invocation) {
+				stagedRows.addAll((List<StagedStandardRow>) invocation
+						.getArguments()[0]);
+				return null;
+			}
+		}).when(rowDao).insertCells(anyListOf(StagedStandardRow.class));
+
+		final PPodStandardColumns columns = new PPodStandardColumns();
+		final PPodStandardCharacter newCharacter =
+				new PPodStandardCharacter(null, "new-character", "m-0");
+		newCharacter.getStates().add(new PPodStandardState(0, "state-0"));
+		newCharacter.getStates().add(new PPodStandardState(1, "state-1"));
+		columns.getCharacters().add(newCharacter);
+		for (int i = 0; i < ROW_COUNT; i++) {
+			final PPodStandardRow sourceRow = new PPodStandardRow();
+			sourceRow.getCells().add(
+					new PPodStandardCell(
+							PPodCellType.SINGLE,
+							ImmutableSet.of(i % 2)));
+			columns.getRows().add(sourceRow);
+		}
+
+		final StandardMatrix returnedMatrix =
+				new UpdateStandardColumns(newMatrixDao(dbMatrix), rowDao, 2)
+						.insertColumns(MATRIX_PPOD_ID, 1, columns);
+		assertSame(returnedMatrix, dbMatrix);
+
+		final InOrder inOrder = inOrder(rowDao);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 1,
+				Integer.MAX_VALUE, 1);
+		inOrder.verify(rowDao).flush();
+
+		assertEquals(
+				getLabels(dbMatrix.getCharacters()),
+				newArrayList("character-0", "new-character", "character-1",
+						"character-2", "character-3"));
+		final StandardCharacter newDbCharacter =
+				dbMatrix.getCharacters().get(1);
+		assertEquals(newDbCharacter.getMesquiteId(), "m-0");
+
+		assertEquals(stagedRows.size(), ROW_COUNT);
+		for (int i = 0; i < ROW_COUNT; i++) {
+			final StagedStandardRow stagedRow = stagedRows.get(i);
+			assertSame(
+					stagedRow.getRow(),
+					dbMatrix.getRows().get(
+							dbMatrix.getParent().getOtus().get(i)));
+			assertEquals(stagedRow.getFirstPosition(), 1);
+			assertEquals(stagedRow.getCellCount(), 1);
+			assertEquals(stagedRow.getType(0), PPodCellType.SINGLE);
+			final StandardState stagedState =
+					stagedRow.getStates(0).iterator().next();
+			assertSame(stagedState.getParent(), newDbCharacter);
+			assertEquals(stagedState.getStateNumber(), Integer.valueOf(i % 2));
+			assertNull(stagedRow.getRow().getCellsFingerprint());
+			verify(rowDao).evict(stagedRow.getRow());
+		}
+	}
+
+	public void insertUnassignedColumns() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		final List<StagedStandardRow> stagedRows = newArrayList();
+		doAnswer(new Answer<Void>() {
+			@SuppressWarnings("unchecked")
+			public Void answer(final InvocationOnMock invocation) {
+				stagedRows.addAll((List<StagedStandardRow>) invocation
+						.getArguments()[0]);
+				return null;
+			}
+		}).when(rowDao).insertCells(anyListOf(StagedStandardRow.class));
+
+		final PPodStandardColumns columns = new PPodStandardColumns();
+		columns.getCharacters().add(
+				new PPodStandardCharacter(null, "new-character-0", "m-0"));
+		columns.getCharacters().add(
+				new PPodStandardCharacter(null, "new-character-1", "m-1"));
+
+		new UpdateStandardColumns(newMatrixDao(dbMatrix), rowDao)
+				.insertColumns(MATRIX_PPOD_ID, COLUMN_COUNT, columns);
+
+		verify(rowDao).shiftCellPositions(dbMatrix, COLUMN_COUNT,
+				Integer.MAX_VALUE, 2);
+		assertEquals(dbMatrix.getCharacters().size(), COLUMN_COUNT + 2);
+		assertEquals(stagedRows.size(), ROW_COUNT);
+		for (final StagedStandardRow stagedRow : stagedRows) {
+			assertEquals(stagedRow.getFirstPosition(), COLUMN_COUNT);
+			assertEquals(stagedRow.getCellCount(), 2);
+			assertEquals(stagedRow.getType(0), PPodCellType.UNASSIGNED);
+			assertEquals(stagedRow.getType(1), PPodCellType.UNASSIGNED);
+		}
+	}
+
+	public void removeColumns() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		new UpdateStandardColumns(newMatrixDao(dbMatrix), rowDao)
+				.removeColumns(MATRIX_PPOD_ID, 1, 2);
+
+		final InOrder inOrder = inOrder(rowDao);
+		inOrder.verify(rowDao).deleteCellsByMatrixAndPositions(dbMatrix, 1,
+				2);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 3,
+				Integer.MAX_VALUE, -2);
+		inOrder.verify(rowDao).clearCellsFingerprints(dbMatrix);
+
+		assertEquals(
+				getLabels(dbMatrix.getCharacters()),
+				newArrayList("character-0", "character-3"));
+	}
+
+	public void moveColumnRight() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		new UpdateStandardColumns(newMatrixDao(dbMatrix), rowDao)
+				.moveColumn(MATRIX_PPOD_ID, 0, 2);
+
+		final InOrder inOrder = inOrder(rowDao);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 0, 0, -1);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 1, 2, -1);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, -1, -1, 3);
+		inOrder.verify(rowDao).clearCellsFingerprints(dbMatrix);
+
+		assertEquals(
+				getLabels(dbMatrix.getCharacters()),
+				newArrayList("character-1", "character-2", "character-0",
+						"character-3"));
+	}
+
+	public void moveColumnLeft() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		final IStandardRowDAO rowDao = mock(IStandardRowDAO.class);
+
+		new UpdateStandardColumns(newMatrixDao(dbMatrix), rowDao)
+				.moveColumn(MATRIX_PPOD_ID, 3, 1);
+
+		final InOrder inOrder = inOrder(rowDao);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 3, 3, -4);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, 1, 2, 1);
+		inOrder.verify(rowDao).shiftCellPositions(dbMatrix, -1, -1, 2);
+
+		assertEquals(
+				getLabels(dbMatrix.getCharacters()),
+				newArrayList("character-0", "character-3", "character-1",
+						"character-2"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void removeColumnsOutOfRange() {
+		final StandardMatrix dbMatrix = newDbMatrix();
+		new UpdateStandardColumns(
+				newMatrixDao(dbMatrix),
+				mock(IStandardRowDAO.class))
+				.removeColumns(MATRIX_PPOD_ID, COLUMN_COUNT - 1, 2);
+	}
+}
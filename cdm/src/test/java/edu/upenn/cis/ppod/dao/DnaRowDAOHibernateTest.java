@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.model.SequenceCodec;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.persistence.TestSessionFactories;
+
+/**
+ * Test {@link DnaRowDAOHibernate} against a database.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class DnaRowDAOHibernateTest {
+
+	/** A chunked sequence that the rows of two OTUs share. */
+	private static final String LONG_SEQUENCE = newLongSequence();
+
+	private static final String SHORT_SEQUENCE = "ACGTTGCA";
+
+	/** Stored in the row before we kept sequence blobs. */
+	private static final String LEGACY_SEQUENCE = "GGCCAT";
+
+	private SessionFactory sessionFactory;
+
+	private Long matrixId;
+
+	/** The OTUs of the rows, in the order of the sequences above. */
+	private List<Long> otuIds;
+
+	private static String newLongSequence() {
+		final StringBuilder sequence = new StringBuilder();
+		for (int i = 0; i < 2 * SequenceCodec.CHUNK_LENGTH + 100; i++) {
+			sequence.append("ACGT".charAt((i * 7 + i / 5) % 4));
+		}
+		return sequence.toString();
+	}
+
+	@BeforeClass
+	public void beforeClass() {
+		sessionFactory =
+				TestSessionFactories.newSessionFactory(
+						DnaRowDAOHibernateTest.class.getSimpleName());
+		final Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+
+			final Study study = new Study();
+			study.setLabel("study-0");
+			final OtuSet otuSet = new OtuSet();
+			otuSet.setLabel("otu-set-0");
+			study.addOtuSet(otuSet);
+			final List<Otu> otus = newArrayList();
+			for (int i = 0; i < 4; i++) {
+				otus.add(new Otu("otu-" + i));
+			}
+			otuSet.clearAndAddOtus(otus);
+			final DnaMatrix matrix = new DnaMatrix();
+			matrix.setLabel("matrix-0");
+			otuSet.addDnaMatrix(matrix);
+
+			final ISequenceBlobDAO sequenceBlobDao =
+					new SequenceBlobDAOHibernate(session);
+			final List<String> sequences =
+					ImmutableList.of(
+							LONG_SEQUENCE,
+							SHORT_SEQUENCE,
+							LONG_SEQUENCE);
+			for (int i = 0; i < sequences.size(); i++) {
+				final DnaRow row = new DnaRow();
+				row.setSequenceBlob(
+						sequenceBlobDao.getOrMakePersistent(
+								SequenceBlob.Alphabet.DNA,
+								sequences.get(i)));
+				matrix.putRow(otus.get(i), row);
+			}
+			final DnaRow legacyRow = new DnaRow();
+			matrix.putRow(otus.get(3), legacyRow);
+			session.save(study);
+			final IDnaRowDAO rowDao = new DnaRowDAOHibernate(session);
+			for (final DnaRow row : matrix.getRows().values()) {
+				rowDao.makePersistent(row);
+			}
+			session.flush();
+
+			session.createSQLQuery(
+					"update " + DnaRow.TABLE
+							+ " set sequence = :sequence"
+							+ " where " + DnaRow.ID_COLUMN + " = :rowId")
+					.setParameter("sequence", LEGACY_SEQUENCE)
+					.setParameter("rowId", legacyRow.getId())
+					.executeUpdate();
+
+			session.getTransaction().commit();
+
+			matrixId = matrix.getId();
+			otuIds = newArrayList();
+			for (final Otu otu : otus) {
+				otuIds.add(otu.getId());
+			}
+		} finally {
+			session.close();
+		}
+	}
+
+	@AfterClass
+	public void afterClass() {
+		sessionFactory.close();
+	}
+
+	private Map<Long, String> getSubsequencesByOtuId(
+			final List<Long> someOtuIds,
+			final int start,
+			final int end) {
+		final Session session = sessionFactory.openSession();
+		try {
+			final DnaMatrix matrix =
+					(DnaMatrix) session.load(DnaMatrix.class, matrixId);
+			return new DnaRowDAOHibernate(session)
+					.getSubsequencesByOtuId(matrix, someOtuIds, start, end);
+		} finally {
+			session.close();
+		}
+	}
+
+	private Map<Long, String> expectedSubsequences(
+			final int start,
+			final int end) {
+		final ImmutableMap.Builder<Long, String> expected =
+				ImmutableMap.builder();
+		final List<String> sequences =
+				ImmutableList.of(
+						LONG_SEQUENCE,
+						SHORT_SEQUENCE,
+						LONG_SEQUENCE,
+						LEGACY_SEQUENCE);
+		for (int i = 0; i < sequences.size(); i++) {
+			final String sequence = sequences.get(i);
+			expected.put(
+					otuIds.get(i),
+					sequence.substring(
+							Math.min(start, sequence.length()),
+							Math.min(end, sequence.length())));
+		}
+		return expected.build();
+	}
+
+	public void getSubsequencesByOtuId() {
+		assertEquals(
+				getSubsequencesByOtuId(null, 2, 5),
+				expectedSubsequences(2, 5));
+	}
+
+	public void getSubsequencesByOtuIdAcrossChunks() {
+		final int[][] ranges = {
+				{ 0, SequenceCodec.CHUNK_LENGTH },
+				{ SequenceCodec.CHUNK_LENGTH - 3,
+						SequenceCodec.CHUNK_LENGTH + 3 },
+				{ SequenceCodec.CHUNK_LENGTH, 2 * SequenceCodec.CHUNK_LENGTH },
+				{ 1, 2 * SequenceCodec.CHUNK_LENGTH + 1 },
+				{ SequenceCodec.CHUNK_LENGTH, SequenceCodec.CHUNK_LENGTH } };
+		for (final int[] range : ranges) {
+			assertEquals(
+					getSubsequencesByOtuId(null, range[0], range[1]),
+					expectedSubsequences(range[0], range[1]),
+					"[" + range[0] + ", " + range[1] + ")");
+		}
+	}
+
+	public void getSubsequencesByOtuIdPastTheEnd() {
+		final int length = LONG_SEQUENCE.length();
+		assertEquals(
+				getSubsequencesByOtuId(null, length - 5, length + 50),
+				expectedSubsequences(length - 5, length + 50));
+		assertEquals(
+				getSubsequencesByOtuId(null, length + 10, length + 20),
+				expectedSubsequences(length + 10, length + 20));
+	}
+
+	/** The DAO doesn't cap the window, but it mustn't make room for it. */
+	public void getSubsequencesByOtuIdToMaxValue() {
+		assertEquals(
+				getSubsequencesByOtuId(null, 3, Integer.MAX_VALUE),
+				expectedSubsequences(3, Integer.MAX_VALUE));
+	}
+
+	public void getSubsequencesByOtuIdOfSomeRows() {
+		final int start = SequenceCodec.CHUNK_LENGTH - 1;
+		final int end = SequenceCodec.CHUNK_LENGTH + 1;
+		final Map<Long, String> subsequences =
+				getSubsequencesByOtuId(
+						ImmutableList.of(otuIds.get(2), otuIds.get(3)),
+						start,
+						end);
+		assertEquals(subsequences.keySet().size(), 2);
+		assertEquals(
+				subsequences.get(otuIds.get(2)),
+				LONG_SEQUENCE.substring(start, end));
+		assertEquals(subsequences.get(otuIds.get(3)), "");
+	}
+
+	public void getSubsequencesByOtuIdOfNoRows() {
+		assertTrue(getSubsequencesByOtuId(
+				Collections.<Long> emptyList(), 0, 10).isEmpty());
+	}
+}
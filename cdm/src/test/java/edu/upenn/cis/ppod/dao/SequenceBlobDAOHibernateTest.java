@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.type.StandardBasicTypes;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.ProteinMatrix;
+import edu.upenn.cis.ppod.model.ProteinRow;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.model.SequenceCodec;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.persistence.TestSessionFactories;
+
+/**
+ * Test {@link SequenceBlobDAOHibernate} against a database.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class SequenceBlobDAOHibernateTest {
+
+	private static final String CHUNKED_SEQUENCE =
+			Strings.repeat("ACGT", SequenceCodec.CHUNK_LENGTH / 2);
+
+	private SessionFactory sessionFactory;
+
+	private Session session;
+
+	private ISequenceBlobDAO sequenceBlobDao;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		sessionFactory =
+				TestSessionFactories.newSessionFactory(
+						SequenceBlobDAOHibernateTest.class.getSimpleName());
+		session = sessionFactory.openSession();
+		session.beginTransaction();
+		sequenceBlobDao = new SequenceBlobDAOHibernate(session);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		session.close();
+		sessionFactory.close();
+	}
+
+	public void getOrMakePersistent() {
+		final SequenceBlob blob =
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						"ACGT");
+		assertSame(
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						"ACGT"),
+				blob);
+		assertNotSame(
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.PROTEIN,
+						"ACGT"),
+				blob);
+		assertNotSame(
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						"ACGTT"),
+				blob);
+	}
+
+	public void deleteUnreferenced() {
+		final Study study = new Study();
+		study.setLabel("study-0");
+		final OtuSet otuSet = new OtuSet();
+		otuSet.setLabel("otu-set-0");
+		study.addOtuSet(otuSet);
+		final Otu otu = new Otu("otu-0");
+		otuSet.clearAndAddOtus(ImmutableList.of(otu));
+		final DnaMatrix dnaMatrix = new DnaMatrix();
+		dnaMatrix.setLabel("dna-matrix-0");
+		otuSet.addDnaMatrix(dnaMatrix);
+		final ProteinMatrix proteinMatrix = new ProteinMatrix();
+		proteinMatrix.setLabel("protein-matrix-0");
+		otuSet.addProteinMatrix(proteinMatrix);
+
+		final Date beforeStoring = new Date(new Date().getTime() - 1);
+		final SequenceBlob dnaBlob =
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						CHUNKED_SEQUENCE);
+		final SequenceBlob proteinBlob =
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.PROTEIN,
+						"MKV");
+		final SequenceBlob unreferencedChunkedBlob =
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						CHUNKED_SEQUENCE + "A");
+		sequenceBlobDao.getOrMakePersistent(
+				SequenceBlob.Alphabet.PROTEIN,
+				"MKVL");
+
+		final DnaRow dnaRow = new DnaRow();
+		dnaRow.setSequenceBlob(dnaBlob);
+		dnaMatrix.putRow(otu, dnaRow);
+		final ProteinRow proteinRow = new ProteinRow();
+		proteinRow.setSequenceBlob(proteinBlob);
+		proteinMatrix.putRow(otu, proteinRow);
+		session.save(study);
+		session.save(dnaRow);
+		session.save(proteinRow);
+		session.flush();
+		session.clear();
+		final Date afterStoring = new Date(new Date().getTime() + 1);
+
+		// As if it were stored before we kept the time
+		session.createSQLQuery(
+				"update " + SequenceBlob.TABLE
+						+ " set " + SequenceBlob.CREATED_COLUMN + " = null"
+						+ " where " + SequenceBlob.ID_COLUMN + " = :blobId")
+				.setParameter("blobId", unreferencedChunkedBlob.getId())
+				.executeUpdate();
+
+		assertEquals(sequenceBlobDao.deleteUnreferenced(beforeStoring), 1);
+		assertEquals(countChunks(unreferencedChunkedBlob), 0);
+		assertEquals(sequenceBlobDao.deleteUnreferenced(afterStoring), 1);
+
+		@SuppressWarnings("unchecked")
+		final List<Long> blobIds =
+				session.createSQLQuery(
+						"select " + SequenceBlob.ID_COLUMN
+								+ " from " + SequenceBlob.TABLE)
+						.addScalar(
+								SequenceBlob.ID_COLUMN,
+								StandardBasicTypes.LONG)
+						.list();
+		assertEquals(
+				ImmutableSet.copyOf(blobIds),
+				ImmutableSet.of(
+						dnaBlob.getId(),
+						proteinBlob.getId()));
+
+		assertEquals(countChunks(dnaBlob), 2);
+	}
+
+	/**
+	 * What {@link SequenceBlobDAOHibernate#getOrMakePersistent} does if
+	 * someone else stores the sequence between its lookup and its insert.
+	 */
+	public void insertOrGetStoredByOtherSession() {
+		final Session otherSession = sessionFactory.openSession();
+		final SequenceBlob otherBlob;
+		try {
+			otherSession.beginTransaction();
+			otherBlob =
+					new SequenceBlobDAOHibernate(otherSession)
+							.getOrMakePersistent(
+									SequenceBlob.Alphabet.DNA,
+									CHUNKED_SEQUENCE);
+			otherSession.getTransaction().commit();
+		} finally {
+			otherSession.close();
+		}
+
+		final SequenceBlob blob =
+				new SequenceBlobDAOHibernate(session)
+						.insertOrGet(new SequenceBlob(
+								SequenceBlob.Alphabet.DNA,
+								CHUNKED_SEQUENCE));
+		assertEquals(blob.getId(), otherBlob.getId());
+		assertEquals(blob.getSequence(), CHUNKED_SEQUENCE);
+
+		// Our transaction carries on
+		final SequenceBlob newBlob =
+				sequenceBlobDao.getOrMakePersistent(
+						SequenceBlob.Alphabet.DNA,
+						"ACGT");
+		session.getTransaction().commit();
+		assertTrue(session.contains(newBlob));
+		assertEquals(countBlobs(), 2);
+	}
+
+	private int countBlobs() {
+		return ((Number) session
+				.createSQLQuery(
+						"select count(*) from " + SequenceBlob.TABLE)
+				.uniqueResult()).intValue();
+	}
+
+	private int countChunks(final SequenceBlob blob) {
+		return ((Number) session
+				.createSQLQuery(
+						"select count(*) from " + SequenceBlob.CHUNK_TABLE
+								+ " where " + SequenceBlob.ID_COLUMN
+								+ " = :blobId")
+				.setParameter("blobId", blob.getId())
+				.uniqueResult()).intValue();
+	}
+}
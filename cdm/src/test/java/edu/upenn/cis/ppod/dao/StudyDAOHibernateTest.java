@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dao;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.model.StandardCell;
+import edu.upenn.cis.ppod.model.StandardCharacter;
+import edu.upenn.cis.ppod.model.StandardMatrix;
+import edu.upenn.cis.ppod.model.StandardRow;
+import edu.upenn.cis.ppod.model.StandardState;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.model.Tree;
+import edu.upenn.cis.ppod.model.TreeSet;
+import edu.upenn.cis.ppod.persistence.TestSessionFactories;
+import edu.upenn.cis.ppod.util.DbStudy2DocStudy;
+
+/**
+ * Test {@link StudyDAOHibernate} against a database.
+ *
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class StudyDAOHibernateTest {
+
+	/**
+	 * What it takes to read a study of any size: the study and then each of
+	 * the fetch queries.
+	 */
+	private static final long STUDY_STATEMENT_COUNT = 17;
+
+	private SessionFactory sessionFactory;
+
+	private String smallStudyPPodId;
+
+	private String bigStudyPPodId;
+
+	@BeforeClass
+	public void beforeClass() {
+		sessionFactory =
+				TestSessionFactories.newSessionFactory(
+						StudyDAOHibernateTest.class.getSimpleName());
+		smallStudyPPodId = saveStudy("small", 2, 2);
+		bigStudyPPodId = saveStudy("big", 7, 5);
+	}
+
+	@AfterClass
+	public void afterClass() {
+		sessionFactory.close();
+	}
+
+	private String saveStudy(
+			final String label,
+			final int otuCount,
+			final int characterCount) {
+		final Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+
+			final Study study = new Study();
+			study.setLabel(label);
+			final OtuSet otuSet = new OtuSet();
+			otuSet.setLabel(label + "-otu-set");
+			study.addOtuSet(otuSet);
+			final List<Otu> otus = newArrayList();
+			for (int i = 0; i < otuCount; i++) {
+				otus.add(new Otu(label + "-otu-" + i));
+			}
+			otuSet.clearAndAddOtus(otus);
+
+			final StandardMatrix standardMatrix = new StandardMatrix();
+			standardMatrix.setLabel(label + "-standard-matrix");
+			otuSet.addStandardMatrix(standardMatrix);
+			final List<StandardCharacter> characters = newArrayList();
+			for (int i = 0; i < characterCount; i++) {
+				final StandardCharacter character = new StandardCharacter();
+				character.setLabel(label + "-character-" + i);
+				character.setMesquiteId(label + "-mesquite-" + i);
+				for (int stateNumber = 0; stateNumber < 2; stateNumber++) {
+					final StandardState state = new StandardState(stateNumber);
+					state.setLabel(label + "-state-" + stateNumber);
+					character.addState(state);
+				}
+				characters.add(character);
+			}
+			standardMatrix.clearAndAddCharacters(characters);
+
+			final DnaMatrix dnaMatrix = new DnaMatrix();
+			dnaMatrix.setLabel(label + "-dna-matrix");
+			otuSet.addDnaMatrix(dnaMatrix);
+
+			final TreeSet treeSet = new TreeSet();
+			treeSet.setLabel(label + "-tree-set");
+			otuSet.addTreeSet(treeSet);
+			for (int i = 0; i < otuCount; i++) {
+				final Tree tree = new Tree();
+				tree.setLabel(label + "-tree-" + i);
+				tree.setNewick("(" + i + ");");
+				treeSet.addTree(tree);
+			}
+
+			final List<StandardRow> standardRows = newArrayList();
+			for (final Otu otu : otus) {
+				final StandardRow row = new StandardRow();
+				standardMatrix.putRow(otu, row);
+				final List<StandardCell> cells = newArrayList();
+				for (int i = 0; i < characterCount; i++) {
+					cells.add(new StandardCell());
+				}
+				row.clearAndAddCells(cells);
+				for (int i = 0; i < characterCount; i++) {
+					switch (i % 3) {
+						case 0:
+							cells.get(i).setSingle(1);
+							break;
+						case 1:
+							cells.get(i).setPolymorphic(
+									ImmutableSet.of(0, 1));
+							break;
+						default:
+							cells.get(i).setInapplicable();
+					}
+				}
+				standardRows.add(row);
+			}
+
+			final ISequenceBlobDAO sequenceBlobDao =
+					new SequenceBlobDAOHibernate(session);
+			final List<DnaRow> dnaRows = newArrayList();
+			for (int i = 0; i < otuCount; i++) {
+				final DnaRow row = new DnaRow();
+				row.setSequenceBlob(
+						sequenceBlobDao.getOrMakePersistent(
+								SequenceBlob.Alphabet.DNA,
+								"ACGT" + i % 2));
+				dnaMatrix.putRow(otus.get(i), row);
+				dnaRows.add(row);
+			}
+
+			session.save(study);
+			for (final StandardRow row : standardRows) {
+				session.save(row);
+			}
+			for (final DnaRow row : dnaRows) {
+				session.save(row);
+			}
+			session.getTransaction().commit();
+			return study.getPPodId();
+		} finally {
+			session.close();
+		}
+	}
+
+	private long countStudyStatements(final String pPodId) {
+		final Statistics statistics = sessionFactory.getStatistics();
+		final Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+			statistics.clear();
+			final Study study =
+					new StudyDAOHibernate(session)
+							.getStudyByPPodIdEager(pPodId);
+			final PPodStudy docStudy =
+					new DbStudy2DocStudy().dbStudy2DocStudy(study);
+			final long statementCount = statistics.getPrepareStatementCount();
+			session.getTransaction().commit();
+
+			final PPodOtuSet docOtuSet = docStudy.getOtuSets().get(0);
+			assertEquals(
+					docOtuSet.getStandardMatrices().get(0).getRows().size(),
+					docOtuSet.getOtus().size());
+			assertEquals(
+					docOtuSet.getDnaMatrices().get(0).getRows().size(),
+					docOtuSet.getOtus().size());
+			assertEquals(
+					docOtuSet.getTreeSets().get(0).getTrees().size(),
+					docOtuSet.getOtus().size());
+			return statementCount;
+		} finally {
+			session.close();
+		}
+	}
+
+	public void getStudyByPPodIdEagerInFixedStatements() {
+		assertEquals(
+				countStudyStatements(smallStudyPPodId),
+				STUDY_STATEMENT_COUNT);
+		assertEquals(
+				countStudyStatements(bigStudyPPodId),
+				STUDY_STATEMENT_COUNT);
+	}
+
+	public void getStudyByPPodIdEagerNoSuchStudy() {
+		final Session session = sessionFactory.openSession();
+		try {
+			assertNull(new StudyDAOHibernate(session)
+					.getStudyByPPodIdEager(new Study().getPPodId()));
+			assertNull(new StudyDAOHibernate(session)
+					.getStudyByPPodIdEager(null));
+			assertNull(new StudyDAOHibernate(session)
+					.getStudyByPPodIdEager("no-such-study"));
+			assertNull(new StudyDAOHibernate(session)
+					.getPPodVersionByPPodId("no-such-study"));
+		} finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * Updating a study goes through {@link StudyDAOHibernate#getStudyByPPodId}
+	 * and then row by row, so it mustn't load the cells of the other rows.
+	 */
+	public void getStudyByPPodIdLoadsCellsPerRow() {
+		final Session session = sessionFactory.openSession();
+		try {
+			session.beginTransaction();
+			final Study study =
+					new StudyDAOHibernate(session)
+							.getStudyByPPodId(bigStudyPPodId);
+			final OtuSet otuSet = study.getOtuSets().get(0);
+			final StandardMatrix matrix = otuSet.getStandardMatrices().get(0);
+			final List<Otu> otus = otuSet.getOtus();
+
+			final StandardRow firstRow = matrix.getRows().get(otus.get(0));
+			assertEquals(
+					firstRow.getCells().size(),
+					matrix.getCharacters().size());
+			assertTrue(Hibernate.isInitialized(firstRow.getCells()));
+			for (final Otu otu : otus.subList(1, otus.size())) {
+				assertFalse(Hibernate.isInitialized(
+						matrix.getRows().get(otu).getCells()));
+			}
+			session.getTransaction().commit();
+		} finally {
+			session.close();
+		}
+	}
+}
@@ -2,9 +2,15 @@ package edu.upenn.cis.ppod.dto;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Set;
 
+import javax.xml.bind.JAXBContext;
+
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableSet;
@@ -14,54 +20,146 @@ import edu.upenn.cis.ppod.TestGroupDefs;
 @Test(groups = TestGroupDefs.FAST)
 public class PPodStandardCellTest {
 	@Test
-	public void setPolymorphic() {
-		final PPodStandardCell cell = new PPodStandardCell();
-
+	public void ofPolymorphic() {
 		final Set<Integer> states = ImmutableSet.of(0, 1, 3);
 
-		cell.setPolymorphic(newHashSet(states));
+		final PPodStandardCell cell =
+				PPodStandardCell.of(PPodCellType.POLYMORPHIC, newHashSet(states));
 		assertEquals(cell.getType(), PPodCellType.POLYMORPHIC);
 		assertEquals(cell.getStates(), states);
 	}
 
 	@Test
-	public void setUncertain() {
-		final PPodStandardCell cell = new PPodStandardCell();
-
+	public void ofUncertain() {
 		final Set<Integer> states = ImmutableSet.of(0, 1, 3);
 
-		cell.setUncertain(newHashSet(states));
+		final PPodStandardCell cell =
+				PPodStandardCell.of(PPodCellType.UNCERTAIN, newHashSet(states));
 		assertEquals(cell.getType(), PPodCellType.UNCERTAIN);
 		assertEquals(cell.getStates(), states);
 	}
 
 	@Test
-	public void setSingle() {
-		final PPodStandardCell cell = new PPodStandardCell();
-
+	public void ofSingle() {
 		final Integer stateNumber = Integer.valueOf(2);
 
-		cell.setSingle(stateNumber);
+		final PPodStandardCell cell =
+				PPodStandardCell.of(
+						PPodCellType.SINGLE,
+						newHashSet(stateNumber));
 		assertEquals(cell.getType(), PPodCellType.SINGLE);
 		assertEquals(cell.getStates(), newHashSet(stateNumber));
 	}
 
 	@Test
-	public void setInapplicable() {
-		final PPodStandardCell cell = new PPodStandardCell();
-		cell.setInapplicable();
+	public void ofInapplicable() {
+		final PPodStandardCell cell =
+				PPodStandardCell.of(
+						PPodCellType.INAPPLICABLE,
+						PPodStandardCell.EMPTY_STATES);
+		assertSame(cell, PPodStandardCell.INAPPLICABLE);
 		assertEquals(cell.getType(), PPodCellType.INAPPLICABLE);
 		assertEquals(cell.getStates(), PPodStandardCell.EMPTY_STATES);
 	}
 
 	@Test
-	public void setUnassigned() {
-		final PPodStandardCell cell = new PPodStandardCell();
-		cell.setUnassigned();
+	public void ofUnassigned() {
+		final PPodStandardCell cell =
+				PPodStandardCell.of(PPodCellType.UNASSIGNED, 0L);
+		assertSame(cell, PPodStandardCell.UNASSIGNED);
 		assertEquals(cell.getType(), PPodCellType.UNASSIGNED);
 		assertEquals(cell.getStates(), PPodStandardCell.EMPTY_STATES);
 	}
 
+	@Test
+	public void ofSharesCommonCells() {
+		assertSame(
+				PPodStandardCell.of(PPodCellType.SINGLE, ImmutableSet.of(5)),
+				PPodStandardCell.of(PPodCellType.SINGLE, 1L << 5));
+		assertSame(
+				PPodStandardCell.of(
+						PPodCellType.UNCERTAIN,
+						ImmutableSet.of(1, 9)),
+				PPodStandardCell.of(
+						PPodCellType.UNCERTAIN,
+						newHashSet(9, 1)));
+
+		final PPodStandardCell polymorphic =
+				PPodStandardCell.of(
+						PPodCellType.POLYMORPHIC,
+						ImmutableSet.of(1, 9));
+		assertEquals(polymorphic.getType(), PPodCellType.POLYMORPHIC);
+		assertNotSame(
+				polymorphic,
+				PPodStandardCell.of(
+						PPodCellType.UNCERTAIN,
+						ImmutableSet.of(1, 9)));
+	}
+
+	@Test
+	public void ofBigStates() {
+		final Set<Integer> states = ImmutableSet.of(1, 10);
+		final PPodStandardCell cell =
+				PPodStandardCell.of(PPodCellType.POLYMORPHIC, states);
+		assertEquals(cell.getStates(), states);
+		assertEquals(
+				cell,
+				PPodStandardCell.of(PPodCellType.POLYMORPHIC, states));
+
+		// Too big for a bitmask
+		final PPodStandardCell single =
+				PPodStandardCell.of(PPodCellType.SINGLE, ImmutableSet.of(64));
+		assertEquals(single.getStates(), ImmutableSet.of(64));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void ofPolymorphicWithOneState() {
+		PPodStandardCell.of(PPodCellType.POLYMORPHIC, ImmutableSet.of(1));
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void getStatesIsUnmodifiable() {
+		new PPodStandardCell(PPodCellType.SINGLE, newHashSet(1))
+				.getStates()
+				.add(2);
+	}
+
+	@Test
+	public void unmarshalSharedCells() throws Exception {
+		final PPodStandardCellEdits edits = new PPodStandardCellEdits();
+		edits.getCellEdits().add(
+				new PPodStandardCellEdit(
+						0,
+						1,
+						new PPodStandardCell(
+								PPodCellType.POLYMORPHIC,
+								ImmutableSet.of(0, 2))));
+		edits.getCellEdits().add(
+				new PPodStandardCellEdit(
+						1,
+						0,
+						new PPodStandardCell(
+								PPodCellType.SINGLE,
+								ImmutableSet.of(3))));
+
+		final JAXBContext context =
+				JAXBContext.newInstance(PPodStandardCellEdits.class);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		context.createMarshaller().marshal(edits, out);
+		final PPodStandardCellEdits unmarshalledEdits =
+				(PPodStandardCellEdits) context.createUnmarshaller()
+						.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+
+		assertSame(
+				unmarshalledEdits.getCellEdits().get(0).getCell(),
+				PPodStandardCell.of(
+						PPodCellType.POLYMORPHIC,
+						ImmutableSet.of(0, 2)));
+		assertSame(
+				unmarshalledEdits.getCellEdits().get(1).getCell(),
+				PPodStandardCell.of(PPodCellType.SINGLE, 1L << 3));
+	}
+
 	@Test
 	public void constructorPolymorphic() {
 		final Set<Integer> states = ImmutableSet.of(0, 1, 3);
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+
+/**
+ * Test {@link OtuSetDelta}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class OtuSetDeltaTest {
+
+	public void between() {
+		final Otu otu0 = new Otu("otu0");
+		final Otu otu1 = new Otu("otu1");
+		final Otu otu2 = new Otu("otu2");
+		final Otu otu3 = new Otu("otu3");
+
+		final List<Otu> oldOtus = ImmutableList.of(otu0, otu1, otu2);
+		final List<Otu> newOtus = ImmutableList.of(otu0, otu3, otu1);
+
+		final OtuSetDelta delta = OtuSetDelta.between(oldOtus, newOtus);
+		assertEquals(delta.getAddedOtus(), ImmutableList.of(otu3));
+		assertEquals(delta.getRemovedOtus(), ImmutableList.of(otu2));
+		assertEquals(delta.getMovedOtus(), ImmutableList.of(otu1));
+	}
+
+	public void betweenSameOtus() {
+		final List<Otu> otus =
+				ImmutableList.of(new Otu("otu0"), new Otu("otu1"));
+		assertTrue(OtuSetDelta.between(otus, otus).isEmpty());
+	}
+}
@@ -428,6 +428,36 @@ public class OtuSetTest {
 		assertNull(otus.get(1).getParent());
 	}
 
+	@Test
+	public void removeOtuRemovesRowsOfDependentMatrices() {
+		final ProteinMatrix proteinMatrix = new ProteinMatrix();
+		otuSet.addProteinMatrix(proteinMatrix);
+		final StandardMatrix standardMatrix = new StandardMatrix();
+		otuSet.addStandardMatrix(standardMatrix);
+
+		final ProteinRow removedProteinRow = new ProteinRow();
+		proteinMatrix.putRow(otus.get(0), new ProteinRow());
+		proteinMatrix.putRow(otus.get(1), removedProteinRow);
+		final StandardRow removedStandardRow = new StandardRow();
+		standardMatrix.putRow(otus.get(1), removedStandardRow);
+
+		final Otu otu3 = new Otu("otu3");
+		final OtuSetDelta delta =
+				otuSet.clearAndAddOtus(
+						ImmutableList.of(otus.get(0), otus.get(2), otu3));
+
+		assertEquals(delta.getRemovedOtus(), ImmutableList.of(otus.get(1)));
+		assertEquals(delta.getAddedOtus(), ImmutableList.of(otu3));
+
+		assertFalse(proteinMatrix.getRows().containsKey(otus.get(1)));
+		assertNull(removedProteinRow.getParent());
+		assertNotNull(proteinMatrix.getRows().get(otus.get(0)));
+
+		assertFalse(standardMatrix.getRows().containsKey(otus.get(1)));
+		assertNull(removedStandardRow.getParent());
+		assertTrue(standardMatrix.getRows().containsKey(otu3));
+	}
+
 	@Test
 	public void removeStandardMatrix() {
 		final StandardMatrix matrix0 = new StandardMatrix();
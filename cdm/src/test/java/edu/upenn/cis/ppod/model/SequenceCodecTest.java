@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+
+/**
+ * Test {@link SequenceCodec}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class SequenceCodecTest {
+
+	private static String repeat(final char c, final int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	public void encodeDecodeDna() {
+		final String sequence = "ACGTRYSWKMBDHVN-ACGTA";
+		final byte[] packedSequence = SequenceCodec.DNA.encode(sequence);
+		assertEquals(packedSequence[0], SequenceCodec.PACKED);
+
+		// Format, length, no runs, no lower case runs, and 21 four bit codes
+		assertEquals(packedSequence.length, 1 + 1 + 1 + 1 + 11);
+		assertEquals(SequenceCodec.DNA.decode(packedSequence), sequence);
+	}
+
+	public void encodeDecodeProtein() {
+		final String sequence = "ACDEFGHIKLMNPQRSTVWYBZJUOX*-?M";
+		final byte[] packedSequence = SequenceCodec.PROTEIN.encode(sequence);
+		assertEquals(packedSequence[0], SequenceCodec.PACKED);
+
+		// 30 five bit codes
+		assertEquals(packedSequence.length, 1 + 1 + 1 + 1 + 19);
+		assertEquals(SequenceCodec.PROTEIN.decode(packedSequence), sequence);
+	}
+
+	public void encodeDecodeGapRuns() {
+		final String sequence =
+				repeat('-', 1000) + "ACGT"
+						+ repeat('-', SequenceCodec.MIN_GAP_RUN - 1) + "T"
+						+ repeat('-', SequenceCodec.MIN_GAP_RUN) + "--";
+		final byte[] packedSequence = SequenceCodec.DNA.encode(sequence);
+		assertTrue(packedSequence.length < 20);
+		assertEquals(SequenceCodec.DNA.decode(packedSequence), sequence);
+	}
+
+	public void encodeDecodeEmpty() {
+		assertEquals(
+				SequenceCodec.DNA.decode(SequenceCodec.DNA.encode("")),
+				"");
+	}
+
+	public void encodeDecodeOutsideOfAlphabet() {
+		for (final String sequence : new String[] { "acgt", "ACGT?", "ACGTÅ",
+				"AcGtNn", "ıſ", "ACGT\u01c5acgt" }) {
+			assertEquals(
+					SequenceCodec.DNA.decode(SequenceCodec.DNA.encode(sequence)),
+					sequence);
+		}
+	}
+
+	public void encodeDecodeRaw() {
+		final String sequence = "ÅÉÎ";
+		final byte[] packedSequence = SequenceCodec.DNA.encode(sequence);
+		assertEquals(packedSequence[0], SequenceCodec.RAW);
+		assertEquals(SequenceCodec.DNA.decode(packedSequence), sequence);
+	}
+
+	/**
+	 * An aligned row the way they come out of the alignment programs: lower
+	 * case, padded out with {@code '?'}s, some short gaps and ambiguity codes,
+	 * and a stretch of upper case.
+	 */
+	public void encodeDecodeLowerCaseMissingPadded() {
+		final StringBuilder sequenceBuilder = new StringBuilder();
+		sequenceBuilder.append(repeat('?', 37));
+		final String residues = "acgtacggttcagcatgcn";
+		for (int i = 0; i < 2000; i++) {
+			if (i % 97 == 0) {
+				sequenceBuilder.append("---");
+			} else if (i % 331 == 0) {
+				sequenceBuilder.append('?');
+			} else {
+				sequenceBuilder.append(residues.charAt(i % residues.length()));
+			}
+		}
+		sequenceBuilder.append("ACGTTGCAACGTRYACGT");
+		sequenceBuilder.append(repeat('?', 51));
+		final String sequence = sequenceBuilder.toString();
+
+		final byte[] packedSequence = SequenceCodec.DNA.encode(sequence);
+		assertEquals(packedSequence[0], SequenceCodec.PACKED);
+		assertTrue(packedSequence.length < sequence.length() / 2 + 32);
+		assertEquals(SequenceCodec.DNA.decode(packedSequence), sequence);
+
+		for (final byte[] packedChunk : SequenceCodec.DNA
+				.encodeChunks(sequence)) {
+			assertEquals(packedChunk[0], SequenceCodec.PACKED);
+		}
+		assertEquals(
+				SequenceCodec.DNA.decodeChunks(
+						SequenceCodec.DNA.encodeChunks(sequence)),
+				sequence);
+	}
+
+	public void encodeDecodeChunks() {
+		final String sequence =
+				repeat('A', SequenceCodec.CHUNK_LENGTH)
+						+ repeat('-', SequenceCodec.CHUNK_LENGTH) + "ACGT";
+		final List<byte[]> packedChunks =
+				SequenceCodec.DNA.encodeChunks(sequence);
+		assertEquals(packedChunks.size(), 3);
+		assertEquals(
+				SequenceCodec.DNA.decode(packedChunks.get(2)),
+				"ACGT");
+		assertEquals(SequenceCodec.DNA.decodeChunks(packedChunks), sequence);
+		assertTrue(SequenceCodec.DNA.encodeChunks("").isEmpty());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void decodeTruncated() {
+		final byte[] packedSequence = SequenceCodec.DNA.encode("ACGTACGT");
+		SequenceCodec.DNA.decode(
+				Arrays.copyOf(packedSequence, packedSequence.length - 1));
+	}
+}
@@ -20,6 +20,7 @@ import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -30,6 +31,7 @@ import org.testng.annotations.Test;
 
 import edu.upenn.cis.ppod.TestGroupDefs;
 import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
 
 /**
  * Test {@link CharacterStateCell}.
@@ -94,6 +96,49 @@ public class StandardCellTest {
 		assertEquals((Object) cell.getStatesSmartly(), (Object) states);
 	}
 
+	@Test
+	public void setPolymorphicSameStatesLeavesFingerprint() {
+		final StandardRow row =
+				matrix.getRows().get(matrix.getParent().getOtus().get(0));
+		row.clearAndAddCells(Arrays.asList(cell));
+		cell.setPolymorphic(
+				newHashSet(state00.getStateNumber(),
+						state01.getStateNumber()));
+		row.setCellsFingerprint("fingerprint");
+
+		cell.setPolymorphic(
+				newHashSet(state01.getStateNumber(),
+						state00.getStateNumber()));
+		assertEquals(row.getCellsFingerprint(), "fingerprint");
+
+		// Same states, but a different type is a change
+		cell.setUncertain(
+				newHashSet(state00.getStateNumber(),
+						state01.getStateNumber()));
+		assertEquals(cell.getType(), PPodCellType.UNCERTAIN);
+		assertEquals((Object) cell.getStatesSmartly(),
+				(Object) newHashSet(state00, state01));
+		assertNull(row.getCellsFingerprint());
+	}
+
+	@Test
+	public void setUnassignedAndInapplicableTwiceLeavesFingerprint() {
+		final StandardRow row =
+				matrix.getRows().get(matrix.getParent().getOtus().get(0));
+		row.clearAndAddCells(Arrays.asList(cell));
+
+		cell.setUnassigned();
+		row.setCellsFingerprint("fingerprint");
+		cell.setUnassigned();
+		assertEquals(row.getCellsFingerprint(), "fingerprint");
+
+		cell.setInapplicable();
+		assertNull(row.getCellsFingerprint());
+		row.setCellsFingerprint("fingerprint");
+		cell.setInapplicable();
+		assertEquals(row.getCellsFingerprint(), "fingerprint");
+	}
+
 	@Test(expectedExceptions = IllegalArgumentException.class)
 	public void setPolymorphicElementsTooFewStates() {
 		matrix.getRows().get(
@@ -149,6 +194,41 @@ public class StandardCellTest {
 				(Object) newHashSet(states));
 	}
 
+	@Test
+	public void stateBitmask() {
+		final Set<Integer> stateNumbers =
+				newHashSet(0, 3, PPodStandardRow.MAX_STATE_NUMBER);
+		final long stateBitmask = PPodStandardRow.toStateBitmask(stateNumbers);
+		assertEquals(stateBitmask,
+				1L | 1L << 3 | 1L << PPodStandardRow.MAX_STATE_NUMBER);
+		assertEquals(PPodStandardRow.fromStateBitmask(stateBitmask),
+				stateNumbers);
+		assertTrue(PPodStandardRow.fromStateBitmask(0).isEmpty());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void stateBitmaskStateNumberTooBig() {
+		PPodStandardRow.toStateBitmask(
+				newHashSet(0, PPodStandardRow.MAX_STATE_NUMBER + 1));
+	}
+
+	@Test
+	public void getStateNumbers() {
+		matrix.getRows().get(matrix.getParent().getOtus().get(0))
+				.clearAndAddCells(
+						Arrays.asList(cell));
+		cell.setUncertain(
+				newHashSet(state00.getStateNumber(),
+						state01.getStateNumber()));
+		assertEquals(cell.getStateNumbers(), newHashSet(0, 1));
+
+		cell.setSingle(state01.getStateNumber());
+		assertEquals(cell.getStateNumbers(), newHashSet(1));
+
+		cell.setUnassigned();
+		assertTrue(cell.getStateNumbers().isEmpty());
+	}
+
 	@BeforeMethod
 	public void setUp() {
 		cell = new StandardCell();
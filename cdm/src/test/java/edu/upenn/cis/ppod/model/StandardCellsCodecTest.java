@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.model;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodCellType;
+import edu.upenn.cis.ppod.dto.PPodStandardCell;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+
+/**
+ * Test {@link StandardCellsCodec}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class StandardCellsCodecTest {
+
+	private static List<PPodStandardCell> newCells() {
+		final List<PPodStandardCell> cells = newArrayList();
+		cells.add(new PPodStandardCell(
+				PPodCellType.UNASSIGNED,
+				PPodStandardCell.EMPTY_STATES));
+		cells.add(new PPodStandardCell(
+				PPodCellType.SINGLE,
+				ImmutableSet.of(0)));
+		cells.add(new PPodStandardCell(
+				PPodCellType.SINGLE,
+				ImmutableSet.of(6)));
+		cells.add(new PPodStandardCell(
+				PPodCellType.POLYMORPHIC,
+				ImmutableSet.of(0, 7)));
+		cells.add(new PPodStandardCell(
+				PPodCellType.UNCERTAIN,
+				ImmutableSet.of(3, 20, PPodStandardRow.MAX_STATE_NUMBER)));
+		cells.add(new PPodStandardCell(
+				PPodCellType.INAPPLICABLE,
+				PPodStandardCell.EMPTY_STATES));
+		return cells;
+	}
+
+	public void roundTrip() {
+		final List<PPodStandardCell> cells = newCells();
+		final List<PPodStandardCell> decodedCells =
+				StandardCellsCodec.decode(StandardCellsCodec.encode(cells));
+		assertEquals(decodedCells.size(), cells.size());
+		for (int i = 0; i < cells.size(); i++) {
+			assertEquals(decodedCells.get(i).getType(), cells.get(i)
+					.getType());
+			assertEquals(decodedCells.get(i).getStates(), cells.get(i)
+					.getStates());
+		}
+	}
+
+	public void roundTripRow() {
+		final List<PPodStandardCell> cells = newCells();
+		final PPodStandardRow row = new PPodStandardRow();
+		row.setCells(cells);
+
+		final byte[] packedCells = StandardCellsCodec.encode(row);
+		assertTrue(Arrays.equals(
+				packedCells,
+				StandardCellsCodec.encode(cells)));
+
+		final PPodStandardRow decodedRow =
+				StandardCellsCodec.decodeRow(packedCells);
+		assertEquals(decodedRow.getCellCount(), cells.size());
+		for (int i = 0; i < cells.size(); i++) {
+			assertEquals(decodedRow.getType(i), cells.get(i).getType());
+			assertEquals(
+					decodedRow.getStateBitmask(i),
+					PPodStandardRow.toStateBitmask(cells.get(i).getStates()));
+			assertEquals(
+					decodedRow.getCells().get(i).getStates(),
+					cells.get(i).getStates());
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void encodeStateNumberTooBig() {
+		final List<PPodStandardCell> cells = newCells();
+		cells.set(4, new PPodStandardCell(
+				PPodCellType.UNCERTAIN,
+				ImmutableSet.of(3, PPodStandardRow.MAX_STATE_NUMBER + 1)));
+		StandardCellsCodec.encode(cells);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void decodeStateNumberTooBig() {
+		// An uncertain cell with states 3 and 64
+		StandardCellsCodec.decode(new byte[] {
+				StandardCellsCodec.FORMAT,
+				(byte) PPodCellType.UNCERTAIN.ordinal(),
+				(byte) 0x88, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+				(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+				(byte) 0x80, 0x02 });
+	}
+
+	public void roundTripNoCells() {
+		final List<PPodStandardCell> cells = newArrayList();
+		assertEquals(
+				StandardCellsCodec.decode(StandardCellsCodec.encode(cells))
+						.size(),
+				0);
+	}
+
+	public void encodedSize() {
+		final byte[] packedCells = StandardCellsCodec.encode(newCells());
+
+		// The format byte, a type byte per cell, and a bitmask byte per seven
+		// states up to the highest: one for 0, one for 6, two for 0 and 7,
+		// and ten for 3, 20 and 63
+		assertEquals(packedCells.length, 1 + 6 + 1 + 1 + 2 + 10);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void decodeUnknownFormat() {
+		StandardCellsCodec.decode(new byte[] { 0 });
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void decodeTruncated() {
+		final byte[] packedCells = StandardCellsCodec.encode(newCells());
+		// Drop the inapplicable cell and the end of the uncertain one's states
+		final byte[] truncatedCells = new byte[packedCells.length - 2];
+		System.arraycopy(packedCells, 0, truncatedCells, 0,
+				truncatedCells.length);
+		StandardCellsCodec.decode(truncatedCells);
+	}
+}
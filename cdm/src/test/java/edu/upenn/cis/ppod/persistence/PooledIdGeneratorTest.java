@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.persistence;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.hibernate.cfg.ImprovedNamingStrategy;
+import org.hibernate.cfg.NamingStrategy;
+import org.hibernate.cfg.ObjectNameNormalizer;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.TableStructure;
+import org.hibernate.type.LongType;
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+
+/**
+ * Test {@link PooledIdGenerator}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class PooledIdGeneratorTest {
+
+	/** What Hibernate passes in for an entity in table "otu". */
+	private static Properties newParams() {
+		final Properties params = new Properties();
+		params.setProperty(PersistentIdentifierGenerator.TABLE, "otu");
+		params.put(
+				PersistentIdentifierGenerator.IDENTIFIER_NORMALIZER,
+				new ObjectNameNormalizer() {
+
+					@Override
+					protected NamingStrategy getNamingStrategy() {
+						return new ImprovedNamingStrategy();
+					}
+
+					@Override
+					protected boolean isUseQuotedIdentifiersGlobally() {
+						return false;
+					}
+				});
+		return params;
+	}
+
+	public void configure() {
+		final Properties params = newParams();
+
+		final PooledIdGenerator generator = new PooledIdGenerator();
+		generator.configure(LongType.INSTANCE, params, new H2Dialect());
+
+		// A table even though H2 has sequences
+		assertTrue(generator.getDatabaseStructure() instanceof TableStructure);
+		assertEquals(
+				generator.getDatabaseStructure().getName(),
+				"otu" + PooledIdGenerator.SEQUENCE_TABLE_SUFFIX);
+		assertEquals(
+				generator.getDatabaseStructure().getIncrementSize(),
+				PooledIdGenerator.DEFAULT_INCREMENT_SIZE);
+		assertTrue(generator.getOptimizer() instanceof OptimizerFactory.PooledLoOptimizer);
+	}
+
+	public void configureIncrementSize() {
+		final Properties params = newParams();
+		params.setProperty(SequenceStyleGenerator.INCREMENT_PARAM, "7");
+
+		final PooledIdGenerator generator = new PooledIdGenerator();
+		generator.configure(LongType.INSTANCE, params, new H2Dialect());
+		assertEquals(generator.getOptimizer().getIncrementSize(), 7);
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.persistence;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.ImprovedNamingStrategy;
+import org.hibernate.dialect.H2Dialect;
+
+/**
+ * Session factories for tests that need a real database: they're mapped like
+ * the one that {@link SessionFactoryProvider} builds, but on an empty H2
+ * in-memory database.
+ * 
+ * @author Sam Donnelly
+ */
+public final class TestSessionFactories {
+
+	/**
+	 * Build a session factory on a new in-memory database that lives until the
+	 * session factory is closed.
+	 * 
+	 * @param databaseName the name of the database, which should be unique to
+	 *            the test
+	 * 
+	 * @return the session factory, which keeps statistics
+	 */
+	public static SessionFactory newSessionFactory(final String databaseName) {
+		final Configuration cfg = new Configuration();
+		cfg.setNamingStrategy(new ImprovedNamingStrategy());
+		cfg.configure();
+		cfg.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+		cfg.setProperty(
+				"hibernate.connection.url",
+				"jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1");
+		cfg.setProperty("hibernate.dialect", H2Dialect.class.getName());
+		cfg.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+		cfg.setProperty("hibernate.generate_statistics", "true");
+		return cfg.buildSessionFactory();
+	}
+
+	/**
+	 * Prevent inheritance and instantiation.
+	 * 
+	 * @throws AssertionError always
+	 */
+	private TestSessionFactories() {
+		throw new AssertionError("Can't instantiate a TestSessionFactories");
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.mockito.ArgumentCaptor;
+import org.hibernate.Transaction;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IDnaMatrixDAO;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinMatrixDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.dto.PPodSubsequence;
+import edu.upenn.cis.ppod.dto.PPodSubsequences;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+
+/**
+ * Test {@link MolecularMatrixResourceHibernate}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class MolecularMatrixResourceHibernateTest {
+
+	private IDnaMatrixDAO dnaMatrixDao;
+
+	private IDnaRowDAO dnaRowDao;
+
+	private ISequenceBlobDAO sequenceBlobDao;
+
+	private Session session;
+
+	private Transaction trx;
+
+	private DnaMatrix dbMatrix;
+
+	private MolecularMatrixResourceHibernate matrixResource;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		dnaMatrixDao = mock(IDnaMatrixDAO.class);
+		dnaRowDao = mock(IDnaRowDAO.class);
+		sequenceBlobDao = mock(ISequenceBlobDAO.class);
+		session = mock(Session.class);
+		trx = mock(Transaction.class);
+		when(session.beginTransaction()).thenReturn(trx);
+		when(trx.isActive()).thenReturn(true);
+
+		final OtuSet otuSet = new OtuSet();
+		final List<Otu> otus = newArrayList();
+		for (int i = 0; i < 3; i++) {
+			final Otu otu = spy(new Otu("otu-" + i));
+			doReturn(Long.valueOf(10 + i)).when(otu).getId();
+			otus.add(otu);
+		}
+		otuSet.clearAndAddOtus(otus);
+		dbMatrix = new DnaMatrix();
+		otuSet.addDnaMatrix(dbMatrix);
+		when(dnaMatrixDao.getMatrixByPPodId("matrix-0")).thenReturn(dbMatrix);
+
+		matrixResource =
+				new MolecularMatrixResourceHibernate(
+						dnaMatrixDao,
+						dnaRowDao,
+						mock(IProteinMatrixDAO.class),
+						mock(IProteinRowDAO.class),
+						sequenceBlobDao,
+						session);
+	}
+
+	public void getDnaSubsequencesOfAllRows() {
+		when(dnaRowDao.getSubsequencesByOtuId(
+				same(dbMatrix),
+				eq((Collection<Long>) null),
+				eq(2),
+				eq(4)))
+				.thenReturn(ImmutableMap.of(10L, "GT", 12L, "CA"));
+
+		final PPodSubsequences subsequences =
+				matrixResource.getDnaSubsequences(
+						"matrix-0",
+						2,
+						4,
+						Collections.<Integer> emptyList());
+
+		// The row with no sequence is left out
+		assertEquals(subsequences.getStart(), 2);
+		assertEquals(subsequences.getEnd(), 4);
+		assertEquals(subsequences.getSubsequences().size(), 2);
+		assertSubsequence(subsequences.getSubsequences().get(0), 0, "GT");
+		assertSubsequence(subsequences.getSubsequences().get(1), 2, "CA");
+		verify(trx).commit();
+		verify(session).close();
+	}
+
+	public void getDnaSubsequencesOfSomeRows() {
+		when(dnaRowDao.getSubsequencesByOtuId(
+				same(dbMatrix),
+				eq(ImmutableList.of(12L, 10L)),
+				eq(0),
+				eq(3)))
+				.thenReturn(ImmutableMap.of(10L, "ACG", 12L, "TTA"));
+
+		final PPodSubsequences subsequences =
+				matrixResource.getDnaSubsequences(
+						"matrix-0",
+						0,
+						3,
+						ImmutableList.of(2, 0));
+
+		// In the order they were asked for
+		assertEquals(subsequences.getSubsequences().size(), 2);
+		assertSubsequence(subsequences.getSubsequences().get(0), 2, "TTA");
+		assertSubsequence(subsequences.getSubsequences().get(1), 0, "ACG");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getDnaSubsequencesOfMissingRow() {
+		try {
+			matrixResource.getDnaSubsequences(
+					"matrix-0",
+					0,
+					3,
+					ImmutableList.of(3));
+		} finally {
+			verify(dnaRowDao, never()).getSubsequencesByOtuId(
+					same(dbMatrix),
+					anyListOf(Long.class),
+					anyInt(),
+					anyInt());
+			verify(trx).rollback();
+			verify(session).close();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getDnaSubsequencesTooWide() {
+		try {
+			matrixResource.getDnaSubsequences(
+					"matrix-0",
+					0,
+					IMolecularMatrixResource.MAX_SUBSEQUENCE_LENGTH + 1,
+					Collections.<Integer> emptyList());
+		} finally {
+			verify(dnaRowDao, never()).getSubsequencesByOtuId(
+					same(dbMatrix),
+					anyListOf(Long.class),
+					anyInt(),
+					anyInt());
+			verify(trx).rollback();
+			verify(session).close();
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void getDnaSubsequencesOfMissingMatrix() {
+		try {
+			matrixResource.getDnaSubsequences(
+					"matrix-1",
+					0,
+					3,
+					Collections.<Integer> emptyList());
+		} finally {
+			verify(trx).rollback();
+			verify(session).close();
+		}
+	}
+
+	public void deleteUnreferencedSequences() {
+		when(sequenceBlobDao.deleteUnreferenced(any(Date.class))).thenReturn(3);
+		final long now = new Date().getTime();
+		assertEquals(matrixResource.deleteUnreferencedSequences(), "3");
+
+		// Recently stored sequences are left alone
+		final ArgumentCaptor<Date> createdBefore =
+				ArgumentCaptor.forClass(Date.class);
+		verify(sequenceBlobDao).deleteUnreferenced(createdBefore.capture());
+		assertTrue(createdBefore.getValue().getTime() <= now - 59 * 60 * 1000L);
+		verify(trx).commit();
+		verify(session).close();
+	}
+
+	private static void assertSubsequence(
+			final PPodSubsequence subsequence,
+			final int row,
+			final String sequence) {
+		assertEquals(subsequence.getRow(), row);
+		assertEquals(subsequence.getSequence(), sequence);
+	}
+}
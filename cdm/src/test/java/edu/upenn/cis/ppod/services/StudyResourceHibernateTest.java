@@ -17,13 +17,24 @@ package edu.upenn.cis.ppod.services;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.HashSet;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.testng.annotations.Test;
@@ -31,9 +42,12 @@ import org.testng.annotations.Test;
 import edu.upenn.cis.ppod.TestGroupDefs;
 import edu.upenn.cis.ppod.createorupdate.ICreateOrUpdateStudy;
 import edu.upenn.cis.ppod.dao.IStudyDAO;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
 import edu.upenn.cis.ppod.dto.PPodLabelAndId;
 import edu.upenn.cis.ppod.dto.PPodStudy;
 import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.util.IPPodStudyHandler;
 
 @Test(groups = TestGroupDefs.FAST)
 public class StudyResourceHibernateTest {
@@ -48,14 +62,20 @@ public class StudyResourceHibernateTest {
 
 		Study study = new Study();
 		when(createOrUpdateStudy
-				.createOrUpdateStudy(any(PPodStudy.class))).thenReturn(study);
+				.createOrUpdateStudy(
+						any(PPodStudy.class),
+						any(CellWriteMode.class))).thenReturn(study);
 
 		when(session.beginTransaction()).thenReturn(trx);
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
-		studyResource.createStudy(new PPodStudy("dont-care", "dont-care"));
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
+		studyResource.createStudy(
+				new PPodStudy("dont-care", "dont-care"),
+				CellWriteMode.PER_CELL);
 
 		verify(trx).commit();
 		verify(session).close();
@@ -72,17 +92,23 @@ public class StudyResourceHibernateTest {
 		when(trx.isActive()).thenReturn(true);
 
 		when(createOrUpdateStudy
-				.createOrUpdateStudy(any(PPodStudy.class))).thenThrow(
+				.createOrUpdateStudy(
+						any(PPodStudy.class),
+						any(CellWriteMode.class))).thenThrow(
 				new RuntimeException());
 
 		when(session.beginTransaction()).thenReturn(trx);
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 
 		boolean exceptionCaught = false;
 		try {
-			studyResource.createStudy(new PPodStudy("dont-care", "dont-care"));
+			studyResource.createStudy(
+				new PPodStudy("dont-care", "dont-care"),
+				CellWriteMode.PER_CELL);
 		} catch (RuntimeException e) {
 			exceptionCaught = true;
 		}
@@ -92,6 +118,38 @@ public class StudyResourceHibernateTest {
 		verify(session).close();
 	}
 
+	@Test
+	public void planStudyUploadRollsBackAndCloses() {
+		IStudyDAO studyDAO = mock(IStudyDAO.class);
+		ICreateOrUpdateStudy createOrUpdateStudy = mock(ICreateOrUpdateStudy.class);
+		Session session = mock(Session.class);
+		Transaction trx = mock(Transaction.class);
+		when(trx.isActive()).thenReturn(true);
+
+		MergePlan plan = new MergePlan();
+		when(createOrUpdateStudy
+				.planCreateOrUpdateStudy(
+						any(PPodStudy.class),
+						any(CellWriteMode.class))).thenReturn(plan);
+
+		when(session.beginTransaction()).thenReturn(trx);
+
+		StudyResourceHibernate studyResource =
+				new StudyResourceHibernate(
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
+		assertSame(
+				studyResource.planStudyUpload(
+						new PPodStudy("dont-care", "dont-care"),
+						CellWriteMode.BULK),
+				plan);
+
+		verify(trx, never()).commit();
+		verify(trx).rollback();
+		verify(session).close();
+	}
+
 	@Test
 	public void getStudyByPPodIdCommitsAndCloses() {
 		IStudyDAO studyDAO = mock(IStudyDAO.class);
@@ -101,13 +159,15 @@ public class StudyResourceHibernateTest {
 
 		Study study = new Study();
 		study.setLabel("dont-care");
-		when(studyDAO.getStudyByPPodId(anyString())).thenReturn(study);
+		when(studyDAO.getStudyByPPodIdEager(anyString())).thenReturn(study);
 
 		when(session.beginTransaction()).thenReturn(trx);
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 		studyResource.getStudyByPPodId("don't-care");
 
 		verify(trx).commit();
@@ -122,14 +182,16 @@ public class StudyResourceHibernateTest {
 		Transaction trx = mock(Transaction.class);
 		when(trx.isActive()).thenReturn(true);
 
-		when(studyDAO.getStudyByPPodId(anyString())).thenThrow(
+		when(studyDAO.getStudyByPPodIdEager(anyString())).thenThrow(
 				new RuntimeException());
 
 		when(session.beginTransaction()).thenReturn(trx);
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 
 		boolean exceptionCaught = false;
 
@@ -145,6 +207,114 @@ public class StudyResourceHibernateTest {
 		verify(session).close();
 	}
 
+	@Test
+	public void getStudyByPPodIdAsStreamCommitsAndClosesWhenWritten()
+			throws IOException {
+		IStudyDAO studyDAO = mock(IStudyDAO.class);
+		ICreateOrUpdateStudy createOrUpdateStudy = mock(ICreateOrUpdateStudy.class);
+		Session session = mock(Session.class);
+		Transaction trx = mock(Transaction.class);
+		IStudyStreamer studyStreamer = mock(IStudyStreamer.class);
+
+		Study study = new Study();
+		when(studyDAO.getStudyByPPodId(anyString())).thenReturn(study);
+
+		when(session.beginTransaction()).thenReturn(trx);
+
+		StudyResourceHibernate studyResource =
+				new StudyResourceHibernate(
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						studyStreamer);
+		Response response = studyResource.getStudyByPPodIdAsStream("don't-care");
+
+		assertEquals(response.getStatus(), 200);
+
+		// The study is found up front, but read and written only later
+		verify(studyStreamer, never()).streamStudy(
+				any(Study.class),
+				any(IPPodStudyHandler.class));
+		verify(trx, never()).commit();
+		verify(session, never()).close();
+
+		((StreamingOutput) response.getEntity())
+				.write(new ByteArrayOutputStream());
+
+		verify(studyStreamer).streamStudy(
+				same(study),
+				any(IPPodStudyHandler.class));
+		verify(trx).commit();
+		verify(session).close();
+	}
+
+	@Test
+	public void getStudyByPPodIdAsStreamNoSuchStudyIsNotFound() {
+		IStudyDAO studyDAO = mock(IStudyDAO.class);
+		ICreateOrUpdateStudy createOrUpdateStudy = mock(ICreateOrUpdateStudy.class);
+		Session session = mock(Session.class);
+		Transaction trx = mock(Transaction.class);
+		when(trx.isActive()).thenReturn(true);
+		IStudyStreamer studyStreamer = mock(IStudyStreamer.class);
+
+		when(session.beginTransaction()).thenReturn(trx);
+
+		StudyResourceHibernate studyResource =
+				new StudyResourceHibernate(
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						studyStreamer);
+		Response response = studyResource.getStudyByPPodIdAsStream("don't-care");
+
+		assertEquals(response.getStatus(), 404);
+		assertNull(response.getEntity());
+
+		verify(studyStreamer, never()).streamStudy(
+				any(Study.class),
+				any(IPPodStudyHandler.class));
+		verify(trx, never()).commit();
+		verify(trx).rollback();
+		verify(session).close();
+	}
+
+	@Test
+	public void getStudyByPPodIdAsStreamWriteFailsRollsBackAndCloses()
+			throws IOException {
+		IStudyDAO studyDAO = mock(IStudyDAO.class);
+		ICreateOrUpdateStudy createOrUpdateStudy = mock(ICreateOrUpdateStudy.class);
+		Session session = mock(Session.class);
+		Transaction trx = mock(Transaction.class);
+		when(trx.isActive()).thenReturn(true);
+		IStudyStreamer studyStreamer = mock(IStudyStreamer.class);
+
+		Study study = new Study();
+		when(studyDAO.getStudyByPPodId(anyString())).thenReturn(study);
+		doThrow(new IllegalStateException())
+				.when(studyStreamer)
+				.streamStudy(same(study), any(IPPodStudyHandler.class));
+
+		when(session.beginTransaction()).thenReturn(trx);
+
+		StudyResourceHibernate studyResource =
+				new StudyResourceHibernate(
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						studyStreamer);
+		Response response = studyResource.getStudyByPPodIdAsStream("don't-care");
+
+		boolean exceptionCaught = false;
+		try {
+			((StreamingOutput) response.getEntity())
+					.write(new ByteArrayOutputStream());
+		} catch (IllegalStateException e) {
+			exceptionCaught = true;
+		}
+		assertTrue(exceptionCaught);
+
+		verify(trx, never()).commit();
+		verify(trx).rollback();
+		verify(session).close();
+	}
+
 	@Test
 	public void getStudyPPodIdLabelPairsCommitsAndCloses() {
 		IStudyDAO studyDAO = mock(IStudyDAO.class);
@@ -159,7 +329,9 @@ public class StudyResourceHibernateTest {
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 		studyResource.getStudyPPodIdLabelPairs();
 
 		verify(trx).commit();
@@ -180,7 +352,9 @@ public class StudyResourceHibernateTest {
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 
 		boolean caughtException = false;
 
@@ -206,15 +380,20 @@ public class StudyResourceHibernateTest {
 
 		Study study = new Study();
 		when(createOrUpdateStudy
-				.createOrUpdateStudy(any(PPodStudy.class))).thenReturn(study);
+				.createOrUpdateStudy(
+						any(PPodStudy.class),
+						any(CellWriteMode.class))).thenReturn(study);
 
 		when(session.beginTransaction()).thenReturn(trx);
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 		studyResource.updateStudy(
-				new PPodStudy("dont-care", "dont-care"), "don't-care");
+				new PPodStudy("dont-care", "dont-care"), "don't-care",
+				CellWriteMode.BULK);
 
 		verify(trx).commit();
 		verify(session).close();
@@ -230,20 +409,25 @@ public class StudyResourceHibernateTest {
 		when(trx.isActive()).thenReturn(true);
 
 		when(createOrUpdateStudy
-				.createOrUpdateStudy(any(PPodStudy.class))).thenThrow(
+				.createOrUpdateStudy(
+						any(PPodStudy.class),
+						any(CellWriteMode.class))).thenThrow(
 				new RuntimeException());
 
 		when(session.beginTransaction()).thenReturn(trx);
 
 		StudyResourceHibernate studyResource =
 				new StudyResourceHibernate(
-						studyDAO, createOrUpdateStudy, session);
+						studyDAO, createOrUpdateStudy, session,
+						mock(IStudyUploadJobs.class),
+						mock(IStudyStreamer.class));
 
 		boolean exceptionCaught = false;
 
 		try {
 			studyResource.updateStudy(
-					new PPodStudy("dont-care", "dont-care"), "don't-care");
+					new PPodStudy("dont-care", "dont-care"), "don't-care",
+					CellWriteMode.BULK);
 		} catch (RuntimeException e) {
 			exceptionCaught = true;
 		}
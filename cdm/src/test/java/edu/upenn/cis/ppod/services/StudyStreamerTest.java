@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+
+import org.hibernate.ScrollableResults;
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dao.IDnaRowDAO;
+import edu.upenn.cis.ppod.dao.IProteinRowDAO;
+import edu.upenn.cis.ppod.dao.ISequenceBlobDAO;
+import edu.upenn.cis.ppod.dao.IStandardRowDAO;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.model.DnaMatrix;
+import edu.upenn.cis.ppod.model.DnaRow;
+import edu.upenn.cis.ppod.model.Otu;
+import edu.upenn.cis.ppod.model.OtuSet;
+import edu.upenn.cis.ppod.model.SequenceBlob;
+import edu.upenn.cis.ppod.model.Study;
+import edu.upenn.cis.ppod.util.PPodStudyWriter;
+
+/**
+ * Test {@link StudyStreamer}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class StudyStreamerTest {
+
+	private static final String[] SEQUENCES = { "ACGT", "AC-T" };
+
+	private static DnaMatrix newDbMatrix(final Study dbStudy) {
+		final OtuSet dbOtuSet = new OtuSet();
+		dbOtuSet.setLabel("otu-set-0");
+		dbStudy.addOtuSet(dbOtuSet);
+		final List<Otu> dbOtus = newArrayList();
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			final Otu dbOtu = spy(new Otu("otu-" + i));
+			doReturn(Long.valueOf(10 + i)).when(dbOtu).getId();
+			dbOtus.add(dbOtu);
+		}
+		dbOtuSet.clearAndAddOtus(dbOtus);
+		final DnaMatrix dbMatrix = new DnaMatrix();
+		dbMatrix.setLabel("dna-matrix-0");
+		dbOtuSet.addDnaMatrix(dbMatrix);
+		return dbMatrix;
+	}
+
+	/**
+	 * Results that scroll through {@code otuIdsRows}.
+	 */
+	private static ScrollableResults scrollOf(final List<Object[]> otuIdsRows) {
+		final ScrollableResults results = mock(ScrollableResults.class);
+		if (otuIdsRows.isEmpty()) {
+			when(results.next()).thenReturn(false);
+			return results;
+		}
+		final Boolean[] moreNexts = new Boolean[otuIdsRows.size()];
+		for (int i = 0; i < moreNexts.length - 1; i++) {
+			moreNexts[i] = true;
+		}
+		moreNexts[moreNexts.length - 1] = false;
+		when(results.next()).thenReturn(true, moreNexts);
+		final Object[][] moreGets = new Object[otuIdsRows.size() - 1][];
+		for (int i = 1; i < otuIdsRows.size(); i++) {
+			moreGets[i - 1] = otuIdsRows.get(i);
+		}
+		when(results.get()).thenReturn(otuIdsRows.get(0), moreGets);
+		return results;
+	}
+
+	private static List<Object[]> newOtuIdsRows(
+			final Long otuId0,
+			final Long otuId1,
+			final List<DnaRow> dbRows) {
+		final Long[] otuIds = { otuId0, otuId1 };
+		final List<Object[]> otuIdsRows = newArrayList();
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			final DnaRow dbRow = new DnaRow();
+			dbRow.setSequenceBlob(
+					new SequenceBlob(SequenceBlob.Alphabet.DNA, SEQUENCES[i]));
+			dbRows.add(dbRow);
+			otuIdsRows.add(new Object[] { otuIds[i], dbRow });
+		}
+		return otuIdsRows;
+	}
+
+	public void streamStudy() throws Exception {
+		final Study dbStudy = new Study();
+		dbStudy.setLabel("study-0");
+		final DnaMatrix dbMatrix = newDbMatrix(dbStudy);
+
+		final List<DnaRow> dbRows = newArrayList();
+		final ScrollableResults otuIdsRows =
+				scrollOf(newOtuIdsRows(10L, 11L, dbRows));
+
+		final IDnaRowDAO dnaRowDao = mock(IDnaRowDAO.class);
+		when(dnaRowDao.scrollOtuIdsRowsByMatrix(dbMatrix))
+				.thenReturn(otuIdsRows);
+		final ISequenceBlobDAO sequenceBlobDao = mock(ISequenceBlobDAO.class);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new StudyStreamer(
+				mock(IStandardRowDAO.class),
+				dnaRowDao,
+				mock(IProteinRowDAO.class),
+				sequenceBlobDao)
+				.streamStudy(dbStudy, new PPodStudyWriter(out));
+
+		for (final DnaRow dbRow : dbRows) {
+			verify(dnaRowDao).evict(dbRow);
+			verify(sequenceBlobDao).evict(dbRow.getSequenceBlob());
+		}
+		verify(otuIdsRows).close();
+
+		final PPodStudy docStudy =
+				(PPodStudy) JAXBContext.newInstance(PPodStudy.class)
+						.createUnmarshaller()
+						.unmarshal(
+								new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(docStudy.getLabel(), "study-0");
+		final PPodOtuSet docOtuSet = getOnlyElement(docStudy.getOtuSets());
+		assertEquals(docOtuSet.getOtus().size(), SEQUENCES.length);
+		final PPodDnaMatrix docMatrix =
+				getOnlyElement(docOtuSet.getDnaMatrices());
+		assertEquals(docMatrix.getLabel(), "dna-matrix-0");
+		final List<String> docSequences = newArrayList();
+		for (final PPodDnaRow docRow : docMatrix.getRows()) {
+			docSequences.add(docRow.getSequence());
+		}
+		assertEquals(docSequences, newArrayList(SEQUENCES));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void streamStudyRowsOutOfOrder() {
+		final Study dbStudy = new Study();
+		dbStudy.setLabel("study-0");
+		final DnaMatrix dbMatrix = newDbMatrix(dbStudy);
+
+		final List<DnaRow> dbRows = newArrayList();
+		final ScrollableResults otuIdsRows =
+				scrollOf(newOtuIdsRows(11L, 10L, dbRows));
+
+		final IDnaRowDAO dnaRowDao = mock(IDnaRowDAO.class);
+		when(dnaRowDao.scrollOtuIdsRowsByMatrix(dbMatrix))
+				.thenReturn(otuIdsRows);
+
+		try {
+			new StudyStreamer(
+					mock(IStandardRowDAO.class),
+					dnaRowDao,
+					mock(IProteinRowDAO.class),
+					mock(ISequenceBlobDAO.class))
+					.streamStudy(
+							dbStudy,
+							new PPodStudyWriter(new ByteArrayOutputStream()));
+		} finally {
+			verify(otuIdsRows).close();
+		}
+	}
+}
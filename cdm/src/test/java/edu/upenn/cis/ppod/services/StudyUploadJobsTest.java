@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import com.google.inject.Provider;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.createorupdate.ICreateOrUpdateStudy;
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.StudyUploadJobInfo;
+import edu.upenn.cis.ppod.dto.StudyUploadJobState;
+import edu.upenn.cis.ppod.model.Study;
+
+/**
+ * Test {@link StudyUploadJobs}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class StudyUploadJobsTest {
+
+	private static final String STUDY =
+			"<study><otuSet><standardMatrix><row/><row/></standardMatrix>"
+					+ "<dnaMatrix><row/></dnaMatrix></otuSet></study>";
+
+	private static InputStream newUpload() {
+		return new ByteArrayInputStream(STUDY.getBytes());
+	}
+
+	private static <T> Provider<T> providerOf(final T t) {
+		return new Provider<T>() {
+			public T get() {
+				return t;
+			}
+		};
+	}
+
+	private static StudyUploadJobInfo waitForJob(
+			final StudyUploadJobs jobs,
+			final String jobId) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			final StudyUploadJobInfo jobInfo = jobs.getJobInfo(jobId);
+			if (jobInfo.getState() == StudyUploadJobState.SUCCEEDED
+					|| jobInfo.getState() == StudyUploadJobState.FAILED) {
+				return jobInfo;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("job " + jobId + " didn't finish");
+	}
+
+	public void runJob() throws InterruptedException {
+		final Session session = mock(Session.class);
+		final Transaction trx = mock(Transaction.class);
+		when(session.beginTransaction()).thenReturn(trx);
+
+		final ICreateOrUpdateStudy createOrUpdateStudy =
+				mock(ICreateOrUpdateStudy.class);
+		final Study study = new Study();
+		study.setLabel("study-0");
+		when(createOrUpdateStudy.createOrUpdateStudy(
+						any(InputStream.class),
+						any(CellWriteMode.class),
+						any(AtomicLong.class))).thenAnswer(
+				new Answer<Study>() {
+					public Study answer(final InvocationOnMock invocation) {
+						((AtomicLong) invocation.getArguments()[2])
+								.addAndGet(3);
+						return study;
+					}
+				});
+
+		final StudyUploadJobs jobs =
+				new StudyUploadJobs(
+						providerOf(session),
+						providerOf(createOrUpdateStudy));
+		try {
+			final StudyUploadJobInfo submitted =
+					jobs.submit(newUpload(), CellWriteMode.BULK);
+			assertNotNull(submitted.getJobId());
+
+			final StudyUploadJobInfo finished =
+					waitForJob(jobs, submitted.getJobId());
+			assertEquals(finished.getState(), StudyUploadJobState.SUCCEEDED);
+			assertEquals(finished.getTotalRows(), 3L);
+			assertEquals(finished.getRowsMerged(), 3L);
+			assertNotNull(finished.getStudyInfo());
+			assertEquals(
+					finished.getStudyInfo().getPPodId(),
+					study.getPPodId());
+			assertNull(finished.getErrorMessage());
+
+			verify(trx).commit();
+			verify(session).close();
+		} finally {
+			jobs.shutdown();
+		}
+	}
+
+	public void runFailingJob() throws InterruptedException {
+		final Session session = mock(Session.class);
+		final Transaction trx = mock(Transaction.class);
+		when(trx.isActive()).thenReturn(true);
+		when(session.beginTransaction()).thenReturn(trx);
+
+		final ICreateOrUpdateStudy createOrUpdateStudy =
+				mock(ICreateOrUpdateStudy.class);
+		when(createOrUpdateStudy.createOrUpdateStudy(
+						any(InputStream.class),
+						any(CellWriteMode.class),
+						any(AtomicLong.class))).thenThrow(
+				new IllegalArgumentException("bad study"));
+
+		final StudyUploadJobs jobs =
+				new StudyUploadJobs(
+						providerOf(session),
+						providerOf(createOrUpdateStudy));
+		try {
+			final StudyUploadJobInfo finished =
+					waitForJob(
+							jobs,
+							jobs.submit(newUpload(), CellWriteMode.BULK)
+									.getJobId());
+			assertEquals(finished.getState(), StudyUploadJobState.FAILED);
+			assertEquals(finished.getErrorMessage(), "bad study");
+			assertNull(finished.getStudyInfo());
+
+			verify(trx).rollback();
+			verify(session).close();
+		} finally {
+			jobs.shutdown();
+		}
+	}
+
+	public void queueWhenWorkersAreBusy() throws InterruptedException {
+		final Session session = mock(Session.class);
+		final Transaction trx = mock(Transaction.class);
+		when(session.beginTransaction()).thenReturn(trx);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ICreateOrUpdateStudy createOrUpdateStudy =
+				mock(ICreateOrUpdateStudy.class);
+		when(createOrUpdateStudy.createOrUpdateStudy(
+						any(InputStream.class),
+						any(CellWriteMode.class),
+						any(AtomicLong.class))).thenAnswer(
+				new Answer<Study>() {
+					public Study answer(final InvocationOnMock invocation)
+							throws InterruptedException {
+						started.countDown();
+						release.await();
+						return new Study();
+					}
+				});
+
+		final StudyUploadJobs jobs =
+				new StudyUploadJobs(
+						providerOf(session),
+						providerOf(createOrUpdateStudy),
+						1);
+		try {
+			final String firstJobId =
+					jobs.submit(newUpload(), CellWriteMode.BULK).getJobId();
+			started.await(5, TimeUnit.SECONDS);
+			final String secondJobId =
+					jobs.submit(newUpload(), CellWriteMode.BULK).getJobId();
+
+			assertEquals(
+					jobs.getJobInfo(firstJobId).getState(),
+					StudyUploadJobState.RUNNING);
+			assertEquals(
+					jobs.getJobInfo(secondJobId).getState(),
+					StudyUploadJobState.QUEUED);
+
+			release.countDown();
+			assertEquals(
+					waitForJob(jobs, secondJobId).getState(),
+					StudyUploadJobState.SUCCEEDED);
+		} finally {
+			release.countDown();
+			jobs.shutdown();
+		}
+	}
+
+	public void getJobInfoOfUnknownJob() {
+		final StudyUploadJobs jobs =
+				new StudyUploadJobs(
+						providerOf(mock(Session.class)),
+						providerOf(mock(ICreateOrUpdateStudy.class)));
+		try {
+			assertNull(jobs.getJobInfo("no-such-job"));
+		} finally {
+			jobs.shutdown();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+
+/**
+ * Test {@link PPodIds}.
+ *
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class PPodIdsTest {
+
+	public void newPPodId() {
+		final String pPodId = PPodIds.newPPodId();
+		assertEquals(pPodId.length(), PPodIds.STRING_LENGTH);
+
+		final UUID uuid = UUID.fromString(pPodId);
+		assertEquals(uuid.version(), 7);
+		assertEquals(uuid.variant(), 2);
+	}
+
+	public void newPPodIdsAreTimeOrdered() {
+		final Random random = new Random(0);
+		String previousBytes = null;
+		for (long millis = 1300000000000L; millis < 1300000001000L; millis += 7) {
+			final String pPodId = PPodIds.newPPodId(millis, random);
+			assertEquals(
+					UUID.fromString(pPodId).getMostSignificantBits() >>> 16,
+					millis);
+			final String bytes = unsignedHex(PPodIds.toBytes(pPodId));
+			if (previousBytes != null) {
+				// As the database compares them
+				assertTrue(previousBytes.compareTo(bytes) < 0);
+			}
+			previousBytes = bytes;
+		}
+	}
+
+	public void roundTrip() {
+		for (int i = 0; i < 100; i++) {
+			final String pPodId =
+					i % 2 == 0
+							? PPodIds.newPPodId()
+							: UUID.randomUUID().toString();
+			final byte[] bytes = PPodIds.toBytes(pPodId);
+			assertEquals(bytes.length, PPodIds.BINARY_LENGTH);
+			assertEquals(PPodIds.toString(bytes), pPodId);
+		}
+	}
+
+	public void toBytesIsTheHexOfTheString() {
+		final String pPodId = "0123abcd-4567-89ef-8123-456789abcdef";
+		assertEquals(
+				unsignedHex(PPodIds.toBytes(pPodId)),
+				pPodId.replace("-", ""));
+	}
+
+	public void isPPodId() {
+		assertTrue(PPodIds.isPPodId(PPodIds.newPPodId()));
+		assertTrue(PPodIds.isPPodId("0123ABCD-4567-89ef-8123-456789abcdef"));
+		for (final String notAPPodId : new String[] { null, "",
+				"not-a-ppod-id", "0123abcd-4567-89ef-8123-456789abcdeg",
+				"+123abcd-4567-89ef-8123-456789abcdef",
+				"0123abcd-4567-89ef-8123-456789abcdef0",
+				"0123abcd4567-89ef-8123-456789abcdef-" }) {
+			assertFalse(PPodIds.isPPodId(notAPPodId), notAPPodId);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void toBytesNotAPPodId() {
+		PPodIds.toBytes("not-a-ppod-id");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void toStringWrongLength() {
+		PPodIds.toString(new byte[PPodIds.BINARY_LENGTH - 1]);
+	}
+
+	private static String unsignedHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
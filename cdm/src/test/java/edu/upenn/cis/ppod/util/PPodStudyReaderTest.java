@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+
+import org.testng.annotations.Test;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardCharacter;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTree;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+
+/**
+ * Test {@link PPodStudyReader}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class PPodStudyReaderTest {
+
+	/**
+	 * Puts the study back together, and records the order of the callbacks.
+	 */
+	private static class RebuildingHandler implements IPPodStudyHandler {
+
+		PPodStudy study;
+		final List<String> events = newArrayList();
+		private PPodOtuSet otuSet;
+
+		public void startStudy(final PPodStudy study) {
+			events.add("startStudy");
+			this.study = study;
+		}
+
+		public void startOtuSet(final PPodOtuSet otuSet) {
+			events.add("startOtuSet");
+			this.otuSet = otuSet;
+			study.getOtuSets().add(otuSet);
+		}
+
+		public void standardMatrix(
+				final PPodStandardMatrix matrix,
+				final Iterable<PPodStandardRow> rows) {
+			events.add("standardMatrix");
+			otuSet.getStandardMatrices().add(matrix);
+			for (final PPodStandardRow row : rows) {
+				matrix.getRows().add(row);
+			}
+		}
+
+		public void dnaMatrix(
+				final PPodDnaMatrix matrix,
+				final Iterable<PPodDnaRow> rows) {
+			events.add("dnaMatrix");
+			otuSet.getDnaMatrices().add(matrix);
+			for (final PPodDnaRow row : rows) {
+				matrix.getRows().add(row);
+			}
+		}
+
+		public void proteinMatrix(
+				final PPodProteinMatrix matrix,
+				final Iterable<PPodProteinRow> rows) {
+			events.add("proteinMatrix");
+			otuSet.getProteinMatrices().add(matrix);
+			for (final PPodProteinRow row : rows) {
+				matrix.getRows().add(row);
+			}
+		}
+
+		public void treeSet(final PPodTreeSet treeSet) {
+			events.add("treeSet");
+			otuSet.getTreeSets().add(treeSet);
+		}
+
+		public void endOtuSet() {
+			events.add("endOtuSet");
+		}
+
+		public void endStudy() {
+			events.add("endStudy");
+		}
+	}
+
+	private static PPodStudy unmarshal(final InputStream in)
+			throws Exception {
+		return (PPodStudy) JAXBContext.newInstance(PPodStudy.class)
+				.createUnmarshaller()
+				.unmarshal(in);
+	}
+
+	private static byte[] marshal(final PPodStudy study) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JAXBContext.newInstance(PPodStudy.class)
+				.createMarshaller()
+				.marshal(study, out);
+		return out.toByteArray();
+	}
+
+	public void readStandardMatrixAndTreeSet() throws Exception {
+		final PPodStudy expectedStudy =
+				unmarshal(getClass().getResourceAsStream("/MX540.xml"));
+
+		final RebuildingHandler handler = new RebuildingHandler();
+		new PPodStudyReader().read(
+				getClass().getResourceAsStream("/MX540.xml"),
+				handler);
+
+		assertEquals(
+				handler.events,
+				newArrayList("startStudy", "startOtuSet", "standardMatrix",
+						"treeSet", "endOtuSet", "endStudy"));
+
+		final PPodStudy actualStudy = handler.study;
+		assertEquals(actualStudy.getLabel(), expectedStudy.getLabel());
+		assertEquals(actualStudy.getPPodId(), expectedStudy.getPPodId());
+
+		final PPodOtuSet expectedOtuSet =
+				getOnlyElement(expectedStudy.getOtuSets());
+		final PPodOtuSet actualOtuSet =
+				getOnlyElement(actualStudy.getOtuSets());
+		assertEquals(actualOtuSet.getLabel(), expectedOtuSet.getLabel());
+		assertEquals(
+				actualOtuSet.getOtus().size(),
+				expectedOtuSet.getOtus().size());
+		for (int i = 0; i < expectedOtuSet.getOtus().size(); i++) {
+			final PPodOtu expectedOtu = expectedOtuSet.getOtus().get(i);
+			final PPodOtu actualOtu = actualOtuSet.getOtus().get(i);
+			assertEquals(actualOtu.getLabel(), expectedOtu.getLabel());
+			assertEquals(actualOtu.getDocId(), expectedOtu.getDocId());
+		}
+
+		final PPodStandardMatrix expectedMatrix =
+				getOnlyElement(expectedOtuSet.getStandardMatrices());
+		final PPodStandardMatrix actualMatrix =
+				getOnlyElement(actualOtuSet.getStandardMatrices());
+		assertEquals(actualMatrix.getLabel(), expectedMatrix.getLabel());
+		assertEquals(
+				actualMatrix.getCharacters().size(),
+				expectedMatrix.getCharacters().size());
+		for (int i = 0; i < expectedMatrix.getCharacters().size(); i++) {
+			final PPodStandardCharacter expectedCharacter =
+					expectedMatrix.getCharacters().get(i);
+			final PPodStandardCharacter actualCharacter =
+					actualMatrix.getCharacters().get(i);
+			assertEquals(
+					actualCharacter.getLabel(),
+					expectedCharacter.getLabel());
+			assertEquals(
+					actualCharacter.getStates().size(),
+					expectedCharacter.getStates().size());
+		}
+		assertEquals(
+				actualMatrix.getRows().size(),
+				expectedMatrix.getRows().size());
+		for (int i = 0; i < expectedMatrix.getRows().size(); i++) {
+			final PPodStandardRow expectedRow = expectedMatrix.getRows().get(i);
+			final PPodStandardRow actualRow = actualMatrix.getRows().get(i);
+			assertEquals(
+					actualRow.getCells().size(),
+					expectedRow.getCells().size());
+			for (int j = 0; j < expectedRow.getCells().size(); j++) {
+				assertEquals(
+						actualRow.getCells().get(j).getType(),
+						expectedRow.getCells().get(j).getType());
+				assertEquals(
+						actualRow.getCells().get(j).getStates(),
+						expectedRow.getCells().get(j).getStates());
+			}
+		}
+
+		final PPodTreeSet expectedTreeSet =
+				getOnlyElement(expectedOtuSet.getTreeSets());
+		final PPodTreeSet actualTreeSet =
+				getOnlyElement(actualOtuSet.getTreeSets());
+		assertEquals(actualTreeSet.getLabel(), expectedTreeSet.getLabel());
+		assertEquals(
+				actualTreeSet.getTrees().size(),
+				expectedTreeSet.getTrees().size());
+		for (int i = 0; i < expectedTreeSet.getTrees().size(); i++) {
+			final PPodTree expectedTree = expectedTreeSet.getTrees().get(i);
+			final PPodTree actualTree = actualTreeSet.getTrees().get(i);
+			assertEquals(actualTree.getLabel(), expectedTree.getLabel());
+			assertEquals(actualTree.getNewick(), expectedTree.getNewick());
+		}
+	}
+
+	public void readMolecularMatricesAndSkipUnreadRows() throws Exception {
+		final PPodStudy study = new PPodStudy(null, "study-0");
+		final PPodOtuSet otuSet = new PPodOtuSet(null, "otu-set-0");
+		study.getOtuSets().add(otuSet);
+		otuSet.getOtus().add(new PPodOtu("otu-0"));
+		otuSet.getOtus().add(new PPodOtu("otu-1"));
+
+		final PPodDnaMatrix dnaMatrix =
+				new PPodDnaMatrix("dna-ppod-id", "dna-matrix-0");
+		dnaMatrix.getRows().add(new PPodDnaRow("ACGT"));
+		dnaMatrix.getRows().add(new PPodDnaRow("AC-T"));
+		otuSet.getDnaMatrices().add(dnaMatrix);
+
+		final PPodProteinMatrix proteinMatrix =
+				new PPodProteinMatrix(null, "protein-matrix-0");
+		proteinMatrix.getRows().add(new PPodProteinRow("MKV"));
+		proteinMatrix.getRows().add(new PPodProteinRow("MK-"));
+		otuSet.getProteinMatrices().add(proteinMatrix);
+
+		final List<String> proteinSequences = newArrayList();
+		final List<String> calls = newArrayList();
+		new PPodStudyReader().read(
+				new ByteArrayInputStream(marshal(study)),
+				new RebuildingHandler() {
+					@Override
+					public void dnaMatrix(
+							final PPodDnaMatrix matrix,
+							final Iterable<PPodDnaRow> rows) {
+						calls.add(matrix.getPPodId());
+						// Only read the first row
+						rows.iterator().next();
+					}
+
+					@Override
+					public void proteinMatrix(
+							final PPodProteinMatrix matrix,
+							final Iterable<PPodProteinRow> rows) {
+						calls.add(matrix.getLabel());
+						for (final PPodProteinRow row : rows) {
+							proteinSequences.add(row.getSequence());
+						}
+					}
+
+					@Override
+					public void endOtuSet() {
+						calls.add("endOtuSet");
+					}
+				});
+
+		assertEquals(
+				calls,
+				newArrayList("dna-ppod-id", "protein-matrix-0", "endOtuSet"));
+		assertEquals(proteinSequences, newArrayList("MKV", "MK-"));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void iterateRowsOnlyOnce() throws Exception {
+		new PPodStudyReader().read(
+				getClass().getResourceAsStream("/MX540.xml"),
+				new RebuildingHandler() {
+					@Override
+					public void standardMatrix(
+							final PPodStandardMatrix matrix,
+							final Iterable<PPodStandardRow> rows) {
+						rows.iterator();
+						rows.iterator();
+					}
+				});
+	}
+}
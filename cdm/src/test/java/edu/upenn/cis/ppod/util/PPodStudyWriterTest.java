@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.util;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import javax.xml.bind.JAXBContext;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.upenn.cis.ppod.TestGroupDefs;
+import edu.upenn.cis.ppod.dto.PPodDnaMatrix;
+import edu.upenn.cis.ppod.dto.PPodDnaRow;
+import edu.upenn.cis.ppod.dto.PPodOtu;
+import edu.upenn.cis.ppod.dto.PPodOtuSet;
+import edu.upenn.cis.ppod.dto.PPodProteinMatrix;
+import edu.upenn.cis.ppod.dto.PPodProteinRow;
+import edu.upenn.cis.ppod.dto.PPodStandardMatrix;
+import edu.upenn.cis.ppod.dto.PPodStandardRow;
+import edu.upenn.cis.ppod.dto.PPodStudy;
+import edu.upenn.cis.ppod.dto.PPodTreeSet;
+
+/**
+ * Test {@link PPodStudyWriter}.
+ * 
+ * @author Sam Donnelly
+ */
+@Test(groups = TestGroupDefs.FAST)
+public class PPodStudyWriterTest {
+
+	private static PPodStudy unmarshal(final InputStream in)
+			throws Exception {
+		return (PPodStudy) JAXBContext.newInstance(PPodStudy.class)
+				.createUnmarshaller()
+				.unmarshal(in);
+	}
+
+	public void writeWhatWasRead() throws Exception {
+		final PPodStudy expectedStudy =
+				unmarshal(getClass().getResourceAsStream("/MX540.xml"));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PPodStudyReader().read(
+				getClass().getResourceAsStream("/MX540.xml"),
+				new PPodStudyWriter(out));
+
+		final PPodStudy actualStudy =
+				unmarshal(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(actualStudy.getLabel(), expectedStudy.getLabel());
+		assertEquals(actualStudy.getPPodId(), expectedStudy.getPPodId());
+
+		final PPodOtuSet expectedOtuSet =
+				getOnlyElement(expectedStudy.getOtuSets());
+		final PPodOtuSet actualOtuSet =
+				getOnlyElement(actualStudy.getOtuSets());
+		assertEquals(actualOtuSet.getLabel(), expectedOtuSet.getLabel());
+		assertEquals(
+				actualOtuSet.getOtus().size(),
+				expectedOtuSet.getOtus().size());
+		for (int i = 0; i < expectedOtuSet.getOtus().size(); i++) {
+			final PPodOtu expectedOtu = expectedOtuSet.getOtus().get(i);
+			final PPodOtu actualOtu = actualOtuSet.getOtus().get(i);
+			assertEquals(actualOtu.getLabel(), expectedOtu.getLabel());
+			assertEquals(actualOtu.getDocId(), expectedOtu.getDocId());
+		}
+
+		final PPodStandardMatrix expectedMatrix =
+				getOnlyElement(expectedOtuSet.getStandardMatrices());
+		final PPodStandardMatrix actualMatrix =
+				getOnlyElement(actualOtuSet.getStandardMatrices());
+		assertEquals(actualMatrix.getLabel(), expectedMatrix.getLabel());
+		assertEquals(
+				actualMatrix.getCharacters().size(),
+				expectedMatrix.getCharacters().size());
+		for (int i = 0; i < expectedMatrix.getCharacters().size(); i++) {
+			assertEquals(
+					actualMatrix.getCharacters().get(i).getStates().size(),
+					expectedMatrix.getCharacters().get(i).getStates().size());
+		}
+		assertEquals(
+				actualMatrix.getRows().size(),
+				expectedMatrix.getRows().size());
+		for (int i = 0; i < expectedMatrix.getRows().size(); i++) {
+			final PPodStandardRow expectedRow = expectedMatrix.getRows().get(i);
+			final PPodStandardRow actualRow = actualMatrix.getRows().get(i);
+			assertEquals(actualRow.getCells(), expectedRow.getCells());
+		}
+
+		final PPodTreeSet expectedTreeSet =
+				getOnlyElement(expectedOtuSet.getTreeSets());
+		final PPodTreeSet actualTreeSet =
+				getOnlyElement(actualOtuSet.getTreeSets());
+		assertEquals(actualTreeSet.getLabel(), expectedTreeSet.getLabel());
+		assertEquals(
+				actualTreeSet.getTrees().size(),
+				expectedTreeSet.getTrees().size());
+	}
+
+	public void writeMolecularMatrices() throws Exception {
+		final PPodDnaRow dnaRow = new PPodDnaRow("ACGT");
+		final PPodProteinRow proteinRow = new PPodProteinRow("MKV");
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final PPodStudyWriter writer = new PPodStudyWriter(out);
+		writer.startStudy(new PPodStudy(null, "study-0"));
+		final PPodOtuSet otuSet = new PPodOtuSet("otu-set-ppod-id", "otu-set-0");
+		otuSet.getOtus().add(new PPodOtu("otu-0"));
+		writer.startOtuSet(otuSet);
+		writer.dnaMatrix(
+				new PPodDnaMatrix("dna-ppod-id", "dna-matrix-0"),
+				ImmutableList.of(dnaRow));
+		writer.proteinMatrix(
+				new PPodProteinMatrix(null, "protein-matrix-0"),
+				ImmutableList.of(proteinRow));
+		writer.endOtuSet();
+		writer.endStudy();
+
+		final PPodStudy study =
+				unmarshal(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(study.getLabel(), "study-0");
+		assertNull(study.getPPodId());
+		final PPodOtuSet actualOtuSet = getOnlyElement(study.getOtuSets());
+		assertEquals(actualOtuSet.getPPodId(), "otu-set-ppod-id");
+		assertEquals(
+				getOnlyElement(actualOtuSet.getOtus()).getLabel(),
+				"otu-0");
+		final PPodDnaMatrix dnaMatrix =
+				getOnlyElement(actualOtuSet.getDnaMatrices());
+		assertEquals(dnaMatrix.getPPodId(), "dna-ppod-id");
+		assertEquals(
+				getOnlyElement(dnaMatrix.getRows()).getSequence(),
+				"ACGT");
+		final PPodProteinMatrix proteinMatrix =
+				getOnlyElement(actualOtuSet.getProteinMatrices());
+		assertEquals(proteinMatrix.getLabel(), "protein-matrix-0");
+		assertEquals(
+				getOnlyElement(proteinMatrix.getRows()).getSequence(),
+				"MKV");
+	}
+}
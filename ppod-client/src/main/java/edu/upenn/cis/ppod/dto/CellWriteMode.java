@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+/**
+ * How the server should write the cells of the standard matrices of an upload.
+ *
+ * @author Sam Donnelly
+ */
+public enum CellWriteMode {
+
+	/**
+	 * Merge the cells one at a time through the persistence context. Cells
+	 * that are already persisted keep their identity.
+	 */
+	PER_CELL,
+
+	/**
+	 * Stage the incoming cells and replace the stored cells of whole blocks of
+	 * rows with batched inserts. Much faster for large matrices, but every cell
+	 * of the matrix is rewritten.
+	 */
+	BULK,
+
+	/**
+	 * Like {@link #BULK}, but write each row's cells packed into a single
+	 * column of the row instead of one row per cell: a row is written with a
+	 * single statement and takes a fraction of the space.
+	 */
+	PACKED;
+}
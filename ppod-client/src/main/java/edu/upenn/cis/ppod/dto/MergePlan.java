@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * What uploading a study would do, worked out without doing it: how many
+ * entities would be created, updated and deleted, how many matrix rows and
+ * cells would be written or left alone, and a rough count of the SQL
+ * statements it would take.
+ * <p>
+ * OTU sets, OTUs, matrices, characters, tree sets and trees are counted as
+ * entities. Matrix rows are counted as entities only when they're deleted.
+ * Counts are upper bounds where the stored data can't be compared without
+ * loading it: every cell of a row that's written counts as changed.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public final class MergePlan {
+
+	private long entitiesToCreate;
+
+	private long entitiesToUpdate;
+
+	private long entitiesToDelete;
+
+	private long subtreesUnchanged;
+
+	private long rowsChanged;
+
+	private long rowsUntouched;
+
+	private long cellsChanged;
+
+	private long estimatedStatements;
+
+	public MergePlan() {}
+
+	/**
+	 * The number of cells in the matrix rows that would be written.
+	 * 
+	 * @return the number of cells that would be written
+	 */
+	@XmlAttribute
+	public long getCellsChanged() {
+		return cellsChanged;
+	}
+
+	@XmlAttribute
+	public long getEntitiesToCreate() {
+		return entitiesToCreate;
+	}
+
+	/**
+	 * The number of entities, matrix rows included, that would be deleted.
+	 * 
+	 * @return the number of entities that would be deleted
+	 */
+	@XmlAttribute
+	public long getEntitiesToDelete() {
+		return entitiesToDelete;
+	}
+
+	/**
+	 * The number of entities that would be merged in place. Matched OTU sets,
+	 * matrices and tree sets that have changed are counted, and OTUs,
+	 * characters and trees whose label or Newick string has changed.
+	 * 
+	 * @return the number of entities that would be updated
+	 */
+	@XmlAttribute
+	public long getEntitiesToUpdate() {
+		return entitiesToUpdate;
+	}
+
+	/**
+	 * A rough count of the SQL statements the upload would execute, not
+	 * counting reads.
+	 * 
+	 * @return the estimated number of statements
+	 */
+	@XmlAttribute
+	public long getEstimatedStatements() {
+		return estimatedStatements;
+	}
+
+	/**
+	 * The number of matrix rows that would be created or rewritten.
+	 * 
+	 * @return the number of matrix rows that would be written
+	 */
+	@XmlAttribute
+	public long getRowsChanged() {
+		return rowsChanged;
+	}
+
+	/**
+	 * The number of incoming matrix rows that are already stored as they
+	 * are.
+	 * 
+	 * @return the number of matrix rows that would be left alone
+	 */
+	@XmlAttribute
+	public long getRowsUntouched() {
+		return rowsUntouched;
+	}
+
+	/**
+	 * The number of OTU sets, matrices and tree sets that would be skipped
+	 * because they haven't changed since they were last uploaded.
+	 * 
+	 * @return the number of unchanged subtrees
+	 */
+	@XmlAttribute
+	public long getSubtreesUnchanged() {
+		return subtreesUnchanged;
+	}
+
+	public void setCellsChanged(final long cellsChanged) {
+		this.cellsChanged = cellsChanged;
+	}
+
+	public void setEntitiesToCreate(final long entitiesToCreate) {
+		this.entitiesToCreate = entitiesToCreate;
+	}
+
+	public void setEntitiesToDelete(final long entitiesToDelete) {
+		this.entitiesToDelete = entitiesToDelete;
+	}
+
+	public void setEntitiesToUpdate(final long entitiesToUpdate) {
+		this.entitiesToUpdate = entitiesToUpdate;
+	}
+
+	public void setEstimatedStatements(final long estimatedStatements) {
+		this.estimatedStatements = estimatedStatements;
+	}
+
+	public void setRowsChanged(final long rowsChanged) {
+		this.rowsChanged = rowsChanged;
+	}
+
+	public void setRowsUntouched(final long rowsUntouched) {
+		this.rowsUntouched = rowsUntouched;
+	}
+
+	public void setSubtreesUnchanged(final long subtreesUnchanged) {
+		this.subtreesUnchanged = subtreesUnchanged;
+	}
+}
@@ -17,17 +17,18 @@ package edu.upenn.cis.ppod.dto;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Sets.newHashSet;
 
-import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableSet;
 
 /**
@@ -35,6 +36,14 @@ import com.google.common.collect.ImmutableSet;
  * <p>
  * Because the type and states of a cell are not independent of one another,
  * this class is set up so that both must be set at the same time.
+ * <p>
+ * Cells are immutable, and {@link #of(PPodCellType, Set)} and
+ * {@link #of(PPodCellType, long)} hand out shared instances for the common
+ * ones: {@link #UNASSIGNED}, {@link #INAPPLICABLE}, every
+ * {@link PPodCellType#SINGLE} cell, and the {@link PPodCellType#POLYMORPHIC}
+ * and {@link PPodCellType#UNCERTAIN} cells whose states are all less than
+ * {@value #SMALL_STATE_NUMBER_LIMIT}. So compare cells with
+ * {@link #equals(Object)}, not {@code ==}.
  * 
  * @author Sam Donnelly
  */
@@ -43,92 +52,237 @@ public final class PPodStandardCell {
 
 	public static final Set<Integer> EMPTY_STATES = ImmutableSet.of();
 
+	public static final PPodStandardCell UNASSIGNED =
+			new PPodStandardCell(PPodCellType.UNASSIGNED, EMPTY_STATES);
+
+	public static final PPodStandardCell INAPPLICABLE =
+			new PPodStandardCell(PPodCellType.INAPPLICABLE, EMPTY_STATES);
+
+	/**
+	 * The multi-state cells whose states are all less than this are shared.
+	 */
+	static final int SMALL_STATE_NUMBER_LIMIT = 10;
+
+	private static final PPodStandardCell[] SINGLES =
+			new PPodStandardCell[PPodStandardRow.MAX_STATE_NUMBER + 1];
+
+	static {
+		for (int stateNumber = 0; stateNumber < SINGLES.length; stateNumber++) {
+			SINGLES[stateNumber] =
+					new PPodStandardCell(
+							PPodCellType.SINGLE,
+							ImmutableSet.of(stateNumber));
+		}
+	}
+
+	/** Filled in as they're asked for, by state bitmask. */
+	private static final AtomicReferenceArray<PPodStandardCell> POLYMORPHICS =
+			new AtomicReferenceArray<PPodStandardCell>(
+					1 << SMALL_STATE_NUMBER_LIMIT);
+
+	/** Filled in as they're asked for, by state bitmask. */
+	private static final AtomicReferenceArray<PPodStandardCell> UNCERTAINS =
+			new AtomicReferenceArray<PPodStandardCell>(
+					1 << SMALL_STATE_NUMBER_LIMIT);
+
 	@XmlAttribute
 	private PPodCellType type;
 
 	@XmlElement(name = "state")
-	private Set<Integer> states = newHashSet();
+	private Set<Integer> states;
 
-	PPodStandardCell() {}
+	/** For JAXB, which fills in the states. */
+	PPodStandardCell() {
+		states = newHashSet();
+	}
 
+	/**
+	 * Make a cell that isn't shared. {@link #of(PPodCellType, Set)} is
+	 * usually what you want.
+	 * 
+	 * @param type the type of the cell
+	 * @param states the state numbers of the cell
+	 * 
+	 * @throws IllegalArgumentException if the number of states doesn't go with
+	 *             {@code type}
+	 */
 	public PPodStandardCell(final PPodCellType type,
 			final Set<Integer> states) {
-		setTypeAndStates(type, states);
+		checkNotNull(type);
+		checkNotNull(states);
+		checkTypeAndStateCount(type, states.size());
+		this.type = type;
+		this.states = ImmutableSet.copyOf(states);
 	}
 
 	/**
-	 * Get an unmodifiable view of the states.
+	 * Get the cell with the given type and states, which is a shared instance
+	 * if it's one of the common ones.
 	 * 
-	 * @return an unmodifiable view of the states
+	 * @param type the type of the cell
+	 * @param states the state numbers of the cell
+	 * 
+	 * @return the cell
+	 * 
+	 * @throws IllegalArgumentException if the number of states doesn't go with
+	 *             {@code type}
 	 */
-	public Set<Integer> getStates() {
-		return Collections.unmodifiableSet(states);
+	public static PPodStandardCell of(
+			final PPodCellType type,
+			final Set<Integer> states) {
+		checkNotNull(type);
+		checkNotNull(states);
+		checkTypeAndStateCount(type, states.size());
+		long stateBitmask = 0;
+		for (final Integer stateNumber : states) {
+			checkNotNull(stateNumber);
+			if (stateNumber < 0
+					|| stateNumber > PPodStandardRow.MAX_STATE_NUMBER) {
+				// Too big for a bitmask, so not one of the common ones
+				return new PPodStandardCell(type, states);
+			}
+			stateBitmask |= 1L << stateNumber;
+		}
+		return getShared(type, stateBitmask);
 	}
 
 	/**
-	 * @return the type
+	 * Get the cell with the given type and states, which is a shared instance
+	 * if it's one of the common ones.
+	 * 
+	 * @param type the type of the cell
+	 * @param stateBitmask the states of the cell, as made by
+	 *            {@link PPodStandardRow#toStateBitmask(Iterable)}
+	 * 
+	 * @return the cell
+	 * 
+	 * @throws IllegalArgumentException if the number of states doesn't go with
+	 *             {@code type}
 	 */
-	public PPodCellType getType() {
-		return type;
-	}
-
-	public void setInapplicable() {
-		type = PPodCellType.INAPPLICABLE;
-		states.clear();
+	public static PPodStandardCell of(
+			final PPodCellType type,
+			final long stateBitmask) {
+		checkNotNull(type);
+		checkTypeAndStateCount(type, Long.bitCount(stateBitmask));
+		return getShared(type, stateBitmask);
 	}
 
-	public void setPolymorphic(final Set<Integer> states) {
-		checkNotNull(states);
-		checkArgument(states.size() > 1);
-		type = PPodCellType.POLYMORPHIC;
-		this.states.clear();
-		this.states.addAll(states);
+	private static PPodStandardCell getShared(
+			final PPodCellType type,
+			final long stateBitmask) {
+		switch (type) {
+			case UNASSIGNED:
+				return UNASSIGNED;
+			case INAPPLICABLE:
+				return INAPPLICABLE;
+			case SINGLE:
+				return SINGLES[Long.numberOfTrailingZeros(stateBitmask)];
+			case POLYMORPHIC:
+				return getShared(POLYMORPHICS, type, stateBitmask);
+			case UNCERTAIN:
+				return getShared(UNCERTAINS, type, stateBitmask);
+			default:
+				throw new AssertionError("unknown cell type");
+		}
 	}
 
-	public void setSingle(final Integer state) {
-		checkNotNull(state);
-		type = PPodCellType.SINGLE;
-		this.states.clear();
-		this.states.add(state);
+	private static PPodStandardCell getShared(
+			final AtomicReferenceArray<PPodStandardCell> sharedCells,
+			final PPodCellType type,
+			final long stateBitmask) {
+		// Negative when it has the highest state number
+		if (stateBitmask < 0 || stateBitmask >= sharedCells.length()) {
+			return new PPodStandardCell(
+					type,
+					PPodStandardRow.fromStateBitmask(stateBitmask));
+		}
+		final int index = (int) stateBitmask;
+		final PPodStandardCell sharedCell = sharedCells.get(index);
+		if (sharedCell != null) {
+			return sharedCell;
+		}
+		// If another thread beats us to it, we use its cell
+		sharedCells.compareAndSet(
+				index,
+				null,
+				new PPodStandardCell(
+						type,
+						PPodStandardRow.fromStateBitmask(stateBitmask)));
+		return sharedCells.get(index);
 	}
 
-	private void setTypeAndStates(final PPodCellType type,
-			final Set<Integer> states) {
+	/**
+	 * Check that a cell of type {@code type} can have {@code stateCount}
+	 * states.
+	 * 
+	 * @throws IllegalArgumentException if it can't
+	 */
+	static void checkTypeAndStateCount(
+			final PPodCellType type,
+			final int stateCount) {
 		switch (type) {
 			case UNASSIGNED:
-				checkArgument(states.size() == 0);
-				setUnassigned();
+			case INAPPLICABLE:
+				checkArgument(stateCount == 0, type + " cell with states");
 				break;
 			case SINGLE:
-				checkArgument(states.size() == 1);
-				setSingle(getOnlyElement(states));
+				checkArgument(stateCount == 1, "SINGLE cell with "
+						+ stateCount + " states");
 				break;
 			case POLYMORPHIC:
-				setPolymorphic(states);
-				break;
 			case UNCERTAIN:
-				setUncertain(states);
-				break;
-			case INAPPLICABLE:
-				checkArgument(states.size() == 0);
-				setInapplicable();
+				checkArgument(stateCount > 1, type + " cell with "
+						+ stateCount + " states");
 				break;
 			default:
-				throw new AssertionError();
+				throw new AssertionError("unknown cell type");
 		}
 	}
 
-	public void setUnassigned() {
-		type = PPodCellType.UNASSIGNED;
-		states.clear();
+	@SuppressWarnings("unused")
+	private void afterUnmarshal(
+			final Unmarshaller unmarshaller,
+			final Object parent) {
+		checkArgument(type != null, "cell without a type");
+		checkTypeAndStateCount(type, states.size());
+		states = ImmutableSet.copyOf(states);
 	}
 
-	public void setUncertain(final Set<Integer> states) {
-		checkNotNull(states);
-		checkArgument(states.size() > 1);
-		type = PPodCellType.UNCERTAIN;
-		this.states.clear();
-		this.states.addAll(states);
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PPodStandardCell)) {
+			return false;
+		}
+		final PPodStandardCell other = (PPodStandardCell) obj;
+		return type == other.type && states.equals(other.states);
 	}
 
+	/**
+	 * Get the states.
+	 * 
+	 * @return the states, which can't be modified
+	 */
+	public Set<Integer> getStates() {
+		return states;
+	}
+
+	/**
+	 * @return the type
+	 */
+	public PPodCellType getType() {
+		return type;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(type, states);
+	}
+
+	@Override
+	public String toString() {
+		return type + "" + states;
+	}
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A rectangle of standard matrix cells whose top left cell is at
+ * ({@link #getFirstRow()}, {@link #getFirstColumn()}).
+ * <p>
+ * A whole matrix is a block at (0, 0) with all of the rows; a range of rows is
+ * a block at column 0 with full rows; and a range of columns is a block at row
+ * 0 with every row cut down to those columns.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class PPodStandardCellBlock {
+
+	@XmlAttribute
+	private int firstRow;
+
+	@XmlAttribute
+	private int firstColumn;
+
+	@XmlElement(name = "row")
+	private List<PPodStandardRow> rows = newArrayList();
+
+	PPodStandardCellBlock() {}
+
+	public PPodStandardCellBlock(final int firstRow, final int firstColumn) {
+		checkArgument(firstRow >= 0, "firstRow < 0");
+		checkArgument(firstColumn >= 0, "firstColumn < 0");
+		this.firstRow = firstRow;
+		this.firstColumn = firstColumn;
+	}
+
+	public int getFirstColumn() {
+		return firstColumn;
+	}
+
+	public int getFirstRow() {
+		return firstRow;
+	}
+
+	/**
+	 * The rows of the block. The cells of each row start at
+	 * {@link #getFirstColumn()}.
+	 * 
+	 * @return the rows of the block
+	 */
+	public List<PPodStandardRow> getRows() {
+		return rows;
+	}
+
+	public void setRows(final List<PPodStandardRow> rows) {
+		this.rows = checkNotNull(rows);
+	}
+}
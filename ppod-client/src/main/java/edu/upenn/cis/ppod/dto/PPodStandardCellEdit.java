@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * A new value for the cell at ({@link #getRow()}, {@link #getColumn()}) of a
+ * standard matrix.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class PPodStandardCellEdit {
+
+	@XmlAttribute
+	private int row;
+
+	@XmlAttribute
+	private int column;
+
+	@XmlElement
+	private PPodStandardCell cell;
+
+	PPodStandardCellEdit() {}
+
+	public PPodStandardCellEdit(
+			final int row,
+			final int column,
+			final PPodStandardCell cell) {
+		checkArgument(row >= 0, "row < 0");
+		checkArgument(column >= 0, "column < 0");
+		this.row = row;
+		this.column = column;
+		this.cell = checkNotNull(cell);
+	}
+
+	/** So that we hold on to the shared instance instead of our own copy. */
+	@SuppressWarnings("unused")
+	private void afterUnmarshal(
+			final Unmarshaller unmarshaller,
+			final Object parent) {
+		checkArgument(cell != null, "edit without a cell");
+		cell = PPodStandardCell.of(cell.getType(), cell.getStates());
+	}
+
+	public PPodStandardCell getCell() {
+		return cell;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public int getRow() {
+		return row;
+	}
+}
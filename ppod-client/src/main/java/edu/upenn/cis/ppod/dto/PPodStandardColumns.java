@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Columns to be inserted into a standard matrix: their characters and,
+ * optionally, their cells.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class PPodStandardColumns {
+
+	@XmlElement(name = "character")
+	private List<PPodStandardCharacter> characters = newArrayList();
+
+	@XmlElement(name = "row")
+	private List<PPodStandardRow> rows = newArrayList();
+
+	public PPodStandardColumns() {}
+
+	public List<PPodStandardCharacter> getCharacters() {
+		return characters;
+	}
+
+	/**
+	 * The cells of the columns, one row per row of the matrix with one cell
+	 * per character. If there are no rows, the cells are unassigned.
+	 * 
+	 * @return the cells of the columns
+	 */
+	public List<PPodStandardRow> getRows() {
+		return rows;
+	}
+
+	public void setCharacters(final List<PPodStandardCharacter> characters) {
+		this.characters = checkNotNull(characters);
+	}
+
+	public void setRows(final List<PPodStandardRow> rows) {
+		this.rows = checkNotNull(rows);
+	}
+}
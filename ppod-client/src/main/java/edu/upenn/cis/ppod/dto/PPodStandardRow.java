@@ -15,30 +15,271 @@
  */
 package edu.upenn.cis.ppod.dto;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
 import static com.google.common.collect.Lists.newArrayList;
 
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 
-@XmlAccessorType(XmlAccessType.FIELD)
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A row of a standard matrix.
+ * <p>
+ * The cells are kept densely, as a type and a bitmask of state numbers per
+ * cell, rather than as a {@link PPodStandardCell} with its own set of states
+ * per cell. {@link #getCells()} is a view of them whose cells are the shared
+ * ones from {@link PPodStandardCell#of(PPodCellType, long)}, so to change a
+ * cell, put a new one in with {@code getCells().set(...)}. Code that goes through all of the cells of
+ * a big matrix should use {@link #getType(int)} and
+ * {@link #getStateBitmask(int)} instead.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlAccessorType(XmlAccessType.NONE)
 public final class PPodStandardRow {
 
-	@XmlElement(name = "cell")
-	private List<PPodStandardCell> cells = newArrayList();
+	/** The highest state number a cell can have. */
+	public static final int MAX_STATE_NUMBER = Long.SIZE - 1;
+
+	private static final PPodCellType[] TYPES = PPodCellType.values();
+
+	private static final int DEFAULT_CAPACITY = 10;
+
+	/** A view of the cells of the row. */
+	private final class Cells
+			extends AbstractList<PPodStandardCell>
+			implements RandomAccess {
+
+		@Override
+		public void add(final int index, final PPodStandardCell cell) {
+			checkPositionIndex(index, cellCount);
+			checkNotNull(cell);
+			add(index, cell.getType(), toStateBitmask(cell.getStates()));
+		}
+
+		private void add(
+				final int index,
+				final PPodCellType type,
+				final long stateBitmask) {
+			PPodStandardCell.checkTypeAndStateCount(
+					type,
+					Long.bitCount(stateBitmask));
+			ensureCapacity(cellCount + 1);
+			System.arraycopy(types, index, types, index + 1, cellCount
+					- index);
+			System.arraycopy(
+					stateBitmasks,
+					index,
+					stateBitmasks,
+					index + 1,
+					cellCount - index);
+			types[index] = (byte) type.ordinal();
+			stateBitmasks[index] = stateBitmask;
+			cellCount++;
+			modCount++;
+		}
+
+		@Override
+		public PPodStandardCell get(final int index) {
+			checkElementIndex(index, cellCount);
+			return PPodStandardCell.of(
+					TYPES[types[index]],
+					stateBitmasks[index]);
+		}
+
+		@Override
+		public PPodStandardCell remove(final int index) {
+			final PPodStandardCell removedCell = get(index);
+			removeRange(index, index + 1);
+			return removedCell;
+		}
+
+		@Override
+		protected void removeRange(final int fromIndex, final int toIndex) {
+			System.arraycopy(types, toIndex, types, fromIndex, cellCount
+					- toIndex);
+			System.arraycopy(
+					stateBitmasks,
+					toIndex,
+					stateBitmasks,
+					fromIndex,
+					cellCount - toIndex);
+			cellCount -= toIndex - fromIndex;
+			modCount++;
+		}
+
+		@Override
+		public PPodStandardCell set(
+				final int index,
+				final PPodStandardCell cell) {
+			final PPodStandardCell replacedCell = get(index);
+			checkNotNull(cell);
+			final long stateBitmask = toStateBitmask(cell.getStates());
+			PPodStandardCell.checkTypeAndStateCount(
+					cell.getType(),
+					Long.bitCount(stateBitmask));
+			types[index] = (byte) cell.getType().ordinal();
+			stateBitmasks[index] = stateBitmask;
+			return replacedCell;
+		}
+
+		@Override
+		public int size() {
+			return cellCount;
+		}
+	}
+
+	private byte[] types = new byte[DEFAULT_CAPACITY];
+
+	private long[] stateBitmasks = new long[DEFAULT_CAPACITY];
+
+	private int cellCount;
+
+	private final Cells cells = new Cells();
 
 	public PPodStandardRow() {}
 
+	/**
+	 * Get the bitmask of some state numbers, which is what the states of a
+	 * cell are kept as.
+	 * 
+	 * @param stateNumbers the state numbers
+	 * 
+	 * @return the bitmask, with bit {@code n} set for state number {@code n}
+	 * 
+	 * @throws IllegalArgumentException if any of the state numbers are
+	 *             negative or greater than {@link #MAX_STATE_NUMBER}
+	 */
+	public static long toStateBitmask(final Iterable<Integer> stateNumbers) {
+		long stateBitmask = 0;
+		for (final Integer stateNumber : stateNumbers) {
+			checkArgument(
+					stateNumber >= 0 && stateNumber <= MAX_STATE_NUMBER,
+					"state number " + stateNumber
+							+ " is out of range: the states of a cell must be "
+							+ "between 0 and " + MAX_STATE_NUMBER);
+			stateBitmask |= 1L << stateNumber;
+		}
+		return stateBitmask;
+	}
+
+	/**
+	 * Get the state numbers in a bitmask.
+	 * 
+	 * @param stateBitmask the bitmask, as made by
+	 *            {@link #toStateBitmask(Iterable)}
+	 * 
+	 * @return the state numbers, in order
+	 */
+	public static Set<Integer> fromStateBitmask(final long stateBitmask) {
+		if (stateBitmask == 0) {
+			return PPodStandardCell.EMPTY_STATES;
+		}
+		final ImmutableSet.Builder<Integer> stateNumbers =
+				ImmutableSet.builder();
+		long remaining = stateBitmask;
+		while (remaining != 0) {
+			stateNumbers.add(Long.numberOfTrailingZeros(remaining));
+			remaining &= remaining - 1;
+		}
+		return stateNumbers.build();
+	}
+
+	/**
+	 * Add a cell to the end of the row.
+	 * 
+	 * @param type the type of the cell
+	 * @param stateBitmask the states of the cell, as made by
+	 *            {@link #toStateBitmask(Iterable)}
+	 * 
+	 * @throws IllegalArgumentException if {@code stateBitmask} doesn't go
+	 *             with {@code type}
+	 */
+	public void addCell(final PPodCellType type, final long stateBitmask) {
+		checkNotNull(type);
+		cells.add(cellCount, type, stateBitmask);
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > types.length) {
+			final int newCapacity = Math.max(capacity, types.length * 3 / 2);
+			final byte[] newTypes = new byte[newCapacity];
+			System.arraycopy(types, 0, newTypes, 0, cellCount);
+			types = newTypes;
+			final long[] newStateBitmasks = new long[newCapacity];
+			System.arraycopy(stateBitmasks, 0, newStateBitmasks, 0, cellCount);
+			stateBitmasks = newStateBitmasks;
+		}
+	}
+
+	/**
+	 * Get the number of cells in the row, which is
+	 * {@code getCells().size()}.
+	 * 
+	 * @return the number of cells
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Get a view of the cells of the row. See the class comment.
+	 * 
+	 * @return a view of the cells
+	 */
+	@XmlElement(name = "cell")
 	public List<PPodStandardCell> getCells() {
 		return cells;
 	}
 
+	/**
+	 * Get the states of a cell without making a {@link PPodStandardCell}.
+	 * 
+	 * @param cellPos the position of the cell
+	 * 
+	 * @return the states of the cell, as made by {@link #toStateBitmask(Iterable)}
+	 */
+	public long getStateBitmask(final int cellPos) {
+		checkElementIndex(cellPos, cellCount);
+		return stateBitmasks[cellPos];
+	}
+
+	/**
+	 * Get the type of a cell without making a {@link PPodStandardCell}.
+	 * 
+	 * @param cellPos the position of the cell
+	 * 
+	 * @return the type of the cell
+	 */
+	public PPodCellType getType(final int cellPos) {
+		checkElementIndex(cellPos, cellCount);
+		return TYPES[types[cellPos]];
+	}
+
+	/**
+	 * Replace the cells of the row with copies of {@code cells}.
+	 * 
+	 * @param cells the new cells
+	 */
 	public void setCells(final List<PPodStandardCell> cells) {
 		checkNotNull(cells);
-		this.cells = cells;
+		if (cells == this.cells) {
+			// As JAXB does when it's done adding the cells
+			return;
+		}
+		// In case it's a view of this row's cells
+		final List<PPodStandardCell> newCells = newArrayList(cells);
+		this.cells.clear();
+		this.cells.addAll(newCells);
 	}
-
 }
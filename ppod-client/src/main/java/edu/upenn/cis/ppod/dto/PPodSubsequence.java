@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlValue;
+
+/**
+ * Part of the sequence of row {@link #getRow()} of a DNA or protein matrix.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class PPodSubsequence {
+
+	@XmlAttribute
+	private int row;
+
+	@XmlValue
+	private String sequence;
+
+	PPodSubsequence() {}
+
+	public PPodSubsequence(final int row, final String sequence) {
+		checkArgument(row >= 0, "row < 0");
+		this.row = row;
+		this.sequence = checkNotNull(sequence);
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public String getSequence() {
+		return sequence;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * {@code sequence[start, end)} of some of the rows of a DNA or protein
+ * matrix. Sequences that end before {@link #getEnd()} are cut short.
+ * 
+ * @author Sam Donnelly
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.FIELD)
+public final class PPodSubsequences {
+
+	@XmlAttribute
+	private int start;
+
+	@XmlAttribute
+	private int end;
+
+	@XmlElement(name = "subsequence")
+	private List<PPodSubsequence> subsequences = newArrayList();
+
+	PPodSubsequences() {}
+
+	public PPodSubsequences(final int start, final int end) {
+		checkArgument(start >= 0, "start < 0");
+		checkArgument(start <= end, "start > end");
+		this.start = start;
+		this.end = end;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * The subsequences, in row order.
+	 * 
+	 * @return the subsequences
+	 */
+	public List<PPodSubsequence> getSubsequences() {
+		return subsequences;
+	}
+
+	public void setSubsequences(final List<PPodSubsequence> subsequences) {
+		this.subsequences = checkNotNull(subsequences);
+	}
+}
@@ -22,7 +22,9 @@ import java.util.Map;
 import java.util.SortedMap;
 
 import javax.xml.bind.annotation.XmlElementWrapper;
+import javax.xml.bind.annotation.XmlRootElement;
 
+@XmlRootElement
 public class StandardMatrixInfo extends MatrixInfo {
 	/**
 	 * Version of column header {@code ic} is at
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * A snapshot of an asynchronous study upload: its state, how many of its rows
+ * have been merged, and, once it's done, its {@link StudyInfo} or why it
+ * failed.
+ *
+ * @author Sam Donnelly
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.NONE)
+public final class StudyUploadJobInfo {
+
+	private String jobId;
+
+	private StudyUploadJobState state;
+
+	private long rowsMerged;
+
+	private long totalRows = -1;
+
+	@CheckForNull
+	private StudyInfo studyInfo;
+
+	@CheckForNull
+	private String errorMessage;
+
+	/** For JAXB. */
+	StudyUploadJobInfo() {}
+
+	public StudyUploadJobInfo(
+			final String jobId,
+			final StudyUploadJobState state) {
+		this.jobId = checkNotNull(jobId);
+		this.state = checkNotNull(state);
+	}
+
+	/**
+	 * Why the job failed. {@code null} unless the job is
+	 * {@link StudyUploadJobState#FAILED}.
+	 *
+	 * @return why the job failed
+	 */
+	@XmlElement
+	@Nullable
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@XmlAttribute
+	public String getJobId() {
+		return jobId;
+	}
+
+	@XmlAttribute
+	public long getRowsMerged() {
+		return rowsMerged;
+	}
+
+	@XmlAttribute
+	public StudyUploadJobState getState() {
+		return state;
+	}
+
+	/**
+	 * The info of the created or updated study. {@code null} unless the job
+	 * is {@link StudyUploadJobState#SUCCEEDED}.
+	 *
+	 * @return the info of the created or updated study
+	 */
+	@XmlElement
+	@Nullable
+	public StudyInfo getStudyInfo() {
+		return studyInfo;
+	}
+
+	/**
+	 * The number of matrix rows in the upload, or {@code -1} if they haven't
+	 * been counted yet.
+	 *
+	 * @return the number of matrix rows in the upload
+	 */
+	@XmlAttribute
+	public long getTotalRows() {
+		return totalRows;
+	}
+
+	public void setErrorMessage(@CheckForNull final String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	@SuppressWarnings("unused")
+	private void setJobId(final String jobId) {
+		this.jobId = checkNotNull(jobId);
+	}
+
+	public void setRowsMerged(final long rowsMerged) {
+		this.rowsMerged = rowsMerged;
+	}
+
+	public void setState(final StudyUploadJobState state) {
+		this.state = checkNotNull(state);
+	}
+
+	public void setStudyInfo(@CheckForNull final StudyInfo studyInfo) {
+		this.studyInfo = studyInfo;
+	}
+
+	public void setTotalRows(final long totalRows) {
+		this.totalRows = totalRows;
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.dto;
+
+/**
+ * Where a study upload job is in its life.
+ *
+ * @author Sam Donnelly
+ */
+public enum StudyUploadJobState {
+
+	/** Waiting for a free worker. */
+	QUEUED,
+
+	/** Being merged. */
+	RUNNING,
+
+	/** Merged and committed. */
+	SUCCEEDED,
+
+	/** Rolled back. */
+	FAILED;
+}
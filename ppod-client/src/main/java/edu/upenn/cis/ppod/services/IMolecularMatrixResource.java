@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import java.util.List;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+
+import org.jboss.resteasy.annotations.GZIP;
+
+import edu.upenn.cis.ppod.dto.PPodSubsequences;
+
+/**
+ * Reads of parts of DNA and protein matrices that, unlike
+ * {@link IStudyResource#getStudyByPPodId}, don't go through the rest of the
+ * study.
+ * <p>
+ * Long sequences are stored in chunks, and only the chunks that cover the
+ * requested columns are read.
+ * <p>
+ * Rows with the same sequence share it, and sequences that no row has any more
+ * are left behind until {@link #deleteUnreferencedSequences()}.
+ * 
+ * @author Sam Donnelly
+ */
+@Path("/molecularmatrices")
+public interface IMolecularMatrixResource {
+
+	/** The most columns that one request for subsequences can ask for. */
+	int MAX_SUBSEQUENCE_LENGTH = 64 * 1024;
+
+	/**
+	 * Get {@code sequence[start, end)} of some rows of a DNA matrix.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @param start the first column
+	 * @param end one past the last column, at most
+	 *            {@link #MAX_SUBSEQUENCE_LENGTH} past {@code start}
+	 * @param rows the rows we want, or none for all of them
+	 * @return the subsequences
+	 */
+	@GET
+	@GZIP
+	@Path("dna/{pPodId}/subsequences")
+	@Produces("application/xml")
+	PPodSubsequences getDnaSubsequences(
+			@PathParam("pPodId") String pPodId,
+			@QueryParam("start") int start,
+			@QueryParam("end") int end,
+			@QueryParam("row") List<Integer> rows);
+
+	/**
+	 * Get {@code sequence[start, end)} of some rows of a protein matrix.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @param start the first column
+	 * @param end one past the last column, at most
+	 *            {@link #MAX_SUBSEQUENCE_LENGTH} past {@code start}
+	 * @param rows the rows we want, or none for all of them
+	 * @return the subsequences
+	 */
+	@GET
+	@GZIP
+	@Path("protein/{pPodId}/subsequences")
+	@Produces("application/xml")
+	PPodSubsequences getProteinSubsequences(
+			@PathParam("pPodId") String pPodId,
+			@QueryParam("start") int start,
+			@QueryParam("end") int end,
+			@QueryParam("row") List<Integer> rows);
+
+	/**
+	 * Delete the stored sequences that no DNA or protein row has any more.
+	 * Meant to be run now and then, say nightly. Sequences stored in the last
+	 * hour are left alone, since rows that are still being written may be
+	 * about to have them.
+	 * 
+	 * @return the number of sequences that were deleted
+	 */
+	@DELETE
+	@Path("sequences/unreferenced")
+	@Produces("text/plain")
+	String deleteUnreferencedSequences();
+}
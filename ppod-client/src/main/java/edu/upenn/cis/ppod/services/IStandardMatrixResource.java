@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2011 Trustees of the University of Pennsylvania
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.upenn.cis.ppod.services;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+
+import org.jboss.resteasy.annotations.GZIP;
+
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.PPodStandardCellBlock;
+import edu.upenn.cis.ppod.dto.PPodStandardCellEdits;
+import edu.upenn.cis.ppod.dto.PPodStandardColumns;
+import edu.upenn.cis.ppod.dto.StandardMatrixInfo;
+
+/**
+ * Edits to a standard matrix that, unlike {@link IStudyResource#updateStudy},
+ * don't go through the rest of the study.
+ * <p>
+ * The cell edits only touch the rows being edited. The characters of the
+ * matrix can't be changed by them, and every state of an incoming cell has to
+ * already be a state of its column's character.
+ * <p>
+ * The column edits shift the positions of the stored cells in place instead
+ * of rewriting them.
+ * 
+ * @author Sam Donnelly
+ */
+@Path("/standardmatrices")
+public interface IStandardMatrixResource {
+
+	/**
+	 * Overwrite a block of cells: the whole matrix, a range of rows, a range
+	 * of columns, or any other rectangle of cells.
+	 * 
+	 * @param block the cells and where they go
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the info of the matrix
+	 */
+	@PATCH
+	@GZIP
+	@Path("{pPodId}")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StandardMatrixInfo updateCellBlock(
+			@GZIP PPodStandardCellBlock block,
+			@PathParam("pPodId") String pPodId);
+
+	/**
+	 * Overwrite a list of cells.
+	 * 
+	 * @param cellEdits the cells and where they go
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the info of the matrix
+	 */
+	@PATCH
+	@GZIP
+	@Path("{pPodId}/cells")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StandardMatrixInfo updateCells(
+			@GZIP PPodStandardCellEdits cellEdits,
+			@PathParam("pPodId") String pPodId);
+
+	/**
+	 * Insert columns.
+	 * 
+	 * @param columns the characters and cells of the new columns
+	 * @param pPodId the pPOD ID of the matrix
+	 * @param position where the new columns go: the number of columns to
+	 *            append them
+	 * @return the info of the matrix, including the pPOD IDs of the new
+	 *         characters
+	 */
+	@POST
+	@GZIP
+	@Path("{pPodId}/columns")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StandardMatrixInfo insertColumns(
+			@GZIP PPodStandardColumns columns,
+			@PathParam("pPodId") String pPodId,
+			@QueryParam("position") int position);
+
+	/**
+	 * Remove columns.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @param position the first column to remove
+	 * @param count the number of columns to remove
+	 * @return the info of the matrix
+	 */
+	@DELETE
+	@Path("{pPodId}/columns/{position}")
+	@Produces("application/xml")
+	StandardMatrixInfo removeColumns(
+			@PathParam("pPodId") String pPodId,
+			@PathParam("position") int position,
+			@QueryParam("count") @DefaultValue("1") int count);
+
+	/**
+	 * Move a column.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @param position the column to move
+	 * @param to where it goes
+	 * @return the info of the matrix
+	 */
+	@PATCH
+	@Path("{pPodId}/columns/{position}")
+	@Produces("application/xml")
+	StandardMatrixInfo moveColumn(
+			@PathParam("pPodId") String pPodId,
+			@PathParam("position") int position,
+			@QueryParam("to") int to);
+
+	/**
+	 * Migrate the cells of the matrix that are stored one per cell to packed
+	 * rows, as written by {@link CellWriteMode#PACKED} uploads.
+	 * 
+	 * @param pPodId the pPOD ID of the matrix
+	 * @return the info of the matrix
+	 */
+	@POST
+	@Path("{pPodId}/packedcells")
+	@Produces("application/xml")
+	StandardMatrixInfo packCells(@PathParam("pPodId") String pPodId);
+}
@@ -15,21 +15,28 @@
  */
 package edu.upenn.cis.ppod.services;
 
+import java.io.InputStream;
 import java.util.Set;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
 
 import org.jboss.resteasy.annotations.GZIP;
 
+import edu.upenn.cis.ppod.dto.CellWriteMode;
+import edu.upenn.cis.ppod.dto.MergePlan;
 import edu.upenn.cis.ppod.dto.PPodLabelAndId;
 import edu.upenn.cis.ppod.dto.PPodStudy;
 import edu.upenn.cis.ppod.dto.StudyInfo;
+import edu.upenn.cis.ppod.dto.StudyUploadJobInfo;
 import edu.upenn.cis.ppod.thirdparty.util.Pretty;
 
 /**
@@ -42,6 +49,7 @@ public interface IStudyResource {
 	 * Create a study in the database.
 	 * 
 	 * @param study to be created
+	 * @param cellWriteMode how to write the standard matrix cells
 	 * @return a {@link StudyInfo} populated with information that resulted form
 	 *         created the study
 	 */
@@ -50,7 +58,28 @@ public interface IStudyResource {
 	@GZIP
 	@Consumes("application/xml")
 	@Produces("application/xml")
-	StudyInfo createStudy(@Pretty @GZIP PPodStudy study);
+	StudyInfo createStudy(
+			@Pretty @GZIP PPodStudy study,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
+
+	/**
+	 * Create a study in the database from an XML-serialized {@link PPodStudy}
+	 * that is read and merged as it streams in, so that the whole study never
+	 * has to be in memory.
+	 * 
+	 * @param study the XML-serialized study to be created
+	 * @param cellWriteMode how to write the standard matrix cells
+	 * @return a {@link StudyInfo} populated with information that resulted form
+	 *         created the study
+	 */
+	@POST
+	@GZIP
+	@Path("stream")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StudyInfo createStudyFromStream(
+			@GZIP InputStream study,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
 
 	/**
 	 * Get the {@link Study} that has the given pPOD ID.
@@ -66,6 +95,21 @@ public interface IStudyResource {
 	@Produces("application/xml")
 	PPodStudy getStudyByPPodId(@PathParam("pPodId") String pPodId);
 
+	/**
+	 * Get the XML-serialized {@link PPodStudy} that has the given pPOD ID,
+	 * written as it's read from the database, so that the whole study never
+	 * has to be in memory.
+	 * 
+	 * @param pPodId the pPOD ID of the study we're interested in
+	 * @return a response whose entity is the XML-serialized study, or a 404
+ *         response if there is no such study
+	 */
+	@GET
+	@GZIP
+	@Path("{pPodId}/stream")
+	@Produces("application/xml")
+	Response getStudyByPPodIdAsStream(@PathParam("pPodId") String pPodId);
+
 	/**
 	 * Get a set of (study pPOD ID, study label) pairs that has a member for
 	 * every study in the database.
@@ -88,5 +132,76 @@ public interface IStudyResource {
 	@Produces("application/xml")
 	StudyInfo updateStudy(
 			@Pretty @GZIP PPodStudy study,
-			@PathParam("pPodId") String pPodId);
-}
\ No newline at end of file
+			@PathParam("pPodId") String pPodId,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
+
+	/**
+	 * Update a study from an XML-serialized {@link PPodStudy} that is read and
+	 * merged as it streams in, so that the whole study never has to be in
+	 * memory.
+	 * 
+	 * @param study the XML-serialized study
+	 * @param pPodId the pPOD ID of the study
+	 * @param cellWriteMode how to write the standard matrix cells
+	 * @return a {@link StudyInfo} populated with information that resulted form
+	 *         updating the study
+	 */
+	@PUT
+	@GZIP
+	@Path("{pPodId}/stream")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StudyInfo updateStudyFromStream(
+			@GZIP InputStream study,
+			@PathParam("pPodId") String pPodId,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
+
+	/**
+	 * Work out what creating or updating a study would do without doing it:
+	 * how many entities, rows and cells it would write and roughly how many
+	 * statements that would take. Nothing is written.
+	 * 
+	 * @param study the study that would be uploaded
+	 * @param cellWriteMode how the standard matrix cells would be written
+	 * @return what the upload would do
+	 */
+	@POST
+	@GZIP
+	@Path("plan")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	MergePlan planStudyUpload(
+			@GZIP PPodStudy study,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
+
+	/**
+	 * Queue an XML-serialized {@link PPodStudy} to be created or updated in the
+	 * background and return right away. Poll
+	 * {@link #getStudyUploadJob(String)} for how it's going.
+	 * 
+	 * @param study the XML-serialized study
+	 * @param cellWriteMode how to write the standard matrix cells
+	 * @return the info of the queued job, including its id
+	 */
+	@POST
+	@GZIP
+	@Path("jobs")
+	@Consumes("application/xml")
+	@Produces("application/xml")
+	StudyUploadJobInfo submitStudyUpload(
+			@GZIP InputStream study,
+			@QueryParam("cellWriteMode") @DefaultValue("PER_CELL") CellWriteMode cellWriteMode);
+
+	/**
+	 * Get the state and progress of a study upload job, and its
+	 * {@link StudyInfo} once it has succeeded.
+	 * 
+	 * @param jobId the id from {@link #submitStudyUpload(InputStream,
+	 *            CellWriteMode)}
+	 * @return the info of the job
+	 */
+	@GET
+	@Path("jobs/{jobId}")
+	@Produces("application/xml")
+	StudyUploadJobInfo getStudyUploadJob(@PathParam("jobId") String jobId);
+}
\ No newline at end of file